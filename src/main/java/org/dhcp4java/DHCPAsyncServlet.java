@@ -0,0 +1,251 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.BOOTREQUEST;
+import static org.dhcp4java.DHCPConstants.DHCPDECLINE;
+import static org.dhcp4java.DHCPConstants.DHCPDISCOVER;
+import static org.dhcp4java.DHCPConstants.DHCPINFORM;
+import static org.dhcp4java.DHCPConstants.DHCPRELEASE;
+import static org.dhcp4java.DHCPConstants.DHCPREQUEST;
+
+import java.net.DatagramPacket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A "DHCP Servlet" whose handlers complete asynchronously.
+ * <p>
+ * Override the <code>doXXXAsync()</code> methods to return a
+ * <code>CompletionStage</code> completed when the response is known, for
+ * example when an external lease store has answered. The worker thread is
+ * released as soon as the stage is returned; <code>DHCPCoreServer</code> sends
+ * the response when the stage completes, or drops the request if it does not
+ * complete within <code>serverAsyncTimeout</code> milliseconds.
+ * <p>
+ * By default, <code>doXXXAsync()</code> methods call the synchronous
+ * <code>doXXX()</code> methods, so both styles can be mixed in the same
+ * servlet.
+ * <p>
+ * Note: in <code>lanes</code> dispatch mode, requests of a client are handed to
+ * the servlet in order, but their stages may complete in any order.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+public class DHCPAsyncServlet extends DHCPServlet
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (DHCPAsyncServlet.class);
+
+  private static final CompletionStage <DHCPPacket> NO_RESPONSE = CompletableFuture.completedFuture (null);
+  private static final CompletionStage <DatagramPacket> NO_DATAGRAM = CompletableFuture.completedFuture (null);
+
+  /**
+   * Asynchronous counterpart of <code>serviceDatagram()</code>: parses the
+   * datagram, passes it to <code>serviceAsync()</code> and serializes the
+   * response once available.
+   *
+   * @param requestDatagram
+   *        the datagram received from the client. It must remain valid until
+   *        the returned stage completes.
+   * @return the stage completed with the datagram to send back, or with
+   *         <code>null</code> if no answer. Never <code>null</code>.
+   */
+  public CompletionStage <DatagramPacket> serviceDatagramAsync (final DatagramPacket requestDatagram)
+  {
+    if (requestDatagram == null)
+      return NO_DATAGRAM;
+
+    final DHCPPacket request;
+    final CompletionStage <DHCPPacket> aStage;
+    try
+    {
+      // parse DHCP request
+      request = DHCPPacket.getPacketLazy (requestDatagram);
+      if (request == null)
+      {
+        // nothing much we can do
+        return NO_DATAGRAM;
+      }
+
+      if (s_aLogger.isDebugEnabled ())
+        s_aLogger.debug (request.getAsString ());
+
+      aStage = serviceAsync (request);
+      if (aStage == null)
+        return NO_DATAGRAM;
+    }
+    catch (final DHCPBadPacketException e)
+    {
+      if (!isRejected (e))
+        s_aLogger.info ("Invalid DHCP packet received", e);
+      return NO_DATAGRAM;
+    }
+    catch (final Exception e)
+    {
+      s_aLogger.info ("Unexpected Exception", e);
+      return NO_DATAGRAM;
+    }
+
+    return aStage.thenApply (new Function <DHCPPacket, DatagramPacket> ()
+    {
+      public DatagramPacket apply (final DHCPPacket aResponse)
+      {
+        if (s_aLogger.isDebugEnabled ())
+          s_aLogger.debug ("serviceAsync() done");
+        return makeResponseDatagram (requestDatagram, request, aResponse);
+      }
+    });
+  }
+
+  /**
+   * Synchronous access, waits for the stage returned by
+   * <code>serviceAsync()</code>.
+   */
+  @Override
+  protected DHCPPacket service (final DHCPPacket request)
+  {
+    final CompletionStage <DHCPPacket> aStage = serviceAsync (request);
+    return aStage == null ? null : aStage.toCompletableFuture ().join ();
+  }
+
+  /**
+   * Asynchronous counterpart of <code>service()</code>.
+   * <p>
+   * Default behaviour: ignore BOOTP packets, and dispatch to
+   * <code>doXXXAsync()</code> methods.
+   *
+   * @param request
+   *        DHCP request from the client
+   * @return stage completed with the DHCP response to send back to client, or
+   *         with <code>null</code> if no response
+   */
+  protected CompletionStage <DHCPPacket> serviceAsync (final DHCPPacket request)
+  {
+    if (request == null)
+      return NO_RESPONSE;
+
+    if (!request.isDhcp ())
+    {
+      s_aLogger.info ("BOOTP packet rejected");
+      return NO_RESPONSE; // skipping old BOOTP
+    }
+
+    final Byte dhcpMessageType = request.getDHCPMessageType ();
+    if (dhcpMessageType == null)
+    {
+      s_aLogger.info ("no DHCP message type");
+      return NO_RESPONSE;
+    }
+
+    if (request.getOp () != BOOTREQUEST)
+    {
+      // BOOTREPLY or unknown op, not from a client
+      s_aLogger.info ("Unexpected Op from client: " + request.getOp ());
+      return NO_RESPONSE;
+    }
+
+    switch (dhcpMessageType.byteValue ())
+    {
+      case DHCPDISCOVER:
+        return doDiscoverAsync (request);
+      case DHCPREQUEST:
+        return doRequestAsync (request);
+      case DHCPINFORM:
+        return doInformAsync (request);
+      case DHCPDECLINE:
+        return doDeclineAsync (request);
+      case DHCPRELEASE:
+        return doReleaseAsync (request);
+      default:
+        s_aLogger.info ("Unsupported message type " + dhcpMessageType);
+        return NO_RESPONSE;
+    }
+  }
+
+  /**
+   * Process DISCOVER request.
+   *
+   * @param request
+   *        DHCP request received from client
+   * @return stage completed with the DHCP response to send back, or with
+   *         <code>null</code> if no response.
+   */
+  protected CompletionStage <DHCPPacket> doDiscoverAsync (final DHCPPacket request)
+  {
+    return CompletableFuture.completedFuture (doDiscover (request));
+  }
+
+  /**
+   * Process REQUEST request.
+   *
+   * @param request
+   *        DHCP request received from client
+   * @return stage completed with the DHCP response to send back, or with
+   *         <code>null</code> if no response.
+   */
+  protected CompletionStage <DHCPPacket> doRequestAsync (final DHCPPacket request)
+  {
+    return CompletableFuture.completedFuture (doRequest (request));
+  }
+
+  /**
+   * Process INFORM request.
+   *
+   * @param request
+   *        DHCP request received from client
+   * @return stage completed with the DHCP response to send back, or with
+   *         <code>null</code> if no response.
+   */
+  protected CompletionStage <DHCPPacket> doInformAsync (final DHCPPacket request)
+  {
+    return CompletableFuture.completedFuture (doInform (request));
+  }
+
+  /**
+   * Process DECLINE request.
+   *
+   * @param request
+   *        DHCP request received from client
+   * @return stage completed with the DHCP response to send back, or with
+   *         <code>null</code> if no response.
+   */
+  protected CompletionStage <DHCPPacket> doDeclineAsync (final DHCPPacket request)
+  {
+    return CompletableFuture.completedFuture (doDecline (request));
+  }
+
+  /**
+   * Process RELEASE request.
+   *
+   * @param request
+   *        DHCP request received from client
+   * @return stage completed with the DHCP response to send back, or with
+   *         <code>null</code> if no response.
+   */
+  protected CompletionStage <DHCPPacket> doReleaseAsync (final DHCPPacket request)
+  {
+    return CompletableFuture.completedFuture (doRelease (request));
+  }
+}
@@ -27,17 +27,24 @@ package org.dhcp4java;
  * <p>
  * It inherits from <code>IllegalArgumentException</code> and
  * <code>RuntimeException</code> so it doesn't need to be explicitly caught.
+ * <p>
+ * When raised by the parser, <code>getReason()</code> tells why the datagram
+ * was rejected.
  *
  * @author Stephan Hadinger
  * @version 1.00
  */
 public class DHCPBadPacketException extends IllegalArgumentException
 {
+  private final DHCPRejectReason m_eReason;
+
   /**
    * Constructs an <code>DHCPBadPacketException</code> with no detail message.
    */
   public DHCPBadPacketException ()
-  {}
+  {
+    m_eReason = null;
+  }
 
   /**
    * Constructs an <code>DHCPBadPacketException</code> with the specified detail
@@ -49,6 +56,7 @@ public class DHCPBadPacketException extends IllegalArgumentException
   public DHCPBadPacketException (final String message)
   {
     super (message);
+    m_eReason = null;
   }
 
   /**
@@ -69,6 +77,7 @@ public class DHCPBadPacketException extends IllegalArgumentException
   public DHCPBadPacketException (final String message, final Throwable cause)
   {
     super (message, cause);
+    m_eReason = null;
   }
 
   /**
@@ -85,5 +94,29 @@ public class DHCPBadPacketException extends IllegalArgumentException
   public DHCPBadPacketException (final Throwable cause)
   {
     super (cause);
+    m_eReason = null;
+  }
+
+  /**
+   * Constructs an exception raised by the parser.
+   *
+   * @param reason
+   *        why the datagram is rejected
+   * @param message
+   *        the detail message.
+   */
+  DHCPBadPacketException (final DHCPRejectReason reason, final String message)
+  {
+    super (message);
+    m_eReason = reason;
+  }
+
+  /**
+   * @return why the datagram was rejected by the parser, <code>null</code> if
+   *         the exception was not raised while parsing a datagram.
+   */
+  public DHCPRejectReason getReason ()
+  {
+    return m_eReason;
   }
 }
@@ -0,0 +1,151 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import java.net.DatagramPacket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fixed size pool of receive buffers used by the <code>DatagramChannel</code>
+ * transport of <code>DHCPCoreServer</code>.
+ * <p>
+ * Each slot pairs a direct <code>ByteBuffer</code> (filled by the channel) with
+ * a heap <code>byte[]</code> and a <code>DatagramPacket</code> wrapping it (what
+ * the servlet sees). Slots are allocated once and recycled, so receiving a
+ * datagram does not produce any garbage. When all slots are in flight,
+ * <code>acquire()</code> blocks, which naturally throttles the receive loop.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+final class DHCPBufferPool
+{
+  /**
+   * A recyclable receive slot.
+   */
+  static final class Slot
+  {
+    private final ByteBuffer m_aBuffer;
+    private final byte [] m_aData;
+    private final DatagramPacket m_aDatagram;
+
+    Slot (final int nSize)
+    {
+      m_aBuffer = ByteBuffer.allocateDirect (nSize);
+      m_aData = new byte [nSize];
+      m_aDatagram = new DatagramPacket (m_aData, nSize);
+    }
+
+    /**
+     * @return the direct buffer to receive into or send from.
+     */
+    ByteBuffer getBuffer ()
+    {
+      return m_aBuffer;
+    }
+
+    /**
+     * Copies the received content of the direct buffer (between position and
+     * limit) into the heap array and returns the recycled datagram.
+     * <p>
+     * The returned datagram is only valid until the slot is released.
+     *
+     * @param aSender
+     *        the address the datagram was received from
+     * @return the datagram, never <code>null</code>
+     */
+    DatagramPacket getDatagram (final SocketAddress aSender)
+    {
+      final int nLen = m_aBuffer.remaining ();
+      m_aBuffer.get (m_aData, 0, nLen);
+      m_aDatagram.setData (m_aData, 0, nLen);
+      m_aDatagram.setSocketAddress (aSender);
+      return m_aDatagram;
+    }
+  }
+
+  private final BlockingQueue <Slot> m_aFree;
+  private final int m_nCapacity;
+
+  /**
+   * @param nCapacity
+   *        number of slots, must be &gt; 0
+   * @param nBufferSize
+   *        size in bytes of each buffer, must be &gt; 0
+   */
+  DHCPBufferPool (final int nCapacity, final int nBufferSize)
+  {
+    if (nCapacity <= 0)
+      throw new IllegalArgumentException ("pool capacity must be > 0: " + nCapacity);
+    if (nBufferSize <= 0)
+      throw new IllegalArgumentException ("buffer size must be > 0: " + nBufferSize);
+
+    m_nCapacity = nCapacity;
+    m_aFree = new ArrayBlockingQueue <> (nCapacity);
+    for (int i = 0; i < nCapacity; i++)
+      m_aFree.add (new Slot (nBufferSize));
+  }
+
+  /**
+   * Take a free slot, waiting if all slots are in use. The buffer of the
+   * returned slot is cleared.
+   *
+   * @return the slot, never <code>null</code>
+   * @throws InterruptedException
+   *         if interrupted while waiting
+   */
+  Slot acquire () throws InterruptedException
+  {
+    final Slot aSlot = m_aFree.take ();
+    aSlot.m_aBuffer.clear ();
+    return aSlot;
+  }
+
+  /**
+   * Give a slot back to the pool.
+   *
+   * @param aSlot
+   *        the slot previously obtained with <code>acquire()</code>
+   */
+  void release (final Slot aSlot)
+  {
+    if (aSlot != null)
+      m_aFree.offer (aSlot);
+  }
+
+  /**
+   * @return total number of slots in the pool.
+   */
+  int getCapacity ()
+  {
+    return m_nCapacity;
+  }
+
+  /**
+   * @return number of slots currently available.
+   */
+  int getAvailable ()
+  {
+    return m_aFree.size ();
+  }
+}
@@ -156,6 +156,8 @@ public final class DHCPConstants
   public static final byte DHO_SUBNET_SELECTION = 118; // rfc 3011
   public static final byte DHO_DOMAIN_SEARCH = 119; // rfc 3397
   public static final byte DHO_CLASSLESS_ROUTE = 121; // rfc 3442
+  public static final byte DHO_VIVCO = 124; // rfc 3925
+  public static final byte DHO_VIVSO = 125; // rfc 3925
   public static final byte DHO_END = -1;
 
   /** Any address */
@@ -288,6 +290,7 @@ public final class DHCPConstants
   static final int _BOOTP_ABSOLUTE_MIN_LEN = 236;
   static final int _DHCP_MAX_MTU = 1500;
   static final int _DHCP_UDP_OVERHEAD = 14 + 20 + 8;
+  static final int _IP_UDP_OVERHEAD = 20 + 8;
   static final int _BOOTP_VEND_SIZE = 64;
 
   // Magic cookie
@@ -24,12 +24,27 @@ import java.io.InputStream;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,7 +59,68 @@ import org.slf4j.LoggerFactory;
  * properties set when contructing the server. Default values are: <blockquote>
  * <code>serverAddress=127.0.0.1:67</code> <i>[address:port]</i> <br>
  * <code>serverThreads=2</code> <i>[number of concurrent threads for
- * servlets]</i> </blockquote>
+ * servlets]</i> <br>
+ * <code>serverTransport=socket</code> <i>[<code>socket</code> for a blocking
+ * <code>DatagramSocket</code>, <code>channel</code> for a
+ * <code>DatagramChannel</code> receiving into pooled direct buffers]</i> <br>
+ * <code>serverBufferPoolSize=32</code> <i>[number of receive buffers, channel
+ * transport only]</i> <br>
+ * <code>serverListeners=1</code> <i>[number of sockets bound to
+ * <code>serverAddress</code> with SO_REUSEPORT, each one with its own receive
+ * loop; <code>auto</code> for one per core]</i> <br>
+ * <code>serverDispatch=pool</code> <i>[<code>pool</code> to run servlets in a
+ * thread pool, <code>virtual</code> to run each request on its own virtual
+ * thread, requires Java 21, <code>lanes</code> to run all requests of a
+ * client one after the other on the same thread]</i> <br>
+ * <code>serverVirtualThreadsMax=1000</code> <i>[maximum number of requests in
+ * flight, asynchronous ones included until they complete; beyond it requests
+ * go to <code>serverOverloadPolicy</code>; virtual dispatch only]</i> <br>
+ * <code>serverLanes=auto</code> <i>[number of single-threaded lanes, clients
+ * being spread by hardware address; <code>auto</code> for one per core; lanes
+ * dispatch only]</i> <br>
+ * <code>serverQueueSize=20</code> <i>[number of requests waiting for a
+ * thread, per lane in lanes dispatch; not for virtual dispatch]</i> <br>
+ * <code>serverOverloadPolicy=drop-newest</code> <i>[when the queue is full,
+ * or the virtual thread limit reached: <code>drop-newest</code> discards the
+ * incoming request, <code>drop-oldest</code> discards the oldest queued
+ * request (the incoming one in virtual dispatch, which has no queue),
+ * <code>caller-runs</code> runs the servlet in the receive loop, not for
+ * lanes dispatch]</i> <br>
+ * <code>serverScheduling=fifo</code> <i>[<code>fifo</code>, or
+ * <code>priority</code> to serve queued REQUEST, RELEASE and DECLINE messages
+ * before DISCOVER and INFORM, also within a lane in lanes dispatch; not for
+ * virtual dispatch]</i> <br>
+ * <code>serverAsyncTimeout=5000</code> <i>[maximum time in milliseconds for a
+ * <code>DHCPAsyncServlet</code> to complete a response, the request is dropped
+ * afterwards]</i> <br>
+ * <code>serverSendQueueSize=0</code> <i>[number of responses waiting for the
+ * sender thread of each listener; <code>0</code> to let workers send
+ * directly]</i> <br>
+ * <code>serverSendBatchSize=32</code> <i>[maximum number of responses sent in
+ * a row by a sender thread]</i> <br>
+ * <code>serverDedup=off</code> <i>[retransmissions, i.e. requests with the
+ * same xid, chaddr and message type as a recent one, are processed again
+ * (<code>off</code>), dropped (<code>drop</code>), or answered with the
+ * response to the original request (<code>replay</code>)]</i> <br>
+ * <code>serverDedupSize=4096</code> <i>[number of recent requests
+ * remembered]</i> <br>
+ * <code>serverDedupTtl=6000</code> <i>[how long a request is remembered, in
+ * milliseconds. Clients retransmit after 4 seconds, randomized by plus or
+ * minus 1 second (rfc 2131): 6 seconds catch the first retransmission with
+ * some margin for the response time, and forget the request before a second
+ * one, about 8 seconds later]</i> <br>
+ * <code>serverFilters=</code> <i>[comma separated list of filters run on raw
+ * datagrams before parsing: <code>bootrequest</code> drops everything but
+ * BOOTREQUEST, <code>dhcp</code> drops BOOTP and datagrams without message
+ * type. More filters can be added with <code>addPacketFilter()</code>]</i>
+ * <br>
+ * <code>serverPacketPool=off</code> <i>[<code>on</code> to recycle the
+ * <code>DHCPPacket</code> of requests and responses through a
+ * <code>DHCPPacketPool</code>, see <code>DHCPServlet</code>;
+ * <code>debug</code> to detect packets used after release instead]</i> <br>
+ * <code>serverMtu=1500</code> <i>[MTU of the link, responses are as large
+ * as the client accepts (option 57) within it]</i>
+ * </blockquote>
  * <p>
  * Note: this class implements <code>Runnable</code> allowing it to be run in a
  * dedicated thread.
@@ -73,25 +149,62 @@ public class DHCPCoreServer implements Runnable
 {
   public static final String CONFIG_FILE_PATH = "/DHCPd.properties";
   private static final Logger s_aLogger = LoggerFactory.getLogger (DHCPCoreServer.class);
-  private static final int BOUNDED_QUEUE_SIZE = 20;
 
   /** default MTU for ethernet */
   protected static final int PACKET_SIZE = 1500;
 
   /** the servlet it must run */
   protected DHCPServlet m_aServlet;
-  /** working threads pool. */
+  /** working threads pool, <code>null</code> in virtual thread dispatch. */
   protected ThreadPoolExecutor m_aThreadPool;
+  /** where servlet dispatchers are run. */
+  private Executor m_aDispatchExecutor;
+  /** what to do when the thread pool queue is full. */
+  private DHCPOverloadHandler m_aOverloadHandler;
+  /** do we schedule requests according to their message type? */
+  private boolean m_bPriorityScheduling;
+  /** per-client lanes, in lanes dispatch mode. */
+  private DHCPLaneExecutor m_aLaneExecutor;
+  /** fires the timeouts of asynchronous servlets. */
+  private ScheduledThreadPoolExecutor m_aTimeoutScheduler;
+  /** maximum time for an asynchronous servlet to respond, in milliseconds. */
+  private long m_nAsyncTimeout;
+  /** number of asynchronous requests dropped on timeout. */
+  private final AtomicLong m_aAsyncTimeoutCount = new AtomicLong ();
+  /** capacity of the send queue of each listener, 0 to send directly. */
+  private int m_nSendQueueSize;
+  /** maximum number of responses sent in a row by a sender thread. */
+  private int m_nSendBatchSize;
+  /** MTU of the link, bounds the size of responses. */
+  private int m_nMtu = PACKET_SIZE;
+  /** recent requests, to detect retransmissions, <code>null</code> if off. */
+  private DHCPRetransmissionCache m_aRetransmissionCache;
+  /** do we answer retransmissions with the cached response? */
+  private boolean m_bReplayRetransmissions;
+  /** number of retransmissions detected. */
+  private final AtomicLong m_aRetransmissionCount = new AtomicLong ();
+  /** number of retransmissions answered with the cached response. */
+  private final AtomicLong m_aReplayCount = new AtomicLong ();
+  /** filters run against raw datagrams, copied on write. */
+  private volatile DHCPPacketFilter [] m_aFilters = new DHCPPacketFilter [0];
+  /** number of datagrams rejected by the filters. */
+  private final AtomicLong m_aFilteredCount = new AtomicLong ();
+  /** number of malformed datagrams, per reject reason. */
+  private final AtomicLongArray m_aRejectedCounts = new AtomicLongArray (DHCPRejectReason.values ().length);
+  /** recycled packets for the servlet, <code>null</code> if off. */
+  private DHCPPacketPool m_aPacketPool;
   /** Consolidated parameters of the server. */
   protected Properties m_aProperties;
   /** Reference of user-provided parameters */
   protected Properties m_aUserProps;
   /** IP address and port for the server */
   private InetSocketAddress m_aSockAddress;
-  /** The socket for receiving and sending. */
-  private DatagramSocket m_aServerSocket;
+  /** The listeners, each one owning a socket for receiving and sending. */
+  private Listener [] m_aListeners;
+  /** Recycled receive buffers, in channel transport mode. */
+  private DHCPBufferPool m_aBufferPool;
   /** do we need to stop the server? */
-  private boolean m_bStopped = false;
+  private volatile boolean m_bStopped = false;
 
   /**
    * Constructor shall not be called directly. New servers are created through
@@ -136,7 +249,7 @@ public class DHCPCoreServer implements Runnable
    */
   protected void init () throws DHCPServerInitException
   {
-    if (m_aServerSocket != null)
+    if (m_aListeners != null)
       throw new IllegalStateException ("Server already initialized");
 
     try
@@ -169,23 +282,151 @@ public class DHCPCoreServer implements Runnable
       if (s_aLogger.isInfoEnabled ())
         s_aLogger.info ("Listening at " + m_aSockAddress.getHostString () + ":" + m_aSockAddress.getPort ());
 
-      // open socket for listening and sending
-      m_aServerSocket = new DatagramSocket (null);
-      // allow sending broadcast
-      m_aServerSocket.setBroadcast (true);
-      m_aServerSocket.bind (m_aSockAddress);
-
-      // initialize Thread Pool
-      final int nNumThreads = Integer.parseInt (m_aProperties.getProperty (SERVER_THREADS));
-      final int nMaxThreads = Integer.parseInt (m_aProperties.getProperty (SERVER_THREADS_MAX));
-      final int nKeepaliveThreads = Integer.parseInt (m_aProperties.getProperty (SERVER_THREADS_KEEPALIVE));
-      m_aThreadPool = new ThreadPoolExecutor (nNumThreads,
-                                              nMaxThreads,
-                                              nKeepaliveThreads,
-                                              TimeUnit.MILLISECONDS,
-                                              new ArrayBlockingQueue <> (BOUNDED_QUEUE_SIZE),
-                                              new ServerThreadFactory ());
-      m_aThreadPool.prestartAllCoreThreads ();
+      final String sTransport = m_aProperties.getProperty (SERVER_TRANSPORT);
+      final boolean bChannel;
+      if (TRANSPORT_CHANNEL.equals (sTransport))
+        bChannel = true;
+      else
+        if (TRANSPORT_SOCKET.equals (sTransport))
+          bChannel = false;
+        else
+          throw new DHCPServerInitException ("Unsupported " + SERVER_TRANSPORT + ": " + sTransport);
+
+      m_nSendQueueSize = Integer.parseInt (m_aProperties.getProperty (SERVER_SEND_QUEUE_SIZE));
+      m_nSendBatchSize = Integer.parseInt (m_aProperties.getProperty (SERVER_SEND_BATCH_SIZE));
+      if (m_nSendQueueSize < 0)
+        throw new DHCPServerInitException ("Invalid " + SERVER_SEND_QUEUE_SIZE + ": " + m_nSendQueueSize);
+      if (m_nSendBatchSize < 1)
+        throw new DHCPServerInitException ("Invalid " + SERVER_SEND_BATCH_SIZE + ": " + m_nSendBatchSize);
+
+      m_nMtu = Integer.parseInt (m_aProperties.getProperty (SERVER_MTU));
+      if (m_nMtu < DHCPConstants._DHCP_DEFAULT_MAX_LEN)
+        throw new DHCPServerInitException ("Invalid " + SERVER_MTU + ": " + m_nMtu);
+
+      final String sDedup = m_aProperties.getProperty (SERVER_DEDUP);
+      if (DEDUP_DROP.equals (sDedup) || DEDUP_REPLAY.equals (sDedup))
+      {
+        final int nDedupSize = Integer.parseInt (m_aProperties.getProperty (SERVER_DEDUP_SIZE));
+        final long nDedupTtl = Long.parseLong (m_aProperties.getProperty (SERVER_DEDUP_TTL));
+        if (nDedupSize < 1)
+          throw new DHCPServerInitException ("Invalid " + SERVER_DEDUP_SIZE + ": " + nDedupSize);
+        if (nDedupTtl < 1)
+          throw new DHCPServerInitException ("Invalid " + SERVER_DEDUP_TTL + ": " + nDedupTtl);
+        m_aRetransmissionCache = new DHCPRetransmissionCache (nDedupSize, nDedupTtl);
+        m_bReplayRetransmissions = DEDUP_REPLAY.equals (sDedup);
+      }
+      else
+        if (!DEDUP_OFF.equals (sDedup))
+          throw new DHCPServerInitException ("Unsupported " + SERVER_DEDUP + ": " + sDedup);
+
+      final String sFilters = m_aProperties.getProperty (SERVER_FILTERS);
+      for (final String sFilter : sFilters.split (","))
+      {
+        final String sName = sFilter.trim ();
+        if (FILTER_BOOTREQUEST.equals (sName))
+          addPacketFilter (DHCPPacketFilters.bootRequestOnly ());
+        else
+          if (FILTER_DHCP.equals (sName))
+            addPacketFilter (DHCPPacketFilters.dhcpOnly ());
+          else
+            if (sName.length () > 0)
+              throw new DHCPServerInitException ("Unsupported " + SERVER_FILTERS + ": " + sName);
+      }
+
+      final String sPacketPool = m_aProperties.getProperty (SERVER_PACKET_POOL);
+      if (PACKET_POOL_ON.equals (sPacketPool))
+        m_aPacketPool = new DHCPPacketPool (false);
+      else
+        if (PACKET_POOL_DEBUG.equals (sPacketPool))
+          m_aPacketPool = new DHCPPacketPool (true);
+        else
+          if (!PACKET_POOL_OFF.equals (sPacketPool))
+            throw new DHCPServerInitException ("Unsupported " + SERVER_PACKET_POOL + ": " + sPacketPool);
+
+      // open all sockets for listening and sending
+      final int nListeners = _getCount (SERVER_LISTENERS, m_aProperties.getProperty (SERVER_LISTENERS));
+      m_aListeners = new Listener [nListeners];
+      for (int i = 0; i < nListeners; i++)
+        m_aListeners[i] = _openListener (i, bChannel, nListeners > 1);
+
+      if (bChannel)
+      {
+        final int nPoolSize = Integer.parseInt (m_aProperties.getProperty (SERVER_BUFFER_POOL_SIZE));
+        m_aBufferPool = new DHCPBufferPool (nPoolSize, PACKET_SIZE);
+      }
+
+      final String sDispatch = m_aProperties.getProperty (SERVER_DISPATCH);
+      if (DISPATCH_VIRTUAL.equals (sDispatch))
+      {
+        // one virtual thread per request, bounded number of requests in flight
+        final int nMaxVirtualThreads = Integer.parseInt (m_aProperties.getProperty (SERVER_VIRTUAL_THREADS_MAX));
+        m_aOverloadHandler = new DHCPOverloadHandler (m_aProperties.getProperty (SERVER_OVERLOAD_POLICY));
+        m_aDispatchExecutor = DHCPVirtualThreadExecutor.create (nMaxVirtualThreads, m_aOverloadHandler);
+      }
+      else
+        if (DISPATCH_POOL.equals (sDispatch) || DISPATCH_LANES.equals (sDispatch))
+        {
+          final int nQueueSize = Integer.parseInt (m_aProperties.getProperty (SERVER_QUEUE_SIZE));
+          if (nQueueSize < 1)
+            throw new DHCPServerInitException ("Invalid " + SERVER_QUEUE_SIZE + ": " + nQueueSize);
+          final String sScheduling = m_aProperties.getProperty (SERVER_SCHEDULING);
+          if (SCHEDULING_PRIORITY.equals (sScheduling))
+            m_bPriorityScheduling = true;
+          else
+            if (!SCHEDULING_FIFO.equals (sScheduling))
+              throw new DHCPServerInitException ("Unsupported " + SERVER_SCHEDULING + ": " + sScheduling);
+          m_aOverloadHandler = new DHCPOverloadHandler (m_aProperties.getProperty (SERVER_OVERLOAD_POLICY));
+
+          if (DISPATCH_LANES.equals (sDispatch))
+          {
+            // running in the receive loop would overtake the lane of the client
+            if (OVERLOAD_CALLER_RUNS.equals (m_aOverloadHandler.getPolicy ()))
+              throw new DHCPServerInitException ("Unsupported " +
+                                                 SERVER_OVERLOAD_POLICY +
+                                                 " with " +
+                                                 SERVER_DISPATCH +
+                                                 "=" +
+                                                 DISPATCH_LANES +
+                                                 ": " +
+                                                 OVERLOAD_CALLER_RUNS);
+            // one single-threaded lane per group of clients
+            final int nLanes = _getCount (SERVER_LANES, m_aProperties.getProperty (SERVER_LANES));
+            m_aLaneExecutor = new DHCPLaneExecutor (nLanes,
+                                                    nQueueSize,
+                                                    m_bPriorityScheduling,
+                                                    new ServerThreadFactory (),
+                                                    m_aOverloadHandler);
+            m_aDispatchExecutor = m_aLaneExecutor;
+          }
+          else
+          {
+            // initialize Thread Pool
+            final int nNumThreads = Integer.parseInt (m_aProperties.getProperty (SERVER_THREADS));
+            final int nMaxThreads = Integer.parseInt (m_aProperties.getProperty (SERVER_THREADS_MAX));
+            final int nKeepaliveThreads = Integer.parseInt (m_aProperties.getProperty (SERVER_THREADS_KEEPALIVE));
+            m_aThreadPool = new ThreadPoolExecutor (nNumThreads,
+                                                    nMaxThreads,
+                                                    nKeepaliveThreads,
+                                                    TimeUnit.MILLISECONDS,
+                                                    m_bPriorityScheduling ? new DHCPPriorityQueue (nQueueSize)
+                                                                          : new ArrayBlockingQueue <> (nQueueSize),
+                                                    new ServerThreadFactory (),
+                                                    m_aOverloadHandler);
+            m_aThreadPool.prestartAllCoreThreads ();
+            m_aDispatchExecutor = m_aThreadPool;
+          }
+        }
+        else
+          throw new DHCPServerInitException ("Unsupported " + SERVER_DISPATCH + ": " + sDispatch);
+
+      if (m_aServlet instanceof DHCPAsyncServlet)
+      {
+        m_nAsyncTimeout = Long.parseLong (m_aProperties.getProperty (SERVER_ASYNC_TIMEOUT));
+        if (m_nAsyncTimeout < 1)
+          throw new DHCPServerInitException ("Invalid " + SERVER_ASYNC_TIMEOUT + ": " + m_nAsyncTimeout);
+        m_aTimeoutScheduler = new ScheduledThreadPoolExecutor (1, new ServerThreadFactory ());
+        m_aTimeoutScheduler.setRemoveOnCancelPolicy (true);
+      }
 
       // now initialize the servlet
       m_aServlet.setServer (this);
@@ -193,72 +434,139 @@ public class DHCPCoreServer implements Runnable
     }
     catch (final DHCPServerInitException e)
     {
+      _closeQuietly ();
       throw e; // transparently re-throw
     }
     catch (final Exception e)
     {
-      m_aServerSocket = null;
+      _closeQuietly ();
       s_aLogger.error ("Cannot open socket", e);
       throw new DHCPServerInitException ("Unable to init server", e);
     }
   }
 
-  protected void dispatch ()
+  /**
+   * Parse a count property: a positive number, or <code>auto</code> for the
+   * number of cores.
+   */
+  private static int _getCount (final String sProperty, final String sValue) throws DHCPServerInitException
   {
-    try
-    {
-      final DatagramPacket aRequestDatagram = new DatagramPacket (new byte [PACKET_SIZE], PACKET_SIZE);
-      if (s_aLogger.isDebugEnabled ())
-        s_aLogger.debug ("Waiting for packet");
-
-      // receive datagram
-      m_aServerSocket.receive (aRequestDatagram);
+    final int nCount = COUNT_AUTO.equals (sValue) ? Runtime.getRuntime ().availableProcessors ()
+                                                  : Integer.parseInt (sValue);
+    if (nCount < 1)
+      throw new DHCPServerInitException ("Invalid " + sProperty + ": " + sValue);
+    return nCount;
+  }
 
-      if (s_aLogger.isDebugEnabled ())
-      {
-        final StringBuilder sbuf = new StringBuilder ("Received packet from ");
+  /**
+   * Open and bind one listener.
+   *
+   * @param nIndex
+   *        index of the listener, for logging
+   * @param bChannel
+   *        <code>true</code> for the channel transport
+   * @param bReusePort
+   *        <code>true</code> if several sockets share the same address
+   * @return the new listener
+   */
+  private Listener _openListener (final int nIndex,
+                                  final boolean bChannel,
+                                  final boolean bReusePort) throws IOException, DHCPServerInitException
+  {
+    if (!bChannel && !bReusePort)
+    {
+      // open socket for listening and sending
+      final DatagramSocket aSocket = new DatagramSocket (null);
+      // allow sending broadcast
+      aSocket.setBroadcast (true);
+      aSocket.bind (m_aSockAddress);
+      return new Listener (nIndex, aSocket, null);
+    }
 
-        Util.appendHostAddress (sbuf, aRequestDatagram.getAddress ());
-        sbuf.append ('(').append (aRequestDatagram.getPort ()).append (')');
-        s_aLogger.debug (sbuf.toString ());
-      }
+    // open channel for listening and sending
+    final DatagramChannel aChannel = DatagramChannel.open (StandardProtocolFamily.INET);
+    try
+    {
+      // allow sending broadcast
+      aChannel.setOption (StandardSocketOptions.SO_BROADCAST, Boolean.TRUE);
+      // let the kernel balance incoming datagrams across the sockets
+      if (bReusePort)
+        aChannel.setOption (_getReusePortOption (aChannel), Boolean.TRUE);
+      aChannel.bind (m_aSockAddress);
+      // the channel is kept in blocking mode, one receive loop per listener
+      aChannel.configureBlocking (true);
+    }
+    catch (final Exception e)
+    {
+      aChannel.close ();
+      throw e;
+    }
+    // in socket transport the channel is only needed to set SO_REUSEPORT, the
+    // receive loop goes through its socket adaptor
+    return new Listener (nIndex, aChannel.socket (), bChannel ? aChannel : null);
+  }
 
-      // send work to thread pool
-      final DHCPServletDispatcher dispatcher = new DHCPServletDispatcher (this, m_aServlet, aRequestDatagram);
-      m_aThreadPool.execute (dispatcher);
+  @SuppressWarnings ("unchecked")
+  private static SocketOption <Boolean> _getReusePortOption (final DatagramChannel aChannel) throws DHCPServerInitException
+  {
+    // StandardSocketOptions.SO_REUSEPORT only exists since Java 9
+    final SocketOption <Boolean> aOption;
+    try
+    {
+      aOption = (SocketOption <Boolean>) StandardSocketOptions.class.getField ("SO_REUSEPORT").get (null);
     }
-    catch (final IOException e)
+    catch (final ReflectiveOperationException e)
     {
-      s_aLogger.info ("Error dispatching", e);
+      throw new DHCPServerInitException ("Multiple listeners require SO_REUSEPORT (Java 9 or later)", e);
     }
+    if (!aChannel.supportedOptions ().contains (aOption))
+      throw new DHCPServerInitException ("Multiple listeners require SO_REUSEPORT, not supported on this platform");
+    return aOption;
+  }
+
+  private void _closeQuietly ()
+  {
+    if (m_aListeners != null)
+      for (final Listener aListener : m_aListeners)
+        if (aListener != null)
+          aListener.close ();
+    m_aListeners = null;
+    m_aBufferPool = null;
+  }
+
+  /**
+   * Receive one datagram on the first listener and dispatch it to the thread
+   * pool.
+   */
+  protected void dispatch ()
+  {
+    m_aListeners[0].dispatch ();
+  }
+
+  /**
+   * Give a receive buffer back to the pool, once the request has been fully
+   * processed.
+   *
+   * @param aSlot
+   *        the buffer slot to recycle
+   */
+  void releaseBuffer (final DHCPBufferPool.Slot aSlot)
+  {
+    m_aBufferPool.release (aSlot);
   }
 
   /**
    * Send back response packet to client.
    * <p>
    * This is a callback method used by servlet dispatchers to send back
-   * responses.
+   * responses. The response goes through the first listener.
    *
    * @param responseDatagram
    *        suff to send back
    */
   protected void sendResponse (final DatagramPacket responseDatagram)
   {
-    if (responseDatagram == null)
-    {
-      // skipping
-      return;
-    }
-
-    try
-    {
-      // sending back
-      m_aServerSocket.send (responseDatagram);
-    }
-    catch (final IOException e)
-    {
-      s_aLogger.error ("IOException", e);
-    }
+    m_aListeners[0].sendResponse (responseDatagram);
   }
 
   /**
@@ -319,21 +627,18 @@ public class DHCPCoreServer implements Runnable
    */
   public void run ()
   {
-    if (m_aServerSocket == null)
+    if (m_aListeners == null)
       throw new IllegalStateException ("Listening socket is not open - terminating");
 
-    while (!m_bStopped)
-    {
-      try
-      {
-        // do the stuff
-        dispatch ();
-      }
-      catch (final Exception e)
-      {
-        s_aLogger.warn ("Unexpected Exception", e);
-      }
-    }
+    for (int i = 0; i < m_aListeners.length; i++)
+      if (m_aListeners[i].m_aSender != null)
+        m_aListeners[i].m_aSender.start ("DHCPCoreServer-sender-" + i);
+
+    // additional listeners get their own receive thread
+    for (int i = 1; i < m_aListeners.length; i++)
+      new Thread (m_aListeners[i], "DHCPCoreServer-listener-" + i).start ();
+
+    m_aListeners[0].run ();
   }
 
   /**
@@ -343,7 +648,14 @@ public class DHCPCoreServer implements Runnable
   {
     m_bStopped = true;
     // this generates an exception when trying to receive
-    m_aServerSocket.close ();
+    for (final Listener aListener : m_aListeners)
+      aListener.close ();
+    if (m_aDispatchExecutor instanceof DHCPVirtualThreadExecutor)
+      ((DHCPVirtualThreadExecutor) m_aDispatchExecutor).shutdown ();
+    if (m_aLaneExecutor != null)
+      m_aLaneExecutor.shutdown ();
+    if (m_aTimeoutScheduler != null)
+      m_aTimeoutScheduler.shutdownNow ();
   }
 
   private static final Properties DEF_PROPS = new Properties ();
@@ -356,6 +668,62 @@ public class DHCPCoreServer implements Runnable
   private static final String SERVER_THREADS_MAX_DEFAULT = "4";
   public static final String SERVER_THREADS_KEEPALIVE = "serverThreadsKeepalive";
   private static final String SERVER_THREADS_KEEPALIVE_DEFAULT = "10000";
+  public static final String SERVER_TRANSPORT = "serverTransport";
+  public static final String TRANSPORT_SOCKET = "socket";
+  public static final String TRANSPORT_CHANNEL = "channel";
+  private static final String SERVER_TRANSPORT_DEFAULT = TRANSPORT_SOCKET;
+  public static final String SERVER_BUFFER_POOL_SIZE = "serverBufferPoolSize";
+  private static final String SERVER_BUFFER_POOL_SIZE_DEFAULT = "32";
+  public static final String SERVER_LISTENERS = "serverListeners";
+  public static final String COUNT_AUTO = "auto";
+  public static final String SERVER_LISTENERS_AUTO = COUNT_AUTO;
+  private static final String SERVER_LISTENERS_DEFAULT = "1";
+  public static final String SERVER_DISPATCH = "serverDispatch";
+  public static final String DISPATCH_POOL = "pool";
+  public static final String DISPATCH_VIRTUAL = "virtual";
+  public static final String DISPATCH_LANES = "lanes";
+  private static final String SERVER_DISPATCH_DEFAULT = DISPATCH_POOL;
+  public static final String SERVER_VIRTUAL_THREADS_MAX = "serverVirtualThreadsMax";
+  private static final String SERVER_VIRTUAL_THREADS_MAX_DEFAULT = "1000";
+  public static final String SERVER_QUEUE_SIZE = "serverQueueSize";
+  private static final String SERVER_QUEUE_SIZE_DEFAULT = "20";
+  public static final String SERVER_OVERLOAD_POLICY = "serverOverloadPolicy";
+  public static final String OVERLOAD_DROP_NEWEST = "drop-newest";
+  public static final String OVERLOAD_DROP_OLDEST = "drop-oldest";
+  public static final String OVERLOAD_CALLER_RUNS = "caller-runs";
+  private static final String SERVER_OVERLOAD_POLICY_DEFAULT = OVERLOAD_DROP_NEWEST;
+  public static final String SERVER_SCHEDULING = "serverScheduling";
+  public static final String SCHEDULING_FIFO = "fifo";
+  public static final String SCHEDULING_PRIORITY = "priority";
+  private static final String SERVER_SCHEDULING_DEFAULT = SCHEDULING_FIFO;
+  public static final String SERVER_LANES = "serverLanes";
+  private static final String SERVER_LANES_DEFAULT = COUNT_AUTO;
+  public static final String SERVER_ASYNC_TIMEOUT = "serverAsyncTimeout";
+  private static final String SERVER_ASYNC_TIMEOUT_DEFAULT = "5000";
+  public static final String SERVER_SEND_QUEUE_SIZE = "serverSendQueueSize";
+  private static final String SERVER_SEND_QUEUE_SIZE_DEFAULT = "0";
+  public static final String SERVER_SEND_BATCH_SIZE = "serverSendBatchSize";
+  private static final String SERVER_SEND_BATCH_SIZE_DEFAULT = "32";
+  public static final String SERVER_DEDUP = "serverDedup";
+  public static final String DEDUP_OFF = "off";
+  public static final String DEDUP_DROP = "drop";
+  public static final String DEDUP_REPLAY = "replay";
+  private static final String SERVER_DEDUP_DEFAULT = DEDUP_OFF;
+  public static final String SERVER_DEDUP_SIZE = "serverDedupSize";
+  private static final String SERVER_DEDUP_SIZE_DEFAULT = "4096";
+  public static final String SERVER_DEDUP_TTL = "serverDedupTtl";
+  private static final String SERVER_DEDUP_TTL_DEFAULT = "6000";
+  public static final String SERVER_FILTERS = "serverFilters";
+  public static final String FILTER_BOOTREQUEST = "bootrequest";
+  public static final String FILTER_DHCP = "dhcp";
+  private static final String SERVER_FILTERS_DEFAULT = "";
+  public static final String SERVER_PACKET_POOL = "serverPacketPool";
+  public static final String PACKET_POOL_OFF = "off";
+  public static final String PACKET_POOL_ON = "on";
+  public static final String PACKET_POOL_DEBUG = "debug";
+  private static final String SERVER_PACKET_POOL_DEFAULT = PACKET_POOL_OFF;
+  public static final String SERVER_MTU = "serverMtu";
+  private static final String SERVER_MTU_DEFAULT = "1500";
 
   static
   {
@@ -364,6 +732,24 @@ public class DHCPCoreServer implements Runnable
     DEF_PROPS.put (SERVER_THREADS, SERVER_THREADS_DEFAULT);
     DEF_PROPS.put (SERVER_THREADS_MAX, SERVER_THREADS_MAX_DEFAULT);
     DEF_PROPS.put (SERVER_THREADS_KEEPALIVE, SERVER_THREADS_KEEPALIVE_DEFAULT);
+    DEF_PROPS.put (SERVER_TRANSPORT, SERVER_TRANSPORT_DEFAULT);
+    DEF_PROPS.put (SERVER_BUFFER_POOL_SIZE, SERVER_BUFFER_POOL_SIZE_DEFAULT);
+    DEF_PROPS.put (SERVER_LISTENERS, SERVER_LISTENERS_DEFAULT);
+    DEF_PROPS.put (SERVER_DISPATCH, SERVER_DISPATCH_DEFAULT);
+    DEF_PROPS.put (SERVER_VIRTUAL_THREADS_MAX, SERVER_VIRTUAL_THREADS_MAX_DEFAULT);
+    DEF_PROPS.put (SERVER_QUEUE_SIZE, SERVER_QUEUE_SIZE_DEFAULT);
+    DEF_PROPS.put (SERVER_OVERLOAD_POLICY, SERVER_OVERLOAD_POLICY_DEFAULT);
+    DEF_PROPS.put (SERVER_SCHEDULING, SERVER_SCHEDULING_DEFAULT);
+    DEF_PROPS.put (SERVER_LANES, SERVER_LANES_DEFAULT);
+    DEF_PROPS.put (SERVER_ASYNC_TIMEOUT, SERVER_ASYNC_TIMEOUT_DEFAULT);
+    DEF_PROPS.put (SERVER_SEND_QUEUE_SIZE, SERVER_SEND_QUEUE_SIZE_DEFAULT);
+    DEF_PROPS.put (SERVER_SEND_BATCH_SIZE, SERVER_SEND_BATCH_SIZE_DEFAULT);
+    DEF_PROPS.put (SERVER_DEDUP, SERVER_DEDUP_DEFAULT);
+    DEF_PROPS.put (SERVER_DEDUP_SIZE, SERVER_DEDUP_SIZE_DEFAULT);
+    DEF_PROPS.put (SERVER_DEDUP_TTL, SERVER_DEDUP_TTL_DEFAULT);
+    DEF_PROPS.put (SERVER_FILTERS, SERVER_FILTERS_DEFAULT);
+    DEF_PROPS.put (SERVER_PACKET_POOL, SERVER_PACKET_POOL_DEFAULT);
+    DEF_PROPS.put (SERVER_MTU, SERVER_MTU_DEFAULT);
   }
 
   private static class ServerThreadFactory implements ThreadFactory
@@ -391,36 +777,672 @@ public class DHCPCoreServer implements Runnable
   {
     return m_aSockAddress;
   }
+
+  /**
+   * @return the number of requests dropped because the dispatch queue was
+   *         full, or the virtual thread limit reached, since the server was
+   *         started.
+   */
+  public long getShedCount ()
+  {
+    return m_aOverloadHandler == null ? 0 : m_aOverloadHandler.getShedCount ();
+  }
+
+  /**
+   * @return the number of requests run by a receive loop because the dispatch
+   *         queue was full (<code>caller-runs</code> policy), since the server
+   *         was started.
+   */
+  public long getCallerRunsCount ()
+  {
+    return m_aOverloadHandler == null ? 0 : m_aOverloadHandler.getCallerRunsCount ();
+  }
+
+  /**
+   * @return the number of requests of a <code>DHCPAsyncServlet</code> dropped
+   *         because the response was not ready in time, since the server was
+   *         started.
+   */
+  public long getAsyncTimeoutCount ()
+  {
+    return m_aAsyncTimeoutCount.get ();
+  }
+
+  /**
+   * @return the number of responses waiting in the send queues, summed over
+   *         all listeners.
+   */
+  public int getSendQueueDepth ()
+  {
+    int nDepth = 0;
+    if (m_aListeners != null)
+      for (final Listener aListener : m_aListeners)
+        if (aListener.m_aSender != null)
+          nDepth += aListener.m_aSender.getDepth ();
+    return nDepth;
+  }
+
+  /**
+   * @return the number of responses sent by the sender threads, since the
+   *         server was started.
+   */
+  public long getSentCount ()
+  {
+    long nCount = 0;
+    if (m_aListeners != null)
+      for (final Listener aListener : m_aListeners)
+        if (aListener.m_aSender != null)
+          nCount += aListener.m_aSender.getSentCount ();
+    return nCount;
+  }
+
+  /**
+   * @return the number of batches sent by the sender threads, since the server
+   *         was started. <code>getSentCount() / getSendBatchCount()</code> is
+   *         the average batch size: it grows as the send side falls behind.
+   */
+  public long getSendBatchCount ()
+  {
+    long nCount = 0;
+    if (m_aListeners != null)
+      for (final Listener aListener : m_aListeners)
+        if (aListener.m_aSender != null)
+          nCount += aListener.m_aSender.getBatchCount ();
+    return nCount;
+  }
+
+  /**
+   * @return the size of the largest batch sent by a sender thread.
+   */
+  public int getLargestSendBatch ()
+  {
+    int nLargest = 0;
+    if (m_aListeners != null)
+      for (final Listener aListener : m_aListeners)
+        if (aListener.m_aSender != null)
+          nLargest = Math.max (nLargest, aListener.m_aSender.getLargestBatch ());
+    return nLargest;
+  }
+
+  /**
+   * @return the number of responses dropped because a send queue was full,
+   *         since the server was started.
+   */
+  public long getSendDroppedCount ()
+  {
+    long nCount = 0;
+    if (m_aListeners != null)
+      for (final Listener aListener : m_aListeners)
+        if (aListener.m_aSender != null)
+          nCount += aListener.m_aSender.getDroppedCount ();
+    return nCount;
+  }
+
+  /**
+   * @return the number of retransmissions detected (and not passed to the
+   *         servlet), since the server was started.
+   */
+  public long getRetransmissionCount ()
+  {
+    return m_aRetransmissionCount.get ();
+  }
+
+  /**
+   * @return the number of retransmissions answered with a cached response,
+   *         since the server was started.
+   */
+  public long getReplayCount ()
+  {
+    return m_aReplayCount.get ();
+  }
+
+  /**
+   * Add a filter run against every raw datagram, before it is queued and
+   * parsed. Filters are run in the order they were added; the first one
+   * rejecting a datagram drops it.
+   * <p>
+   * Filters should be added before the server is started.
+   *
+   * @param aFilter
+   *        the filter, must not be <code>null</code>
+   */
+  public synchronized void addPacketFilter (final DHCPPacketFilter aFilter)
+  {
+    if (aFilter == null)
+      throw new IllegalArgumentException ("filter must not be null");
+    final DHCPPacketFilter [] aFilters = Arrays.copyOf (m_aFilters, m_aFilters.length + 1);
+    aFilters[aFilters.length - 1] = aFilter;
+    m_aFilters = aFilters;
+  }
+
+  /**
+   * @return the number of datagrams dropped by the filters, since the server
+   *         was started.
+   */
+  public long getFilteredCount ()
+  {
+    return m_aFilteredCount.get ();
+  }
+
+  /**
+   * Count a malformed datagram rejected by the servlet.
+   *
+   * @param eReason
+   *        why the datagram was rejected
+   */
+  void countRejected (final DHCPRejectReason eReason)
+  {
+    m_aRejectedCounts.incrementAndGet (eReason.ordinal ());
+  }
+
+  /**
+   * @param eReason
+   *        a reject reason
+   * @return the number of malformed datagrams rejected for this reason, since
+   *         the server was started.
+   */
+  public long getRejectedCount (final DHCPRejectReason eReason)
+  {
+    return m_aRejectedCounts.get (eReason.ordinal ());
+  }
+
+  /**
+   * @return the MTU of the link, as configured by <code>serverMtu</code>.
+   */
+  public int getMtu ()
+  {
+    return m_nMtu;
+  }
+
+  /**
+   * @return the pool recycling request and response packets, as configured by
+   *         <code>serverPacketPool</code>; <code>null</code> if off.
+   */
+  public DHCPPacketPool getPacketPool ()
+  {
+    return m_aPacketPool;
+  }
+
+  /**
+   * @return the number of sockets bound to the server address, each one with
+   *         its own receive loop.
+   */
+  public int getListenerCount ()
+  {
+    return m_aListeners == null ? 0 : m_aListeners.length;
+  }
+
+  /**
+   * One socket bound to the server address, with its own receive loop. All
+   * listeners share the thread pool and the servlet. Responses are sent back
+   * through the listener which received the request.
+   */
+  final class Listener implements Runnable
+  {
+    private final int m_nIndex;
+    /** The socket for receiving and sending. */
+    private final DatagramSocket m_aSocket;
+    /** The channel for receiving and sending, in channel transport mode. */
+    private final DatagramChannel m_aChannel;
+    /** The send stage, <code>null</code> when workers send directly. */
+    private final DHCPResponseSender m_aSender;
+
+    Listener (final int nIndex, final DatagramSocket aSocket, final DatagramChannel aChannel)
+    {
+      m_nIndex = nIndex;
+      m_aSocket = aSocket;
+      m_aChannel = aChannel;
+      m_aSender = m_nSendQueueSize > 0 ? new DHCPResponseSender (m_nSendQueueSize,
+                                                                 m_nSendBatchSize,
+                                                                 aSocket,
+                                                                 aChannel,
+                                                                 PACKET_SIZE)
+                                       : null;
+    }
+
+    void dispatch ()
+    {
+      if (m_aChannel != null)
+      {
+        _dispatchChannel ();
+        return;
+      }
+
+      try
+      {
+        final DatagramPacket aRequestDatagram = new DatagramPacket (new byte [PACKET_SIZE], PACKET_SIZE);
+        if (s_aLogger.isDebugEnabled ())
+          s_aLogger.debug ("Waiting for packet on listener " + m_nIndex);
+
+        // receive datagram
+        m_aSocket.receive (aRequestDatagram);
+
+        if (s_aLogger.isDebugEnabled ())
+        {
+          final StringBuilder sbuf = new StringBuilder ("Received packet from ");
+
+          Util.appendHostAddress (sbuf, aRequestDatagram.getAddress ());
+          sbuf.append ('(').append (aRequestDatagram.getPort ()).append (')');
+          s_aLogger.debug (sbuf.toString ());
+        }
+
+        final DHCPPacketFilter [] aFilters = m_aFilters;
+        // raw view, only needed to look into the datagram before parsing
+        ByteBuffer aRaw = null;
+        if (aFilters.length > 0 || m_bPriorityScheduling || m_aLaneExecutor != null)
+          aRaw = ByteBuffer.wrap (aRequestDatagram.getData (),
+                                  aRequestDatagram.getOffset (),
+                                  aRequestDatagram.getLength ());
+        if (!_accept (aFilters, aRaw))
+          return;
+
+        // send work to thread pool
+        final boolean bHighPriority = m_bPriorityScheduling &&
+                                      DHCPPriorityQueue.isHighPriority (DHCPRawPacket.getMessageType (aRaw));
+        final DHCPServletDispatcher dispatcher = new DHCPServletDispatcher (this,
+                                                                            m_aServlet,
+                                                                            aRequestDatagram,
+                                                                            bHighPriority);
+        _execute (dispatcher, aRaw);
+      }
+      catch (final IOException e)
+      {
+        s_aLogger.info ("Error dispatching", e);
+      }
+    }
+
+    /**
+     * Receive loop body for the channel transport: the datagram is received
+     * into a pooled direct buffer which is handed over to the dispatcher and
+     * recycled once the response is sent.
+     */
+    private void _dispatchChannel ()
+    {
+      final DHCPBufferPool.Slot aSlot;
+      try
+      {
+        aSlot = m_aBufferPool.acquire ();
+      }
+      catch (final InterruptedException e)
+      {
+        Thread.currentThread ().interrupt ();
+        return;
+      }
+
+      boolean bHandedOver = false;
+      try
+      {
+        if (s_aLogger.isDebugEnabled ())
+          s_aLogger.debug ("Waiting for packet on listener " + m_nIndex);
+
+        // receive datagram
+        final ByteBuffer aBuffer = aSlot.getBuffer ();
+        final SocketAddress aSender = m_aChannel.receive (aBuffer);
+        aBuffer.flip ();
+
+        if (s_aLogger.isDebugEnabled ())
+          s_aLogger.debug ("Received packet from " + aSender);
+
+        if (!_accept (m_aFilters, aBuffer))
+          return;
+
+        // send work to thread pool
+        final boolean bHighPriority = m_bPriorityScheduling &&
+                                      DHCPPriorityQueue.isHighPriority (DHCPRawPacket.getMessageType (aBuffer));
+        _execute (new DHCPServletChannelDispatcher (this, m_aServlet, aSlot, aSender, bHighPriority), aBuffer);
+        bHandedOver = true;
+      }
+      catch (final IOException e)
+      {
+        s_aLogger.info ("Error dispatching", e);
+      }
+      finally
+      {
+        if (!bHandedOver)
+          m_aBufferPool.release (aSlot);
+      }
+    }
+
+    /**
+     * Run the filters against a raw datagram.
+     *
+     * @return <code>false</code> if a filter rejected the datagram
+     */
+    private boolean _accept (final DHCPPacketFilter [] aFilters, final ByteBuffer aRaw)
+    {
+      for (final DHCPPacketFilter aFilter : aFilters)
+        if (!aFilter.accept (aRaw))
+        {
+          m_aFilteredCount.incrementAndGet ();
+          return false;
+        }
+      return true;
+    }
+
+    /**
+     * Hand a dispatcher over to the executor.
+     *
+     * @param aTask
+     *        the dispatcher
+     * @param aRaw
+     *        the request datagram, only read in lanes dispatch mode
+     */
+    private void _execute (final Runnable aTask, final ByteBuffer aRaw)
+    {
+      if (m_aLaneExecutor != null)
+        m_aLaneExecutor.execute (DHCPRawPacket.getHardwareAddressHash (aRaw), aTask);
+      else
+        m_aDispatchExecutor.execute (aTask);
+    }
+
+    /**
+     * @param aRaw
+     *        the request datagram
+     * @return the key of the request in the retransmission cache,
+     *         <code>null</code> if the cache is off or the request is not a
+     *         DHCP message
+     */
+    DHCPRetransmissionCache.Key getRequestKey (final ByteBuffer aRaw)
+    {
+      return m_aRetransmissionCache == null ? null : DHCPRetransmissionCache.getKey (aRaw);
+    }
+
+    /**
+     * @param aRequestDatagram
+     *        the request datagram
+     * @return the key of the request in the retransmission cache,
+     *         <code>null</code> if the cache is off or the request is not a
+     *         DHCP message
+     */
+    DHCPRetransmissionCache.Key getRequestKey (final DatagramPacket aRequestDatagram)
+    {
+      if (m_aRetransmissionCache == null)
+        return null;
+      return DHCPRetransmissionCache.getKey (ByteBuffer.wrap (aRequestDatagram.getData (),
+                                                              aRequestDatagram.getOffset (),
+                                                              aRequestDatagram.getLength ()));
+    }
+
+    /**
+     * Check whether a request is a retransmission, and if so drop it or replay
+     * the cached response. Otherwise the request is registered as in flight.
+     *
+     * @param aKey
+     *        the request key, may be <code>null</code>
+     * @return <code>true</code> if the request is a retransmission and must
+     *         not be passed to the servlet
+     */
+    boolean handleRetransmission (final DHCPRetransmissionCache.Key aKey)
+    {
+      if (aKey == null)
+        return false;
+      final DHCPRetransmissionCache.Entry aEntry = m_aRetransmissionCache.begin (aKey);
+      if (aEntry == null)
+        return false;
+
+      m_aRetransmissionCount.incrementAndGet ();
+      final DatagramPacket aResponse = aEntry.getResponse ();
+      if (m_bReplayRetransmissions && aResponse != null)
+      {
+        m_aReplayCount.incrementAndGet ();
+        sendResponse (aResponse);
+      }
+      return true;
+    }
+
+    /**
+     * Record the outcome of a request registered by
+     * <code>handleRetransmission()</code>.
+     *
+     * @param aKey
+     *        the request key, may be <code>null</code>
+     * @param aResponse
+     *        the response, <code>null</code> if none
+     * @param bSuccess
+     *        <code>false</code> if the request failed and a retransmission
+     *        must be processed again
+     */
+    void completeRequest (final DHCPRetransmissionCache.Key aKey,
+                          final DatagramPacket aResponse,
+                          final boolean bSuccess)
+    {
+      if (aKey == null)
+        return;
+      if (bSuccess)
+        m_aRetransmissionCache.complete (aKey, aResponse);
+      else
+        m_aRetransmissionCache.abort (aKey);
+    }
+
+    /**
+     * Run an asynchronous servlet. The response is sent back when the servlet
+     * completes, unless the timeout expires first.
+     *
+     * @param aServlet
+     *        the servlet
+     * @param aRequestDatagram
+     *        the request, must not be a pooled datagram as it is used after
+     *        this method returns
+     * @param aKey
+     *        key of the request in the retransmission cache, may be
+     *        <code>null</code>
+     */
+    void serviceAsync (final DHCPAsyncServlet aServlet,
+                       final DatagramPacket aRequestDatagram,
+                       final DHCPRetransmissionCache.Key aKey)
+    {
+      final CompletableFuture <DatagramPacket> aResult = new CompletableFuture <> ();
+      final ScheduledFuture <?> aTimer = m_aTimeoutScheduler.schedule (new Runnable ()
+      {
+        public void run ()
+        {
+          if (aResult.completeExceptionally (new TimeoutException ()))
+            m_aAsyncTimeoutCount.incrementAndGet ();
+        }
+      }, m_nAsyncTimeout, TimeUnit.MILLISECONDS);
+
+      // in virtual dispatch, the request counts as in flight until completed
+      final Runnable aRelease = DHCPVirtualThreadExecutor.deferRelease ();
+      aResult.whenComplete (new BiConsumer <DatagramPacket, Throwable> ()
+      {
+        public void accept (final DatagramPacket aResponse, final Throwable aError)
+        {
+          if (aRelease != null)
+            aRelease.run ();
+          aTimer.cancel (false);
+          completeRequest (aKey, aResponse, aError == null);
+          if (aError == null)
+            sendResponse (aResponse);
+          else
+            if (aError instanceof TimeoutException)
+            {
+              if (s_aLogger.isDebugEnabled ())
+                s_aLogger.debug ("Asynchronous servlet timed out, request dropped");
+            }
+            else
+              s_aLogger.info ("Exception in asynchronous servlet", aError);
+        }
+      });
+
+      aServlet.serviceDatagramAsync (aRequestDatagram).whenComplete (new BiConsumer <DatagramPacket, Throwable> ()
+      {
+        public void accept (final DatagramPacket aResponse, final Throwable aError)
+        {
+          if (aError == null)
+            aResult.complete (aResponse);
+          else
+            aResult.completeExceptionally (aError);
+        }
+      });
+    }
+
+    /**
+     * @return the server owning this listener.
+     */
+    DHCPCoreServer getServer ()
+    {
+      return DHCPCoreServer.this;
+    }
+
+    /**
+     * Send back response packet to client.
+     *
+     * @param responseDatagram
+     *        suff to send back, may be <code>null</code>
+     */
+    void sendResponse (final DatagramPacket responseDatagram)
+    {
+      if (responseDatagram == null)
+      {
+        // skipping
+        return;
+      }
+
+      if (m_aSender != null)
+      {
+        m_aSender.offer (responseDatagram);
+        return;
+      }
+
+      try
+      {
+        // sending back
+        if (m_aChannel != null)
+          m_aChannel.send (ByteBuffer.wrap (responseDatagram.getData (),
+                                            responseDatagram.getOffset (),
+                                            responseDatagram.getLength ()),
+                           responseDatagram.getSocketAddress ());
+        else
+          m_aSocket.send (responseDatagram);
+      }
+      catch (final IOException e)
+      {
+        s_aLogger.error ("IOException", e);
+      }
+    }
+
+    /**
+     * Send back response packet to client through the channel, using a
+     * recycled direct buffer instead of wrapping the response.
+     *
+     * @param responseDatagram
+     *        suff to send back, may be <code>null</code>
+     * @param aBuffer
+     *        the direct buffer to copy the response into
+     */
+    void sendResponse (final DatagramPacket responseDatagram, final ByteBuffer aBuffer)
+    {
+      if (responseDatagram == null)
+      {
+        // skipping
+        return;
+      }
+
+      if (m_aSender != null)
+      {
+        m_aSender.offer (responseDatagram);
+        return;
+      }
+
+      try
+      {
+        aBuffer.clear ();
+        aBuffer.put (responseDatagram.getData (), responseDatagram.getOffset (), responseDatagram.getLength ());
+        aBuffer.flip ();
+        m_aChannel.send (aBuffer, responseDatagram.getSocketAddress ());
+      }
+      catch (final IOException e)
+      {
+        s_aLogger.error ("IOException", e);
+      }
+    }
+
+    void close ()
+    {
+      if (m_aSender != null)
+        m_aSender.stop ();
+      // closing the socket adaptor also closes the channel
+      m_aSocket.close ();
+    }
+
+    /**
+     * Receive loop of this listener.
+     */
+    public void run ()
+    {
+      while (!m_bStopped)
+      {
+        try
+        {
+          // do the stuff
+          dispatch ();
+        }
+        catch (final Exception e)
+        {
+          s_aLogger.warn ("Unexpected Exception", e);
+        }
+      }
+    }
+  }
 }
 
 /**
  * Servlet dispatcher
  */
-class DHCPServletDispatcher implements Runnable
+class DHCPServletDispatcher implements DHCPPriorityQueue.Prioritized
 {
   private static final Logger s_aLogger = LoggerFactory.getLogger (DHCPServletDispatcher.class);
 
-  private final DHCPCoreServer m_aServer;
+  private final DHCPCoreServer.Listener m_aListener;
   private final DHCPServlet m_aDispatchServlet;
   private final DatagramPacket m_aDispatchPacket;
+  private final boolean m_bHighPriority;
+
+  public DHCPServletDispatcher (final DHCPCoreServer.Listener aListener,
+                                final DHCPServlet aServlet,
+                                final DatagramPacket aReq)
+  {
+    this (aListener, aServlet, aReq, false);
+  }
 
-  public DHCPServletDispatcher (final DHCPCoreServer aServer, final DHCPServlet aServlet, final DatagramPacket aReq)
+  public DHCPServletDispatcher (final DHCPCoreServer.Listener aListener,
+                                final DHCPServlet aServlet,
+                                final DatagramPacket aReq,
+                                final boolean bHighPriority)
   {
-    m_aServer = aServer;
+    m_aListener = aListener;
     m_aDispatchServlet = aServlet;
     m_aDispatchPacket = aReq;
+    m_bHighPriority = bHighPriority;
+  }
+
+  public boolean isHighPriority ()
+  {
+    return m_bHighPriority;
   }
 
   public void run ()
   {
+    final DHCPRetransmissionCache.Key aKey = m_aListener.getRequestKey (m_aDispatchPacket);
+    if (m_aListener.handleRetransmission (aKey))
+      return;
+
     try
     {
+      if (m_aDispatchServlet instanceof DHCPAsyncServlet)
+      {
+        // response is sent on completion
+        m_aListener.serviceAsync ((DHCPAsyncServlet) m_aDispatchServlet, m_aDispatchPacket, aKey);
+        return;
+      }
       final DatagramPacket response = m_aDispatchServlet.serviceDatagram (m_aDispatchPacket);
+      m_aListener.completeRequest (aKey, response, true);
       // invoke callback method
-      m_aServer.sendResponse (response);
+      m_aListener.sendResponse (response);
     }
     catch (final Exception e)
     {
+      m_aListener.completeRequest (aKey, null, false);
       s_aLogger.info ("Exception in dispatcher", e);
     }
   }
@@ -0,0 +1,134 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed set of single-threaded lanes. Tasks with the same key always run on
+ * the same lane, one after the other: in the order they were submitted, or
+ * urgent requests first with priority scheduling (see
+ * <code>DHCPPriorityQueue</code>), but never two at a time.
+ * <p>
+ * The overload handler must not run rejected tasks in the calling thread,
+ * which would run them alongside their lane: <code>DHCPCoreServer</code>
+ * refuses the <code>caller-runs</code> policy in lanes dispatch.
+ * <p>
+ * <code>DHCPCoreServer</code> keys requests with the client hardware address:
+ * all requests of a given client are processed serially, while different
+ * clients are processed in parallel on different lanes. A servlet keeping
+ * per-client state therefore needs no locking as long as the state is not
+ * shared between clients.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+final class DHCPLaneExecutor implements Executor
+{
+  private final ThreadPoolExecutor [] m_aLanes;
+
+  /**
+   * @param nLanes
+   *        number of lanes, must be &gt; 0
+   * @param nQueueSize
+   *        capacity of the queue of each lane, must be &gt; 0
+   * @param bPriorityScheduling
+   *        <code>true</code> to use a <code>DHCPPriorityQueue</code> in each
+   *        lane
+   * @param aThreadFactory
+   *        factory for the lane threads
+   * @param aOverloadHandler
+   *        called when the queue of a lane is full
+   */
+  DHCPLaneExecutor (final int nLanes,
+                    final int nQueueSize,
+                    final boolean bPriorityScheduling,
+                    final ThreadFactory aThreadFactory,
+                    final RejectedExecutionHandler aOverloadHandler)
+  {
+    if (nLanes <= 0)
+      throw new IllegalArgumentException ("number of lanes must be > 0: " + nLanes);
+
+    m_aLanes = new ThreadPoolExecutor [nLanes];
+    for (int i = 0; i < nLanes; i++)
+    {
+      final BlockingQueue <Runnable> aQueue = bPriorityScheduling ? new DHCPPriorityQueue (nQueueSize)
+                                                                  : new ArrayBlockingQueue <> (nQueueSize);
+      m_aLanes[i] = new ThreadPoolExecutor (1, 1, 0, TimeUnit.MILLISECONDS, aQueue, aThreadFactory, aOverloadHandler);
+      m_aLanes[i].prestartCoreThread ();
+    }
+  }
+
+  /**
+   * Run a task on the lane of the given key.
+   *
+   * @param nKey
+   *        any value, tasks with the same key share the same lane
+   * @param aTask
+   *        the task to run
+   */
+  void execute (final int nKey, final Runnable aTask)
+  {
+    m_aLanes[getLane (nKey)].execute (aTask);
+  }
+
+  /**
+   * Run a task without a key, on the first lane.
+   */
+  public void execute (final Runnable aTask)
+  {
+    m_aLanes[0].execute (aTask);
+  }
+
+  /**
+   * @param nKey
+   *        task key
+   * @return the index of the lane running tasks with this key.
+   */
+  int getLane (final int nKey)
+  {
+    // spread the bits, hardware addresses of a vendor share their high bytes
+    final int nHash = nKey ^ (nKey >>> 16);
+    return (nHash & 0x7fffffff) % m_aLanes.length;
+  }
+
+  /**
+   * @return the number of lanes.
+   */
+  int getLaneCount ()
+  {
+    return m_aLanes.length;
+  }
+
+  /**
+   * Stop all lanes. Queued tasks are still run.
+   */
+  void shutdown ()
+  {
+    for (final ThreadPoolExecutor aLane : m_aLanes)
+      aLane.shutdown ();
+  }
+}
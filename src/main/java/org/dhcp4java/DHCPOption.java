@@ -70,6 +70,23 @@ public class DHCPOption implements Serializable
    */
   private final boolean m_bMirror;
 
+  /**
+   * Last value decoded by <code>getValueAs()</code>, with its codec.
+   */
+  private transient volatile DecodedValue m_aDecoded;
+
+  private static final class DecodedValue
+  {
+    private final DHCPOptionCodec <?> m_aCodec;
+    private final Object m_aValue;
+
+    DecodedValue (final DHCPOptionCodec <?> aCodec, final Object aValue)
+    {
+      m_aCodec = aCodec;
+      m_aValue = aValue;
+    }
+  }
+
   /**
    * Constructor for <code>DHCPOption</code>.
    * <p>
@@ -191,9 +208,70 @@ public class DHCPOption implements Serializable
     return m_bMirror;
   }
 
+  /**
+   * Returns the option value decoded by a codec.
+   * <p>
+   * The value is decoded once, and kept with the option: the next calls with
+   * the same codec return the same object. It is shared by all callers and
+   * must not be modified.
+   *
+   * @param codec
+   *        the codec, see <code>DHCPOptionCodecRegistry</code>
+   * @return the typed value
+   * @throws IllegalArgumentException
+   *         <code>codec</code> is <code>null</code>
+   * @throws DHCPBadPacketException
+   *         the option value is of wrong size, or malformed.
+   */
+  @SuppressWarnings ("unchecked")
+  public <T> T getValueAs (final DHCPOptionCodec <T> codec)
+  {
+    if (codec == null)
+    {
+      throw new IllegalArgumentException ("codec is null");
+    }
+    if (m_aValue == null)
+    {
+      throw new IllegalStateException ("value is null");
+    }
+
+    final DecodedValue decoded = m_aDecoded;
+    if (decoded != null && decoded.m_aCodec == codec)
+    {
+      // same codec, hence of type T
+      return (T) decoded.m_aValue;
+    }
+    final T value = codec.decode (m_aValue);
+    m_aDecoded = new DecodedValue (codec, value);
+    return value;
+  }
+
+  /**
+   * Creates a DHCP Option from a value encoded by a codec.
+   *
+   * @param code
+   *        the option code.
+   * @param val
+   *        the value
+   * @param codec
+   *        the codec
+   * @return the new option
+   * @throws IllegalArgumentException
+   *         <code>val</code> or <code>codec</code> is <code>null</code>, or
+   *         <code>val</code> cannot be encoded
+   */
+  public static <T> DHCPOption newOptionAs (final byte code, final T val, final DHCPOptionCodec <T> codec)
+  {
+    if (codec == null)
+    {
+      throw new IllegalArgumentException ("codec is null");
+    }
+    return new DHCPOption (code, codec.encode (val));
+  }
+
   public static final boolean isOptionAsByte (final byte code)
   {
-    return EOptionFormat.BYTE.equals (_DHO_FORMATS.get (Byte.valueOf (code)));
+    return _DHO_FORMATS[code & 0xFF] == EOptionFormat.BYTE;
   }
 
   /**
@@ -266,24 +344,13 @@ public class DHCPOption implements Serializable
    */
   public byte getValueAsByte () throws IllegalArgumentException
   {
-    if (!isOptionAsByte (m_nCode))
-    {
-      throw new IllegalArgumentException ("DHCP option type (" + m_nCode + ") is not byte");
-    }
-    if (m_aValue == null)
-    {
-      throw new IllegalStateException ("value is null");
-    }
-    if (m_aValue.length != 1)
-    {
-      throw new DHCPBadPacketException ("option " + m_nCode + " is wrong size:" + m_aValue.length + " should be 1");
-    }
+    _checkValue (EOptionFormat.BYTE, "byte");
     return m_aValue[0];
   }
 
   public static final boolean isOptionAsShort (final byte code)
   {
-    return EOptionFormat.SHORT.equals (_DHO_FORMATS.get (Byte.valueOf (code)));
+    return _DHO_FORMATS[code & 0xFF] == EOptionFormat.SHORT;
   }
 
   /**
@@ -306,25 +373,13 @@ public class DHCPOption implements Serializable
    */
   public short getValueAsShort () throws IllegalArgumentException
   {
-    if (!isOptionAsShort (m_nCode))
-    {
-      throw new IllegalArgumentException ("DHCP option type (" + m_nCode + ") is not short");
-    }
-    if (m_aValue == null)
-    {
-      throw new IllegalStateException ("value is null");
-    }
-    if (m_aValue.length != 2)
-    {
-      throw new DHCPBadPacketException ("option " + m_nCode + " is wrong size:" + m_aValue.length + " should be 2");
-    }
-
+    _checkValue (EOptionFormat.SHORT, "short");
     return (short) ((m_aValue[0] & 0xff) << 8 | (m_aValue[1] & 0xFF));
   }
 
   public static final boolean isOptionAsInt (final byte code)
   {
-    return EOptionFormat.INT.equals (_DHO_FORMATS.get (Byte.valueOf (code)));
+    return _DHO_FORMATS[code & 0xFF] == EOptionFormat.INT;
   }
 
   /**
@@ -350,18 +405,7 @@ public class DHCPOption implements Serializable
    */
   public int getValueAsInt () throws IllegalArgumentException
   {
-    if (!isOptionAsInt (m_nCode))
-    {
-      throw new IllegalArgumentException ("DHCP option type (" + m_nCode + ") is not int");
-    }
-    if (m_aValue == null)
-    {
-      throw new IllegalStateException ("value is null");
-    }
-    if (m_aValue.length != 4)
-    {
-      throw new DHCPBadPacketException ("option " + m_nCode + " is wrong size:" + m_aValue.length + " should be 4");
-    }
+    _checkValue (EOptionFormat.INT, "int");
     return ((m_aValue[0] & 0xFF) << 24 | (m_aValue[1] & 0xFF) << 16 | (m_aValue[2] & 0xFF) << 8 | (m_aValue[3] & 0xFF));
   }
 
@@ -401,9 +445,29 @@ public class DHCPOption implements Serializable
     return null;
   }
 
+  /**
+   * Returns a DHCP Option as an unsigned number, usable for any numerical type:
+   * int, short or byte. Same as <code>getValueAsNum()</code>, without
+   * allocating.
+   *
+   * @return the option value, <code>-1</code> if option is not present, or
+   *         wrong number of bytes.
+   */
+  public long getValueAsLong ()
+  {
+    if (m_aValue == null)
+      return -1;
+    if (m_aValue.length != 1 && m_aValue.length != 2 && m_aValue.length != 4)
+      return -1;
+    long n = 0;
+    for (final byte b : m_aValue)
+      n = n << 8 | (b & 0xFF);
+    return n;
+  }
+
   public static final boolean isOptionAsInetAddr (final byte code)
   {
-    return EOptionFormat.INET.equals (_DHO_FORMATS.get (Byte.valueOf (code)));
+    return _DHO_FORMATS[code & 0xFF] == EOptionFormat.INET;
   }
 
   /**
@@ -429,18 +493,7 @@ public class DHCPOption implements Serializable
    */
   public InetAddress getValueAsInetAddr () throws IllegalArgumentException
   {
-    if (!isOptionAsInetAddr (m_nCode))
-    {
-      throw new IllegalArgumentException ("DHCP option type (" + m_nCode + ") is not InetAddr");
-    }
-    if (m_aValue == null)
-    {
-      throw new IllegalStateException ("value is null");
-    }
-    if (m_aValue.length != 4)
-    {
-      throw new DHCPBadPacketException ("option " + m_nCode + " is wrong size:" + m_aValue.length + " should be 4");
-    }
+    _checkValue (EOptionFormat.INET, "InetAddr");
     try
     {
       return InetAddress.getByAddress (m_aValue);
@@ -452,9 +505,25 @@ public class DHCPOption implements Serializable
     }
   }
 
+  /**
+   * Returns a DHCP Option as an IPv4 address in a big-endian int, without
+   * allocating. Same restrictions as <code>getValueAsInetAddr()</code>.
+   *
+   * @return the option value.
+   * @throws IllegalArgumentException
+   *         the option code is not an InetAddr option.
+   * @throws DHCPBadPacketException
+   *         the option value in packet is of wrong size.
+   */
+  public int getValueAsInetAddrAsInt () throws IllegalArgumentException
+  {
+    _checkValue (EOptionFormat.INET, "InetAddr");
+    return ((m_aValue[0] & 0xFF) << 24 | (m_aValue[1] & 0xFF) << 16 | (m_aValue[2] & 0xFF) << 8 | (m_aValue[3] & 0xFF));
+  }
+
   public static final boolean isOptionAsString (final byte code)
   {
-    return EOptionFormat.STRING.equals (_DHO_FORMATS.get (Byte.valueOf (code)));
+    return _DHO_FORMATS[code & 0xFF] == EOptionFormat.STRING;
   }
 
   /**
@@ -486,20 +555,13 @@ public class DHCPOption implements Serializable
    */
   public String getValueAsString () throws IllegalArgumentException
   {
-    if (!isOptionAsString (m_nCode))
-    {
-      throw new IllegalArgumentException ("DHCP option type (" + m_nCode + ") is not String");
-    }
-    if (m_aValue == null)
-    {
-      throw new IllegalStateException ("value is null");
-    }
+    _checkValue (EOptionFormat.STRING, "String");
     return Util.bytesToString (m_aValue);
   }
 
   public static final boolean isOptionAsShorts (final byte code)
   {
-    return EOptionFormat.SHORTS.equals (_DHO_FORMATS.get (Byte.valueOf (code)));
+    return _DHO_FORMATS[code & 0xFF] == EOptionFormat.SHORTS;
   }
 
   /**
@@ -520,20 +582,7 @@ public class DHCPOption implements Serializable
    */
   public short [] getValueAsShorts () throws IllegalArgumentException
   {
-    if (!isOptionAsShorts (m_nCode))
-    {
-      throw new IllegalArgumentException ("DHCP option type (" + m_nCode + ") is not short[]");
-    }
-    if (m_aValue == null)
-    {
-      throw new IllegalStateException ("value is null");
-    }
-    if ((m_aValue.length % 2) != 0)
-    {
-      // multiple of 2
-      throw new DHCPBadPacketException ("option " + m_nCode + " is wrong size:" + m_aValue.length + " should be 2*X");
-    }
-
+    _checkValue (EOptionFormat.SHORTS, "short[]");
     final short [] shorts = new short [m_aValue.length / 2];
     for (int i = 0, a = 0; a < m_aValue.length; i++, a += 2)
     {
@@ -544,7 +593,7 @@ public class DHCPOption implements Serializable
 
   public static final boolean isOptionAsInetAddrs (final byte code)
   {
-    return EOptionFormat.INETS.equals (_DHO_FORMATS.get (Byte.valueOf (code)));
+    return _DHO_FORMATS[code & 0xFF] == EOptionFormat.INETS;
   }
 
   /**
@@ -590,18 +639,7 @@ public class DHCPOption implements Serializable
    */
   public InetAddress [] getValueAsInetAddrs () throws IllegalArgumentException
   {
-    if (!isOptionAsInetAddrs (m_nCode))
-    {
-      throw new IllegalArgumentException ("DHCP option type (" + m_nCode + ") is not InetAddr[]");
-    }
-    if (m_aValue == null)
-    {
-      throw new IllegalStateException ("value is null");
-    }
-    if ((m_aValue.length % 4) != 0) // multiple of 4
-    {
-      throw new DHCPBadPacketException ("option " + m_nCode + " is wrong size:" + m_aValue.length + " should be 4*X");
-    }
+    _checkValue (EOptionFormat.INETS, "InetAddr[]");
     try
     {
       final byte [] addr = new byte [4];
@@ -625,7 +663,7 @@ public class DHCPOption implements Serializable
 
   public static final boolean isOptionAsBytes (final byte code)
   {
-    return EOptionFormat.BYTES.equals (_DHO_FORMATS.get (Byte.valueOf (code)));
+    return _DHO_FORMATS[code & 0xFF] == EOptionFormat.BYTES;
   }
 
   /**
@@ -646,14 +684,7 @@ public class DHCPOption implements Serializable
    */
   public byte [] getValueAsBytes () throws IllegalArgumentException
   {
-    if (!isOptionAsBytes (m_nCode))
-    {
-      throw new IllegalArgumentException ("DHCP option type (" + m_nCode + ") is not bytes");
-    }
-    if (m_aValue == null)
-    {
-      throw new IllegalStateException ("value is null");
-    }
+    _checkValue (EOptionFormat.BYTES, "bytes");
     return getValue ();
   }
 
@@ -988,12 +1019,12 @@ public class DHCPOption implements Serializable
             buffer.append (agentOptionsToString (m_aValue));
           }
           else
-            if (_DHO_FORMATS.containsKey (Byte.valueOf (m_nCode)))
+            if (_DHO_FORMATS[m_nCode & 0xFF] != null)
             {
               // formatted output
               try
               { // catch malformed values
-                switch (_DHO_FORMATS.get (Byte.valueOf (m_nCode)))
+                switch (_DHO_FORMATS[m_nCode & 0xFF])
                 {
                   case INET:
                     Util.appendHostAddress (buffer, getValueAsInetAddr ());
@@ -1362,7 +1393,7 @@ public class DHCPOption implements Serializable
    */
   public static Class <?> getOptionFormat (final byte code)
   {
-    final EOptionFormat format = _DHO_FORMATS.get (Byte.valueOf (code));
+    final EOptionFormat format = _DHO_FORMATS[code & 0xFF];
     if (format == null)
       return null;
 
@@ -1536,23 +1567,106 @@ public class DHCPOption implements Serializable
     return null;
   }
 
+  /**
+   * Checks the option before a typed getter decodes its value: the option
+   * must be of <code>format</code>, and its length a value of the format, or
+   * a whole number of elements for lists.
+   *
+   * @param format
+   *        format of the typed getter
+   * @param typeName
+   *        type returned by the getter, for the exception message
+   * @throws IllegalArgumentException
+   *         the option is not of this format
+   * @throws IllegalStateException
+   *         the value is <code>null</code>
+   * @throws DHCPBadPacketException
+   *         the value has not the size of the format
+   */
+  private void _checkValue (final EOptionFormat format, final String typeName)
+  {
+    if (_DHO_FORMATS[m_nCode & 0xFF] != format)
+    {
+      throw new IllegalArgumentException ("DHCP option type (" + m_nCode + ") is not " + typeName);
+    }
+    if (m_aValue == null)
+    {
+      throw new IllegalStateException ("value is null");
+    }
+    final int size = format.getElementSize ();
+    if (format.isFixedSize ())
+    {
+      if (m_aValue.length != size)
+      {
+        throw new DHCPBadPacketException ("option " + m_nCode + " is wrong size:" + m_aValue.length + " should be " + size);
+      }
+    }
+    else
+      if ((m_aValue.length % size) != 0)
+      {
+        throw new DHCPBadPacketException ("option " + m_nCode + " is wrong size:" + m_aValue.length + " should be " + size + "*X");
+      }
+  }
+
   // ----------------------------------------------------------------------
   // Internal constants for high-level option type conversions.
   //
   // formats of options
   //
+  // each format describes the size of its values: element size, and minimum
+  // and maximum length (rfc 2132), equal for fixed size formats; lists have no
+  // maximum, long options being split on the wire (rfc 3396)
+  //
   enum EOptionFormat
   {
-    INET, // 4 bytes IP, size = 4
-    INETS, // list of 4 bytes IP, size = 4*n
-    INT, // 4 bytes integer, size = 4
-    SHORT, // 2 bytes short, size = 2
-    SHORTS, // list of 2 bytes shorts, size = 2*n
-    BYTE, // 1 byte, size = 1
-    BYTES, // list of bytes, size = n
-    STRING, // string, size = n
+    INET (4, 4, 4), // 4 bytes IP, size = 4
+    INETS (4, 4, Integer.MAX_VALUE), // list of 4 bytes IP, size = 4*n
+    INT (4, 4, 4), // 4 bytes integer, size = 4
+    SHORT (2, 2, 2), // 2 bytes short, size = 2
+    SHORTS (2, 2, Integer.MAX_VALUE), // list of 2 bytes shorts, size = 2*n
+    BYTE (1, 1, 1), // 1 byte, size = 1
+    BYTES (1, 1, Integer.MAX_VALUE), // list of bytes, size = n
+    STRING (1, 1, Integer.MAX_VALUE); // string, size = n
     // RELAYS = 9; // DHCP sub-options (rfc 3046)
     // ID = 10; // client identifier : byte (htype) + string (chaddr)
+
+    private final int m_nElementSize;
+    private final int m_nMinLength;
+    private final int m_nMaxLength;
+
+    private EOptionFormat (final int nElementSize, final int nMinLength, final int nMaxLength)
+    {
+      m_nElementSize = nElementSize;
+      m_nMinLength = nMinLength;
+      m_nMaxLength = nMaxLength;
+    }
+
+    /**
+     * @return the size of a single value, or of each element of a list.
+     */
+    int getElementSize ()
+    {
+      return m_nElementSize;
+    }
+
+    int getMinLength ()
+    {
+      return m_nMinLength;
+    }
+
+    int getMaxLength ()
+    {
+      return m_nMaxLength;
+    }
+
+    /**
+     * @return <code>true</code> if the value is a single element, of
+     *         <code>getElementSize()</code> bytes.
+     */
+    boolean isFixedSize ()
+    {
+      return m_nMinLength == m_nMaxLength;
+    }
   }
 
   // list of formats by options
@@ -1722,20 +1836,31 @@ public class DHCPOption implements Serializable
                                                      EOptionFormat.STRING,
 
   };
-  private static final Map <Byte, EOptionFormat> _DHO_FORMATS = new LinkedHashMap <> ();
+  // formats indexed by unsigned option code, null if the option has no format
+  private static final EOptionFormat [] _DHO_FORMATS = new EOptionFormat [256];
 
   /*
-   * preload at startup Maps with constants allowing reverse lookup
+   * preload at startup the table of formats
    */
   static
   {
-    // construct map of formats
     for (int i = 0; i < _OPTION_FORMATS.length / 2; i++)
     {
-      _DHO_FORMATS.put ((Byte) _OPTION_FORMATS[i * 2], (EOptionFormat) _OPTION_FORMATS[i * 2 + 1]);
+      _DHO_FORMATS[((Byte) _OPTION_FORMATS[i * 2]).byteValue () & 0xFF] = (EOptionFormat) _OPTION_FORMATS[i * 2 + 1];
     }
   }
 
+  /**
+   * @param code
+   *        the DHCP option code
+   * @return the format of the option, <code>null</code> if the option has no
+   *         known format.
+   */
+  static EOptionFormat getFormat (final byte code)
+  {
+    return _DHO_FORMATS[code & 0xFF];
+  }
+
   // ========================================================================
   // main: print DHCP options for Javadoc
   public static void main (final String [] args)
@@ -1760,9 +1885,10 @@ public class DHCPOption implements Serializable
       }
 
       all += s;
-      if (_DHO_FORMATS.containsKey (codeByte))
+      final EOptionFormat format = _DHO_FORMATS[code & 0xFF];
+      if (format != null)
       {
-        switch (_DHO_FORMATS.get (codeByte))
+        switch (format)
         {
           case INET:
             inet1 += s;
@@ -0,0 +1,367 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.dhcp4java.DHCPOption.EOptionFormat;
+
+/**
+ * Conversion between the raw value of an option and a typed value.
+ * <p>
+ * A codec declares the sizes it accepts: the size of an element, and the
+ * minimum and maximum length of a value. <code>decode()</code> and
+ * <code>encode()</code> check them before calling the conversion methods of the
+ * subclass, which only see values of a valid length.
+ * <p>
+ * Codecs are registered by option code, or by vendor enterprise number and
+ * sub-option code, in a <code>DHCPOptionCodecRegistry</code>. Use
+ * <code>DHCPOption.getValueAs()</code> to decode an option once and keep the
+ * typed value with the option.
+ * <p>
+ * Codecs must be stateless and thread-safe. Built-in codecs are provided for
+ * the formats of <code>DHCPOption</code>.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ * @param <T>
+ *        type of the decoded values
+ */
+public abstract class DHCPOptionCodec <T>
+{
+  /** 4 bytes IP. */
+  public static final DHCPOptionCodec <InetAddress> INET = new DHCPOptionCodec <InetAddress> (EOptionFormat.INET)
+  {
+    @Override
+    protected InetAddress decodeValue (final byte [] value)
+    {
+      return _toInetAddress (value, 0);
+    }
+
+    @Override
+    protected byte [] encodeValue (final InetAddress value)
+    {
+      return DHCPOption.inetAddress2Bytes (value);
+    }
+  };
+
+  /** list of 4 bytes IP. */
+  public static final DHCPOptionCodec <InetAddress []> INETS = new DHCPOptionCodec <InetAddress []> (EOptionFormat.INETS)
+  {
+    @Override
+    protected InetAddress [] decodeValue (final byte [] value)
+    {
+      final InetAddress [] addrs = new InetAddress [value.length / 4];
+      for (int i = 0; i < addrs.length; i++)
+        addrs[i] = _toInetAddress (value, i * 4);
+      return addrs;
+    }
+
+    @Override
+    protected byte [] encodeValue (final InetAddress [] value)
+    {
+      return DHCPOption.inetAddresses2Bytes (value);
+    }
+  };
+
+  /** 4 bytes integer. */
+  public static final DHCPOptionCodec <Integer> INT = new DHCPOptionCodec <Integer> (EOptionFormat.INT)
+  {
+    @Override
+    protected Integer decodeValue (final byte [] value)
+    {
+      return Integer.valueOf ((value[0] & 0xFF) << 24 |
+                              (value[1] & 0xFF) << 16 |
+                              (value[2] & 0xFF) << 8 |
+                              (value[3] & 0xFF));
+    }
+
+    @Override
+    protected byte [] encodeValue (final Integer value)
+    {
+      return DHCPOption.int2Bytes (value.intValue ());
+    }
+  };
+
+  /** 2 bytes short. */
+  public static final DHCPOptionCodec <Short> SHORT = new DHCPOptionCodec <Short> (EOptionFormat.SHORT)
+  {
+    @Override
+    protected Short decodeValue (final byte [] value)
+    {
+      return Short.valueOf ((short) ((value[0] & 0xFF) << 8 | (value[1] & 0xFF)));
+    }
+
+    @Override
+    protected byte [] encodeValue (final Short value)
+    {
+      return DHCPOption.short2Bytes (value.shortValue ());
+    }
+  };
+
+  /** list of 2 bytes shorts. */
+  public static final DHCPOptionCodec <short []> SHORTS = new DHCPOptionCodec <short []> (EOptionFormat.SHORTS)
+  {
+    @Override
+    protected short [] decodeValue (final byte [] value)
+    {
+      final short [] shorts = new short [value.length / 2];
+      for (int i = 0, a = 0; a < value.length; i++, a += 2)
+        shorts[i] = (short) ((value[a] & 0xFF) << 8 | (value[a + 1] & 0xFF));
+      return shorts;
+    }
+
+    @Override
+    protected byte [] encodeValue (final short [] value)
+    {
+      final byte [] buf = new byte [value.length * 2];
+      for (int i = 0; i < value.length; i++)
+      {
+        buf[i * 2] = (byte) ((value[i] & 0xFF00) >>> 8);
+        buf[i * 2 + 1] = (byte) (value[i] & 0xFF);
+      }
+      return buf;
+    }
+  };
+
+  /** 1 byte. */
+  public static final DHCPOptionCodec <Byte> BYTE = new DHCPOptionCodec <Byte> (EOptionFormat.BYTE)
+  {
+    @Override
+    protected Byte decodeValue (final byte [] value)
+    {
+      return Byte.valueOf (value[0]);
+    }
+
+    @Override
+    protected byte [] encodeValue (final Byte value)
+    {
+      return DHCPOption.byte2Bytes (value.byteValue ());
+    }
+  };
+
+  /** list of bytes. */
+  public static final DHCPOptionCodec <byte []> BYTES = new DHCPOptionCodec <byte []> (EOptionFormat.BYTES)
+  {
+    @Override
+    protected byte [] decodeValue (final byte [] value)
+    {
+      return value.clone ();
+    }
+
+    @Override
+    protected byte [] encodeValue (final byte [] value)
+    {
+      return value.clone ();
+    }
+  };
+
+  /** string. */
+  public static final DHCPOptionCodec <String> STRING = new DHCPOptionCodec <String> (EOptionFormat.STRING)
+  {
+    @Override
+    protected String decodeValue (final byte [] value)
+    {
+      return Util.bytesToString (value);
+    }
+
+    @Override
+    protected byte [] encodeValue (final String value)
+    {
+      return Util.stringToBytes (value);
+    }
+  };
+
+  private final int m_nElementSize;
+  private final int m_nMinLength;
+  private final int m_nMaxLength;
+
+  /**
+   * @param nElementSize
+   *        the length of a value must be a multiple of it, must be &gt; 0
+   * @param nMinLength
+   *        minimum length of a value, must be &gt;= 0
+   * @param nMaxLength
+   *        maximum length of a value, must be &gt;= <code>nMinLength</code>
+   */
+  protected DHCPOptionCodec (final int nElementSize, final int nMinLength, final int nMaxLength)
+  {
+    if (nElementSize <= 0)
+      throw new IllegalArgumentException ("element size must be > 0: " + nElementSize);
+    if (nMinLength < 0)
+      throw new IllegalArgumentException ("minimum length must be >= 0: " + nMinLength);
+    if (nMaxLength < nMinLength)
+      throw new IllegalArgumentException ("maximum length must be >= " + nMinLength + ": " + nMaxLength);
+
+    m_nElementSize = nElementSize;
+    m_nMinLength = nMinLength;
+    m_nMaxLength = nMaxLength;
+  }
+
+  DHCPOptionCodec (final EOptionFormat format)
+  {
+    this (format.getElementSize (), format.getMinLength (), format.getMaxLength ());
+  }
+
+  /**
+   * Built-in codec of a format.
+   *
+   * @param format
+   *        the format
+   * @return the codec, never <code>null</code>
+   */
+  static DHCPOptionCodec <?> forFormat (final EOptionFormat format)
+  {
+    switch (format)
+    {
+      case INET:
+        return INET;
+      case INETS:
+        return INETS;
+      case INT:
+        return INT;
+      case SHORT:
+        return SHORT;
+      case SHORTS:
+        return SHORTS;
+      case BYTE:
+        return BYTE;
+      case BYTES:
+        return BYTES;
+      case STRING:
+        return STRING;
+      default:
+        throw new IllegalArgumentException ("unknown format " + format);
+    }
+  }
+
+  public final int getElementSize ()
+  {
+    return m_nElementSize;
+  }
+
+  public final int getMinLength ()
+  {
+    return m_nMinLength;
+  }
+
+  public final int getMaxLength ()
+  {
+    return m_nMaxLength;
+  }
+
+  /**
+   * @param len
+   *        length of a raw value, in bytes
+   * @return <code>true</code> if the length is within bounds and a multiple of
+   *         the element size.
+   */
+  public final boolean isValidLength (final int len)
+  {
+    return len >= m_nMinLength && len <= m_nMaxLength && (len % m_nElementSize) == 0;
+  }
+
+  /**
+   * Decode a raw value.
+   *
+   * @param value
+   *        the raw value, not modified
+   * @return the typed value
+   * @throws IllegalArgumentException
+   *         <code>value</code> is <code>null</code>
+   * @throws DHCPBadPacketException
+   *         the value is of wrong size, or malformed
+   */
+  public final T decode (final byte [] value)
+  {
+    if (value == null)
+      throw new IllegalArgumentException ("value is null");
+    if (!isValidLength (value.length))
+      throw new DHCPBadPacketException ("value is wrong size:" + value.length + " should be " + _sizeToString ());
+    return decodeValue (value);
+  }
+
+  /**
+   * Encode a typed value.
+   *
+   * @param value
+   *        the typed value
+   * @return the raw value
+   * @throws IllegalArgumentException
+   *         <code>value</code> is <code>null</code>, cannot be encoded, or
+   *         its encoding is of wrong size
+   */
+  public final byte [] encode (final T value)
+  {
+    if (value == null)
+      throw new IllegalArgumentException ("value is null");
+    final byte [] raw = encodeValue (value);
+    if (!isValidLength (raw.length))
+      throw new IllegalArgumentException ("encoded value is wrong size:" + raw.length + " should be " + _sizeToString ());
+    return raw;
+  }
+
+  /**
+   * Decode a raw value, whose length is already checked.
+   *
+   * @param value
+   *        the raw value, must not be modified nor kept
+   * @return the typed value
+   * @throws DHCPBadPacketException
+   *         the value is malformed
+   */
+  protected abstract T decodeValue (byte [] value);
+
+  /**
+   * Encode a typed value, its length is checked afterwards.
+   *
+   * @param value
+   *        the typed value, not <code>null</code>
+   * @return the raw value
+   * @throws IllegalArgumentException
+   *         the value cannot be encoded
+   */
+  protected abstract byte [] encodeValue (T value);
+
+  private String _sizeToString ()
+  {
+    final String sMultiple = m_nElementSize > 1 ? m_nElementSize + "*X " : "";
+    if (m_nMinLength == m_nMaxLength)
+      return Integer.toString (m_nMinLength);
+    if (m_nMaxLength == Integer.MAX_VALUE)
+      return sMultiple + "of at least " + m_nMinLength;
+    return sMultiple + "between " + m_nMinLength + " and " + m_nMaxLength;
+  }
+
+  private static InetAddress _toInetAddress (final byte [] value, final int offset)
+  {
+    try
+    {
+      final byte [] addr = { value[offset], value[offset + 1], value[offset + 2], value[offset + 3] };
+      return InetAddress.getByAddress (addr);
+    }
+    catch (final UnknownHostException e)
+    {
+      // normally impossible, the address is 4 bytes long
+      throw new IllegalStateException ("Unexpected UnknownHostException", e);
+    }
+  }
+}
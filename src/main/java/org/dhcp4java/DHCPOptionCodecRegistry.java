@@ -0,0 +1,367 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.DHO_END;
+import static org.dhcp4java.DHCPConstants.DHO_PAD;
+import static org.dhcp4java.DHCPConstants.DHO_VIVSO;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Typed codecs of options, by option code and by vendor sub-option.
+ * <p>
+ * A new registry holds the built-in codec of every option having a format in
+ * <code>DHCPOption</code>, and a codec of DHO_VIVSO(125) decoding the
+ * vendor-identifying sub-options (rfc 3925). Site specific options are added,
+ * or built-in codecs replaced, with <code>register()</code>.
+ * <p>
+ * Vendor sub-options are registered by enterprise number and sub-option code
+ * with <code>registerVendor()</code>. They are decoded inside DHO_VIVSO(125),
+ * into a <code>Map&lt;Integer, Map&lt;Byte, Object&gt;&gt;</code> keyed by
+ * enterprise number, then by sub-option code. As DHO_VENDOR_ENCAPSULATED_OPTIONS
+ * (43) carries no enterprise number, register for it the codec returned by
+ * <code>getSubOptionsCodec()</code> for the vendor selected by the servlet. A
+ * sub-option without registered codec is decoded as a copy of its raw
+ * <code>byte[]</code>.
+ * <p>
+ * Options are decoded once: <code>decode()</code> keeps the typed value with
+ * the option, see <code>DHCPOption.getValueAs()</code>.
+ * <p>
+ * This class is thread-safe, lookups do not lock.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+public final class DHCPOptionCodecRegistry
+{
+  private final AtomicReferenceArray <DHCPOptionCodec <?>> m_aCodecs = new AtomicReferenceArray <> (256);
+  // sub-option codecs, 256 per enterprise number
+  private final ConcurrentMap <Integer, AtomicReferenceArray <DHCPOptionCodec <?>>> m_aVendorCodecs = new ConcurrentHashMap <> ();
+
+  /**
+   * Create a registry with the built-in codecs.
+   */
+  public DHCPOptionCodecRegistry ()
+  {
+    for (int i = 0; i < 256; i++)
+    {
+      final DHCPOption.EOptionFormat format = DHCPOption.getFormat ((byte) i);
+      if (format != null)
+        m_aCodecs.set (i, DHCPOptionCodec.forFormat (format));
+    }
+    m_aCodecs.set (DHO_VIVSO & 0xFF, new VendorOptionsCodec ());
+  }
+
+  private static void _checkCode (final byte code)
+  {
+    if (code == DHO_PAD || code == DHO_END)
+      throw new IllegalArgumentException ("code " + (code & 0xFF) + " is reserved");
+  }
+
+  /**
+   * Register the codec of an option, replacing the previous one.
+   *
+   * @param code
+   *        the option code
+   * @param codec
+   *        the codec, <code>null</code> to remove it
+   * @throws IllegalArgumentException
+   *         the code is DHO_PAD or DHO_END
+   */
+  public void register (final byte code, final DHCPOptionCodec <?> codec)
+  {
+    _checkCode (code);
+    m_aCodecs.set (code & 0xFF, codec);
+  }
+
+  /**
+   * @param code
+   *        the option code
+   * @return the codec of the option, <code>null</code> if none is registered
+   */
+  public DHCPOptionCodec <?> getCodec (final byte code)
+  {
+    return m_aCodecs.get (code & 0xFF);
+  }
+
+  /**
+   * Register the codec of a vendor sub-option, replacing the previous one.
+   *
+   * @param enterpriseNumber
+   *        the IANA enterprise number of the vendor
+   * @param subCode
+   *        the sub-option code
+   * @param codec
+   *        the codec, <code>null</code> to remove it
+   * @throws IllegalArgumentException
+   *         the sub-option code is DHO_PAD or DHO_END
+   */
+  public void registerVendor (final int enterpriseNumber, final byte subCode, final DHCPOptionCodec <?> codec)
+  {
+    _checkCode (subCode);
+    final Integer key = Integer.valueOf (enterpriseNumber);
+    AtomicReferenceArray <DHCPOptionCodec <?>> codecs = m_aVendorCodecs.get (key);
+    if (codecs == null)
+    {
+      if (codec == null)
+        return;
+      final AtomicReferenceArray <DHCPOptionCodec <?>> newCodecs = new AtomicReferenceArray <> (256);
+      codecs = m_aVendorCodecs.putIfAbsent (key, newCodecs);
+      if (codecs == null)
+        codecs = newCodecs;
+    }
+    codecs.set (subCode & 0xFF, codec);
+  }
+
+  /**
+   * @param enterpriseNumber
+   *        the IANA enterprise number of the vendor
+   * @param subCode
+   *        the sub-option code
+   * @return the codec of the sub-option, <code>null</code> if none is
+   *         registered
+   */
+  public DHCPOptionCodec <?> getVendorCodec (final int enterpriseNumber, final byte subCode)
+  {
+    final AtomicReferenceArray <DHCPOptionCodec <?>> codecs = m_aVendorCodecs.get (Integer.valueOf (enterpriseNumber));
+    return codecs == null ? null : codecs.get (subCode & 0xFF);
+  }
+
+  /**
+   * Codec of a list of sub-options (code, length, value), decoded with the
+   * sub-option codecs of a vendor. Meant for DHO_VENDOR_ENCAPSULATED_OPTIONS
+   * (43).
+   * <p>
+   * The decoded value preserves the order of sub-options, values are the typed
+   * values or <code>byte[]</code> when no codec is registered. Sub-options
+   * registered later are taken into account.
+   *
+   * @param enterpriseNumber
+   *        the IANA enterprise number of the vendor
+   * @return the codec, never <code>null</code>
+   */
+  public DHCPOptionCodec <Map <Byte, Object>> getSubOptionsCodec (final int enterpriseNumber)
+  {
+    return new SubOptionsCodec (enterpriseNumber);
+  }
+
+  /**
+   * Decode an option with its registered codec. The value is kept with the
+   * option, and returned as is by the next calls with the same codec.
+   *
+   * @param opt
+   *        the option, may be <code>null</code>
+   * @return the typed value, <code>null</code> if <code>opt</code> is
+   *         <code>null</code> or no codec is registered
+   * @throws DHCPBadPacketException
+   *         the option value is of wrong size, or malformed
+   */
+  public Object decode (final DHCPOption opt)
+  {
+    if (opt == null)
+      return null;
+    final DHCPOptionCodec <?> codec = getCodec (opt.getCode ());
+    if (codec == null)
+      return null;
+    return opt.getValueAs (codec);
+  }
+
+  /**
+   * Decode an option of a packet with its registered codec.
+   *
+   * @param packet
+   *        the packet
+   * @param code
+   *        the option code
+   * @return the typed value, <code>null</code> if the option is not present
+   *         or no codec is registered
+   * @throws DHCPBadPacketException
+   *         the option value is of wrong size, or malformed
+   */
+  public Object decode (final DHCPPacket packet, final byte code)
+  {
+    return decode (packet.getOption (code));
+  }
+
+  /**
+   * Decode the sub-options of a vendor, in order.
+   *
+   * @throws DHCPBadPacketException
+   *         a sub-option is truncated, or its value is malformed
+   */
+  Map <Byte, Object> decodeSubOptions (final int enterpriseNumber,
+                                       final byte [] buf,
+                                       final int offset,
+                                       final int length)
+  {
+    final Map <Byte, Object> map = new LinkedHashMap <> ();
+    final int end = offset + length;
+    int i = offset;
+    while (i < end)
+    {
+      if (end - i < 2)
+        throw new DHCPBadPacketException ("vendor sub-option truncated");
+      final byte subCode = buf[i];
+      final int size = buf[i + 1] & 0xFF;
+      i += 2;
+      if (size > end - i)
+        throw new DHCPBadPacketException ("vendor sub-option " + (subCode & 0xFF) + " truncated");
+
+      final byte [] value = new byte [size];
+      System.arraycopy (buf, i, value, 0, size);
+      i += size;
+
+      final DHCPOptionCodec <?> codec = getVendorCodec (enterpriseNumber, subCode);
+      map.put (Byte.valueOf (subCode), codec == null ? value : codec.decode (value));
+    }
+    return map;
+  }
+
+  /**
+   * Encode the sub-options of a vendor, in the iteration order of the map.
+   *
+   * @throws IllegalArgumentException
+   *         a value cannot be encoded
+   */
+  void encodeSubOptions (final int enterpriseNumber, final Map <Byte, Object> subOptions, final ByteArrayOutputStream out)
+  {
+    for (final Entry <Byte, Object> entry : subOptions.entrySet ())
+    {
+      final byte subCode = entry.getKey ().byteValue ();
+      final byte [] raw = _encodeSubOption (getVendorCodec (enterpriseNumber, subCode), entry.getValue ());
+      if (raw.length > 255)
+        throw new IllegalArgumentException ("vendor sub-option " + (subCode & 0xFF) + " is longer than 255 bytes");
+      out.write (subCode);
+      out.write (raw.length);
+      out.write (raw, 0, raw.length);
+    }
+  }
+
+  @SuppressWarnings ("unchecked")
+  private static byte [] _encodeSubOption (final DHCPOptionCodec <?> codec, final Object value)
+  {
+    if (codec != null)
+    {
+      try
+      {
+        return ((DHCPOptionCodec <Object>) codec).encode (value);
+      }
+      catch (final ClassCastException e)
+      {
+        throw new IllegalArgumentException ("sub-option value of wrong type: " + value.getClass ().getName ());
+      }
+    }
+    if (!(value instanceof byte []))
+      throw new IllegalArgumentException ("sub-option without codec must be byte[]");
+    return (byte []) value;
+  }
+
+  /**
+   * Sub-options of a vendor, as found in DHO_VENDOR_ENCAPSULATED_OPTIONS (43).
+   */
+  private final class SubOptionsCodec extends DHCPOptionCodec <Map <Byte, Object>>
+  {
+    private final int m_nEnterpriseNumber;
+
+    SubOptionsCodec (final int nEnterpriseNumber)
+    {
+      super (1, 0, Integer.MAX_VALUE);
+      m_nEnterpriseNumber = nEnterpriseNumber;
+    }
+
+    @Override
+    protected Map <Byte, Object> decodeValue (final byte [] value)
+    {
+      return decodeSubOptions (m_nEnterpriseNumber, value, 0, value.length);
+    }
+
+    @Override
+    protected byte [] encodeValue (final Map <Byte, Object> value)
+    {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream (64);
+      encodeSubOptions (m_nEnterpriseNumber, value, out);
+      return out.toByteArray ();
+    }
+  }
+
+  /**
+   * DHO_VIVSO(125), a list of enterprise number (4 bytes), data length (1 byte)
+   * and sub-options (rfc 3925).
+   */
+  private final class VendorOptionsCodec extends DHCPOptionCodec <Map <Integer, Map <Byte, Object>>>
+  {
+    VendorOptionsCodec ()
+    {
+      super (1, 5, Integer.MAX_VALUE);
+    }
+
+    @Override
+    protected Map <Integer, Map <Byte, Object>> decodeValue (final byte [] value)
+    {
+      final Map <Integer, Map <Byte, Object>> map = new LinkedHashMap <> ();
+      int i = 0;
+      while (i < value.length)
+      {
+        if (value.length - i < 5)
+          throw new DHCPBadPacketException ("vendor enterprise number truncated");
+        final int enterpriseNumber = (value[i] & 0xFF) << 24 |
+                                     (value[i + 1] & 0xFF) << 16 |
+                                     (value[i + 2] & 0xFF) << 8 |
+                                     (value[i + 3] & 0xFF);
+        final int size = value[i + 4] & 0xFF;
+        i += 5;
+        if (size > value.length - i)
+          throw new DHCPBadPacketException ("vendor data of " + enterpriseNumber + " truncated");
+        map.put (Integer.valueOf (enterpriseNumber), decodeSubOptions (enterpriseNumber, value, i, size));
+        i += size;
+      }
+      return map;
+    }
+
+    @Override
+    protected byte [] encodeValue (final Map <Integer, Map <Byte, Object>> value)
+    {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream (64);
+      final ByteArrayOutputStream data = new ByteArrayOutputStream (64);
+      for (final Entry <Integer, Map <Byte, Object>> entry : value.entrySet ())
+      {
+        final int enterpriseNumber = entry.getKey ().intValue ();
+        data.reset ();
+        encodeSubOptions (enterpriseNumber, entry.getValue (), data);
+        if (data.size () > 255)
+          throw new IllegalArgumentException ("vendor data of " + enterpriseNumber + " is longer than 255 bytes");
+        out.write (enterpriseNumber >>> 24);
+        out.write (enterpriseNumber >>> 16);
+        out.write (enterpriseNumber >>> 8);
+        out.write (enterpriseNumber);
+        out.write (data.size ());
+        out.write (data.toByteArray (), 0, data.size ());
+      }
+      return out.toByteArray ();
+    }
+  }
+}
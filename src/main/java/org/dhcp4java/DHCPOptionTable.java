@@ -0,0 +1,246 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Options of a <code>DHCPPacket</code>, indexed by option code.
+ * <p>
+ * Options are stored in a 256-slot array indexed by the unsigned option code,
+ * so lookups neither box the code nor hash it. The codes are also kept in
+ * insertion order in a byte array: iteration follows the order in which options
+ * were first added, which is the order they are serialized in. Replacing an
+ * option keeps its position, as with a <code>LinkedHashMap</code>.
+ * <p>
+ * <code>DHCPPacket</code> serializes its options as this table, in place of
+ * the <code>LinkedHashMap</code> it used before: serialized packets cannot be
+ * read by previous versions, nor the other way round.
+ * <p>
+ * This class is not synchronized.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+final class DHCPOptionTable implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private final DHCPOption [] m_aSlots;
+  // option codes in insertion order, m_nSize first entries are valid
+  private byte [] m_aOrder;
+  private int m_nSize;
+  // incremented on each structural change, for fail-fast iterators
+  private transient int m_nModCount;
+
+  DHCPOptionTable ()
+  {
+    m_aSlots = new DHCPOption [256];
+    m_aOrder = new byte [16];
+  }
+
+  /**
+   * Copy constructor, options are shared (they are immutable).
+   *
+   * @param aOther
+   *        table to copy
+   */
+  DHCPOptionTable (final DHCPOptionTable aOther)
+  {
+    m_aSlots = aOther.m_aSlots.clone ();
+    m_aOrder = aOther.m_aOrder.clone ();
+    m_nSize = aOther.m_nSize;
+  }
+
+  /**
+   * @param code
+   *        option code
+   * @return the option, <code>null</code> if not present
+   */
+  DHCPOption get (final byte code)
+  {
+    return m_aSlots[code & 0xFF];
+  }
+
+  /**
+   * @param code
+   *        option code
+   * @return <code>true</code> if the option is present
+   */
+  boolean contains (final byte code)
+  {
+    return m_aSlots[code & 0xFF] != null;
+  }
+
+  /**
+   * Add an option, or replace the option with the same code keeping its
+   * position.
+   *
+   * @param opt
+   *        the option, not <code>null</code>
+   */
+  void put (final DHCPOption opt)
+  {
+    final int slot = opt.getCode () & 0xFF;
+    if (m_aSlots[slot] == null)
+    {
+      if (m_nSize == m_aOrder.length)
+        m_aOrder = Arrays.copyOf (m_aOrder, m_nSize * 2);
+      m_aOrder[m_nSize++] = opt.getCode ();
+      m_nModCount++;
+    }
+    m_aSlots[slot] = opt;
+  }
+
+  /**
+   * Remove an option, if present.
+   *
+   * @param code
+   *        option code
+   */
+  void remove (final byte code)
+  {
+    final int slot = code & 0xFF;
+    if (m_aSlots[slot] == null)
+      return;
+
+    m_aSlots[slot] = null;
+    for (int i = 0; i < m_nSize; i++)
+      if (m_aOrder[i] == code)
+      {
+        System.arraycopy (m_aOrder, i + 1, m_aOrder, i, m_nSize - i - 1);
+        m_nSize--;
+        break;
+      }
+    m_nModCount++;
+  }
+
+  /**
+   * Remove all options.
+   */
+  void clear ()
+  {
+    for (int i = 0; i < m_nSize; i++)
+      m_aSlots[m_aOrder[i] & 0xFF] = null;
+    m_nSize = 0;
+    m_nModCount++;
+  }
+
+  /**
+   * @return the number of options.
+   */
+  int size ()
+  {
+    return m_nSize;
+  }
+
+  /**
+   * @return <code>true</code> if there is no option.
+   */
+  boolean isEmpty ()
+  {
+    return m_nSize == 0;
+  }
+
+  /**
+   * @return the options in insertion order, as an array.
+   */
+  DHCPOption [] toArray ()
+  {
+    final DHCPOption [] opts = new DHCPOption [m_nSize];
+    for (int i = 0; i < m_nSize; i++)
+      opts[i] = m_aSlots[m_aOrder[i] & 0xFF];
+    return opts;
+  }
+
+  /**
+   * @return a read-only live view of the options, in insertion order.
+   */
+  Collection <DHCPOption> values ()
+  {
+    return new AbstractCollection <DHCPOption> ()
+    {
+      @Override
+      public Iterator <DHCPOption> iterator ()
+      {
+        return new Iterator <DHCPOption> ()
+        {
+          private final int m_nExpectedModCount = m_nModCount;
+          private int m_nNext;
+
+          public boolean hasNext ()
+          {
+            return m_nNext < m_nSize;
+          }
+
+          public DHCPOption next ()
+          {
+            if (m_nModCount != m_nExpectedModCount)
+              throw new ConcurrentModificationException ();
+            if (m_nNext >= m_nSize)
+              throw new NoSuchElementException ();
+            return m_aSlots[m_aOrder[m_nNext++] & 0xFF];
+          }
+        };
+      }
+
+      @Override
+      public int size ()
+      {
+        return m_nSize;
+      }
+
+      @Override
+      public boolean contains (final Object o)
+      {
+        return o instanceof DHCPOption && o.equals (get (((DHCPOption) o).getCode ()));
+      }
+    };
+  }
+
+  /**
+   * Two tables are equal if they hold the same options, regardless of order.
+   */
+  @Override
+  public boolean equals (final Object o)
+  {
+    if (o == this)
+      return true;
+    if (!(o instanceof DHCPOptionTable))
+      return false;
+    final DHCPOptionTable rhs = (DHCPOptionTable) o;
+    return m_nSize == rhs.m_nSize && Arrays.equals (m_aSlots, rhs.m_aSlots);
+  }
+
+  @Override
+  public int hashCode ()
+  {
+    int h = 0;
+    for (int i = 0; i < m_nSize; i++)
+      h += m_aSlots[m_aOrder[i] & 0xFF].hashCode ();
+    return h;
+  }
+}
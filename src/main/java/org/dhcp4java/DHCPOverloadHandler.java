@@ -0,0 +1,177 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides what happens to a request when the dispatch queue of
+ * <code>DHCPCoreServer</code> is full, or its virtual thread limit reached.
+ * <p>
+ * Three policies are available:
+ * <ul>
+ * <li><code>drop-newest</code>: the incoming request is discarded,</li>
+ * <li><code>drop-oldest</code>: the request waiting the longest in the queue is
+ * discarded (the client has most likely retransmitted it already) and the
+ * incoming one is queued,</li>
+ * <li><code>caller-runs</code>: the receive loop runs the servlet itself, which
+ * stops reading the socket until it is done.</li>
+ * </ul>
+ * With <code>priority</code> scheduling, a full queue first sheds its oldest
+ * normal priority request to make room for a high priority one, whatever the
+ * drop policy.
+ * <p>
+ * Discarded requests are counted instead of being reported one by one, so that
+ * an overloaded server does not spend its time logging.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+final class DHCPOverloadHandler implements RejectedExecutionHandler
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (DHCPOverloadHandler.class);
+
+  private final String m_sPolicy;
+  private final AtomicLong m_aShedCount = new AtomicLong ();
+  private final AtomicLong m_aCallerRunsCount = new AtomicLong ();
+
+  /**
+   * @param sPolicy
+   *        one of <code>drop-newest</code>, <code>drop-oldest</code> or
+   *        <code>caller-runs</code>
+   * @throws DHCPServerInitException
+   *         the policy is unknown
+   */
+  DHCPOverloadHandler (final String sPolicy) throws DHCPServerInitException
+  {
+    if (!DHCPCoreServer.OVERLOAD_DROP_NEWEST.equals (sPolicy) &&
+        !DHCPCoreServer.OVERLOAD_DROP_OLDEST.equals (sPolicy) &&
+        !DHCPCoreServer.OVERLOAD_CALLER_RUNS.equals (sPolicy))
+      throw new DHCPServerInitException ("Unsupported " + DHCPCoreServer.SERVER_OVERLOAD_POLICY + ": " + sPolicy);
+    m_sPolicy = sPolicy;
+  }
+
+  public void rejectedExecution (final Runnable aTask, final ThreadPoolExecutor aExecutor)
+  {
+    if (aExecutor.isShutdown ())
+    {
+      // server is stopping, nothing to count
+      _discard (aTask);
+      return;
+    }
+
+    if (DHCPCoreServer.OVERLOAD_CALLER_RUNS.equals (m_sPolicy))
+    {
+      m_aCallerRunsCount.incrementAndGet ();
+      aTask.run ();
+      return;
+    }
+
+    // with priority scheduling, normal requests make room for urgent ones
+    final DHCPPriorityQueue aPriorityQueue = aExecutor.getQueue () instanceof DHCPPriorityQueue ? (DHCPPriorityQueue) aExecutor.getQueue ()
+                                                                                              : null;
+    if (aPriorityQueue != null &&
+        (DHCPCoreServer.OVERLOAD_DROP_OLDEST.equals (m_sPolicy) ||
+         (aTask instanceof DHCPPriorityQueue.Prioritized && ((DHCPPriorityQueue.Prioritized) aTask).isHighPriority ())))
+    {
+      final Runnable aVictim = aPriorityQueue.pollLowPriority ();
+      if (aVictim != null)
+      {
+        _shed (aVictim);
+        aExecutor.execute (aTask);
+        return;
+      }
+    }
+
+    if (DHCPCoreServer.OVERLOAD_DROP_OLDEST.equals (m_sPolicy))
+    {
+      final Runnable aOldest = aExecutor.getQueue ().poll ();
+      if (aOldest != null)
+        _shed (aOldest);
+      aExecutor.execute (aTask);
+    }
+    else
+      _shed (aTask);
+  }
+
+  /**
+   * Called by an executor without queue when it cannot run a task:
+   * <code>caller-runs</code> runs it in the calling thread, the other policies
+   * discard it.
+   *
+   * @param aTask
+   *        the rejected task
+   */
+  void rejectedWithoutQueue (final Runnable aTask)
+  {
+    if (DHCPCoreServer.OVERLOAD_CALLER_RUNS.equals (m_sPolicy))
+    {
+      m_aCallerRunsCount.incrementAndGet ();
+      aTask.run ();
+    }
+    else
+      _shed (aTask);
+  }
+
+  private void _shed (final Runnable aTask)
+  {
+    final long nShed = m_aShedCount.incrementAndGet ();
+    if (s_aLogger.isDebugEnabled ())
+      s_aLogger.debug ("Dispatch queue full, request dropped (" + nShed + " so far)");
+    _discard (aTask);
+  }
+
+  private static void _discard (final Runnable aTask)
+  {
+    // give back resources held by the request
+    if (aTask instanceof DHCPServletChannelDispatcher)
+      ((DHCPServletChannelDispatcher) aTask).discard ();
+  }
+
+  /**
+   * @return the overload policy.
+   */
+  String getPolicy ()
+  {
+    return m_sPolicy;
+  }
+
+  /**
+   * @return the number of requests dropped because the queue was full.
+   */
+  long getShedCount ()
+  {
+    return m_aShedCount.get ();
+  }
+
+  /**
+   * @return the number of requests run by the receive loop because the queue
+   *         was full.
+   */
+  long getCallerRunsCount ()
+  {
+    return m_aCallerRunsCount.get ();
+  }
+}
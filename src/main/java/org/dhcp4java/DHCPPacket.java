@@ -20,7 +20,9 @@
 package org.dhcp4java;
 
 import static org.dhcp4java.DHCPConstants.BOOTREPLY;
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_MAX_MESSAGE_SIZE;
 import static org.dhcp4java.DHCPConstants.DHO_DHCP_MESSAGE_TYPE;
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_OPTION_OVERLOAD;
 import static org.dhcp4java.DHCPConstants.DHO_END;
 import static org.dhcp4java.DHCPConstants.DHO_PAD;
 import static org.dhcp4java.DHCPConstants.HTYPE_ETHER;
@@ -30,24 +32,20 @@ import static org.dhcp4java.DHCPConstants._BOOT_NAMES;
 import static org.dhcp4java.DHCPConstants._DHCP_DEFAULT_MAX_LEN;
 import static org.dhcp4java.DHCPConstants._DHCP_MAX_MTU;
 import static org.dhcp4java.DHCPConstants._HTYPE_NAMES;
+import static org.dhcp4java.DHCPConstants._IP_UDP_OVERHEAD;
 import static org.dhcp4java.DHCPConstants._MAGIC_COOKIE;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
 import java.io.Serializable;
 import java.net.DatagramPacket;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -336,9 +334,16 @@ import org.slf4j.LoggerFactory;
  * threads in real life DHPC servers or clients. Multi-threading acces to an
  * instance of this class is at your own risk.
  * <p>
- * <b>Limitations</b>: this class doesn't support spanned options or options
- * longer than 256 bytes. It does not support options stored in
- * <code>sname</code> or <code>file</code> fields.
+ * <b>Long options</b>: an option present more than once in a datagram is
+ * parsed as the concatenation of its instances, and an option longer than 255
+ * bytes is serialized as several consecutive instances (rfc 3396).
+ * <p>
+ * <b>Option overload</b>: options stored in the <code>file</code> and
+ * <code>sname</code> fields, as announced by DHO_DHCP_OPTION_OVERLOAD(52), are
+ * parsed with the other options; the fields are then cleared and the overload
+ * option removed. When the options do not fit in the maximum size given to
+ * <code>serialize()</code>, they spill into these fields if they are empty
+ * (rfc 2131).
  * <p>
  * This API is originally a port from my PERL <code><a href=
  *          "http://search.cpan.org/~shadinger/">Net::DHCP</a></code> api.
@@ -351,6 +356,11 @@ import org.slf4j.LoggerFactory;
 public class DHCPPacket implements Cloneable, Serializable
 {
   private static final Logger s_aLogger = LoggerFactory.getLogger (DHCPPacket.class);
+  // results of _getOptionNum() when there is no value
+  private static final long OPTION_ABSENT = -1;
+  private static final long OPTION_BAD_SIZE = -2;
+  // flag of _indexCodes() tables, the code has several instances
+  private static final int CODE_REPEATED = 1 << 30;
 
   // user defined comment
   // Free user-defined comment
@@ -389,11 +399,23 @@ public class DHCPPacket implements Cloneable, Serializable
   // ----------------------------------------------------------------------
   // options part of the packet
 
-  // DHCP options
-  // Invariant 1: K is identical to V.getCode()
+  // DHCP options, in creation order
+  // Invariant 1: an option is stored in the slot of its code
   // Invariant 2: V.value is never <code>null</code>
-  // Invariant 3; K is not 0 (PAD) and not -1 (END)
-  private Map <Byte, DHCPOption> m_aOptions;
+  // Invariant 3; code is not 0 (PAD) and not -1 (END)
+  private DHCPOptionTable m_aOptions;
+  // lazily decoded options, see getPacketLazy()
+  // copy of the options field, options are decoded on first access
+  private byte [] m_aLazyData;
+  // one entry per option in wire order: offset of the code in m_aLazyData
+  // shifted left by 8, ORed with the (possibly truncated) value length
+  // Invariant 4: m_aOptions is empty when m_aLazyIndex is not null
+  private int [] m_aLazyIndex;
+  private int m_nLazyCount;
+  // options already decoded, same indices as m_aLazyIndex
+  private DHCPOption [] m_aLazyOptions;
+  // per unsigned option code, see _indexCodes()
+  private int [] m_aLazyCodes;
   // well-formed DHCP Packet ?
   private boolean m_bIsDhcp;
   // are the option truncated
@@ -409,6 +431,13 @@ public class DHCPPacket implements Cloneable, Serializable
   private InetAddress m_aAddress;
   private int m_nPort;
 
+  // ----------------------------------------------------------------------
+  // pooling, see DHCPPacketPool
+  // pool the packet was acquired from, null when not in use from a pool
+  private transient DHCPPacketPool m_aPool;
+  // set while the packet sits in a pool in debug mode, any access fails
+  private transient boolean m_bReleased;
+
   /**
    * Constructor for the <code>DHCPPacket</code> class.
    * <p>
@@ -430,7 +459,7 @@ public class DHCPPacket implements Cloneable, Serializable
     m_aFile = new byte [128];
     m_aPadding = new byte [0];
     m_bIsDhcp = true;
-    m_aOptions = new LinkedHashMap <> ();
+    m_aOptions = new DHCPOptionTable ();
   }
 
   /**
@@ -492,6 +521,74 @@ public class DHCPPacket implements Cloneable, Serializable
     return packet;
   }
 
+  /**
+   * Factory for creating <code>DHCPPacket</code> objects by parsing a
+   * <code>DatagramPacket</code> object, decoding options lazily.
+   * <p>
+   * Parsing only records where each option lies; the <code>DHCPOption</code>
+   * objects are created when first read through <code>getOption()</code> or
+   * one of the <code>getOptionAsXXX()</code> methods. All options are decoded
+   * at once by methods working on the whole set of options, such as
+   * <code>getOptionsCollection()</code>, <code>setOption()</code>,
+   * <code>serialize()</code> or <code>equals()</code>.
+   * <p>
+   * The resulting object behaves exactly like one returned by
+   * <code>getPacket()</code>; the datagram buffer is not referenced after
+   * parsing.
+   *
+   * @param datagram
+   *        the UDP datagram received to be parsed
+   * @return the newly create <code>DHCPPacket</code> instance
+   * @throws DHCPBadPacketException
+   *         the datagram is malformed and cannot be parsed properly.
+   * @throws IllegalArgumentException
+   *         datagram is <code>null</code>
+   */
+  public static DHCPPacket getPacketLazy (final DatagramPacket datagram) throws DHCPBadPacketException
+  {
+    if (datagram == null)
+      throw new IllegalArgumentException ("datagram is null");
+
+    final DHCPPacket packet = new DHCPPacket ();
+    // all parameters are checked in marshall()
+    packet.marshall (datagram.getData (),
+                     datagram.getOffset (),
+                     datagram.getLength (),
+                     datagram.getAddress (),
+                     datagram.getPort (),
+                     true, // strict mode by default
+                     true);
+    return packet;
+  }
+
+  /**
+   * Factory for creating <code>DHCPPacket</code> objects by parsing a
+   * <code>byte[]</code>, decoding options lazily. See
+   * <code>getPacketLazy(DatagramPacket)</code>.
+   *
+   * @param buf
+   *        buffer for holding the incoming datagram.
+   * @param offset
+   *        the offset for the buffer.
+   * @param length
+   *        the number of bytes to read.
+   * @param strict
+   *        do we parse in strict mode?
+   * @return the newly create <code>DHCPPacket</code> instance
+   * @throws DHCPBadPacketException
+   *         the datagram is malformed.
+   */
+  public static DHCPPacket getPacketLazy (final byte [] buf,
+                                          final int offset,
+                                          final int length,
+                                          final boolean strict) throws DHCPBadPacketException
+  {
+    final DHCPPacket packet = new DHCPPacket ();
+    // all parameters are checked in marshall()
+    packet.marshall (buf, offset, length, null, 0, strict, true);
+    return packet;
+  }
+
   /**
    * Returns a copy of this <code>DHCPPacket</code>.
    * <p>
@@ -502,8 +599,10 @@ public class DHCPPacket implements Cloneable, Serializable
   @Override
   public DHCPPacket clone ()
   {
+    _checkLive ();
     try
     {
+      _decodeLazyOptions ();
       final DHCPPacket p = (DHCPPacket) super.clone ();
 
       // specifically cloning arrays to avoid side-effects
@@ -515,11 +614,13 @@ public class DHCPPacket implements Cloneable, Serializable
       p.m_aSname = m_aSname.clone ();
       p.m_aFile = m_aFile.clone ();
       // p.options = options.clone();
-      p.m_aOptions = new LinkedHashMap <> (m_aOptions);
+      p.m_aOptions = new DHCPOptionTable (m_aOptions);
       p.m_aPadding = m_aPadding.clone ();
 
       // freshly new object, it is not considered as corrupt
       p.m_bTruncated = false;
+      // the copy is not owned by any pool
+      p.m_aPool = null;
 
       return p;
     }
@@ -530,6 +631,72 @@ public class DHCPPacket implements Cloneable, Serializable
     }
   }
 
+  /**
+   * Resets this <code>DHCPPacket</code> to the state of a newly created one,
+   * reusing its buffers.
+   * <p>
+   * This is used by <code>DHCPPacketPool</code> to recycle packets, and can be
+   * called directly to reuse a packet for another request.
+   */
+  public void reset ()
+  {
+    _checkLive ();
+    m_sComment = "";
+    m_nOp = BOOTREPLY;
+    m_nHtype = HTYPE_ETHER;
+    m_nHlen = 6;
+    m_nHops = 0;
+    m_nXid = 0;
+    m_nSecs = 0;
+    m_nFlags = 0;
+    Arrays.fill (m_aCiaddr, (byte) 0);
+    Arrays.fill (m_aYiaddr, (byte) 0);
+    Arrays.fill (m_aSiaddr, (byte) 0);
+    Arrays.fill (m_aGiaddr, (byte) 0);
+    Arrays.fill (m_aChaddr, (byte) 0);
+    Arrays.fill (m_aSname, (byte) 0);
+    Arrays.fill (m_aFile, (byte) 0);
+    if (m_aPadding.length != 0)
+      m_aPadding = new byte [0];
+    _clearLazyOptions ();
+    m_aOptions.clear ();
+    m_bIsDhcp = true;
+    m_bTruncated = false;
+    m_aAddress = null;
+    m_nPort = 0;
+  }
+
+  /**
+   * @return the pool this packet was acquired from, <code>null</code> if it is
+   *         not in use from a pool.
+   */
+  DHCPPacketPool getPool ()
+  {
+    return m_aPool;
+  }
+
+  void setPool (final DHCPPacketPool pool)
+  {
+    m_aPool = pool;
+  }
+
+  void setReleased (final boolean released)
+  {
+    m_bReleased = released;
+  }
+
+  /**
+   * Fails if the packet has been given back to a pool in debug mode.
+   *
+   * @throws IllegalStateException
+   *         the packet is used after release
+   */
+  private void _checkLive ()
+  {
+    if (m_bReleased)
+      throw new IllegalStateException ("DHCPPacket used after being released to its pool");
+  }
+
   /**
    * Returns true if 2 instances of <code>DHCPPacket</code> represent the same
    * DHCP packet.
@@ -547,6 +714,8 @@ public class DHCPPacket implements Cloneable, Serializable
       return false;
 
     final DHCPPacket rhs = (DHCPPacket) o;
+    _decodeLazyOptions ();
+    rhs._decodeLazyOptions ();
     // we deliberately ignore "truncated" since it is reset when cloning
     return m_sComment.equals (rhs.m_sComment) &&
            m_nOp == rhs.m_nOp &&
@@ -576,6 +745,7 @@ public class DHCPPacket implements Cloneable, Serializable
   @Override
   public int hashCode ()
   {
+    _decodeLazyOptions ();
     int h = -1;
     h ^= m_sComment.hashCode ();
     h += m_nOp;
@@ -630,16 +800,13 @@ public class DHCPPacket implements Cloneable, Serializable
     assert (m_aPadding != null); // length is free for padding
     // options
     assert (m_aOptions != null);
-    for (final Map.Entry <Byte, DHCPOption> mapEntry : m_aOptions.entrySet ())
+    assert (m_aLazyIndex == null || m_aOptions.isEmpty ());
+    for (final DHCPOption opt : m_aOptions.values ())
     {
-      final Byte key = mapEntry.getKey ();
-      final DHCPOption opt = mapEntry.getValue ();
-
-      assert (key != null);
-      assert (key.byteValue () != DHO_PAD);
-      assert (key.byteValue () != DHO_END);
       assert (opt != null);
-      assert (opt.getCode () == key.byteValue ());
+      assert (opt.getCode () != DHO_PAD);
+      assert (opt.getCode () != DHO_END);
+      assert (m_aOptions.get (opt.getCode ()) == opt);
       assert (opt.getValueFast () != null);
     }
   }
@@ -675,6 +842,47 @@ public class DHCPPacket implements Cloneable, Serializable
                                  final int port0,
                                  final boolean strict)
   {
+    return marshall (buffer, offset, length, address0, port0, strict, false);
+  }
+
+  /**
+   * Convert a specified byte array containing a DHCP message into a DHCPMessage
+   * object, optionally deferring the decoding of options.
+   *
+   * @return a DHCPMessage object with information from byte array.
+   * @param buffer
+   *        byte array to convert to a DHCPMessage object
+   * @param offset
+   *        starting offset for the buffer
+   * @param length
+   *        length of the buffer
+   * @param address0
+   *        the address from which the packet was sent, or <code>null</code>
+   * @param port0
+   *        the port from which the packet was sent
+   * @param strict
+   *        do we read in strict mode?
+   * @param lazy
+   *        <code>true</code> to only index options, and decode them on first
+   *        access
+   * @throws IllegalArgumentException
+   *         if buffer is <code>null</code>...
+   * @throws IndexOutOfBoundsException
+   *         offset..offset+length is out of buffer bounds
+   * @throws DHCPBadPacketException
+   *         datagram is malformed
+   * @throws IllegalStateException
+   *         the packet is used after release
+   */
+  protected DHCPPacket marshall (final byte [] buffer,
+                                 final int offset,
+                                 final int length,
+                                 final InetAddress address0,
+                                 final int port0,
+                                 final boolean strict,
+                                 final boolean lazy)
+  {
+    _checkLive ();
     // do some basic sanity checks
     // ibuff, offset & length are valid?
     if (buffer == null)
@@ -689,15 +897,12 @@ public class DHCPPacket implements Cloneable, Serializable
     // absolute minimum size for a valid packet
     if (length < _BOOTP_ABSOLUTE_MIN_LEN)
     {
-      throw new DHCPBadPacketException ("DHCP Packet too small (" +
-                                        length +
-                                        ") absolute minimum is " +
-                                        _BOOTP_ABSOLUTE_MIN_LEN);
+      throw _reject (DHCPRejectReason.TOO_SMALL, length);
     }
     // maximum size for a valid DHCP packet
     if (length > _DHCP_MAX_MTU)
     {
-      throw new DHCPBadPacketException ("DHCP Packet too big (" + length + ") max MTU is " + _DHCP_MAX_MTU);
+      throw _reject (DHCPRejectReason.TOO_BIG, length);
     }
 
     // copy address and port
@@ -705,221 +910,803 @@ public class DHCPPacket implements Cloneable, Serializable
     m_aAddress = address0;
     m_nPort = port0;
 
-    // turn buffer into a readable stream
-    try (final ByteArrayInputStream inBStream = new ByteArrayInputStream (buffer, offset, length);
-         final DataInputStream inStream = new DataInputStream (inBStream))
+    // parse static part of packet, by direct indexing
+    int pos = offset;
+    m_nOp = buffer[pos];
+    m_nHtype = buffer[pos + 1];
+    m_nHlen = buffer[pos + 2];
+    m_nHops = buffer[pos + 3];
+    m_nXid = _getInt (buffer, pos + 4);
+    m_nSecs = _getShort (buffer, pos + 8);
+    m_nFlags = _getShort (buffer, pos + 10);
+    System.arraycopy (buffer, pos + 12, m_aCiaddr, 0, 4);
+    System.arraycopy (buffer, pos + 16, m_aYiaddr, 0, 4);
+    System.arraycopy (buffer, pos + 20, m_aSiaddr, 0, 4);
+    System.arraycopy (buffer, pos + 24, m_aGiaddr, 0, 4);
+    System.arraycopy (buffer, pos + 28, m_aChaddr, 0, 16);
+    System.arraycopy (buffer, pos + 44, m_aSname, 0, 64);
+    System.arraycopy (buffer, pos + 108, m_aFile, 0, 128);
+    pos += _BOOTP_ABSOLUTE_MIN_LEN;
+    final int end = offset + length;
+
+    // check for DHCP MAGIC_COOKIE
+    if (end - pos < 4)
     {
-      // parse static part of packet
-      m_nOp = inStream.readByte ();
-      m_nHtype = inStream.readByte ();
-      m_nHlen = inStream.readByte ();
-      m_nHops = inStream.readByte ();
-      m_nXid = inStream.readInt ();
-      m_nSecs = inStream.readShort ();
-      m_nFlags = inStream.readShort ();
-      inStream.readFully (m_aCiaddr, 0, 4);
-      inStream.readFully (m_aYiaddr, 0, 4);
-      inStream.readFully (m_aSiaddr, 0, 4);
-      inStream.readFully (m_aGiaddr, 0, 4);
-      inStream.readFully (m_aChaddr, 0, 16);
-      inStream.readFully (m_aSname, 0, 64);
-      inStream.readFully (m_aFile, 0, 128);
-
-      // check for DHCP MAGIC_COOKIE
-      m_bIsDhcp = true;
-      // read ahead 4 bytes
-      inBStream.mark (4);
-      if (inStream.readInt () != _MAGIC_COOKIE)
+      // a cookie cannot be told apart from BOOTP vendor data
+      throw _reject (DHCPRejectReason.TRUNCATED_MAGIC_COOKIE, length);
+    }
+    m_bIsDhcp = _getInt (buffer, pos) == _MAGIC_COOKIE;
+
+    if (m_bIsDhcp)
+    {
+      pos += 4;
+      if (lazy)
       {
-        m_bIsDhcp = false;
-        // re-read the 4 bytes
-        inBStream.reset ();
+        // keep a copy of the options, and only index them
+        m_aLazyData = Arrays.copyOfRange (buffer, pos, end);
+        pos += _indexLazyOptions ();
       }
-
-      if (m_bIsDhcp)
+      else
       {
         // is it a full DHCP packet or a simple BOOTP?
         // DHCP Packet: parsing options
-        int type = 0;
+        byte type = 0;
+        // options in wire order, same encoding as m_aLazyIndex
+        int [] index = new int [16];
+        int count = 0;
 
-        while (true)
+        while (pos < end)
         {
-          int r = inBStream.read ();
-          if (r < 0)
-          {
-            // EOF
-            break;
-          }
-
-          type = (byte) r;
+          type = buffer[pos++];
 
           if (type == DHO_PAD)
           {
             // skip Padding
             continue;
           }
-          if (type == DHO_END)
+          if (type == DHO_END || pos >= end)
           {
-            // break if end of options
+            // break if end of options, or EOF
             break;
           }
 
-          r = inBStream.read ();
-          if (r < 0)
+          final int len = Math.min (buffer[pos++] & 0xFF, end - pos);
+          if (count == index.length)
+            index = Arrays.copyOf (index, count * 2);
+          index[count++] = (pos - 2) << 8 | len;
+          pos += len;
+        }
+        // truncated options?
+        m_bTruncated = (type != DHO_END);
+
+        // store options, repeated ones are concatenated (rfc 3396)
+        final int [] codes = new int [256];
+        _indexCodes (buffer, index, count, codes);
+        _putOptions (buffer, index, count, codes, null, false);
+      }
+      if (strict && m_bTruncated)
+      {
+        throw _reject (DHCPRejectReason.TRUNCATED_OPTIONS, length);
+      }
+      // options spilled in file and sname
+      _parseOverload ();
+    }
+
+    // put the remaining in padding
+    m_aPadding = Arrays.copyOfRange (buffer, pos, end);
+    // final verifications (if assertions are activated)
+    _assertInvariants ();
+
+    return this;
+  }
+
+  /**
+   * Exception thrown when rejecting a datagram: the preallocated one of the
+   * reason, without stack trace, unless debug logging is enabled, in which
+   * case a new one carries the datagram length and the stack trace.
+   *
+   * @param reason
+   *        why the datagram is rejected
+   * @param length
+   *        length of the datagram
+   * @return the exception to throw
+   */
+  private static DHCPBadPacketException _reject (final DHCPRejectReason reason, final int length)
+  {
+    if (!s_aLogger.isDebugEnabled ())
+      return reason.getException ();
+    return new DHCPBadPacketException (reason, reason.getMessage () + " (" + length + ')');
+  }
+
+  /**
+   * Checks whether a datagram can be parsed, without throwing nor allocating.
+   * <p>
+   * <code>getPacket()</code> and <code>getPacketLazy()</code> succeed exactly
+   * when this method returns <code>null</code>; otherwise they throw
+   * <code>reason.getException()</code>, the shared exception of the same
+   * reason (a new one with details when debug logging is enabled). Checking
+   * first still saves parsing the header.
+   *
+   * @param buffer
+   *        buffer holding the datagram
+   * @param offset
+   *        offset of the datagram in the buffer
+   * @param length
+   *        length of the datagram
+   * @param strict
+   *        do we check in strict mode?
+   * @return <code>null</code> if the datagram is valid, or why it is rejected
+   * @throws IllegalArgumentException
+   *         if buffer is <code>null</code> or length is negative
+   * @throws IndexOutOfBoundsException
+   *         offset..offset+length is out of buffer bounds
+   */
+  public static DHCPRejectReason validate (final byte [] buffer,
+                                           final int offset,
+                                           final int length,
+                                           final boolean strict)
+  {
+    if (buffer == null)
+      throw new IllegalArgumentException ("null buffer not allowed");
+    if (offset < 0)
+      throw new IndexOutOfBoundsException ("negative offset not allowed");
+    if (length < 0)
+      throw new IllegalArgumentException ("negative length not allowed");
+    if (buffer.length < offset + length)
+      throw new IndexOutOfBoundsException ("offset+length exceeds buffer length");
+
+    if (length < _BOOTP_ABSOLUTE_MIN_LEN)
+      return DHCPRejectReason.TOO_SMALL;
+    if (length > _DHCP_MAX_MTU)
+      return DHCPRejectReason.TOO_BIG;
+    if (length < _BOOTP_ABSOLUTE_MIN_LEN + 4)
+      return DHCPRejectReason.TRUNCATED_MAGIC_COOKIE;
+    if (!strict || _getInt (buffer, offset + _BOOTP_ABSOLUTE_MIN_LEN) != _MAGIC_COOKIE)
+      return null;
+
+    // same walk as marshall(), options must end with END
+    final int end = offset + length;
+    int pos = offset + _BOOTP_ABSOLUTE_MIN_LEN + 4;
+    while (pos < end)
+    {
+      final byte type = buffer[pos++];
+      if (type == DHO_PAD)
+        continue;
+      if (type == DHO_END)
+        return null;
+      if (pos >= end)
+        break;
+      pos += 1 + (buffer[pos] & 0xFF);
+    }
+    return DHCPRejectReason.TRUNCATED_OPTIONS;
+  }
+
+  private static int _getInt (final byte [] buffer, final int pos)
+  {
+    return (buffer[pos] & 0xFF) << 24 |
+           (buffer[pos + 1] & 0xFF) << 16 |
+           (buffer[pos + 2] & 0xFF) << 8 |
+           (buffer[pos + 3] & 0xFF);
+  }
+
+  private static short _getShort (final byte [] buffer, final int pos)
+  {
+    return (short) ((buffer[pos] & 0xFF) << 8 | (buffer[pos + 1] & 0xFF));
+  }
+
+  /**
+   * Converts the object to a byte array ready to be sent on the wire.
+   * <p>
+   * Default max size of resulting packet is 576, which is the maximum size a
+   * client can accept without explicit notice (option 57, see
+   * <code>serializeResponse()</code>)
+   *
+   * @return a byte array with information from DHCPMessage object.
+   * @throws DHCPBadPacketException
+   *         the datagram would be malformed (too small, too big...)
+   */
+  public byte [] serialize ()
+  {
+    return serialize (_getDefaultMinSize (), _DHCP_DEFAULT_MAX_LEN);
+  }
+
+  /**
+   * Converts the object to a byte array ready to be sent on the wire.
+   *
+   * @param minSize
+   *        the minimum buffer size in bytes
+   * @param maxSize
+   *        the maximum buffer size in bytes
+   * @return a byte array with information from DHCPMessage object.
+   * @throws DHCPBadPacketException
+   *         the datagram would be malformed (too small, too big...)
+   */
+  public byte [] serialize (final int minSize, final int maxSize)
+  {
+    final int overload = _getOverload (maxSize);
+    final byte [] data = new byte [_getSerializedLength (minSize, maxSize, overload)];
+    _serialize (ByteBuffer.wrap (data), data.length, maxSize, overload);
+    return data;
+  }
+
+  /**
+   * Converts the object to a byte array ready to be sent on the wire, as the
+   * response to a request.
+   * <p>
+   * The packet may be as large as the client accepts, see
+   * <code>getMaxResponseSize()</code>: options only spill into the
+   * <code>file</code> and <code>sname</code> fields if it does not fit.
+   *
+   * @param request
+   *        the request this packet answers, <code>null</code> for the default
+   *        max size of 576
+   * @param mtu
+   *        MTU of the link the response is sent on
+   * @return a byte array with information from DHCPMessage object.
+   * @throws DHCPBadPacketException
+   *         the datagram would be malformed (too small, too big...)
+   */
+  public byte [] serializeResponse (final DHCPPacket request, final int mtu)
+  {
+    final int maxSize = request == null ? _DHCP_DEFAULT_MAX_LEN : request.getMaxResponseSize (mtu);
+    return serialize (_getDefaultMinSize (), maxSize);
+  }
+
+  /**
+   * Returns the maximum size of a response to this request: the size of DHCP
+   * message the client accepts, as advertised in option 57
+   * (DHO_DHCP_MAX_MESSAGE_SIZE), bounded by the MTU of the link so that the
+   * response is not fragmented.
+   * <p>
+   * Every client accepts 576 bytes (rfc 2131), which is returned when the
+   * option is absent, malformed or below this value.
+   *
+   * @param mtu
+   *        MTU of the link, IP and UDP headers included
+   * @return the maximum size of a response in bytes, between 576 and 1500.
+   */
+  public int getMaxResponseSize (final int mtu)
+  {
+    final long n = _getOptionNum (DHO_DHCP_MAX_MESSAGE_SIZE, 2);
+    if (n < 0)
+    {
+      // absent or wrong size
+      return _DHCP_DEFAULT_MAX_LEN;
+    }
+    final int maxSize = Math.min ((int) n, Math.min (mtu - _IP_UDP_OVERHEAD, _DHCP_MAX_MTU));
+    return Math.max (maxSize, _DHCP_DEFAULT_MAX_LEN);
+  }
+
+  /**
+   * Returns the exact number of bytes <code>serializeTo()</code> and
+   * <code>serializeInto()</code> write for this packet, with the default
+   * maximum size of <code>serialize()</code>.
+   *
+   * @param minSize
+   *        the minimum size in bytes, the packet is padded with zeros up to
+   *        this size
+   * @return the size of the serialized packet
+   * @throws DHCPBadPacketException
+   *         the datagram would be malformed (too big...)
+   */
+  public int getSerializedLength (final int minSize)
+  {
+    return getSerializedLength (minSize, _DHCP_DEFAULT_MAX_LEN);
+  }
+
+  /**
+   * Returns the exact number of bytes <code>serializeTo()</code> and
+   * <code>serializeInto()</code> write for this packet.
+   *
+   * @param minSize
+   *        the minimum size in bytes, the packet is padded with zeros up to
+   *        this size
+   * @param maxSize
+   *        the maximum size in bytes, options spill into the
+   *        <code>file</code> and <code>sname</code> fields beyond it if they
+   *        are empty
+   * @return the size of the serialized packet
+   * @throws DHCPBadPacketException
+   *         the datagram would be malformed (too big...)
+   */
+  public int getSerializedLength (final int minSize, final int maxSize)
+  {
+    return _getSerializedLength (minSize, maxSize, _getOverload (maxSize));
+  }
+
+  private int _getSerializedLength (final int minSize, final int maxSize, final int overload)
+  {
+    _checkLive ();
+    _assertInvariants ();
+    int size = _BOOTP_ABSOLUTE_MIN_LEN;
+    if (m_bIsDhcp)
+    {
+      // magic cookie and END
+      size += 4 + 1;
+      if (overload != 0)
+        size += 3 + _placeOptions (null, 0, overload, _getMainCapacity (maxSize));
+      else
+        size += _getOptionsLength ();
+    }
+    size += m_aPadding.length;
+    size = Math.max (size, minSize);
+
+    // do some sanity checks
+    if (size > _DHCP_MAX_MTU)
+    {
+      throw new DHCPBadPacketException ("serialize: packet too big (" +
+                                        size +
+                                        " greater than max MAX_MTU (" +
+                                        _DHCP_MAX_MTU +
+                                        ')');
+    }
+    return size;
+  }
+
+  /**
+   * Writes the packet to a buffer, ready to be sent on the wire. Same as
+   * <code>serialize()</code>, without allocating.
+   * <p>
+   * The packet is written at the buffer position, which is advanced past the
+   * packet. Heap and direct buffers are both supported.
+   *
+   * @param buffer
+   *        the buffer to write to
+   * @return the number of bytes written
+   * @throws DHCPBadPacketException
+   *         the datagram would be malformed (too small, too big...)
+   * @throws BufferOverflowException
+   *         the packet does not fit in the remaining space of the buffer,
+   *         nothing is written
+   */
+  public int serializeTo (final ByteBuffer buffer)
+  {
+    return serializeTo (buffer, _getDefaultMinSize ());
+  }
+
+  /**
+   * Writes the packet to a buffer, ready to be sent on the wire.
+   *
+   * @param buffer
+   *        the buffer to write to, at its position
+   * @param minSize
+   *        the minimum size in bytes, the packet is padded with zeros up to
+   *        this size
+   * @return the number of bytes written
+   * @throws DHCPBadPacketException
+   *         the datagram would be malformed (too big...)
+   * @throws BufferOverflowException
+   *         the packet does not fit in the remaining space of the buffer,
+   *         nothing is written
+   */
+  public int serializeTo (final ByteBuffer buffer, final int minSize)
+  {
+    return serializeTo (buffer, minSize, _DHCP_DEFAULT_MAX_LEN);
+  }
+
+  /**
+   * Writes the packet to a buffer, ready to be sent on the wire.
+   *
+   * @param buffer
+   *        the buffer to write to, at its position
+   * @param minSize
+   *        the minimum size in bytes, the packet is padded with zeros up to
+   *        this size
+   * @param maxSize
+   *        the maximum size in bytes, see <code>serialize()</code>
+   * @return the number of bytes written
+   * @throws DHCPBadPacketException
+   *         the datagram would be malformed (too big...)
+   * @throws BufferOverflowException
+   *         the packet does not fit in the remaining space of the buffer,
+   *         nothing is written
+   */
+  public int serializeTo (final ByteBuffer buffer, final int minSize, final int maxSize)
+  {
+    final int overload = _getOverload (maxSize);
+    final int size = _getSerializedLength (minSize, maxSize, overload);
+    if (buffer.remaining () < size)
+      throw new BufferOverflowException ();
+    _serialize (buffer, size, maxSize, overload);
+    return size;
+  }
+
+  /**
+   * Writes the packet to a byte array, ready to be sent on the wire. Same as
+   * <code>serialize()</code>, into a caller supplied array.
+   *
+   * @param buffer
+   *        the array to write to
+   * @param offset
+   *        where to write the packet in the array
+   * @return the number of bytes written
+   * @throws DHCPBadPacketException
+   *         the datagram would be malformed (too small, too big...)
+   * @throws IndexOutOfBoundsException
+   *         the packet does not fit in the array, nothing is written
+   */
+  public int serializeInto (final byte [] buffer, final int offset)
+  {
+    return serializeInto (buffer, offset, _getDefaultMinSize ());
+  }
+
+  /**
+   * Writes the packet to a byte array, ready to be sent on the wire.
+   *
+   * @param buffer
+   *        the array to write to
+   * @param offset
+   *        where to write the packet in the array
+   * @param minSize
+   *        the minimum size in bytes, the packet is padded with zeros up to
+   *        this size
+   * @return the number of bytes written
+   * @throws DHCPBadPacketException
+   *         the datagram would be malformed (too big...)
+   * @throws IndexOutOfBoundsException
+   *         the packet does not fit in the array, nothing is written
+   */
+  public int serializeInto (final byte [] buffer, final int offset, final int minSize)
+  {
+    return serializeInto (buffer, offset, minSize, _DHCP_DEFAULT_MAX_LEN);
+  }
+
+  /**
+   * Writes the packet to a byte array, ready to be sent on the wire.
+   *
+   * @param buffer
+   *        the array to write to
+   * @param offset
+   *        where to write the packet in the array
+   * @param minSize
+   *        the minimum size in bytes, the packet is padded with zeros up to
+   *        this size
+   * @param maxSize
+   *        the maximum size in bytes, see <code>serialize()</code>
+   * @return the number of bytes written
+   * @throws DHCPBadPacketException
+   *         the datagram would be malformed (too big...)
+   * @throws IndexOutOfBoundsException
+   *         the packet does not fit in the array, nothing is written
+   */
+  public int serializeInto (final byte [] buffer, final int offset, final int minSize, final int maxSize)
+  {
+    final int overload = _getOverload (maxSize);
+    final int size = _getSerializedLength (minSize, maxSize, overload);
+    if (offset < 0 || buffer.length - offset < size)
+      throw new IndexOutOfBoundsException ("packet of " + size + " bytes does not fit at offset " + offset);
+    _serialize (ByteBuffer.wrap (buffer, offset, size), size, maxSize, overload);
+    return size;
+  }
+
+  /**
+   * Minimum size used by <code>serialize()</code>: most other DHCP software
+   * seems to ensure that the BOOTP 'vend' field is padded to at least 64
+   * bytes.
+   */
+  private int _getDefaultMinSize ()
+  {
+    return m_bIsDhcp ? _BOOTP_ABSOLUTE_MIN_LEN + _BOOTP_VEND_SIZE : _BOOTP_ABSOLUTE_MIN_LEN;
+  }
+
+  /**
+   * @return the number of bytes of the options on the wire, without overload.
+   */
+  private int _getOptionsLength ()
+  {
+    int len = 0;
+    for (final DHCPOption opt : getOptionsCollection ())
+    {
+      len += getEncodedOptionLength (opt.getValueFast ().length);
+    }
+    return len;
+  }
+
+  /**
+   * @return room for options in the <code>options</code> field of an
+   *         overloaded packet of <code>maxSize</code> bytes, option 52 and END
+   *         excluded
+   */
+  private int _getMainCapacity (final int maxSize)
+  {
+    return maxSize - (_BOOTP_ABSOLUTE_MIN_LEN + 4 + 3 + 1) - m_aPadding.length;
+  }
+
+  /**
+   * Choose the fields the options spill into, when they do not fit in
+   * <code>maxSize</code> bytes. Only empty <code>file</code> and
+   * <code>sname</code> fields are used, <code>file</code> first. Packets
+   * already carrying DHO_DHCP_OPTION_OVERLOAD(52) are left as is.
+   *
+   * @param maxSize
+   *        the maximum size in bytes
+   * @return the value of option 52: 1 for file, 2 for sname, 3 for both;
+   *         <code>0</code> for no overload
+   */
+  private int _getOverload (final int maxSize)
+  {
+    _checkLive ();
+    if (!m_bIsDhcp)
+      return 0;
+    final int plainSize = _BOOTP_ABSOLUTE_MIN_LEN + 4 + _getOptionsLength () + 1 + m_aPadding.length;
+    if (plainSize <= maxSize || containsOption (DHO_DHCP_OPTION_OVERLOAD))
+      return 0;
+    final int mainCapacity = _getMainCapacity (maxSize);
+    if (mainCapacity < 0)
+      return 0;
+
+    final boolean fileFree = _isEmptyField (m_aFile);
+    final boolean snameFree = _isEmptyField (m_aSname);
+    if (fileFree && _placeOptions (null, 0, 1, mainCapacity) >= 0)
+      return 1;
+    if (snameFree && _placeOptions (null, 0, 2, mainCapacity) >= 0)
+      return 2;
+    if (fileFree && snameFree && _placeOptions (null, 0, 3, mainCapacity) >= 0)
+      return 3;
+    // does not fit anyway
+    return 0;
+  }
+
+  private static boolean _isEmptyField (final byte [] field)
+  {
+    for (final byte b : field)
+      if (b != 0)
+        return false;
+    return true;
+  }
+
+  /**
+   * Place the options in the option areas, in the order they are
+   * concatenated: <code>options</code>, <code>file</code>, then
+   * <code>sname</code> (rfc 3396). An option moves whole to the next area when
+   * it does not fit, only options longer than 255 bytes are split across
+   * areas. The overloaded fields are terminated by END.
+   *
+   * @param buffer
+   *        the buffer to write to with absolute puts, <code>null</code> to only
+   *        measure
+   * @param start
+   *        index of the packet in the buffer
+   * @param overload
+   *        value of option 52
+   * @param mainCapacity
+   *        room in the <code>options</code> field
+   * @return the number of bytes used in the <code>options</code> field, or
+   *         <code>-1</code> if the options do not fit
+   */
+  private int _placeOptions (final ByteBuffer buffer, final int start, final int overload, final int mainCapacity)
+  {
+    final int [] areaStart = { start + _BOOTP_ABSOLUTE_MIN_LEN + 4 + 3,
+                               start + DHCPRawPacket.FILE_OFFSET,
+                               start + DHCPRawPacket.SNAME_OFFSET };
+    // room for END is kept in overloaded fields
+    final int [] areaCapacity = { mainCapacity,
+                                  (overload & 1) != 0 ? DHCPRawPacket.FILE_SIZE - 1 : 0,
+                                  (overload & 2) != 0 ? DHCPRawPacket.SNAME_SIZE - 1 : 0 };
+    final int [] areaUsed = new int [3];
+    int area = 0;
+
+    for (final DHCPOption opt : getOptionsCollection ())
+    {
+      final byte [] value = opt.getValueFast ();
+      int pos = 0;
+      while (true)
+      {
+        int len = Math.min (value.length - pos, 255);
+        final int room = areaCapacity[area] - areaUsed[area];
+        if (room < 2 + len)
+        {
+          if (value.length > 255 && room >= 3)
+            len = room - 2;
+          else
           {
-            // EOF
-            break;
+            if (++area == areaCapacity.length)
+              return -1;
+            continue;
           }
-
-          final int len = Math.min (r, inBStream.available ());
-          final byte [] unit_opt = new byte [len];
-          inBStream.read (unit_opt);
-
-          // store option
-          setOption (new DHCPOption ((byte) type, unit_opt));
         }
-        // truncated options?
-        m_bTruncated = (type != DHO_END);
-        if (strict && m_bTruncated)
+        if (buffer != null)
         {
-          throw new DHCPBadPacketException ("Packet seams to be truncated");
+          final int index = areaStart[area] + areaUsed[area];
+          buffer.put (index, opt.getCode ());
+          buffer.put (index + 1, (byte) len);
+          for (int i = 0; i < len; i++)
+            buffer.put (index + 2 + i, value[pos + i]);
         }
+        areaUsed[area] += 2 + len;
+        pos += len;
+        if (pos >= value.length)
+          break;
       }
+    }
+
+    if (buffer != null)
+      for (int i = 1; i < areaCapacity.length; i++)
+        if (areaCapacity[i] > 0)
+          buffer.put (areaStart[i] + areaUsed[i], DHO_END);
+    return areaUsed[0];
+  }
+
+  /**
+   * Move the options stored in the <code>file</code> and/or
+   * <code>sname</code> fields, as announced by DHO_DHCP_OPTION_OVERLOAD(52), to
+   * the options. They are concatenated to the options of the same code, in the
+   * order <code>options</code>, <code>file</code>, <code>sname</code> (rfc
+   * 3396). The overload option is then removed and the fields holding options
+   * are cleared. A malformed option 52 is kept and ignored.
+   */
+  private void _parseOverload ()
+  {
+    if (!containsOption (DHO_DHCP_OPTION_OVERLOAD))
+      return;
+    final byte [] value = getOptionRaw (DHO_DHCP_OPTION_OVERLOAD);
+    if (value.length != 1 || value[0] < 1 || value[0] > 3)
+      return;
 
-      // put the remaining in padding
-      m_aPadding = new byte [inBStream.available ()];
-      inBStream.read (m_aPadding);
-      // final verifications (if assertions are activated)
-      _assertInvariants ();
+    final int overload = value[0];
+    _decodeLazyOptions ();
+    m_aOptions.remove (DHO_DHCP_OPTION_OVERLOAD);
 
-      return this;
+    // index the fields in the order file, sname, options take 2 bytes or more
+    final byte [] data = new byte [m_aFile.length + m_aSname.length];
+    final int [] index = new int [data.length / 2];
+    int count = 0;
+    if ((overload & 1) != 0)
+    {
+      System.arraycopy (m_aFile, 0, data, 0, m_aFile.length);
+      count = _indexField (data, 0, m_aFile.length, index, count);
+      Arrays.fill (m_aFile, (byte) 0);
     }
-    catch (final IOException e)
+    if ((overload & 2) != 0)
     {
-      // unlikely with ByteArrayInputStream
-      throw new DHCPBadPacketException ("IOException: " + e.toString (), e);
+      System.arraycopy (m_aSname, 0, data, m_aFile.length, m_aSname.length);
+      count = _indexField (data, m_aFile.length, data.length, index, count);
+      Arrays.fill (m_aSname, (byte) 0);
     }
+
+    // append them to the options, each value being copied once
+    final int [] codes = new int [256];
+    _indexCodes (data, index, count, codes);
+    _putOptions (data, index, count, codes, null, true);
   }
 
   /**
-   * Converts the object to a byte array ready to be sent on the wire.
-   * <p>
-   * Default max size of resulting packet is 576, which is the maximum size a
-   * client can accept without explicit notice (option XXX)
+   * Index the options of a field holding options, up to END or the end of the
+   * field.
    *
-   * @return a byte array with information from DHCPMessage object.
-   * @throws DHCPBadPacketException
-   *         the datagram would be malformed (too small, too big...)
+   * @param data
+   *        buffer holding the field
+   * @param start
+   *        offset of the field
+   * @param end
+   *        end of the field
+   * @param index
+   *        options in wire order, encoded as in <code>m_aLazyIndex</code>,
+   *        large enough
+   * @param count
+   *        number of valid entries in <code>index</code>
+   * @return the new number of valid entries
    */
-  public byte [] serialize ()
+  private static int _indexField (final byte [] data, final int start, final int end, final int [] index, final int count)
   {
-    int minLen = _BOOTP_ABSOLUTE_MIN_LEN;
-
-    if (m_bIsDhcp)
+    int n = count;
+    int pos = start;
+    while (pos < end)
     {
-      // most other DHCP software seems to ensure that the BOOTP 'vend'
-      // field is padded to at least 64 bytes
-      minLen += _BOOTP_VEND_SIZE;
+      final byte type = data[pos++];
+      if (type == DHO_PAD)
+        continue;
+      if (type == DHO_END || pos >= end)
+        break;
+
+      final int len = Math.min (data[pos++] & 0xFF, end - pos);
+      index[n++] = (pos - 2) << 8 | len;
+      pos += len;
     }
-
-    return serialize (minLen, _DHCP_DEFAULT_MAX_LEN);
+    return n;
   }
 
   /**
-   * Converts the object to a byte array ready to be sent on the wire.
+   * Write the packet at the buffer position, the room needed having been
+   * checked by the caller.
    *
-   * @param minSize
-   *        the minimum buffer size in bytes
+   * @param buffer
+   *        the buffer to write to
+   * @param size
+   *        the size returned by <code>getSerializedLength()</code>
    * @param maxSize
-   *        the maximum buffer size in bytes
-   * @return a byte array with information from DHCPMessage object.
-   * @throws DHCPBadPacketException
-   *         the datagram would be malformed (too small, too big...)
-   */
-  public byte [] serialize (final int minSize, final int maxSize)
-  {
-    _assertInvariants ();
-    // prepare output buffer, pre-sized to maximum buffer length
-    // default buffer is half the maximum size of possible packet
-    // (this seams reasonable for most uses, worst case only doubles the buffer
-    // size once
-    final ByteArrayOutputStream outBStream = new ByteArrayOutputStream (_DHCP_MAX_MTU / 2);
-    final DataOutputStream outStream = new DataOutputStream (outBStream);
-    try
+   *        the maximum size used to choose <code>overload</code>
+   * @param overload
+   *        the value returned by <code>_getOverload()</code>
+   */
+  private void _serialize (final ByteBuffer buffer, final int size, final int maxSize, final int overload)
+  {
+    final int start = buffer.position ();
+    buffer.put (m_nOp);
+    buffer.put (m_nHtype);
+    buffer.put (m_nHlen);
+    buffer.put (m_nHops);
+    buffer.putInt (m_nXid);
+    buffer.putShort (m_nSecs);
+    buffer.putShort (m_nFlags);
+    buffer.put (m_aCiaddr, 0, 4);
+    buffer.put (m_aYiaddr, 0, 4);
+    buffer.put (m_aSiaddr, 0, 4);
+    buffer.put (m_aGiaddr, 0, 4);
+    buffer.put (m_aChaddr, 0, 16);
+    buffer.put (m_aSname, 0, 64);
+    buffer.put (m_aFile, 0, 128);
+
+    if (m_bIsDhcp)
     {
-      outStream.writeByte (m_nOp);
-      outStream.writeByte (m_nHtype);
-      outStream.writeByte (m_nHlen);
-      outStream.writeByte (m_nHops);
-      outStream.writeInt (m_nXid);
-      outStream.writeShort (m_nSecs);
-      outStream.writeShort (m_nFlags);
-      outStream.write (m_aCiaddr, 0, 4);
-      outStream.write (m_aYiaddr, 0, 4);
-      outStream.write (m_aSiaddr, 0, 4);
-      outStream.write (m_aGiaddr, 0, 4);
-      outStream.write (m_aChaddr, 0, 16);
-      outStream.write (m_aSname, 0, 64);
-      outStream.write (m_aFile, 0, 128);
+      // DHCP and not BOOTP -> magic cookie required
+      buffer.putInt (_MAGIC_COOKIE);
 
-      if (m_bIsDhcp)
+      if (overload != 0)
       {
-        // DHCP and not BOOTP -> magic cookie required
-        outStream.writeInt (_MAGIC_COOKIE);
-
-        // parse output options in creation order (LinkedHashMap)
+        // options spill into file and/or sname
+        buffer.put (DHO_DHCP_OPTION_OVERLOAD).put ((byte) 1).put ((byte) overload);
+        final int used = _placeOptions (buffer, start, overload, _getMainCapacity (maxSize));
+        buffer.position (buffer.position () + used);
+      }
+      else
+      {
+        // output options in creation order
         for (final DHCPOption opt : getOptionsCollection ())
         {
-          assert (opt != null);
-          assert (opt.getCode () != DHO_PAD);
-          assert (opt.getCode () != DHO_END);
-          assert (opt.getValueFast () != null);
-          final int size = opt.getValueFast ().length;
-          assert (size >= 0);
-          if (size > 255)
-          {
-            throw new DHCPBadPacketException ("Options larger than 255 bytes are not yet supported");
-          }
-          outStream.writeByte (opt.getCode ()); // output option code
-          outStream.writeByte (size); // output option length
-          outStream.write (opt.getValueFast ()); // output option data
+          putOption (buffer, opt.getCode (), opt.getValueFast ());
         }
-        // mark end of options
-        outStream.writeByte (DHO_END);
       }
+      // mark end of options
+      buffer.put (DHO_END);
+    }
 
-      // write padding
-      outStream.write (m_aPadding);
-
-      // add padding if the packet is too small
-      final int min_padding = minSize - outBStream.size ();
-      if (min_padding > 0)
-      {
-        final byte [] add_padding = new byte [min_padding];
-        outStream.write (add_padding);
-      }
+    // write padding
+    buffer.put (m_aPadding);
 
-      // final packet is here
-      final byte [] data = outBStream.toByteArray ();
+    // add padding if the packet is too small
+    for (int i = buffer.position () - start; i < size; i++)
+      buffer.put ((byte) 0);
+  }
 
-      // do some post sanity checks
-      if (data.length > _DHCP_MAX_MTU)
-      {
-        throw new DHCPBadPacketException ("serialize: packet too big (" +
-                                          data.length +
-                                          " greater than max MAX_MTU (" +
-                                          _DHCP_MAX_MTU +
-                                          ')');
-      }
+  /**
+   * Size of an option on the wire: options longer than 255 bytes are split in
+   * several instances of at most 255 bytes (rfc 3396).
+   *
+   * @param len
+   *        length of the option value
+   * @return the number of bytes written by <code>putOption()</code>, codes and
+   *         lengths included
+   */
+  static int getEncodedOptionLength (final int len)
+  {
+    if (len == 0)
+      return 2;
+    return len + 2 * ((len + 254) / 255);
+  }
 
-      return data;
-    }
-    catch (final IOException e)
+  /**
+   * Write an option at the buffer position, split in instances of at most 255
+   * bytes if needed (rfc 3396).
+   *
+   * @param buffer
+   *        the buffer to write to
+   * @param code
+   *        the option code
+   * @param value
+   *        the option value
+   */
+  static void putOption (final ByteBuffer buffer, final byte code, final byte [] value)
+  {
+    int pos = 0;
+    do
     {
-      // nomrally impossible with ByteArrayOutputStream
-      s_aLogger.error ("Unexpected Exception", e);
-      throw new DHCPBadPacketException ("IOException raised: " + e.toString ());
-    }
+      final int len = Math.min (value.length - pos, 255);
+      buffer.put (code); // output option code
+      buffer.put ((byte) len); // output option length
+      buffer.put (value, pos, len); // output option data
+      pos += len;
+    } while (pos < value.length);
   }
 
   // ========================================================================
@@ -935,6 +1722,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public String getAsString ()
   {
+    _checkLive ();
     final StringBuilder buffer = new StringBuilder ();
 
     try
@@ -993,7 +1781,7 @@ public class DHCPPacket implements Cloneable, Serializable
       {
         buffer.append ("\nOptions follows:");
 
-        // parse options in creation order (LinkedHashMap)
+        // parse options in creation order
         for (final DHCPOption opt : getOptionsCollection ())
         {
           buffer.append ('\n');
@@ -1033,6 +1821,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public String getComment ()
   {
+    _checkLive ();
     return m_sComment;
   }
 
@@ -1048,6 +1837,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setComment (final String comment)
   {
+    _checkLive ();
     m_sComment = comment;
   }
 
@@ -1061,9 +1851,44 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public byte [] getChaddr ()
   {
+    _checkLive ();
     return m_aChaddr.clone ();
   }
 
+  /**
+   * Returns the byte[16] chaddr buffer itself, for package classes copying it
+   * without allocating. It must not be modified.
+   *
+   * @return the chaddr field, not cloned.
+   */
+  byte [] getChaddrRef ()
+  {
+    _checkLive ();
+    return m_aChaddr;
+  }
+
+  /**
+   * Returns the client hardware address as a <code>long</code> key, without
+   * allocating, typically to index per-client state.
+   * <p>
+   * The top byte is <code>hlen</code> (capped to 16), the 56 low bits are the
+   * first <code>hlen</code> bytes of <code>chaddr</code> (at most 7) as an
+   * unsigned big-endian number. Keys are unique for hardware addresses up to 7
+   * bytes, such as Ethernet MAC addresses; longer addresses only using their
+   * first 7 bytes, they may collide.
+   *
+   * @return the hardware address key
+   */
+  public long getChaddrAsLong ()
+  {
+    _checkLive ();
+    final int hlen = Math.min (m_nHlen & 0xFF, m_aChaddr.length);
+    long key = 0;
+    for (int i = 0; i < Math.min (hlen, 7); i++)
+      key = key << 8 | (m_aChaddr[i] & 0xFF);
+    return (long) hlen << 56 | key;
+  }
+
   /**
    * Appends the chaddr field (Client hardware address - typically MAC address)
    * as a hex string to this string buffer.
@@ -1088,6 +1913,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public HardwareAddress getHardwareAddress ()
   {
+    _checkLive ();
     int len = m_nHlen & 0xff;
     if (len > 16)
     {
@@ -1108,6 +1934,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public String getChaddrAsHex ()
   {
+    _checkLive ();
     return _appendChaddrAsHex (new StringBuilder (m_nHlen & 0xFF)).toString ();
   }
 
@@ -1126,6 +1953,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setChaddr (final byte [] chaddr)
   {
+    _checkLive ();
     if (chaddr != null)
     {
       if (chaddr.length > m_aChaddr.length)
@@ -1159,6 +1987,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public InetAddress getCiaddr ()
   {
+    _checkLive ();
     try
     {
       return InetAddress.getByAddress (getCiaddrRaw ());
@@ -1179,9 +2008,21 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public byte [] getCiaddrRaw ()
   {
+    _checkLive ();
     return m_aCiaddr.clone ();
   }
 
+  /**
+   * Returns the ciaddr field as a big-endian int, without allocating.
+   *
+   * @return the ciaddr, <code>0</code> for 0.0.0.0
+   */
+  public int getCiaddrAsInt ()
+  {
+    _checkLive ();
+    return _getInt (m_aCiaddr, 0);
+  }
+
   /**
    * Sets the ciaddr field (Client IP Address).
    * <p>
@@ -1193,6 +2034,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setCiaddr (final InetAddress ciaddr)
   {
+    _checkLive ();
     if (!(ciaddr instanceof Inet4Address))
     {
       throw new IllegalArgumentException ("Inet4Address required");
@@ -1228,6 +2070,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setCiaddrRaw (final byte [] ciaddr)
   {
+    _checkLive ();
     if (ciaddr.length != 4)
     {
       throw new IllegalArgumentException ("4-byte array required");
@@ -1246,6 +2089,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public byte [] getFileRaw ()
   {
+    _checkLive ();
     return m_aFile.clone ();
   }
 
@@ -1295,6 +2139,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setFileRaw (final byte [] file)
   {
+    _checkLive ();
     if (file != null)
     {
       if (file.length > m_aFile.length)
@@ -1317,6 +2162,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public short getFlags ()
   {
+    _checkLive ();
     return m_nFlags;
   }
 
@@ -1328,6 +2174,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setFlags (final short flags)
   {
+    _checkLive ();
     m_nFlags = flags;
   }
 
@@ -1338,6 +2185,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public InetAddress getGiaddr ()
   {
+    _checkLive ();
     try
     {
       return InetAddress.getByAddress (getGiaddrRaw ());
@@ -1358,9 +2206,21 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public byte [] getGiaddrRaw ()
   {
+    _checkLive ();
     return m_aGiaddr.clone ();
   }
 
+  /**
+   * Returns the giaddr field as a big-endian int, without allocating.
+   *
+   * @return the giaddr, <code>0</code> for 0.0.0.0
+   */
+  public int getGiaddrAsInt ()
+  {
+    _checkLive ();
+    return _getInt (m_aGiaddr, 0);
+  }
+
   /**
    * Sets the giaddr field (Relay agent IP address).
    * <p>
@@ -1372,6 +2232,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setGiaddr (final InetAddress giaddr)
   {
+    _checkLive ();
     if (!(giaddr instanceof Inet4Address))
     {
       throw new IllegalArgumentException ("Inet4Address required");
@@ -1407,6 +2268,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setGiaddrRaw (final byte [] giaddr)
   {
+    _checkLive ();
     if (giaddr.length != 4)
     {
       throw new IllegalArgumentException ("4-byte array required");
@@ -1423,6 +2285,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public byte getHlen ()
   {
+    _checkLive ();
     return m_nHlen;
   }
 
@@ -1438,6 +2301,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setHlen (final byte hlen)
   {
+    _checkLive ();
     m_nHlen = hlen;
   }
 
@@ -1448,6 +2312,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public byte getHops ()
   {
+    _checkLive ();
     return m_nHops;
   }
 
@@ -1459,6 +2324,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setHops (final byte hops)
   {
+    _checkLive ();
     m_nHops = hops;
   }
 
@@ -1479,6 +2345,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public byte getHtype ()
   {
+    _checkLive ();
     return m_nHtype;
   }
 
@@ -1500,6 +2367,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setHtype (final byte htype)
   {
+    _checkLive ();
     m_nHtype = htype;
   }
 
@@ -1515,6 +2383,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public boolean isDhcp ()
   {
+    _checkLive ();
     return m_bIsDhcp;
   }
 
@@ -1535,6 +2404,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setDhcp (final boolean isDhcp)
   {
+    _checkLive ();
     m_bIsDhcp = isDhcp;
   }
 
@@ -1552,6 +2422,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public byte getOp ()
   {
+    _checkLive ();
     return m_nOp;
   }
 
@@ -1572,6 +2443,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setOp (final byte op)
   {
+    _checkLive ();
     m_nOp = op;
   }
 
@@ -1585,6 +2457,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public byte [] getPadding ()
   {
+    _checkLive ();
     return m_aPadding.clone ();
   }
 
@@ -1604,6 +2477,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setPadding (final byte [] padding)
   {
+    _checkLive ();
     m_aPadding = ((padding == null) ? new byte [0] : padding.clone ());
   }
 
@@ -1617,6 +2491,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setPaddingWithZeroes (final int nLength)
   {
+    _checkLive ();
     int length = nLength;
     if (length < 0)
     {
@@ -1636,6 +2511,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public short getSecs ()
   {
+    _checkLive ();
     return m_nSecs;
   }
 
@@ -1647,6 +2523,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setSecs (final short secs)
   {
+    _checkLive ();
     m_nSecs = secs;
   }
 
@@ -1657,6 +2534,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public InetAddress getSiaddr ()
   {
+    _checkLive ();
     try
     {
       return InetAddress.getByAddress (getSiaddrRaw ());
@@ -1677,9 +2555,21 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public byte [] getSiaddrRaw ()
   {
+    _checkLive ();
     return m_aSiaddr.clone ();
   }
 
+  /**
+   * Returns the siaddr field as a big-endian int, without allocating.
+   *
+   * @return the siaddr, <code>0</code> for 0.0.0.0
+   */
+  public int getSiaddrAsInt ()
+  {
+    _checkLive ();
+    return _getInt (m_aSiaddr, 0);
+  }
+
   /**
    * Sets the siaddr field (IP address of next server).
    * <p>
@@ -1691,6 +2581,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setSiaddr (final InetAddress siaddr)
   {
+    _checkLive ();
     if (!(siaddr instanceof Inet4Address))
     {
       throw new IllegalArgumentException ("Inet4Address required");
@@ -1726,6 +2617,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setSiaddrRaw (final byte [] siaddr)
   {
+    _checkLive ();
     if (siaddr.length != 4)
     {
       throw new IllegalArgumentException ("4-byte array required");
@@ -1744,6 +2636,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public byte [] getSnameRaw ()
   {
+    _checkLive ();
     return m_aSname.clone ();
   }
 
@@ -1793,6 +2686,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setSnameRaw (final byte [] sname)
   {
+    _checkLive ();
     if (sname != null)
     {
       if (sname.length > m_aSname.length)
@@ -1815,6 +2709,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public int getXid ()
   {
+    _checkLive ();
     return m_nXid;
   }
 
@@ -1829,6 +2724,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setXid (final int xid)
   {
+    _checkLive ();
     m_nXid = xid;
   }
 
@@ -1839,6 +2735,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public InetAddress getYiaddr ()
   {
+    _checkLive ();
     try
     {
       return InetAddress.getByAddress (getYiaddrRaw ());
@@ -1859,9 +2756,21 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public byte [] getYiaddrRaw ()
   {
+    _checkLive ();
     return m_aYiaddr.clone ();
   }
 
+  /**
+   * Returns the yiaddr field as a big-endian int, without allocating.
+   *
+   * @return the yiaddr, <code>0</code> for 0.0.0.0
+   */
+  public int getYiaddrAsInt ()
+  {
+    _checkLive ();
+    return _getInt (m_aYiaddr, 0);
+  }
+
   /**
    * Sets the yiaddr field ('your' IP address).
    * <p>
@@ -1873,6 +2782,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setYiaddr (final InetAddress yiaddr)
   {
+    _checkLive ();
     if (!(yiaddr instanceof Inet4Address))
     {
       throw new IllegalArgumentException ("Inet4Address required");
@@ -1908,6 +2818,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setYiaddrRaw (final byte [] yiaddr)
   {
+    _checkLive ();
     if (yiaddr.length != 4)
     {
       throw new IllegalArgumentException ("4-byte array required");
@@ -1928,6 +2839,25 @@ public class DHCPPacket implements Cloneable, Serializable
     return getOptionAsByte (DHO_DHCP_MESSAGE_TYPE);
   }
 
+  /**
+   * Return the DHCP Option Type as an int, without allocating.
+   * <p>
+   * Options are not decoded: this is the fastest way to dispatch a lazily
+   * parsed request.
+   *
+   * @return the message type (1 to 255), or <code>-1</code> if the option is
+   *         not present
+   * @throws DHCPBadPacketException
+   *         the option value is not 1 byte long
+   */
+  public int getDHCPMessageTypeAsInt ()
+  {
+    final long n = _getOptionNum (DHO_DHCP_MESSAGE_TYPE, 1);
+    if (n == OPTION_BAD_SIZE)
+      throw new DHCPBadPacketException ("option " + DHO_DHCP_MESSAGE_TYPE + " is wrong size, should be 1");
+    return (int) n;
+  }
+
   /**
    * Sets the DHCP Option Type.
    * <p>
@@ -1956,6 +2886,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public boolean isTruncated ()
   {
+    _checkLive ();
     return m_bTruncated;
   }
 
@@ -1973,6 +2904,129 @@ public class DHCPPacket implements Cloneable, Serializable
     return (opt != null) ? opt.getValueAsNum () : null;
   }
 
+  /**
+   * Returns a numerical option (int, short or byte) as an unsigned value,
+   * without allocating. Same as <code>getOptionAsNum()</code>.
+   *
+   * @param code
+   *        DHCP option code
+   * @return the value, or <code>-1</code> if the option is not present or not
+   *         1, 2 or 4 bytes long
+   */
+  public long getOptionAsLong (final byte code)
+  {
+    final long n = _getOptionNum (code, 0);
+    return n < 0 ? -1 : n;
+  }
+
+  /**
+   * Returns a DHCP Option as int, without allocating. Same as
+   * <code>getOptionAsInteger()</code>, check the option presence with
+   * <code>containsOption()</code> if needed.
+   *
+   * @param code
+   *        the option code.
+   * @param defaultValue
+   *        value returned if the option is not present
+   * @return the option value, <code>defaultValue</code> if the option is not
+   *         present.
+   * @throws IllegalArgumentException
+   *         the option code is not allowed by
+   *         <code>getOptionAsInteger()</code>.
+   * @throws DHCPBadPacketException
+   *         the option value in packet is of wrong size.
+   */
+  public int getOptionAsInt (final byte code, final int defaultValue)
+  {
+    if (!DHCPOption.isOptionAsInt (code))
+      throw new IllegalArgumentException ("DHCP option type (" + code + ") is not int");
+    final long n = _getOptionNum (code, 4);
+    if (n == OPTION_ABSENT)
+      return defaultValue;
+    if (n == OPTION_BAD_SIZE)
+      throw new DHCPBadPacketException ("option " + code + " is wrong size, should be 4");
+    return (int) n;
+  }
+
+  /**
+   * Returns a DHCP Option as an IPv4 address in a big-endian int, without
+   * allocating. Same as <code>getOptionAsInetAddr()</code>.
+   *
+   * @param code
+   *        the option code.
+   * @return the option value, <code>0</code> if the option is not present.
+   * @throws IllegalArgumentException
+   *         the option code is not allowed by
+   *         <code>getOptionAsInetAddr()</code>.
+   * @throws DHCPBadPacketException
+   *         the option value in packet is of wrong size.
+   */
+  public int getOptionAsInetAddrAsInt (final byte code)
+  {
+    if (!DHCPOption.isOptionAsInetAddr (code))
+      throw new IllegalArgumentException ("DHCP option type (" + code + ") is not InetAddr");
+    final long n = _getOptionNum (code, 4);
+    if (n == OPTION_ABSENT)
+      return 0;
+    if (n == OPTION_BAD_SIZE)
+      throw new DHCPBadPacketException ("option " + code + " is wrong size, should be 4");
+    return (int) n;
+  }
+
+  /**
+   * Reads an option value as an unsigned big-endian number, without decoding
+   * the option.
+   *
+   * @param code
+   *        the option code
+   * @param size
+   *        the expected value length, <code>0</code> for any of 1, 2 or 4
+   * @return the value, <code>OPTION_ABSENT</code> or
+   *         <code>OPTION_BAD_SIZE</code>
+   */
+  private long _getOptionNum (final byte code, final int size)
+  {
+    _checkLive ();
+    final byte [] data;
+    final int pos;
+    final int len;
+    if (m_aLazyIndex != null)
+    {
+      final int i = _findLazyOption (code);
+      if (i < 0)
+        return OPTION_ABSENT;
+      if ((m_aLazyCodes[code & 0xFF] & CODE_REPEATED) != 0)
+      {
+        // value spread over several instances
+        data = _decodeLazyOption (i).getValueFast ();
+        pos = 0;
+        len = data.length;
+      }
+      else
+      {
+        data = m_aLazyData;
+        pos = (m_aLazyIndex[i] >>> 8) + 2;
+        len = m_aLazyIndex[i] & 0xFF;
+      }
+    }
+    else
+    {
+      final DHCPOption opt = m_aOptions.get (code);
+      if (opt == null)
+        return OPTION_ABSENT;
+      data = opt.getValueFast ();
+      pos = 0;
+      len = data.length;
+    }
+    if (size != 0 ? len != size : len != 1 && len != 2 && len != 4)
+      return OPTION_BAD_SIZE;
+
+    long n = 0;
+    for (int i = 0; i < len; i++)
+      n = n << 8 | (data[pos + i] & 0xFF);
+    return n;
+  }
+
   /**
    * Returns a DHCP Option as Byte format. This method is only allowed for the
    * following option codes:
@@ -2376,7 +3430,11 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public DHCPOption getOption (final byte code)
   {
-    final DHCPOption opt = m_aOptions.get (Byte.valueOf (code));
+    _checkLive ();
+    if (m_aLazyIndex != null)
+      return _getLazyOption (code);
+
+    final DHCPOption opt = m_aOptions.get (code);
     // Sanity checks
     if (opt == null)
     {
@@ -2387,6 +3445,27 @@ public class DHCPPacket implements Cloneable, Serializable
     return opt;
   }
 
+  /**
+   * Returns the option decoded by a codec, see
+   * <code>DHCPOption.getValueAs()</code>.
+   * <p>
+   * The value is decoded once per option: it is kept with the option of the
+   * packet, and must not be modified.
+   *
+   * @param code
+   *        option code
+   * @param codec
+   *        the codec
+   * @return the typed value, or <code>null</code> if the option is not present.
+   * @throws DHCPBadPacketException
+   *         the option value is of wrong size, or malformed.
+   */
+  public <T> T getOptionAs (final byte code, final DHCPOptionCodec <T> codec)
+  {
+    final DHCPOption opt = getOption (code);
+    return opt == null ? null : opt.getValueAs (codec);
+  }
+
   /**
    * Tests whether an option code is present in the packet.
    *
@@ -2396,7 +3475,10 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public boolean containsOption (final byte code)
   {
-    return m_aOptions.containsKey (Byte.valueOf (code));
+    _checkLive ();
+    if (m_aLazyIndex != null)
+      return _findLazyOption (code) >= 0;
+    return m_aOptions.contains (code);
   }
 
   /**
@@ -2408,6 +3490,8 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public Collection <DHCPOption> getOptionsCollection ()
   {
+    _checkLive ();
+    _decodeLazyOptions ();
     return Collections.unmodifiableCollection (m_aOptions.values ());
   }
 
@@ -2418,7 +3502,9 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public DHCPOption [] getOptionsArray ()
   {
-    return m_aOptions.values ().toArray (new DHCPOption [m_aOptions.size ()]);
+    _checkLive ();
+    _decodeLazyOptions ();
+    return m_aOptions.toArray ();
   }
 
   /**
@@ -2464,6 +3550,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setOption (final DHCPOption opt)
   {
+    _checkLive ();
     if (opt != null)
     {
       if (opt.getValueFast () == null)
@@ -2472,7 +3559,8 @@ public class DHCPPacket implements Cloneable, Serializable
       }
       else
       {
-        m_aOptions.put (Byte.valueOf (opt.getCode ()), opt);
+        _decodeLazyOptions ();
+        m_aOptions.put (opt);
       }
     }
   }
@@ -2521,7 +3609,9 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void removeOption (final byte opt)
   {
-    m_aOptions.remove (Byte.valueOf (opt));
+    _checkLive ();
+    _decodeLazyOptions ();
+    m_aOptions.remove (opt);
   }
 
   /**
@@ -2529,9 +3619,265 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void removeAllOptions ()
   {
+    _checkLive ();
+    _clearLazyOptions ();
     m_aOptions.clear ();
   }
 
+  /**
+   * Index the options copied in <code>m_aLazyData</code>, with the same rules
+   * as the eager parsing in <code>marshall()</code>. Sets
+   * <code>m_bTruncated</code>.
+   *
+   * @return the number of bytes used by the options, END included
+   */
+  private int _indexLazyOptions ()
+  {
+    final byte [] data = m_aLazyData;
+    final int end = data.length;
+    int [] index = new int [16];
+    int count = 0;
+    byte type = 0;
+    int i = 0;
+    while (i < end)
+    {
+      type = data[i++];
+      if (type == DHO_PAD)
+        continue;
+      if (type == DHO_END || i >= end)
+        break;
+
+      final int len = Math.min (data[i++] & 0xFF, end - i);
+      if (count == index.length)
+        index = Arrays.copyOf (index, count * 2);
+      index[count++] = (i - 2) << 8 | len;
+      i += len;
+    }
+    m_bTruncated = (type != DHO_END);
+
+    m_aLazyIndex = index;
+    m_nLazyCount = count;
+    m_aLazyOptions = new DHCPOption [count];
+    m_aLazyCodes = new int [256];
+    _indexCodes (data, index, count, m_aLazyCodes);
+    return i;
+  }
+
+  /**
+   * @param code
+   *        option code
+   * @return the index in <code>m_aLazyIndex</code> of the first occurrence of
+   *         the option, <code>-1</code> if not present
+   */
+  private int _findLazyOption (final byte code)
+  {
+    return (m_aLazyCodes[code & 0xFF] & ~CODE_REPEATED) - 1;
+  }
+
+  /**
+   * Fill a table of the options of an index, by unsigned option code:
+   * <code>1 + i</code> where <code>index[i]</code> is the first instance of
+   * the code, <code>0</code> if absent, with <code>CODE_REPEATED</code> set if
+   * the code has several instances.
+   *
+   * @param data
+   *        the buffer holding the options
+   * @param index
+   *        options in wire order, encoded as in <code>m_aLazyIndex</code>
+   * @param count
+   *        number of valid entries in <code>index</code>
+   * @param codes
+   *        the 256-entry table to fill, all zeros
+   */
+  private static void _indexCodes (final byte [] data, final int [] index, final int count, final int [] codes)
+  {
+    for (int i = 0; i < count; i++)
+    {
+      final int c = data[index[i] >>> 8] & 0xFF;
+      if (codes[c] == 0)
+        codes[c] = i + 1;
+      else
+        codes[c] |= CODE_REPEATED;
+    }
+  }
+
+  /**
+   * Store all the options of an index, in linear time. The values of a
+   * repeated code are concatenated at the position of its first instance (rfc
+   * 3396): their total length is summed in a first pass, then each instance is
+   * copied once in a value allocated at its final size.
+   *
+   * @param data
+   *        the buffer holding the options
+   * @param index
+   *        options in wire order, encoded as in <code>m_aLazyIndex</code>
+   * @param count
+   *        number of valid entries in <code>index</code>
+   * @param codes
+   *        the table filled by <code>_indexCodes()</code>
+   * @param decoded
+   *        options already built, by entry of their first instance, or
+   *        <code>null</code>
+   * @param merge
+   *        <code>true</code> to append the values to the options already
+   *        stored, <code>false</code> to replace them
+   */
+  private void _putOptions (final byte [] data,
+                            final int [] index,
+                            final int count,
+                            final int [] codes,
+                            final DHCPOption [] decoded,
+                            final boolean merge)
+  {
+    // total length of the codes to concatenate
+    int [] remaining = null;
+    for (int i = 0; i < count; i++)
+    {
+      final int c = data[index[i] >>> 8] & 0xFF;
+      final DHCPOption prev = _getMergedOption (data[index[i] >>> 8], codes, i, merge);
+      if ((codes[c] & CODE_REPEATED) != 0 || prev != null)
+      {
+        if (remaining == null)
+          remaining = new int [256];
+        remaining[c] += index[i] & 0xFF;
+        if (prev != null)
+          remaining[c] += prev.getValueFast ().length;
+      }
+    }
+
+    // concatenate their instances, after the value already stored if merging
+    byte [][] values = null;
+    if (remaining != null)
+    {
+      values = new byte [256] [];
+      for (int i = 0; i < count; i++)
+      {
+        final int c = data[index[i] >>> 8] & 0xFF;
+        if (values[c] == null)
+        {
+          final DHCPOption prev = _getMergedOption (data[index[i] >>> 8], codes, i, merge);
+          if ((codes[c] & CODE_REPEATED) == 0 && prev == null)
+            continue;
+          values[c] = new byte [remaining[c]];
+          if (prev != null)
+          {
+            final byte [] prevValue = prev.getValueFast ();
+            System.arraycopy (prevValue, 0, values[c], 0, prevValue.length);
+            remaining[c] -= prevValue.length;
+          }
+        }
+        final int len = index[i] & 0xFF;
+        System.arraycopy (data, (index[i] >>> 8) + 2, values[c], values[c].length - remaining[c], len);
+        remaining[c] -= len;
+      }
+    }
+
+    // store the options at their first instance
+    for (int i = 0; i < count; i++)
+    {
+      final byte code = data[index[i] >>> 8];
+      if ((codes[code & 0xFF] & ~CODE_REPEATED) != i + 1)
+        continue;
+      DHCPOption opt = decoded == null ? null : decoded[i];
+      if (opt == null)
+      {
+        if (values != null && values[code & 0xFF] != null)
+          opt = new DHCPOption (code, values[code & 0xFF]);
+        else
+        {
+          final int pos = (index[i] >>> 8) + 2;
+          opt = new DHCPOption (code, Arrays.copyOfRange (data, pos, pos + (index[i] & 0xFF)));
+        }
+      }
+      m_aOptions.put (opt);
+    }
+  }
+
+  /**
+   * @return the option stored with the code of <code>index[i]</code>, if
+   *         merging and <code>i</code> is its first instance.
+   */
+  private DHCPOption _getMergedOption (final byte code, final int [] codes, final int i, final boolean merge)
+  {
+    if (!merge || (codes[code & 0xFF] & ~CODE_REPEATED) != i + 1)
+      return null;
+    return m_aOptions.get (code);
+  }
+
+  /**
+   * Build the option starting at <code>index[i]</code>, concatenating the
+   * values of the following instances of the same code (rfc 3396). The value
+   * is allocated once, at its final size, and each instance copied once.
+   *
+   * @param data
+   *        the buffer holding the options
+   * @param index
+   *        options in wire order, encoded as in <code>m_aLazyIndex</code>
+   * @param count
+   *        number of valid entries in <code>index</code>
+   * @param i
+   *        entry of the first instance of the option
+   * @return the option
+   */
+  private static DHCPOption _gatherOption (final byte [] data, final int [] index, final int count, final int i)
+  {
+    final byte code = data[index[i] >>> 8];
+    int total = 0;
+    for (int j = i; j < count; j++)
+      if (data[index[j] >>> 8] == code)
+        total += index[j] & 0xFF;
+
+    final byte [] value = new byte [total];
+    int n = 0;
+    for (int j = i; j < count && n < total; j++)
+      if (data[index[j] >>> 8] == code)
+      {
+        final int len = index[j] & 0xFF;
+        System.arraycopy (data, (index[j] >>> 8) + 2, value, n, len);
+        n += len;
+      }
+    return new DHCPOption (code, value);
+  }
+
+  private DHCPOption _getLazyOption (final byte code)
+  {
+    final int i = _findLazyOption (code);
+    return i < 0 ? null : _decodeLazyOption (i);
+  }
+
+  private DHCPOption _decodeLazyOption (final int i)
+  {
+    DHCPOption opt = m_aLazyOptions[i];
+    if (opt == null)
+    {
+      opt = _gatherOption (m_aLazyData, m_aLazyIndex, m_nLazyCount, i);
+      m_aLazyOptions[i] = opt;
+    }
+    return opt;
+  }
+
+  /**
+   * Decode all lazily indexed options into the options map, keeping their
+   * order. Options already returned by <code>getOption()</code> are reused.
+   */
+  private void _decodeLazyOptions ()
+  {
+    if (m_aLazyIndex == null)
+      return;
+    // a repeated option is concatenated at its first position (rfc 3396)
+    _putOptions (m_aLazyData, m_aLazyIndex, m_nLazyCount, m_aLazyCodes, m_aLazyOptions, false);
+    _clearLazyOptions ();
+  }
+
+  private void _clearLazyOptions ()
+  {
+    m_aLazyData = null;
+    m_aLazyIndex = null;
+    m_nLazyCount = 0;
+    m_aLazyOptions = null;
+    m_aLazyCodes = null;
+  }
+
   /**
    * Returns the IP address of the machine to which this datagram is being sent
    * or from which the datagram was received.
@@ -2542,6 +3888,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public InetAddress getAddress ()
   {
+    _checkLive ();
     return m_aAddress;
   }
 
@@ -2555,6 +3902,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setAddress (final InetAddress address)
   {
+    _checkLive ();
     if (address == null)
     {
       m_aAddress = null;
@@ -2579,6 +3927,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public int getPort ()
   {
+    _checkLive ();
     return m_nPort;
   }
 
@@ -2591,6 +3940,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setPort (final int port)
   {
+    _checkLive ();
     m_nPort = port;
   }
 
@@ -2601,6 +3951,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public InetSocketAddress getAddrPort ()
   {
+    _checkLive ();
     return new InetSocketAddress (m_aAddress, m_nPort);
   }
 
@@ -2613,6 +3964,7 @@ public class DHCPPacket implements Cloneable, Serializable
    */
   public void setAddrPort (final InetSocketAddress addrPort)
   {
+    _checkLive ();
     if (addrPort == null)
     {
       setAddress (null);
@@ -0,0 +1,47 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Filter run by <code>DHCPCoreServer</code> against each raw datagram, in the
+ * receive loop, before it is queued and parsed into a <code>DHCPPacket</code>.
+ * <p>
+ * Rejected datagrams are dropped silently. Filters are called concurrently by
+ * the receive loops of all listeners: they must be thread-safe, should not
+ * allocate, and must not modify the buffer. <code>DHCPRawPacket</code> gives
+ * access to the header fields and to the message type.
+ *
+ * @see DHCPPacketFilters
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+public interface DHCPPacketFilter
+{
+  /**
+   * @param aDatagram
+   *        the datagram, between position and limit. Read it with absolute
+   *        gets only.
+   * @return <code>true</code> to pass the datagram to the servlet,
+   *         <code>false</code> to drop it
+   */
+  boolean accept (ByteBuffer aDatagram);
+}
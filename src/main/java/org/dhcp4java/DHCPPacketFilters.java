@@ -0,0 +1,168 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.BOOTREQUEST;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Ready-made <code>DHCPPacketFilter</code> implementations.
+ * <p>
+ * All filters work on the raw datagram and do not allocate. Sets given at
+ * creation time are copied into sorted arrays and searched by bisection.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+public final class DHCPPacketFilters
+{
+  private static final DHCPPacketFilter BOOTREQUEST_ONLY = new DHCPPacketFilter ()
+  {
+    public boolean accept (final ByteBuffer aDatagram)
+    {
+      return DHCPRawPacket.getOp (aDatagram) == BOOTREQUEST;
+    }
+  };
+
+  private static final DHCPPacketFilter DHCP_ONLY = new DHCPPacketFilter ()
+  {
+    public boolean accept (final ByteBuffer aDatagram)
+    {
+      return DHCPRawPacket.getMessageType (aDatagram) != 0;
+    }
+  };
+
+  private DHCPPacketFilters ()
+  {}
+
+  /**
+   * @return a filter rejecting anything but BOOTREQUEST, e.g. BOOTREPLY sent
+   *         by other servers.
+   */
+  public static DHCPPacketFilter bootRequestOnly ()
+  {
+    return BOOTREQUEST_ONLY;
+  }
+
+  /**
+   * @return a filter rejecting datagrams without magic cookie or without
+   *         message type, i.e. BOOTP and junk.
+   */
+  public static DHCPPacketFilter dhcpOnly ()
+  {
+    return DHCP_ONLY;
+  }
+
+  /**
+   * @param aMessageTypes
+   *        the DHCP message types to accept
+   * @return a filter rejecting other message types, and datagrams without
+   *         message type.
+   */
+  public static DHCPPacketFilter messageTypes (final byte... aMessageTypes)
+  {
+    final boolean [] aAccepted = new boolean [256];
+    for (final byte nType : aMessageTypes)
+      aAccepted[nType & 0xFF] = true;
+    aAccepted[0] = false;
+
+    return new DHCPPacketFilter ()
+    {
+      public boolean accept (final ByteBuffer aDatagram)
+      {
+        return aAccepted[DHCPRawPacket.getMessageType (aDatagram) & 0xFF];
+      }
+    };
+  }
+
+  /**
+   * @param aRelays
+   *        the relay agents allowed, IPv6 addresses are ignored
+   * @return a filter rejecting datagrams forwarded by other relays. Datagrams
+   *         received directly (<code>giaddr</code> = 0) are accepted.
+   */
+  public static DHCPPacketFilter allowedRelays (final Collection <? extends InetAddress> aRelays)
+  {
+    final int [] aAllowed = new int [aRelays.size ()];
+    int n = 0;
+    for (final InetAddress aRelay : aRelays)
+      if (aRelay instanceof Inet4Address)
+        aAllowed[n++] = Util.inetAddress2Int (aRelay);
+    final int [] aSorted = Arrays.copyOf (aAllowed, n);
+    Arrays.sort (aSorted);
+
+    return new DHCPPacketFilter ()
+    {
+      public boolean accept (final ByteBuffer aDatagram)
+      {
+        final int nGiaddr = DHCPRawPacket.getGiaddr (aDatagram);
+        return nGiaddr == 0 || Arrays.binarySearch (aSorted, nGiaddr) >= 0;
+      }
+    };
+  }
+
+  /**
+   * @param aBlocked
+   *        the hardware addresses to block, the hardware type is not checked
+   * @return a filter rejecting datagrams from these clients.
+   */
+  public static DHCPPacketFilter blockedHardwareAddresses (final Collection <HardwareAddress> aBlocked)
+  {
+    // sorted by hash, so that candidates are found by bisection
+    final byte [] [] aAddresses = new byte [aBlocked.size ()] [];
+    int n = 0;
+    for (final HardwareAddress aAddress : aBlocked)
+      aAddresses[n++] = aAddress.getHardwareAddress ();
+    Arrays.sort (aAddresses, new Comparator <byte []> ()
+    {
+      public int compare (final byte [] a, final byte [] b)
+      {
+        return Integer.compare (Arrays.hashCode (a), Arrays.hashCode (b));
+      }
+    });
+    final int [] aHashes = new int [n];
+    for (int i = 0; i < n; i++)
+      aHashes[i] = Arrays.hashCode (aAddresses[i]);
+
+    return new DHCPPacketFilter ()
+    {
+      public boolean accept (final ByteBuffer aDatagram)
+      {
+        final int nHash = DHCPRawPacket.getHardwareAddressHash (aDatagram);
+        int i = Arrays.binarySearch (aHashes, nHash);
+        if (i < 0)
+          return true;
+        // go to the first address with this hash
+        while (i > 0 && aHashes[i - 1] == nHash)
+          i--;
+        for (; i < aHashes.length && aHashes[i] == nHash; i++)
+          if (DHCPRawPacket.hardwareAddressEquals (aDatagram, aAddresses[i]))
+            return false;
+        return true;
+      }
+    };
+  }
+}
@@ -0,0 +1,246 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import java.net.DatagramPacket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of recycled <code>DHCPPacket</code> instances.
+ * <p>
+ * <code>acquire()</code> hands out a packet in the state of a newly created
+ * one, and <code>release()</code> resets it and keeps it for a later
+ * <code>acquire()</code>. Packets are kept in stripes selected by the calling
+ * thread, each stripe being a small stack under its own lock, so that worker
+ * threads rarely contend. A stripe never holds more than its capacity: packets
+ * released to a full stripe are left to the garbage collector, and
+ * <code>acquire()</code> creates a new packet when its stripe is empty.
+ * <p>
+ * A packet must not be used after it has been released: it may already serve
+ * another request. In <i>debug</i> mode, released packets are never recycled:
+ * they are marked as released, and any later access to their header fields,
+ * options, serialization or parsing throws an
+ * <code>IllegalStateException</code>
+ * instead of silently reading the data of another client. Releasing a packet
+ * twice, or releasing a packet to a pool it was not acquired from, always
+ * throws an <code>IllegalStateException</code>.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+public final class DHCPPacketPool
+{
+  private static final int DEFAULT_STRIPE_CAPACITY = 16;
+
+  /**
+   * Recycled packets of a stripe, the first <code>m_nSize</code> entries are
+   * valid.
+   */
+  private static final class Stripe
+  {
+    private final DHCPPacket [] m_aPackets;
+    private int m_nSize;
+
+    Stripe (final int nCapacity)
+    {
+      m_aPackets = new DHCPPacket [nCapacity];
+    }
+  }
+
+  private final Stripe [] m_aStripes;
+  private final int m_nStripeMask;
+  private final boolean m_bDebug;
+  /** number of packets created because no recycled one was available. */
+  private final AtomicLong m_aCreatedCount = new AtomicLong ();
+
+  /**
+   * Create a pool with two stripes per core, of 16 packets each.
+   *
+   * @param bDebug
+   *        <code>true</code> to detect use after release instead of recycling
+   */
+  public DHCPPacketPool (final boolean bDebug)
+  {
+    this (Runtime.getRuntime ().availableProcessors () * 2, DEFAULT_STRIPE_CAPACITY, bDebug);
+  }
+
+  /**
+   * @param nStripes
+   *        number of stripes, rounded up to a power of two, must be &gt; 0
+   * @param nStripeCapacity
+   *        maximum number of packets kept by each stripe, must be &gt; 0
+   * @param bDebug
+   *        <code>true</code> to detect use after release instead of recycling
+   */
+  public DHCPPacketPool (final int nStripes, final int nStripeCapacity, final boolean bDebug)
+  {
+    if (nStripes <= 0)
+      throw new IllegalArgumentException ("number of stripes must be > 0: " + nStripes);
+    if (nStripeCapacity <= 0)
+      throw new IllegalArgumentException ("stripe capacity must be > 0: " + nStripeCapacity);
+
+    int nCount = 1;
+    while (nCount < nStripes)
+      nCount <<= 1;
+    m_aStripes = new Stripe [nCount];
+    for (int i = 0; i < nCount; i++)
+      m_aStripes[i] = new Stripe (nStripeCapacity);
+    m_nStripeMask = nCount - 1;
+    m_bDebug = bDebug;
+  }
+
+  private Stripe _getStripe ()
+  {
+    return m_aStripes[(int) Thread.currentThread ().getId () & m_nStripeMask];
+  }
+
+  /**
+   * Take a packet from the pool, or create one if none is available.
+   *
+   * @return a packet in the state of <code>new DHCPPacket()</code>, never
+   *         <code>null</code>
+   */
+  public DHCPPacket acquire ()
+  {
+    DHCPPacket packet = null;
+    if (!m_bDebug)
+    {
+      final Stripe aStripe = _getStripe ();
+      synchronized (aStripe)
+      {
+        if (aStripe.m_nSize > 0)
+        {
+          packet = aStripe.m_aPackets[--aStripe.m_nSize];
+          aStripe.m_aPackets[aStripe.m_nSize] = null;
+        }
+      }
+    }
+    if (packet == null)
+    {
+      packet = new DHCPPacket ();
+      m_aCreatedCount.incrementAndGet ();
+    }
+    packet.setPool (this);
+    return packet;
+  }
+
+  /**
+   * Parse a datagram into a packet taken from the pool, decoding options
+   * lazily. See <code>DHCPPacket.getPacketLazy()</code>.
+   *
+   * @param datagram
+   *        the UDP datagram received to be parsed
+   * @return the packet, to be released once the request is processed
+   * @throws DHCPBadPacketException
+   *         the datagram is malformed and cannot be parsed properly, the packet
+   *         is released.
+   * @throws IllegalArgumentException
+   *         datagram is <code>null</code>
+   */
+  public DHCPPacket getPacketLazy (final DatagramPacket datagram) throws DHCPBadPacketException
+  {
+    if (datagram == null)
+      throw new IllegalArgumentException ("datagram is null");
+
+    final DHCPPacket packet = acquire ();
+    try
+    {
+      // all parameters are checked in marshall()
+      packet.marshall (datagram.getData (),
+                       datagram.getOffset (),
+                       datagram.getLength (),
+                       datagram.getAddress (),
+                       datagram.getPort (),
+                       true, // strict mode by default
+                       true);
+    }
+    catch (final RuntimeException e)
+    {
+      release (packet);
+      throw e;
+    }
+    return packet;
+  }
+
+  /**
+   * Give a packet back to the pool. The packet is reset, and must not be used
+   * afterwards.
+   *
+   * @param packet
+   *        the packet previously obtained from this pool, <code>null</code> is
+   *        ignored
+   * @throws IllegalStateException
+   *         the packet was not acquired from this pool, or is already released
+   */
+  public void release (final DHCPPacket packet)
+  {
+    if (packet == null)
+      return;
+    if (packet.getPool () != this)
+      throw new IllegalStateException ("DHCPPacket not acquired from this pool, or already released");
+
+    packet.reset ();
+    packet.setPool (null);
+    if (m_bDebug)
+    {
+      // never recycled, so that a stale reference keeps failing
+      packet.setReleased (true);
+      return;
+    }
+
+    final Stripe aStripe = _getStripe ();
+    synchronized (aStripe)
+    {
+      if (aStripe.m_nSize < aStripe.m_aPackets.length)
+        aStripe.m_aPackets[aStripe.m_nSize++] = packet;
+    }
+  }
+
+  /**
+   * @param packet
+   *        a packet, may be <code>null</code>
+   * @return <code>true</code> if the packet was acquired from this pool and is
+   *         not released yet
+   */
+  public boolean owns (final DHCPPacket packet)
+  {
+    return packet != null && packet.getPool () == this;
+  }
+
+  /**
+   * @return <code>true</code> if released packets are checked instead of
+   *         recycled.
+   */
+  public boolean isDebug ()
+  {
+    return m_bDebug;
+  }
+
+  /**
+   * @return the number of packets created by <code>acquire()</code> because no
+   *         recycled packet was available.
+   */
+  public long getCreatedCount ()
+  {
+    return m_aCreatedCount.get ();
+  }
+}
@@ -0,0 +1,850 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_MESSAGE_TYPE;
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_OPTION_OVERLOAD;
+import static org.dhcp4java.DHCPConstants.DHO_END;
+import static org.dhcp4java.DHCPConstants.DHO_PAD;
+import static org.dhcp4java.DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN;
+import static org.dhcp4java.DHCPConstants._DHCP_MAX_MTU;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-only view of a DHCP datagram, decoding fields directly from the
+ * underlying buffer when they are accessed.
+ * <p>
+ * Unlike <code>DHCPPacket.getPacket()</code>, wrapping a datagram copies
+ * nothing: header fields are read on access, and options are located by
+ * scanning the <code>options</code> field each time they are requested. The
+ * parsing cost is therefore proportional to what is actually read, which suits
+ * servlets looking at a handful of fields before deciding to answer.
+ * <p>
+ * Getters follow the semantics of their <code>DHCPPacket</code> counterparts:
+ * when an option is present more than once, its instances are concatenated
+ * (rfc 3396), options stored in the <code>file</code> and <code>sname</code>
+ * fields are found when announced by DHO_DHCP_OPTION_OVERLOAD(52), and an
+ * option whose length runs past the end of the datagram is truncated. Unlike a
+ * parsed <code>DHCPPacket</code>, the view still shows option 52, and the
+ * overloaded fields as they are. Use
+ * <code>toPacket()</code> to get a mutable <code>DHCPPacket</code>, for
+ * example to build the response.
+ * <p>
+ * The view does not own the buffer: the buffer content must not change while
+ * the view is in use. In particular, a view over a receive buffer of
+ * <code>DHCPCoreServer</code> must not be kept once the request is processed.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+public final class DHCPPacketView
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (DHCPPacketView.class);
+
+  private final ByteBuffer m_aBuf;
+  private final int m_nBase;
+  private final int m_nLength;
+  private final boolean m_bIsDhcp;
+  private final InetAddress m_aAddress;
+  private final int m_nPort;
+  // value of option 52, -1 until looked up
+  private int m_nOverload = -1;
+
+  private DHCPPacketView (final ByteBuffer aBuf, final InetAddress aAddress, final int nPort)
+  {
+    m_nBase = aBuf.position ();
+    m_nLength = aBuf.remaining ();
+
+    // same limits as DHCPPacket.marshall()
+    if (m_nLength < _BOOTP_ABSOLUTE_MIN_LEN)
+    {
+      throw new DHCPBadPacketException ("DHCP Packet too small (" +
+                                        m_nLength +
+                                        ") absolute minimum is " +
+                                        _BOOTP_ABSOLUTE_MIN_LEN);
+    }
+    if (m_nLength > _DHCP_MAX_MTU)
+      throw new DHCPBadPacketException ("DHCP Packet too big (" + m_nLength + ") max MTU is " + _DHCP_MAX_MTU);
+
+    m_aBuf = aBuf;
+    m_bIsDhcp = DHCPRawPacket.isDhcp (aBuf);
+    m_aAddress = aAddress;
+    m_nPort = nPort;
+  }
+
+  /**
+   * Wrap the datagram between position and limit of a buffer. The buffer
+   * position and limit are not modified, neither now nor later.
+   *
+   * @param aBuf
+   *        the buffer holding the datagram
+   * @return the view
+   * @throws DHCPBadPacketException
+   *         the datagram is too small or too big
+   * @throws IllegalArgumentException
+   *         <code>aBuf</code> is <code>null</code>
+   */
+  public static DHCPPacketView wrap (final ByteBuffer aBuf)
+  {
+    if (aBuf == null)
+      throw new IllegalArgumentException ("null buffer not allowed");
+    return new DHCPPacketView (aBuf, null, 0);
+  }
+
+  /**
+   * Wrap a datagram held in a byte array.
+   *
+   * @param aData
+   *        buffer holding the datagram
+   * @param nOffset
+   *        offset of the datagram in the buffer
+   * @param nLength
+   *        length of the datagram
+   * @return the view
+   * @throws DHCPBadPacketException
+   *         the datagram is too small or too big
+   * @throws IllegalArgumentException
+   *         <code>aData</code> is <code>null</code>
+   * @throws IndexOutOfBoundsException
+   *         offset..offset+length is out of buffer bounds
+   */
+  public static DHCPPacketView wrap (final byte [] aData, final int nOffset, final int nLength)
+  {
+    if (aData == null)
+      throw new IllegalArgumentException ("null buffer not allowed");
+    return new DHCPPacketView (ByteBuffer.wrap (aData, nOffset, nLength), null, 0);
+  }
+
+  /**
+   * Wrap a received datagram, keeping its source address and port.
+   *
+   * @param aDatagram
+   *        the UDP datagram
+   * @return the view
+   * @throws DHCPBadPacketException
+   *         the datagram is too small or too big
+   * @throws IllegalArgumentException
+   *         <code>aDatagram</code> is <code>null</code>
+   */
+  public static DHCPPacketView wrap (final DatagramPacket aDatagram)
+  {
+    if (aDatagram == null)
+      throw new IllegalArgumentException ("datagram is null");
+    return new DHCPPacketView (ByteBuffer.wrap (aDatagram.getData (), aDatagram.getOffset (), aDatagram.getLength ()),
+                               aDatagram.getAddress (),
+                               aDatagram.getPort ());
+  }
+
+  /**
+   * Parse the datagram into a mutable <code>DHCPPacket</code>, in strict mode.
+   * <p>
+   * This is where the full parsing cost is paid; the array backing the view
+   * is parsed in place when there is one.
+   *
+   * @return a new <code>DHCPPacket</code>
+   * @throws DHCPBadPacketException
+   *         the datagram is malformed
+   */
+  public DHCPPacket toPacket ()
+  {
+    final DHCPPacket aPacket = new DHCPPacket ();
+    if (m_aBuf.hasArray ())
+      return aPacket.marshall (m_aBuf.array (),
+                               m_aBuf.arrayOffset () + m_nBase,
+                               m_nLength,
+                               m_aAddress,
+                               m_nPort,
+                               true);
+
+    final byte [] aData = new byte [m_nLength];
+    _copy (0, aData);
+    return aPacket.marshall (aData, 0, m_nLength, m_aAddress, m_nPort, true);
+  }
+
+  // ========================================================================
+  // header fields
+
+  /**
+   * @return the length of the datagram.
+   */
+  public int getLength ()
+  {
+    return m_nLength;
+  }
+
+  /**
+   * @return the op field.
+   */
+  public byte getOp ()
+  {
+    return m_aBuf.get (m_nBase);
+  }
+
+  /**
+   * @return the htype field.
+   */
+  public byte getHtype ()
+  {
+    return m_aBuf.get (m_nBase + DHCPRawPacket.HTYPE_OFFSET);
+  }
+
+  /**
+   * @return the hlen field.
+   */
+  public byte getHlen ()
+  {
+    return m_aBuf.get (m_nBase + DHCPRawPacket.HLEN_OFFSET);
+  }
+
+  /**
+   * @return the hops field.
+   */
+  public byte getHops ()
+  {
+    return m_aBuf.get (m_nBase + DHCPRawPacket.HOPS_OFFSET);
+  }
+
+  /**
+   * @return the xid field.
+   */
+  public int getXid ()
+  {
+    return m_aBuf.getInt (m_nBase + DHCPRawPacket.XID_OFFSET);
+  }
+
+  /**
+   * @return the secs field.
+   */
+  public short getSecs ()
+  {
+    return m_aBuf.getShort (m_nBase + DHCPRawPacket.SECS_OFFSET);
+  }
+
+  /**
+   * @return the flags field.
+   */
+  public short getFlags ()
+  {
+    return m_aBuf.getShort (m_nBase + DHCPRawPacket.FLAGS_OFFSET);
+  }
+
+  /**
+   * @return the ciaddr field (Client IP Address).
+   */
+  public InetAddress getCiaddr ()
+  {
+    return _getInetAddress (DHCPRawPacket.CIADDR_OFFSET);
+  }
+
+  /**
+   * @return the yiaddr field (Your client IP Address).
+   */
+  public InetAddress getYiaddr ()
+  {
+    return _getInetAddress (DHCPRawPacket.YIADDR_OFFSET);
+  }
+
+  /**
+   * @return the siaddr field (Server IP Address).
+   */
+  public InetAddress getSiaddr ()
+  {
+    return _getInetAddress (DHCPRawPacket.SIADDR_OFFSET);
+  }
+
+  /**
+   * @return the giaddr field (Relay agent IP Address).
+   */
+  public InetAddress getGiaddr ()
+  {
+    return _getInetAddress (DHCPRawPacket.GIADDR_OFFSET);
+  }
+
+  /**
+   * @return the ciaddr field as a big-endian int, without allocating.
+   */
+  public int getCiaddrAsInt ()
+  {
+    return m_aBuf.getInt (m_nBase + DHCPRawPacket.CIADDR_OFFSET);
+  }
+
+  /**
+   * @return the yiaddr field as a big-endian int, without allocating.
+   */
+  public int getYiaddrAsInt ()
+  {
+    return m_aBuf.getInt (m_nBase + DHCPRawPacket.YIADDR_OFFSET);
+  }
+
+  /**
+   * @return the siaddr field as a big-endian int, without allocating.
+   */
+  public int getSiaddrAsInt ()
+  {
+    return m_aBuf.getInt (m_nBase + DHCPRawPacket.SIADDR_OFFSET);
+  }
+
+  /**
+   * @return the giaddr field as a big-endian int, without allocating.
+   */
+  public int getGiaddrAsInt ()
+  {
+    return m_aBuf.getInt (m_nBase + DHCPRawPacket.GIADDR_OFFSET);
+  }
+
+  /**
+   * Returns a copy of the chaddr field (Client hardware address - typically
+   * MAC address). Only the first <code>hlen</code> bytes are valid.
+   *
+   * @return the chaddr field, 16 bytes.
+   */
+  public byte [] getChaddr ()
+  {
+    final byte [] aChaddr = new byte [DHCPRawPacket.CHADDR_SIZE];
+    _copy (DHCPRawPacket.CHADDR_OFFSET, aChaddr);
+    return aChaddr;
+  }
+
+  /**
+   * @return the hardware address (@MAC) as an <code>HardwareAddress</code>
+   *         object.
+   */
+  public HardwareAddress getHardwareAddress ()
+  {
+    return new HardwareAddress (getHtype (), DHCPRawPacket.getHardwareAddress (m_aBuf));
+  }
+
+  /**
+   * @return the chaddr field as hex string, first <code>hlen</code> bytes only.
+   */
+  public String getChaddrAsHex ()
+  {
+    final byte [] aChaddr = DHCPRawPacket.getHardwareAddress (m_aBuf);
+    final StringBuilder aSB = new StringBuilder (aChaddr.length * 2);
+    Util.appendHex (aSB, aChaddr);
+    return aSB.toString ();
+  }
+
+  /**
+   * @return the sname field (Server Host Name) as String.
+   */
+  public String getSname ()
+  {
+    final byte [] aSname = new byte [DHCPRawPacket.SNAME_SIZE];
+    _copy (DHCPRawPacket.SNAME_OFFSET, aSname);
+    return Util.bytesToString (aSname);
+  }
+
+  /**
+   * @return the file field (Boot File Name) as String.
+   */
+  public String getFile ()
+  {
+    final byte [] aFile = new byte [DHCPRawPacket.FILE_SIZE];
+    _copy (DHCPRawPacket.FILE_OFFSET, aFile);
+    return Util.bytesToString (aFile);
+  }
+
+  /**
+   * @return <code>true</code> if the datagram carries the DHCP magic cookie,
+   *         <code>false</code> for a BOOTP datagram.
+   */
+  public boolean isDhcp ()
+  {
+    return m_bIsDhcp;
+  }
+
+  /**
+   * Indicates that the options do not finish with an END option.
+   *
+   * @return <code>true</code> if the options are truncated
+   */
+  public boolean isTruncated ()
+  {
+    if (!m_bIsDhcp)
+      return false;
+    final int nEnd = m_nBase + m_nLength;
+    int i = m_nBase + DHCPRawPacket.OPTIONS_OFFSET;
+    while (i < nEnd)
+    {
+      final byte nCode = m_aBuf.get (i);
+      if (nCode == DHO_END)
+        return false;
+      if (nCode == DHO_PAD)
+        i++;
+      else
+        i += 2 + (i + 1 < nEnd ? m_aBuf.get (i + 1) & 0xFF : 0);
+    }
+    return true;
+  }
+
+  /**
+   * @return the address the datagram was received from, <code>null</code> if
+   *         not wrapped from a <code>DatagramPacket</code>.
+   */
+  public InetAddress getAddress ()
+  {
+    return m_aAddress;
+  }
+
+  /**
+   * @return the port the datagram was received from.
+   */
+  public int getPort ()
+  {
+    return m_nPort;
+  }
+
+  /**
+   * @return the address and port the datagram was received from,
+   *         <code>null</code> if no address.
+   */
+  public InetSocketAddress getAddrPort ()
+  {
+    return m_aAddress == null ? null : new InetSocketAddress (m_aAddress, m_nPort);
+  }
+
+  // ========================================================================
+  // options
+
+  /**
+   * Return the DHCP Option Type (option 53), without allocating an option.
+   *
+   * @return option type, or <code>null</code> if not present.
+   * @throws DHCPBadPacketException
+   *         the option value is of wrong size
+   */
+  public Byte getDHCPMessageType ()
+  {
+    final int nPos = indexOfOption (DHO_DHCP_MESSAGE_TYPE);
+    if (nPos < 0)
+      return null;
+    if (nextInstanceOfOption (nPos) >= 0)
+    {
+      // value spread over several instances
+      final byte [] aValue = getOptionRaw (DHO_DHCP_MESSAGE_TYPE);
+      if (aValue.length != 1)
+        throw new DHCPBadPacketException ("option " +
+                                          DHO_DHCP_MESSAGE_TYPE +
+                                          " is wrong size:" +
+                                          aValue.length +
+                                          " should be 1");
+      return Byte.valueOf (aValue[0]);
+    }
+    final int nLen = getOptionLength (nPos);
+    if (nLen != 1)
+      throw new DHCPBadPacketException ("option " + DHO_DHCP_MESSAGE_TYPE + " is wrong size:" + nLen + " should be 1");
+    return Byte.valueOf (m_aBuf.get (nPos + 2));
+  }
+
+  /**
+   * Tests whether an option code is present in the datagram.
+   *
+   * @param code
+   *        DHCP option code
+   * @return true if option is present
+   */
+  public boolean containsOption (final byte code)
+  {
+    return indexOfOption (code) >= 0;
+  }
+
+  /**
+   * Returns a copy of the option value, concatenated if the option is present
+   * more than once.
+   *
+   * @param code
+   *        option code
+   * @return the option value, or <code>null</code> if the option is not
+   *         present.
+   */
+  public byte [] getOptionRaw (final byte code)
+  {
+    final int nPos = indexOfOption (code);
+    if (nPos < 0)
+      return null;
+    final byte [] aValue = new byte [getOptionTotalLength (nPos)];
+    int n = 0;
+    for (int i = nPos; i >= 0; i = nextInstanceOfOption (i))
+    {
+      final int nLen = getOptionLength (i);
+      for (int j = 0; j < nLen; j++)
+        aValue[n + j] = m_aBuf.get (i + 2 + j);
+      n += nLen;
+    }
+    return aValue;
+  }
+
+  /**
+   * Returns the option as DHCPOption object. A new object is created on each
+   * call.
+   *
+   * @param code
+   *        option code
+   * @return the option, or <code>null</code> if the option is not present.
+   */
+  public DHCPOption getOption (final byte code)
+  {
+    final byte [] aValue = getOptionRaw (code);
+    return aValue == null ? null : new DHCPOption (code, aValue);
+  }
+
+  /**
+   * See <code>DHCPPacket.getOptionAsNum()</code>.
+   *
+   * @param code
+   *        DHCP option code
+   * @return Integer object or <code>null</code>
+   */
+  public Integer getOptionAsNum (final byte code)
+  {
+    final DHCPOption opt = getOption (code);
+    return opt == null ? null : opt.getValueAsNum ();
+  }
+
+  /**
+   * See <code>DHCPPacket.getOptionAsByte()</code>.
+   *
+   * @param code
+   *        the option code.
+   * @return the option value, <code>null</code> if option is not present.
+   * @throws IllegalArgumentException
+   *         the option code is not of byte format.
+   * @throws DHCPBadPacketException
+   *         the option value in packet is of wrong size.
+   */
+  public Byte getOptionAsByte (final byte code) throws IllegalArgumentException
+  {
+    final DHCPOption opt = getOption (code);
+    return opt == null ? null : Byte.valueOf (opt.getValueAsByte ());
+  }
+
+  /**
+   * See <code>DHCPPacket.getOptionAsShort()</code>.
+   *
+   * @param code
+   *        the option code.
+   * @return the option value, <code>null</code> if option is not present.
+   * @throws IllegalArgumentException
+   *         the option code is not of short format.
+   * @throws DHCPBadPacketException
+   *         the option value in packet is of wrong size.
+   */
+  public Short getOptionAsShort (final byte code) throws IllegalArgumentException
+  {
+    final DHCPOption opt = getOption (code);
+    return opt == null ? null : Short.valueOf (opt.getValueAsShort ());
+  }
+
+  /**
+   * See <code>DHCPPacket.getOptionAsInteger()</code>.
+   *
+   * @param code
+   *        the option code.
+   * @return the option value, <code>null</code> if option is not present.
+   * @throws IllegalArgumentException
+   *         the option code is not of int format.
+   * @throws DHCPBadPacketException
+   *         the option value in packet is of wrong size.
+   */
+  public Integer getOptionAsInteger (final byte code) throws IllegalArgumentException
+  {
+    final DHCPOption opt = getOption (code);
+    return opt == null ? null : Integer.valueOf (opt.getValueAsInt ());
+  }
+
+  /**
+   * See <code>DHCPPacket.getOptionAsInetAddr()</code>.
+   *
+   * @param code
+   *        the option code.
+   * @return the option value, <code>null</code> if option is not present.
+   * @throws IllegalArgumentException
+   *         the option code is not of InetAddress format.
+   * @throws DHCPBadPacketException
+   *         the option value in packet is of wrong size.
+   */
+  public InetAddress getOptionAsInetAddr (final byte code) throws IllegalArgumentException
+  {
+    final DHCPOption opt = getOption (code);
+    return opt == null ? null : opt.getValueAsInetAddr ();
+  }
+
+  /**
+   * See <code>DHCPPacket.getOptionAsString()</code>.
+   *
+   * @param code
+   *        the option code.
+   * @return the option value, <code>null</code> if option is not present.
+   * @throws IllegalArgumentException
+   *         the option code is not of String format.
+   */
+  public String getOptionAsString (final byte code) throws IllegalArgumentException
+  {
+    final DHCPOption opt = getOption (code);
+    return opt == null ? null : opt.getValueAsString ();
+  }
+
+  /**
+   * See <code>DHCPPacket.getOptionAsShorts()</code>.
+   *
+   * @param code
+   *        the option code.
+   * @return the option value array, <code>null</code> if option is not present.
+   * @throws IllegalArgumentException
+   *         the option code is not of short array format.
+   * @throws DHCPBadPacketException
+   *         the option value in packet is of wrong size.
+   */
+  public short [] getOptionAsShorts (final byte code) throws IllegalArgumentException
+  {
+    final DHCPOption opt = getOption (code);
+    return opt == null ? null : opt.getValueAsShorts ();
+  }
+
+  /**
+   * See <code>DHCPPacket.getOptionAsInetAddrs()</code>.
+   *
+   * @param code
+   *        the option code.
+   * @return the option value array, <code>null</code> if option is not present.
+   * @throws IllegalArgumentException
+   *         the option code is not of InetAddress array format.
+   * @throws DHCPBadPacketException
+   *         the option value in packet is of wrong size.
+   */
+  public InetAddress [] getOptionAsInetAddrs (final byte code) throws IllegalArgumentException
+  {
+    final DHCPOption opt = getOption (code);
+    return opt == null ? null : opt.getValueAsInetAddrs ();
+  }
+
+  /**
+   * See <code>DHCPPacket.getOptionAsBytes()</code>.
+   *
+   * @param code
+   *        the option code.
+   * @return the option value array, <code>null</code> if option is not present.
+   * @throws IllegalArgumentException
+   *         the option code is not of byte array format.
+   */
+  public byte [] getOptionAsBytes (final byte code) throws IllegalArgumentException
+  {
+    final DHCPOption opt = getOption (code);
+    return opt == null ? null : opt.getValueAsBytes ();
+  }
+
+  // ========================================================================
+  // internals
+
+  /**
+   * Scan the options for a given code.
+   *
+   * @param code
+   *        option code
+   * @return absolute index of the first occurrence of the option code, or
+   *         <code>-1</code> if not present
+   */
+  int indexOfOption (final byte code)
+  {
+    if (!m_bIsDhcp || code == DHO_PAD || code == DHO_END)
+      return -1;
+    return _scanOption (code, m_nBase + DHCPRawPacket.OPTIONS_OFFSET, 0);
+  }
+
+  /**
+   * @return the value of DHO_DHCP_OPTION_OVERLOAD(52): 1 for file, 2 for sname,
+   *         3 for both, <code>0</code> if absent or malformed
+   */
+  private int _getOverload ()
+  {
+    if (m_nOverload < 0)
+    {
+      final int nOptions = m_nBase + DHCPRawPacket.OPTIONS_OFFSET;
+      final int nPos = _scanArea (DHO_DHCP_OPTION_OVERLOAD, nOptions, m_nBase + m_nLength);
+      int nOverload = 0;
+      if (nPos >= 0 && getOptionLength (nPos) == 1)
+      {
+        nOverload = m_aBuf.get (nPos + 2);
+        if (nOverload < 1 || nOverload > 3)
+          nOverload = 0;
+      }
+      m_nOverload = nOverload;
+    }
+    return m_nOverload;
+  }
+
+  /**
+   * @param nPos
+   *        absolute index of an option code
+   * @return absolute index of the next occurrence of the same option code, or
+   *         <code>-1</code> if there is none
+   */
+  int nextInstanceOfOption (final int nPos)
+  {
+    return _scanOption (m_aBuf.get (nPos), nPos + 2 + getOptionLength (nPos), _getArea (nPos));
+  }
+
+  /**
+   * @param nPos
+   *        absolute index of the first occurrence of an option code, as
+   *        returned by <code>indexOfOption()</code>
+   * @return the length of the option value, summed over all its instances
+   */
+  int getOptionTotalLength (final int nPos)
+  {
+    int nLen = 0;
+    for (int i = nPos; i >= 0; i = nextInstanceOfOption (i))
+      nLen += getOptionLength (i);
+    return nLen;
+  }
+
+  /**
+   * Scan for an option code from a position, then in the overloaded fields
+   * following its area, in the order options, file, sname (rfc 3396).
+   *
+   * @param nStartArea
+   *        area of <code>nStart</code>: 0 for options, 1 for file, 2 for sname,
+   *        the bits of option 52
+   */
+  private int _scanOption (final byte code, final int nStart, final int nStartArea)
+  {
+    for (int nArea = nStartArea; nArea <= 2; nArea++)
+    {
+      if (nArea > 0 && (_getOverload () & nArea) == 0)
+        continue;
+      final int nFound = _scanArea (code, nArea == nStartArea ? nStart : _getAreaStart (nArea), _getAreaEnd (nArea));
+      if (nFound >= 0)
+        return nFound;
+    }
+    return -1;
+  }
+
+  private int _getArea (final int nPos)
+  {
+    if (nPos >= m_nBase + DHCPRawPacket.OPTIONS_OFFSET)
+      return 0;
+    return nPos >= m_nBase + DHCPRawPacket.FILE_OFFSET ? 1 : 2;
+  }
+
+  private int _getAreaStart (final int nArea)
+  {
+    if (nArea == 0)
+      return m_nBase + DHCPRawPacket.OPTIONS_OFFSET;
+    return m_nBase + (nArea == 1 ? DHCPRawPacket.FILE_OFFSET : DHCPRawPacket.SNAME_OFFSET);
+  }
+
+  private int _getAreaEnd (final int nArea)
+  {
+    if (nArea == 0)
+      return m_nBase + m_nLength;
+    return m_nBase + (nArea == 1 ? DHCPRawPacket.FILE_OFFSET + DHCPRawPacket.FILE_SIZE : DHCPRawPacket.SNAME_OFFSET + DHCPRawPacket.SNAME_SIZE);
+  }
+
+  private int _scanArea (final byte code, final int nStart, final int nAreaEnd)
+  {
+    final int nEnd = nAreaEnd;
+    int i = nStart;
+    while (i < nEnd)
+    {
+      final byte nCode = m_aBuf.get (i);
+      if (nCode == DHO_PAD)
+      {
+        i++;
+        continue;
+      }
+      if (nCode == DHO_END || i + 1 >= nEnd)
+        break;
+      if (nCode == code)
+        return i;
+      i += 2 + (m_aBuf.get (i + 1) & 0xFF);
+    }
+    return -1;
+  }
+
+  /**
+   * @param nPos
+   *        absolute index of an option code, as returned by
+   *        <code>indexOfOption()</code>
+   * @return the option length, truncated to the end of the datagram
+   */
+  int getOptionLength (final int nPos)
+  {
+    return Math.min (m_aBuf.get (nPos + 1) & 0xFF, _getAreaEnd (_getArea (nPos)) - nPos - 2);
+  }
+
+  /**
+   * Copy bytes of the datagram to a buffer, without changing its position.
+   *
+   * @param nOffset
+   *        offset in the datagram
+   * @param nLength
+   *        number of bytes to copy
+   * @param aDest
+   *        the destination buffer
+   * @param nDestIndex
+   *        absolute index in the destination buffer
+   */
+  void copyTo (final int nOffset, final int nLength, final ByteBuffer aDest, final int nDestIndex)
+  {
+    for (int i = 0; i < nLength; i++)
+      aDest.put (nDestIndex + i, m_aBuf.get (m_nBase + nOffset + i));
+  }
+
+  /**
+   * @param nPos
+   *        absolute index of an option code, as returned by
+   *        <code>indexOfOption()</code>
+   * @return the offset in the datagram of the option value
+   */
+  int getOptionValueOffset (final int nPos)
+  {
+    return nPos + 2 - m_nBase;
+  }
+
+  private void _copy (final int nOffset, final byte [] aDest)
+  {
+    for (int i = 0; i < aDest.length; i++)
+      aDest[i] = m_aBuf.get (m_nBase + nOffset + i);
+  }
+
+  private InetAddress _getInetAddress (final int nOffset)
+  {
+    final byte [] aAddr = new byte [4];
+    _copy (nOffset, aAddr);
+    try
+    {
+      return InetAddress.getByAddress (aAddr);
+    }
+    catch (final UnknownHostException e)
+    {
+      s_aLogger.error ("Unexpected UnknownHostException", e);
+      return null; // normally impossible
+    }
+  }
+}
@@ -0,0 +1,377 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.DHCPDECLINE;
+import static org.dhcp4java.DHCPConstants.DHCPRELEASE;
+import static org.dhcp4java.DHCPConstants.DHCPREQUEST;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded dispatch queue with two priority levels, used by
+ * <code>DHCPCoreServer</code> in <code>priority</code> scheduling mode.
+ * <p>
+ * REQUEST, RELEASE and DECLINE messages complete or end a lease and stop client
+ * retransmissions: they are taken before DISCOVER, INFORM and anything else.
+ * Within a level the order is FIFO. The capacity is shared by both levels.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+final class DHCPPriorityQueue extends AbstractQueue <Runnable> implements BlockingQueue <Runnable>
+{
+  /**
+   * A queued task knowing its own priority.
+   */
+  interface Prioritized extends Runnable
+  {
+    /**
+     * @return <code>true</code> if the task goes before normal tasks.
+     */
+    boolean isHighPriority ();
+  }
+
+  private final ReentrantLock m_aLock = new ReentrantLock ();
+  private final Condition m_aNotEmpty = m_aLock.newCondition ();
+  private final Condition m_aNotFull = m_aLock.newCondition ();
+  private final ArrayDeque <Runnable> m_aHigh = new ArrayDeque <> ();
+  private final ArrayDeque <Runnable> m_aLow = new ArrayDeque <> ();
+  private final int m_nCapacity;
+
+  /**
+   * @param nCapacity
+   *        maximum number of queued tasks, must be &gt; 0
+   */
+  DHCPPriorityQueue (final int nCapacity)
+  {
+    if (nCapacity <= 0)
+      throw new IllegalArgumentException ("queue capacity must be > 0: " + nCapacity);
+    m_nCapacity = nCapacity;
+  }
+
+  /**
+   * @param nMessageType
+   *        DHCP message type, as in option 53
+   * @return <code>true</code> if messages of this type are scheduled first.
+   */
+  static boolean isHighPriority (final byte nMessageType)
+  {
+    return nMessageType == DHCPREQUEST || nMessageType == DHCPRELEASE || nMessageType == DHCPDECLINE;
+  }
+
+  private static boolean _isHigh (final Runnable aTask)
+  {
+    return aTask instanceof Prioritized && ((Prioritized) aTask).isHighPriority ();
+  }
+
+  // all the following private methods must be called with the lock held
+
+  private int _size ()
+  {
+    return m_aHigh.size () + m_aLow.size ();
+  }
+
+  private void _enqueue (final Runnable aTask)
+  {
+    if (_isHigh (aTask))
+      m_aHigh.addLast (aTask);
+    else
+      m_aLow.addLast (aTask);
+    m_aNotEmpty.signal ();
+  }
+
+  private Runnable _dequeue ()
+  {
+    Runnable aTask = m_aHigh.pollFirst ();
+    if (aTask == null)
+      aTask = m_aLow.pollFirst ();
+    if (aTask != null)
+      m_aNotFull.signal ();
+    return aTask;
+  }
+
+  public boolean offer (final Runnable aTask)
+  {
+    if (aTask == null)
+      throw new NullPointerException ();
+    m_aLock.lock ();
+    try
+    {
+      if (_size () >= m_nCapacity)
+        return false;
+      _enqueue (aTask);
+      return true;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  public boolean offer (final Runnable aTask, final long nTimeout, final TimeUnit eUnit) throws InterruptedException
+  {
+    if (aTask == null)
+      throw new NullPointerException ();
+    long nNanos = eUnit.toNanos (nTimeout);
+    m_aLock.lockInterruptibly ();
+    try
+    {
+      while (_size () >= m_nCapacity)
+      {
+        if (nNanos <= 0)
+          return false;
+        nNanos = m_aNotFull.awaitNanos (nNanos);
+      }
+      _enqueue (aTask);
+      return true;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  public void put (final Runnable aTask) throws InterruptedException
+  {
+    if (aTask == null)
+      throw new NullPointerException ();
+    m_aLock.lockInterruptibly ();
+    try
+    {
+      while (_size () >= m_nCapacity)
+        m_aNotFull.await ();
+      _enqueue (aTask);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  public Runnable poll ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return _dequeue ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  public Runnable poll (final long nTimeout, final TimeUnit eUnit) throws InterruptedException
+  {
+    long nNanos = eUnit.toNanos (nTimeout);
+    m_aLock.lockInterruptibly ();
+    try
+    {
+      while (_size () == 0)
+      {
+        if (nNanos <= 0)
+          return null;
+        nNanos = m_aNotEmpty.awaitNanos (nNanos);
+      }
+      return _dequeue ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  public Runnable take () throws InterruptedException
+  {
+    m_aLock.lockInterruptibly ();
+    try
+    {
+      while (_size () == 0)
+        m_aNotEmpty.await ();
+      return _dequeue ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Removes the oldest normal priority task, leaving high priority tasks
+   * alone.
+   *
+   * @return the removed task, or <code>null</code> if there is none
+   */
+  Runnable pollLowPriority ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      final Runnable aTask = m_aLow.pollFirst ();
+      if (aTask != null)
+        m_aNotFull.signal ();
+      return aTask;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  public Runnable peek ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      final Runnable aTask = m_aHigh.peekFirst ();
+      return aTask != null ? aTask : m_aLow.peekFirst ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  @Override
+  public boolean remove (final Object aTask)
+  {
+    m_aLock.lock ();
+    try
+    {
+      final boolean bRemoved = m_aHigh.removeFirstOccurrence (aTask) || m_aLow.removeFirstOccurrence (aTask);
+      if (bRemoved)
+        m_aNotFull.signal ();
+      return bRemoved;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  @Override
+  public int size ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return _size ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  public int remainingCapacity ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return m_nCapacity - _size ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  public int drainTo (final Collection <? super Runnable> aTarget)
+  {
+    return drainTo (aTarget, Integer.MAX_VALUE);
+  }
+
+  public int drainTo (final Collection <? super Runnable> aTarget, final int nMaxElements)
+  {
+    if (aTarget == this)
+      throw new IllegalArgumentException ();
+    m_aLock.lock ();
+    try
+    {
+      int n = 0;
+      Runnable aTask;
+      while (n < nMaxElements && (aTask = _dequeue ()) != null)
+      {
+        aTarget.add (aTask);
+        n++;
+      }
+      return n;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * The iterator works on a snapshot, in dequeue order.
+   */
+  @Override
+  public Iterator <Runnable> iterator ()
+  {
+    final List <Runnable> aSnapshot;
+    m_aLock.lock ();
+    try
+    {
+      aSnapshot = new ArrayList <> (_size ());
+      aSnapshot.addAll (m_aHigh);
+      aSnapshot.addAll (m_aLow);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+
+    final Iterator <Runnable> aIt = aSnapshot.iterator ();
+    return new Iterator <Runnable> ()
+    {
+      private Runnable m_aLast;
+
+      public boolean hasNext ()
+      {
+        return aIt.hasNext ();
+      }
+
+      public Runnable next ()
+      {
+        m_aLast = aIt.next ();
+        return m_aLast;
+      }
+
+      public void remove ()
+      {
+        if (m_aLast == null)
+          throw new IllegalStateException ();
+        DHCPPriorityQueue.this.remove (m_aLast);
+        m_aLast = null;
+      }
+    };
+  }
+}
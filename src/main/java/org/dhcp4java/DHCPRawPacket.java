@@ -0,0 +1,267 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_MESSAGE_TYPE;
+import static org.dhcp4java.DHCPConstants.DHO_END;
+import static org.dhcp4java.DHCPConstants.DHO_PAD;
+import static org.dhcp4java.DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN;
+import static org.dhcp4java.DHCPConstants._MAGIC_COOKIE;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Peeks at fields of a raw DHCP datagram without parsing it into a
+ * <code>DHCPPacket</code>.
+ * <p>
+ * The buffer content between position and limit is the datagram. Buffers are
+ * only read with absolute gets: neither position nor limit are modified.
+ * Malformed datagrams never raise an exception, methods return a neutral value
+ * instead; a full parse will reject them later.
+ * <p>
+ * Apart from <code>getHardwareAddress()</code>, no method allocates: they are
+ * meant for <code>DHCPPacketFilter</code> implementations and for the receive
+ * loop of <code>DHCPCoreServer</code>.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+public final class DHCPRawPacket
+{
+  /** offset of the <code>htype</code> field. */
+  static final int HTYPE_OFFSET = 1;
+  /** offset of the <code>hlen</code> field. */
+  static final int HLEN_OFFSET = 2;
+  /** offset of the <code>hops</code> field. */
+  static final int HOPS_OFFSET = 3;
+  /** offset of the <code>xid</code> field. */
+  static final int XID_OFFSET = 4;
+  /** offset of the <code>secs</code> field. */
+  static final int SECS_OFFSET = 8;
+  /** offset of the <code>flags</code> field. */
+  static final int FLAGS_OFFSET = 10;
+  /** offset of the <code>ciaddr</code> field. */
+  static final int CIADDR_OFFSET = 12;
+  /** offset of the <code>yiaddr</code> field. */
+  static final int YIADDR_OFFSET = 16;
+  /** offset of the <code>siaddr</code> field. */
+  static final int SIADDR_OFFSET = 20;
+  /** offset of the <code>giaddr</code> field. */
+  static final int GIADDR_OFFSET = 24;
+  /** offset of the <code>chaddr</code> field. */
+  static final int CHADDR_OFFSET = 28;
+  /** size of the <code>chaddr</code> field. */
+  static final int CHADDR_SIZE = 16;
+  /** offset of the <code>sname</code> field. */
+  static final int SNAME_OFFSET = 44;
+  /** size of the <code>sname</code> field. */
+  static final int SNAME_SIZE = 64;
+  /** offset of the <code>file</code> field. */
+  static final int FILE_OFFSET = 108;
+  /** size of the <code>file</code> field. */
+  static final int FILE_SIZE = 128;
+  /** offset of the first option, right after the magic cookie. */
+  static final int OPTIONS_OFFSET = _BOOTP_ABSOLUTE_MIN_LEN + 4;
+
+  private DHCPRawPacket ()
+  {}
+
+  /**
+   * @param aBuf
+   *        the datagram
+   * @return <code>true</code> if the datagram holds a full BOOTP header
+   *         followed by the DHCP magic cookie
+   */
+  public static boolean isDhcp (final ByteBuffer aBuf)
+  {
+    final int nBase = aBuf.position ();
+    return aBuf.limit () - nBase >= OPTIONS_OFFSET && aBuf.getInt (nBase + _BOOTP_ABSOLUTE_MIN_LEN) == _MAGIC_COOKIE;
+  }
+
+  /**
+   * @param aBuf
+   *        the datagram
+   * @return the <code>op</code> field, <code>0</code> if the datagram is empty
+   */
+  public static byte getOp (final ByteBuffer aBuf)
+  {
+    return aBuf.hasRemaining () ? aBuf.get (aBuf.position ()) : 0;
+  }
+
+  /**
+   * @param aBuf
+   *        the datagram
+   * @return the <code>htype</code> field, <code>0</code> if the datagram is too
+   *         short
+   */
+  public static byte getHardwareType (final ByteBuffer aBuf)
+  {
+    return aBuf.remaining () > HTYPE_OFFSET ? aBuf.get (aBuf.position () + HTYPE_OFFSET) : 0;
+  }
+
+  /**
+   * @param aBuf
+   *        the datagram
+   * @return the <code>giaddr</code> field as a big-endian int, <code>0</code>
+   *         if not relayed or the datagram is too short
+   */
+  public static int getGiaddr (final ByteBuffer aBuf)
+  {
+    final int nBase = aBuf.position ();
+    if (aBuf.limit () - nBase < GIADDR_OFFSET + 4)
+      return 0;
+    return aBuf.getInt (nBase + GIADDR_OFFSET);
+  }
+
+  /**
+   * Returns the DHCP message type (option 53).
+   * <p>
+   * Only the <code>options</code> field is scanned: a message type moved to
+   * <code>sname</code> or <code>file</code> by option overload is not found.
+   *
+   * @param aBuf
+   *        the datagram
+   * @return the message type, or <code>0</code> if the datagram is not a DHCP
+   *         message or has no message type
+   */
+  public static byte getMessageType (final ByteBuffer aBuf)
+  {
+    if (!isDhcp (aBuf))
+      return 0;
+    final int nBase = aBuf.position ();
+    final int nEnd = aBuf.limit ();
+
+    int i = nBase + OPTIONS_OFFSET;
+    while (i < nEnd)
+    {
+      final byte nCode = aBuf.get (i);
+      if (nCode == DHO_PAD)
+      {
+        i++;
+        continue;
+      }
+      if (nCode == DHO_END || i + 1 >= nEnd)
+        break;
+      final int nLen = aBuf.get (i + 1) & 0xFF;
+      if (nCode == DHO_DHCP_MESSAGE_TYPE)
+        return nLen >= 1 && i + 2 < nEnd ? aBuf.get (i + 2) : 0;
+      i += 2 + nLen;
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the DHCP message type (option 53).
+   *
+   * @param aData
+   *        buffer holding the datagram
+   * @param nOffset
+   *        offset of the datagram in the buffer
+   * @param nLength
+   *        length of the datagram
+   * @return the message type, or <code>0</code> if the datagram is not a DHCP
+   *         message or has no message type
+   */
+  public static byte getMessageType (final byte [] aData, final int nOffset, final int nLength)
+  {
+    return getMessageType (ByteBuffer.wrap (aData, nOffset, nLength));
+  }
+
+  /**
+   * Returns a hash of the client hardware address: the first <code>hlen</code>
+   * bytes of <code>chaddr</code>, <code>hlen</code> being capped to 16.
+   *
+   * @param aBuf
+   *        the datagram
+   * @return the hash, <code>0</code> if the datagram is too short to hold a
+   *         hardware address
+   */
+  public static int getHardwareAddressHash (final ByteBuffer aBuf)
+  {
+    final int nBase = aBuf.position ();
+    if (aBuf.limit () - nBase < CHADDR_OFFSET + CHADDR_SIZE)
+      return 0;
+
+    final int nLen = Math.min (aBuf.get (nBase + HLEN_OFFSET) & 0xFF, CHADDR_SIZE);
+    int nHash = 1;
+    for (int i = 0; i < nLen; i++)
+      nHash = 31 * nHash + aBuf.get (nBase + CHADDR_OFFSET + i);
+    return nHash;
+  }
+
+  /**
+   * Returns the transaction id.
+   *
+   * @param aBuf
+   *        the datagram
+   * @return the <code>xid</code> field, <code>0</code> if the datagram is too
+   *         short
+   */
+  public static int getXid (final ByteBuffer aBuf)
+  {
+    final int nBase = aBuf.position ();
+    if (aBuf.limit () - nBase < XID_OFFSET + 4)
+      return 0;
+    return aBuf.getInt (nBase + XID_OFFSET);
+  }
+
+  /**
+   * Returns a copy of the client hardware address: the first <code>hlen</code>
+   * bytes of <code>chaddr</code>, <code>hlen</code> being capped to 16.
+   *
+   * @param aBuf
+   *        the datagram
+   * @return the hardware address, empty if the datagram is too short
+   */
+  public static byte [] getHardwareAddress (final ByteBuffer aBuf)
+  {
+    final int nBase = aBuf.position ();
+    if (aBuf.limit () - nBase < CHADDR_OFFSET + CHADDR_SIZE)
+      return new byte [0];
+
+    final byte [] aChaddr = new byte [Math.min (aBuf.get (nBase + HLEN_OFFSET) & 0xFF, CHADDR_SIZE)];
+    for (int i = 0; i < aChaddr.length; i++)
+      aChaddr[i] = aBuf.get (nBase + CHADDR_OFFSET + i);
+    return aChaddr;
+  }
+
+  /**
+   * Compare the client hardware address with a given one, without copying it.
+   *
+   * @param aBuf
+   *        the datagram
+   * @param aAddress
+   *        the address to compare with
+   * @return <code>true</code> if the first <code>hlen</code> bytes of
+   *         <code>chaddr</code> are <code>aAddress</code>
+   */
+  public static boolean hardwareAddressEquals (final ByteBuffer aBuf, final byte [] aAddress)
+  {
+    final int nBase = aBuf.position ();
+    if (aBuf.limit () - nBase < CHADDR_OFFSET + CHADDR_SIZE)
+      return false;
+    if (Math.min (aBuf.get (nBase + HLEN_OFFSET) & 0xFF, CHADDR_SIZE) != aAddress.length)
+      return false;
+    for (int i = 0; i < aAddress.length; i++)
+      if (aBuf.get (nBase + CHADDR_OFFSET + i) != aAddress[i])
+        return false;
+    return true;
+  }
+}
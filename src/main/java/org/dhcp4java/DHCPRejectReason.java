@@ -0,0 +1,86 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+/**
+ * Why a datagram cannot be parsed into a <code>DHCPPacket</code>.
+ * <p>
+ * Returned by <code>DHCPPacket.validate()</code>, which checks a datagram
+ * without throwing, and carried by the <code>DHCPBadPacketException</code>
+ * thrown when parsing it.
+ * <p>
+ * Each reason holds a preallocated exception without stack trace, see
+ * <code>getException()</code>, which the parser throws: rejecting a flood of
+ * malformed datagrams then neither allocates nor walks the stack.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+public enum DHCPRejectReason
+{
+  /** shorter than the 236 bytes of a BOOTP header. */
+  TOO_SMALL ("DHCP Packet too small"),
+  /** longer than the maximum MTU. */
+  TOO_BIG ("DHCP Packet too big"),
+  /** cut in the magic cookie, neither BOOTP nor DHCP. */
+  TRUNCATED_MAGIC_COOKIE ("DHCP Packet truncated in magic cookie"),
+  /** options not terminated by END, rejected in strict mode only. */
+  TRUNCATED_OPTIONS ("Packet seams to be truncated");
+
+  private final String m_sMessage;
+  private final DHCPBadPacketException m_aException;
+
+  private DHCPRejectReason (final String sMessage)
+  {
+    m_sMessage = sMessage;
+    m_aException = new DHCPBadPacketException (this, sMessage);
+    // filled once, only to be discarded
+    m_aException.setStackTrace (new StackTraceElement [0]);
+    // no cause, initCause() now throws IllegalStateException
+    m_aException.initCause (null);
+  }
+
+  /**
+   * @return a short description of the reason.
+   */
+  public String getMessage ()
+  {
+    return m_sMessage;
+  }
+
+  /**
+   * Returns the shared exception for this reason. It has no stack trace and
+   * no detail beyond <code>getMessage()</code>; it is meant to be thrown
+   * repeatedly, by all threads.
+   * <p>
+   * It must not be modified: its cause cannot be set, but
+   * <code>addSuppressed()</code> and <code>setStackTrace()</code> cannot be
+   * disabled on an <code>IllegalArgumentException</code>, and whatever they
+   * add is seen by every later catcher, in every thread. In particular, do not
+   * let it propagate out of a try-with-resources block whose resources may
+   * fail to close.
+   *
+   * @return the preallocated exception
+   */
+  public DHCPBadPacketException getException ()
+  {
+    return m_aException;
+  }
+}
@@ -28,13 +28,20 @@ import static org.dhcp4java.DHCPConstants.DHCPOFFER;
 import static org.dhcp4java.DHCPConstants.DHCPREQUEST;
 import static org.dhcp4java.DHCPConstants.DHO_DHCP_LEASE_TIME;
 import static org.dhcp4java.DHCPConstants.DHO_DHCP_MESSAGE;
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_MESSAGE_TYPE;
 import static org.dhcp4java.DHCPConstants.DHO_DHCP_SERVER_IDENTIFIER;
+import static org.dhcp4java.DHCPConstants.DHO_END;
 import static org.dhcp4java.DHCPConstants.INADDR_ANY;
 import static org.dhcp4java.DHCPConstants.INADDR_BROADCAST;
+import static org.dhcp4java.DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN;
+import static org.dhcp4java.DHCPConstants._BOOTP_VEND_SIZE;
+import static org.dhcp4java.DHCPConstants._MAGIC_COOKIE;
 
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 /**
  * This class provides some standard factories for DHCP responses.
@@ -79,6 +86,41 @@ public final class DHCPResponseFactory
                                                 final InetAddress serverIdentifier,
                                                 final String message,
                                                 final DHCPOption [] options)
+  {
+    return makeDHCPOffer (null, request, offeredAddress, leaseTime, serverIdentifier, message, options);
+  }
+
+  /**
+   * Create a populated DHCPOFFER response, recycling a packet from a pool. See
+   * <code>makeDHCPOffer()</code>.
+   * <p>
+   * The response must be given back with <code>pool.release()</code> once
+   * serialized.
+   *
+   * @param pool
+   *        the pool to take the response from, <code>null</code> to allocate
+   *        it
+   * @param request
+   *        request
+   * @param offeredAddress
+   *        offered address
+   * @param leaseTime
+   *        lease time
+   * @param serverIdentifier
+   *        Server identfier
+   * @param message
+   *        message
+   * @param options
+   *        options
+   * @return the OFFER Packet
+   */
+  public static final DHCPPacket makeDHCPOffer (final DHCPPacketPool pool,
+                                                final DHCPPacket request,
+                                                final InetAddress offeredAddress,
+                                                final int leaseTime,
+                                                final InetAddress serverIdentifier,
+                                                final String message,
+                                                final DHCPOption [] options)
   {
     // check request
     if (request == null)
@@ -98,7 +140,7 @@ public final class DHCPResponseFactory
     if (!(offeredAddress instanceof Inet4Address))
       throw new IllegalArgumentException ("offeredAddress must be IPv4");
 
-    final DHCPPacket resp = new DHCPPacket ();
+    final DHCPPacket resp = _newPacket (pool);
 
     resp.setOp (BOOTREPLY);
     resp.setHtype (request.getHtype ());
@@ -163,6 +205,41 @@ public final class DHCPResponseFactory
                                               final InetAddress serverIdentifier,
                                               final String message,
                                               final DHCPOption [] options)
+  {
+    return makeDHCPAck (null, request, offeredAddress, leaseTime, serverIdentifier, message, options);
+  }
+
+  /**
+   * Create a populated DHCPACK response, recycling a packet from a pool. See
+   * <code>makeDHCPAck()</code>.
+   * <p>
+   * The response must be given back with <code>pool.release()</code> once
+   * serialized.
+   *
+   * @param pool
+   *        the pool to take the response from, <code>null</code> to allocate
+   *        it
+   * @param request
+   *        request
+   * @param offeredAddress
+   *        offered address
+   * @param leaseTime
+   *        lease time in seconds
+   * @param serverIdentifier
+   *        server identifier
+   * @param message
+   *        message
+   * @param options
+   *        options
+   * @return the ACK Packet
+   */
+  public static final DHCPPacket makeDHCPAck (final DHCPPacketPool pool,
+                                              final DHCPPacket request,
+                                              final InetAddress offeredAddress,
+                                              final int leaseTime,
+                                              final InetAddress serverIdentifier,
+                                              final String message,
+                                              final DHCPOption [] options)
   {
     // check request
     if (request == null)
@@ -182,7 +259,7 @@ public final class DHCPResponseFactory
     if (!(offeredAddress instanceof Inet4Address))
       throw new IllegalArgumentException ("offeredAddress must be IPv4");
 
-    final DHCPPacket resp = new DHCPPacket ();
+    final DHCPPacket resp = _newPacket (pool);
 
     resp.setOp (BOOTREPLY);
     resp.setHtype (request.getHtype ());
@@ -225,6 +302,59 @@ public final class DHCPResponseFactory
     return resp;
   }
 
+  /**
+   * Create a pre-encoded DHCPOFFER, for requests sharing the same options.
+   * <p>
+   * <code>template.makeResponse (request, offeredAddress)</code> produces the
+   * same datagram as serializing <code>makeDHCPOffer()</code> called with the
+   * same arguments, without building a <code>DHCPPacket</code>.
+   *
+   * @param leaseTime
+   *        lease time
+   * @param serverIdentifier
+   *        Server identfier
+   * @param message
+   *        message
+   * @param options
+   *        options, mirror options are not allowed
+   * @return the template
+   * @throws IllegalArgumentException
+   *         an option is a mirror option
+   */
+  public static final DHCPResponseTemplate makeDHCPOfferTemplate (final int leaseTime,
+                                                                  final InetAddress serverIdentifier,
+                                                                  final String message,
+                                                                  final DHCPOption [] options)
+  {
+    return new DHCPResponseTemplate (DHCPOFFER, leaseTime, serverIdentifier, message, options);
+  }
+
+  /**
+   * Create a pre-encoded DHCPACK, answering DHCPREQUEST messages sharing the
+   * same options. See <code>makeDHCPOfferTemplate()</code>.
+   * <p>
+   * DHCPINFORM requests are not supported, use <code>makeDHCPAck()</code>.
+   *
+   * @param leaseTime
+   *        lease time in seconds
+   * @param serverIdentifier
+   *        server identifier
+   * @param message
+   *        message
+   * @param options
+   *        options, mirror options are not allowed
+   * @return the template
+   * @throws IllegalArgumentException
+   *         an option is a mirror option
+   */
+  public static final DHCPResponseTemplate makeDHCPAckTemplate (final int leaseTime,
+                                                                final InetAddress serverIdentifier,
+                                                                final String message,
+                                                                final DHCPOption [] options)
+  {
+    return new DHCPResponseTemplate (DHCPACK, leaseTime, serverIdentifier, message, options);
+  }
+
   /**
    * Create a populated DHCPNAK response.
    * <p>
@@ -245,6 +375,32 @@ public final class DHCPResponseFactory
   public static final DHCPPacket makeDHCPNak (final DHCPPacket request,
                                               final InetAddress serverIdentifier,
                                               final String message)
+  {
+    return makeDHCPNak (null, request, serverIdentifier, message);
+  }
+
+  /**
+   * Create a populated DHCPNAK response, recycling a packet from a pool. See
+   * <code>makeDHCPNak()</code>.
+   * <p>
+   * The response must be given back with <code>pool.release()</code> once
+   * serialized.
+   *
+   * @param pool
+   *        the pool to take the response from, <code>null</code> to allocate
+   *        it
+   * @param request
+   *        request
+   * @param serverIdentifier
+   *        server identifier
+   * @param message
+   *        message
+   * @return the NAK Packet
+   */
+  public static final DHCPPacket makeDHCPNak (final DHCPPacketPool pool,
+                                              final DHCPPacket request,
+                                              final InetAddress serverIdentifier,
+                                              final String message)
   {
     // check request
     if (request == null)
@@ -258,7 +414,7 @@ public final class DHCPResponseFactory
     if (requestMessageType.byteValue () != DHCPREQUEST)
       throw new DHCPBadPacketException ("request is not DHCPREQUEST");
 
-    final DHCPPacket resp = new DHCPPacket ();
+    final DHCPPacket resp = _newPacket (pool);
 
     resp.setOp (BOOTREPLY);
     resp.setHtype (request.getHtype ());
@@ -291,6 +447,327 @@ public final class DHCPResponseFactory
     return resp;
   }
 
+  private static DHCPPacket _newPacket (final DHCPPacketPool pool)
+  {
+    return pool == null ? new DHCPPacket () : pool.acquire ();
+  }
+
+  // ========================================================================
+  // allocation-free variants, from a request view to a buffer
+
+  /**
+   * Write a DHCPOFFER response to a buffer, without allocating.
+   * <p>
+   * The response is the serialization of what <code>makeDHCPOffer()</code>
+   * builds with the same arguments. Addresses are given as big-endian ints,
+   * see <code>Util.inetAddress2Int()</code>; the message is given encoded, see
+   * <code>Util.stringToBytes()</code>. Options must have distinct codes, other
+   * than the ones set by this method (message type, lease time, server
+   * identifier and message). Mirror options are copied from the request.
+   * <p>
+   * Use <code>getDefaultAddress()</code> and <code>getDefaultPort()</code> to
+   * address the response.
+   *
+   * @param request
+   *        the DHCPDISCOVER request
+   * @param offeredAddress
+   *        offered address
+   * @param leaseTime
+   *        lease time
+   * @param serverIdentifier
+   *        server identifier, <code>0</code> for none
+   * @param message
+   *        message, <code>null</code> for none
+   * @param options
+   *        options, may be <code>null</code>
+   * @param buffer
+   *        the buffer to write to, at its position, which is advanced
+   * @return the number of bytes written
+   * @throws DHCPBadPacketException
+   *         the request is not a DHCPDISCOVER
+   * @throws IllegalArgumentException
+   *         an option code is reserved or repeated
+   * @throws BufferOverflowException
+   *         the response does not fit in the buffer, nothing is written
+   */
+  public static int writeDHCPOffer (final DHCPPacketView request,
+                                    final int offeredAddress,
+                                    final int leaseTime,
+                                    final int serverIdentifier,
+                                    final byte [] message,
+                                    final DHCPOption [] options,
+                                    final ByteBuffer buffer)
+  {
+    final byte requestMessageType = _checkRequest (request);
+    if (requestMessageType != DHCPDISCOVER)
+      throw new DHCPBadPacketException ("request is not DHCPDISCOVER");
+
+    return _writeResponse (request,
+                           DHCPOFFER,
+                           0,
+                           offeredAddress,
+                           true,
+                           leaseTime,
+                           serverIdentifier,
+                           message,
+                           options,
+                           buffer);
+  }
+
+  /**
+   * Write a DHCPACK response to a buffer, without allocating. See
+   * <code>writeDHCPOffer()</code>.
+   *
+   * @param request
+   *        the DHCPREQUEST or DHCPINFORM request
+   * @param offeredAddress
+   *        offered address, ignored for DHCPINFORM
+   * @param leaseTime
+   *        lease time in seconds, ignored for DHCPINFORM
+   * @param serverIdentifier
+   *        server identifier, <code>0</code> for none
+   * @param message
+   *        message, <code>null</code> for none
+   * @param options
+   *        options, may be <code>null</code>
+   * @param buffer
+   *        the buffer to write to, at its position, which is advanced
+   * @return the number of bytes written
+   * @throws DHCPBadPacketException
+   *         the request is not a DHCPREQUEST or DHCPINFORM
+   * @throws IllegalArgumentException
+   *         an option code is reserved or repeated
+   * @throws BufferOverflowException
+   *         the response does not fit in the buffer, nothing is written
+   */
+  public static int writeDHCPAck (final DHCPPacketView request,
+                                  final int offeredAddress,
+                                  final int leaseTime,
+                                  final int serverIdentifier,
+                                  final byte [] message,
+                                  final DHCPOption [] options,
+                                  final ByteBuffer buffer)
+  {
+    final byte requestMessageType = _checkRequest (request);
+    if (requestMessageType != DHCPREQUEST && requestMessageType != DHCPINFORM)
+      throw new DHCPBadPacketException ("request is not DHCPREQUEST/DHCPINFORM");
+
+    // rfc 2131: no yiaddr and no lease time for DHCPINFORM
+    final boolean isRequest = requestMessageType == DHCPREQUEST;
+    return _writeResponse (request,
+                           DHCPACK,
+                           request.getCiaddrAsInt (),
+                           isRequest ? offeredAddress : 0,
+                           isRequest,
+                           leaseTime,
+                           serverIdentifier,
+                           message,
+                           options,
+                           buffer);
+  }
+
+  /**
+   * Write a DHCPNAK response to a buffer, without allocating. See
+   * <code>writeDHCPOffer()</code>.
+   *
+   * @param request
+   *        the DHCPREQUEST request
+   * @param serverIdentifier
+   *        server identifier, <code>0</code> for none
+   * @param message
+   *        message, <code>null</code> for none
+   * @param buffer
+   *        the buffer to write to, at its position, which is advanced
+   * @return the number of bytes written
+   * @throws DHCPBadPacketException
+   *         the request is not a DHCPREQUEST
+   * @throws BufferOverflowException
+   *         the response does not fit in the buffer, nothing is written
+   */
+  public static int writeDHCPNak (final DHCPPacketView request,
+                                  final int serverIdentifier,
+                                  final byte [] message,
+                                  final ByteBuffer buffer)
+  {
+    final byte requestMessageType = _checkRequest (request);
+    if (requestMessageType != DHCPREQUEST)
+      throw new DHCPBadPacketException ("request is not DHCPREQUEST");
+
+    return _writeResponse (request, DHCPNAK, 0, 0, false, 0, serverIdentifier, message, null, buffer);
+  }
+
+  /**
+   * Address to which the response must be sent, according to rfc 2131, section
+   * 4.1. Same as <code>getDefaultSocketAddress()</code>, without allocating.
+   *
+   * @param request
+   *        the client DHCP request
+   * @param responseType
+   *        the DHCP Message Type the servers wants to send (DHCPOFFER, DHCPACK,
+   *        DHCPNAK)
+   * @return the IPv4 address as a big-endian int
+   * @throws IllegalArgumentException
+   *         if responseType is not valid.
+   */
+  public static int getDefaultAddress (final DHCPPacketView request, final byte responseType)
+  {
+    final int giaddr = request.getGiaddrAsInt ();
+    switch (responseType)
+    {
+      case DHCPOFFER:
+      case DHCPACK:
+        if (giaddr != 0)
+          return giaddr; // unicast to relay
+        final int ciaddr = request.getCiaddrAsInt ();
+        return ciaddr != 0 ? ciaddr : 0xFFFFFFFF;
+      case DHCPNAK:
+        // unicast to relay, or always broadcast
+        return giaddr != 0 ? giaddr : 0xFFFFFFFF;
+      default:
+        throw new IllegalArgumentException ("responseType not valid");
+    }
+  }
+
+  /**
+   * Port to which the response must be sent, according to rfc 2131, section
+   * 4.1: 67 when the request was relayed, 68 otherwise.
+   *
+   * @param request
+   *        the client DHCP request
+   * @return the port
+   */
+  public static int getDefaultPort (final DHCPPacketView request)
+  {
+    return request.getGiaddrAsInt () != 0 ? 67 : 68;
+  }
+
+  private static byte _checkRequest (final DHCPPacketView request)
+  {
+    if (request == null)
+      throw new NullPointerException ("request is null");
+    if (!request.isDhcp ())
+      throw new DHCPBadPacketException ("request is BOOTP");
+
+    final Byte requestMessageType = request.getDHCPMessageType ();
+    if (requestMessageType == null)
+      throw new DHCPBadPacketException ("request has no message type");
+    return requestMessageType.byteValue ();
+  }
+
+  private static boolean _isReserved (final byte code)
+  {
+    return code == DHO_DHCP_MESSAGE_TYPE ||
+           code == DHO_DHCP_LEASE_TIME ||
+           code == DHO_DHCP_SERVER_IDENTIFIER ||
+           code == DHO_DHCP_MESSAGE;
+  }
+
+  /**
+   * @return the length of the option value to write, <code>-1</code> if the
+   *         option is omitted
+   */
+  private static int _getOptionLength (final DHCPPacketView request, final DHCPOption opt)
+  {
+    if (opt.isMirror ())
+    {
+      final int pos = request.indexOfOption (opt.getCode ());
+      if (pos >= 0)
+        return request.getOptionTotalLength (pos);
+    }
+    final byte [] value = opt.getValueFast ();
+    return value == null ? -1 : value.length;
+  }
+
+  private static int _writeResponse (final DHCPPacketView request,
+                                     final byte responseType,
+                                     final int ciaddr,
+                                     final int yiaddr,
+                                     final boolean withLeaseTime,
+                                     final int leaseTime,
+                                     final int serverIdentifier,
+                                     final byte [] message,
+                                     final DHCPOption [] options,
+                                     final ByteBuffer buffer)
+  {
+    // compute size: header, magic cookie, message type and END
+    int size = _BOOTP_ABSOLUTE_MIN_LEN + 4 + 3 + 1;
+    if (withLeaseTime)
+      size += 6;
+    if (serverIdentifier != 0)
+      size += 6;
+    if (message != null)
+      size += DHCPPacket.getEncodedOptionLength (message.length);
+    if (options != null)
+      for (int i = 0; i < options.length; i++)
+      {
+        final byte code = options[i].getCode ();
+        if (_isReserved (code))
+          throw new IllegalArgumentException ("option " + code + " is set by the factory");
+        for (int j = 0; j < i; j++)
+          if (options[j].getCode () == code)
+            throw new IllegalArgumentException ("option " + code + " is repeated");
+        final int len = _getOptionLength (request, options[i]);
+        if (len >= 0)
+          size += DHCPPacket.getEncodedOptionLength (len);
+      }
+    // same padding as DHCPPacket.serialize()
+    size = Math.max (size, _BOOTP_ABSOLUTE_MIN_LEN + _BOOTP_VEND_SIZE);
+    if (buffer.remaining () < size)
+      throw new BufferOverflowException ();
+
+    final int start = buffer.position ();
+    buffer.put (BOOTREPLY);
+    buffer.put (request.getHtype ());
+    buffer.put (request.getHlen ());
+    buffer.put ((byte) 0); // hops
+    buffer.putInt (request.getXid ());
+    buffer.putShort ((short) 0); // secs
+    buffer.putShort (request.getFlags ());
+    buffer.putInt (ciaddr);
+    buffer.putInt (yiaddr);
+    buffer.putInt (0); // siaddr
+    buffer.putInt (request.getGiaddrAsInt ());
+    request.copyTo (DHCPRawPacket.CHADDR_OFFSET, DHCPRawPacket.CHADDR_SIZE, buffer, buffer.position ());
+    buffer.position (buffer.position () + DHCPRawPacket.CHADDR_SIZE);
+    // sname and file left empty
+    for (int i = 0; i < 64 + 128; i++)
+      buffer.put ((byte) 0);
+    buffer.putInt (_MAGIC_COOKIE);
+
+    buffer.put (DHO_DHCP_MESSAGE_TYPE).put ((byte) 1).put (responseType);
+    if (withLeaseTime)
+      buffer.put (DHO_DHCP_LEASE_TIME).put ((byte) 4).putInt (leaseTime);
+    if (serverIdentifier != 0)
+      buffer.put (DHO_DHCP_SERVER_IDENTIFIER).put ((byte) 4).putInt (serverIdentifier);
+    if (message != null)
+      DHCPPacket.putOption (buffer, DHO_DHCP_MESSAGE, message);
+    if (options != null)
+      for (final DHCPOption opt : options)
+      {
+        final int len = _getOptionLength (request, opt);
+        if (len < 0)
+          continue;
+        final int pos = opt.isMirror () ? request.indexOfOption (opt.getCode ()) : -1;
+        if (pos < 0)
+          DHCPPacket.putOption (buffer, opt.getCode (), opt.getValueFast ());
+        else
+          if (request.nextInstanceOfOption (pos) < 0)
+          {
+            // single instance, copied as is
+            buffer.put (opt.getCode ()).put ((byte) len);
+            request.copyTo (request.getOptionValueOffset (pos), len, buffer, buffer.position ());
+            buffer.position (buffer.position () + len);
+          }
+          else
+            DHCPPacket.putOption (buffer, opt.getCode (), request.getOptionRaw (opt.getCode ()));
+      }
+    buffer.put (DHO_END);
+
+    while (buffer.position () - start < size)
+      buffer.put ((byte) 0);
+    return size;
+  }
+
   /**
    * Calculates the addres/port to which the response must be sent, according to
    * rfc 2131, section 4.1.
@@ -0,0 +1,232 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Send stage of a <code>DHCPCoreServer</code> listener.
+ * <p>
+ * Worker threads enqueue serialized responses in a lock-free queue, and a
+ * single sender thread drains it in batches of up to <code>batchSize</code>
+ * datagrams. Workers never contend on the socket, and the sender goes back to
+ * sleep only when the queue is empty.
+ * <p>
+ * The queue is bounded: when it is full, responses are dropped and counted.
+ * The client will retransmit.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+final class DHCPResponseSender implements Runnable
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (DHCPResponseSender.class);
+
+  private final Queue <DatagramPacket> m_aQueue = new ConcurrentLinkedQueue <> ();
+  private final AtomicInteger m_aDepth = new AtomicInteger ();
+  private final int m_nCapacity;
+  private final int m_nBatchSize;
+  private final DatagramSocket m_aSocket;
+  private final DatagramChannel m_aChannel;
+  /** reused for every send, in channel transport mode. */
+  private final ByteBuffer m_aBuffer;
+  private volatile Thread m_aThread;
+  private volatile boolean m_bStopped = false;
+
+  private final AtomicLong m_aSentCount = new AtomicLong ();
+  private final AtomicLong m_aBatchCount = new AtomicLong ();
+  private final AtomicLong m_aDroppedCount = new AtomicLong ();
+  private volatile int m_nLargestBatch;
+
+  /**
+   * @param nCapacity
+   *        maximum number of queued responses, must be &gt; 0
+   * @param nBatchSize
+   *        maximum number of responses sent in a row, must be &gt; 0
+   * @param aSocket
+   *        the socket to send with
+   * @param aChannel
+   *        the channel to send with, <code>null</code> to use the socket
+   * @param nBufferSize
+   *        size of the largest response, channel transport only
+   */
+  DHCPResponseSender (final int nCapacity,
+                      final int nBatchSize,
+                      final DatagramSocket aSocket,
+                      final DatagramChannel aChannel,
+                      final int nBufferSize)
+  {
+    if (nCapacity <= 0)
+      throw new IllegalArgumentException ("send queue capacity must be > 0: " + nCapacity);
+    if (nBatchSize <= 0)
+      throw new IllegalArgumentException ("batch size must be > 0: " + nBatchSize);
+    m_nCapacity = nCapacity;
+    m_nBatchSize = nBatchSize;
+    m_aSocket = aSocket;
+    m_aChannel = aChannel;
+    m_aBuffer = aChannel != null ? ByteBuffer.allocateDirect (nBufferSize) : null;
+  }
+
+  /**
+   * Start the sender thread.
+   *
+   * @param sName
+   *        name of the thread
+   */
+  void start (final String sName)
+  {
+    final Thread aThread = new Thread (this, sName);
+    m_aThread = aThread;
+    aThread.start ();
+  }
+
+  /**
+   * Queue a response for sending.
+   *
+   * @param aResponse
+   *        the response, not modified afterwards by the caller
+   * @return <code>false</code> if the queue is full and the response dropped
+   */
+  boolean offer (final DatagramPacket aResponse)
+  {
+    if (m_aDepth.incrementAndGet () > m_nCapacity)
+    {
+      m_aDepth.decrementAndGet ();
+      m_aDroppedCount.incrementAndGet ();
+      return false;
+    }
+    m_aQueue.offer (aResponse);
+    LockSupport.unpark (m_aThread);
+    return true;
+  }
+
+  public void run ()
+  {
+    m_aThread = Thread.currentThread ();
+    while (!m_bStopped)
+    {
+      int nBatch = 0;
+      DatagramPacket aResponse;
+      while (nBatch < m_nBatchSize && (aResponse = m_aQueue.poll ()) != null)
+      {
+        m_aDepth.decrementAndGet ();
+        _send (aResponse);
+        nBatch++;
+      }
+
+      if (nBatch > 0)
+      {
+        m_aBatchCount.incrementAndGet ();
+        m_aSentCount.addAndGet (nBatch);
+        if (nBatch > m_nLargestBatch)
+          m_nLargestBatch = nBatch;
+      }
+      else
+        if (!m_bStopped)
+        {
+          // an offer() between poll() and here leaves a permit: no lost wakeup
+          LockSupport.park (this);
+        }
+    }
+  }
+
+  private void _send (final DatagramPacket aResponse)
+  {
+    try
+    {
+      if (m_aChannel != null)
+      {
+        m_aBuffer.clear ();
+        m_aBuffer.put (aResponse.getData (), aResponse.getOffset (), aResponse.getLength ());
+        m_aBuffer.flip ();
+        m_aChannel.send (m_aBuffer, aResponse.getSocketAddress ());
+      }
+      else
+        m_aSocket.send (aResponse);
+    }
+    catch (final IOException e)
+    {
+      if (!m_bStopped)
+        s_aLogger.error ("IOException", e);
+    }
+  }
+
+  /**
+   * Stop the sender thread. Queued responses are discarded.
+   */
+  void stop ()
+  {
+    m_bStopped = true;
+    LockSupport.unpark (m_aThread);
+  }
+
+  /**
+   * @return the number of responses waiting to be sent.
+   */
+  int getDepth ()
+  {
+    return m_aDepth.get ();
+  }
+
+  /**
+   * @return the number of responses handed to the socket.
+   */
+  long getSentCount ()
+  {
+    return m_aSentCount.get ();
+  }
+
+  /**
+   * @return the number of batches, a batch being the responses sent between
+   *         two wake-ups of the sender thread.
+   */
+  long getBatchCount ()
+  {
+    return m_aBatchCount.get ();
+  }
+
+  /**
+   * @return the size of the largest batch.
+   */
+  int getLargestBatch ()
+  {
+    return m_nLargestBatch;
+  }
+
+  /**
+   * @return the number of responses dropped because the queue was full.
+   */
+  long getDroppedCount ()
+  {
+    return m_aDroppedCount.get ();
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.BOOTREPLY;
+import static org.dhcp4java.DHCPConstants.DHCPACK;
+import static org.dhcp4java.DHCPConstants.DHCPDISCOVER;
+import static org.dhcp4java.DHCPConstants.DHCPOFFER;
+import static org.dhcp4java.DHCPConstants.DHCPREQUEST;
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_LEASE_TIME;
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_MESSAGE;
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_SERVER_IDENTIFIER;
+
+import java.net.DatagramPacket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A pre-encoded DHCPOFFER or DHCPACK, for responses sharing the same options.
+ * <p>
+ * All responses of a subnet usually carry the same lease time, server
+ * identifier and options; only a few header fields depend on the request. A
+ * template serializes the constant part once, and each response is a copy of
+ * the template with <code>htype</code>, <code>hlen</code>, <code>xid</code>,
+ * <code>flags</code>, <code>ciaddr</code> (DHCPACK only), <code>yiaddr</code>,
+ * <code>giaddr</code> and <code>chaddr</code> patched in place.
+ * <p>
+ * The result is byte for byte the serialization of the packet built by
+ * <code>DHCPResponseFactory.makeDHCPOffer()</code> or
+ * <code>makeDHCPAck()</code> with the same arguments. Options applied to the
+ * request (mirror options) cannot be pre-encoded and are rejected.
+ * <p>
+ * Templates are immutable and can be shared between threads. Use
+ * <code>DHCPResponseFactory.makeDHCPOfferTemplate()</code> and
+ * <code>makeDHCPAckTemplate()</code> to create them.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+public final class DHCPResponseTemplate
+{
+  private final byte m_nResponseType;
+  private final byte [] m_aTemplate;
+
+  /**
+   * @param responseType
+   *        DHCPOFFER or DHCPACK
+   * @param leaseTime
+   *        lease time in seconds
+   * @param serverIdentifier
+   *        server identifier, may be <code>null</code>
+   * @param message
+   *        message, may be <code>null</code>
+   * @param options
+   *        other options, may be <code>null</code>
+   */
+  DHCPResponseTemplate (final byte responseType,
+                        final int leaseTime,
+                        final InetAddress serverIdentifier,
+                        final String message,
+                        final DHCPOption [] options)
+  {
+    if (responseType != DHCPOFFER && responseType != DHCPACK)
+      throw new IllegalArgumentException ("responseType not valid");
+
+    // same construction as DHCPResponseFactory, request dependant fields left
+    // to zero
+    final DHCPPacket proto = new DHCPPacket ();
+    proto.setOp (BOOTREPLY);
+    proto.setDHCPMessageType (responseType);
+    proto.setOptionAsInt (DHO_DHCP_LEASE_TIME, leaseTime);
+    proto.setOptionAsInetAddress (DHO_DHCP_SERVER_IDENTIFIER, serverIdentifier);
+    proto.setOptionAsString (DHO_DHCP_MESSAGE, message);
+    if (options != null)
+      for (final DHCPOption opt : options)
+      {
+        if (opt.isMirror ())
+          throw new IllegalArgumentException ("mirror option " + opt.getCode () + " cannot be pre-encoded");
+        proto.setOption (opt);
+      }
+
+    m_nResponseType = responseType;
+    m_aTemplate = proto.serialize ();
+  }
+
+  /**
+   * @return the DHCP message type of the responses, DHCPOFFER or DHCPACK.
+   */
+  public byte getResponseType ()
+  {
+    return m_nResponseType;
+  }
+
+  /**
+   * @return the size of the responses, in bytes.
+   */
+  public int getLength ()
+  {
+    return m_aTemplate.length;
+  }
+
+  /**
+   * Build a response datagram, addressed according to rfc 2131 (see
+   * <code>DHCPResponseFactory.getDefaultSocketAddress()</code>).
+   *
+   * @param request
+   *        the request, DHCPDISCOVER for an offer and DHCPREQUEST for an ack
+   * @param offeredAddress
+   *        the address given to the client
+   * @return the datagram, ready to be sent
+   * @throws DHCPBadPacketException
+   *         the request is not of the expected type
+   * @throws IllegalArgumentException
+   *         <code>offeredAddress</code> is <code>null</code> or not IPv4
+   */
+  public DatagramPacket makeResponse (final DHCPPacket request, final InetAddress offeredAddress)
+  {
+    final byte [] data = new byte [m_aTemplate.length];
+    writeResponse (request, offeredAddress, ByteBuffer.wrap (data));
+    return new DatagramPacket (data,
+                               data.length,
+                               DHCPResponseFactory.getDefaultSocketAddress (request, m_nResponseType));
+  }
+
+  /**
+   * Write a response at the buffer position, and advance the position past it.
+   *
+   * @param request
+   *        the request, DHCPDISCOVER for an offer and DHCPREQUEST for an ack
+   * @param offeredAddress
+   *        the address given to the client
+   * @param buffer
+   *        the buffer to write to, heap or direct
+   * @return the number of bytes written
+   * @throws DHCPBadPacketException
+   *         the request is not of the expected type
+   * @throws IllegalArgumentException
+   *         <code>offeredAddress</code> is <code>null</code> or not IPv4
+   * @throws BufferOverflowException
+   *         the response does not fit in the remaining space of the buffer,
+   *         nothing is written
+   */
+  public int writeResponse (final DHCPPacket request, final InetAddress offeredAddress, final ByteBuffer buffer)
+  {
+    _checkRequest (request);
+    if (offeredAddress == null)
+      throw new IllegalArgumentException ("offeredAddress must not be null");
+    if (!(offeredAddress instanceof Inet4Address))
+      throw new IllegalArgumentException ("offeredAddress must be IPv4");
+    if (buffer.remaining () < m_aTemplate.length)
+      throw new BufferOverflowException ();
+
+    final int start = buffer.position ();
+    buffer.put (m_aTemplate);
+
+    buffer.put (start + DHCPRawPacket.HTYPE_OFFSET, request.getHtype ());
+    buffer.put (start + DHCPRawPacket.HLEN_OFFSET, request.getHlen ());
+    buffer.putInt (start + DHCPRawPacket.XID_OFFSET, request.getXid ());
+    buffer.putShort (start + DHCPRawPacket.FLAGS_OFFSET, request.getFlags ());
+    if (m_nResponseType == DHCPACK)
+      buffer.putInt (start + DHCPRawPacket.CIADDR_OFFSET, request.getCiaddrAsInt ());
+    buffer.putInt (start + DHCPRawPacket.YIADDR_OFFSET, Util.inetAddress2Int (offeredAddress));
+    buffer.putInt (start + DHCPRawPacket.GIADDR_OFFSET, request.getGiaddrAsInt ());
+    _put (buffer, start + DHCPRawPacket.CHADDR_OFFSET, request.getChaddrRef ());
+    return m_aTemplate.length;
+  }
+
+  private void _checkRequest (final DHCPPacket request)
+  {
+    if (request == null)
+      throw new NullPointerException ("request is null");
+    if (!request.isDhcp ())
+      throw new DHCPBadPacketException ("request is BOOTP");
+
+    final Byte requestMessageType = request.getDHCPMessageType ();
+    if (requestMessageType == null)
+      throw new DHCPBadPacketException ("request has no message type");
+    if (m_nResponseType == DHCPOFFER && requestMessageType.byteValue () != DHCPDISCOVER)
+      throw new DHCPBadPacketException ("request is not DHCPDISCOVER");
+    if (m_nResponseType == DHCPACK && requestMessageType.byteValue () != DHCPREQUEST)
+      throw new DHCPBadPacketException ("request is not DHCPREQUEST");
+  }
+
+  private static void _put (final ByteBuffer buffer, final int index, final byte [] src)
+  {
+    for (int i = 0; i < src.length; i++)
+      buffer.put (index + i, src[i]);
+  }
+}
@@ -0,0 +1,201 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, time-expiring cache of recent requests, used by
+ * <code>DHCPCoreServer</code> to detect retransmissions.
+ * <p>
+ * Requests are identified by <code>(xid, chaddr, message type)</code>, read
+ * from the raw datagram. A request seen for the first time is registered as in
+ * flight; the response is attached once the servlet is done. A duplicate
+ * received within the time to live finds the entry and is either dropped or
+ * answered with the cached response, without going through the servlet.
+ * <p>
+ * When the cache is full, the oldest entry is evicted.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+final class DHCPRetransmissionCache
+{
+  /**
+   * Identity of a request.
+   */
+  static final class Key
+  {
+    private final int m_nXid;
+    private final byte m_nMessageType;
+    private final byte [] m_aChaddr;
+    private final int m_nHash;
+
+    Key (final int nXid, final byte nMessageType, final byte [] aChaddr)
+    {
+      m_nXid = nXid;
+      m_nMessageType = nMessageType;
+      m_aChaddr = aChaddr;
+      m_nHash = (31 * nXid + nMessageType) * 31 + Arrays.hashCode (aChaddr);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return m_nHash;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (!(o instanceof Key))
+        return false;
+      final Key k = (Key) o;
+      return m_nXid == k.m_nXid && m_nMessageType == k.m_nMessageType && Arrays.equals (m_aChaddr, k.m_aChaddr);
+    }
+  }
+
+  /**
+   * A request in flight or answered.
+   */
+  static final class Entry
+  {
+    private final long m_nExpires;
+    private volatile DatagramPacket m_aResponse;
+
+    Entry (final long nExpires)
+    {
+      m_nExpires = nExpires;
+    }
+
+    /**
+     * @return the response sent for the request, <code>null</code> if still
+     *         in flight or not answered.
+     */
+    DatagramPacket getResponse ()
+    {
+      return m_aResponse;
+    }
+  }
+
+  private final Map <Key, Entry> m_aEntries;
+  private final long m_nTtlNanos;
+
+  /**
+   * @param nMaxEntries
+   *        maximum number of requests remembered, must be &gt; 0
+   * @param nTtlMillis
+   *        how long a request is remembered, in milliseconds, must be &gt; 0
+   */
+  DHCPRetransmissionCache (final int nMaxEntries, final long nTtlMillis)
+  {
+    if (nMaxEntries <= 0)
+      throw new IllegalArgumentException ("cache size must be > 0: " + nMaxEntries);
+    if (nTtlMillis <= 0)
+      throw new IllegalArgumentException ("time to live must be > 0: " + nTtlMillis);
+
+    m_nTtlNanos = TimeUnit.MILLISECONDS.toNanos (nTtlMillis);
+    m_aEntries = new LinkedHashMap <Key, Entry> (Math.min (nMaxEntries, 1024) * 2)
+    {
+      @Override
+      protected boolean removeEldestEntry (final Map.Entry <Key, DHCPRetransmissionCache.Entry> aEldest)
+      {
+        return size () > nMaxEntries;
+      }
+    };
+  }
+
+  /**
+   * Build the key of a raw request.
+   *
+   * @param aBuf
+   *        the datagram, between position and limit
+   * @return the key, or <code>null</code> if the datagram is not a DHCP message
+   */
+  static Key getKey (final ByteBuffer aBuf)
+  {
+    final byte nMessageType = DHCPRawPacket.getMessageType (aBuf);
+    if (nMessageType == 0)
+      return null;
+    return new Key (DHCPRawPacket.getXid (aBuf), nMessageType, DHCPRawPacket.getHardwareAddress (aBuf));
+  }
+
+  /**
+   * Look up a request, registering it as in flight if unknown or expired.
+   *
+   * @param aKey
+   *        the request key
+   * @return the existing entry if the request is a duplicate, or
+   *         <code>null</code> if the request must be processed
+   */
+  synchronized Entry begin (final Key aKey)
+  {
+    final long nNow = System.nanoTime ();
+    final Entry aEntry = m_aEntries.get (aKey);
+    if (aEntry != null && nNow - aEntry.m_nExpires < 0)
+      return aEntry;
+
+    // re-insert so that the entry becomes the newest
+    m_aEntries.remove (aKey);
+    m_aEntries.put (aKey, new Entry (nNow + m_nTtlNanos));
+    return null;
+  }
+
+  /**
+   * Record the response of a request registered with <code>begin()</code>.
+   *
+   * @param aKey
+   *        the request key
+   * @param aResponse
+   *        the response, <code>null</code> if the request is not answered
+   */
+  synchronized void complete (final Key aKey, final DatagramPacket aResponse)
+  {
+    final Entry aEntry = m_aEntries.get (aKey);
+    if (aEntry != null)
+      aEntry.m_aResponse = aResponse;
+  }
+
+  /**
+   * Forget a request, so that a retransmission is processed again.
+   *
+   * @param aKey
+   *        the request key
+   */
+  synchronized void abort (final Key aKey)
+  {
+    m_aEntries.remove (aKey);
+  }
+
+  /**
+   * @return the number of requests remembered, expired ones included.
+   */
+  synchronized int size ()
+  {
+    return m_aEntries.size ();
+  }
+}
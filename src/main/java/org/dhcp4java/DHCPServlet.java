@@ -26,6 +26,7 @@ import static org.dhcp4java.DHCPConstants.DHCPDISCOVER;
 import static org.dhcp4java.DHCPConstants.DHCPINFORM;
 import static org.dhcp4java.DHCPConstants.DHCPRELEASE;
 import static org.dhcp4java.DHCPConstants.DHCPREQUEST;
+import static org.dhcp4java.DHCPConstants._DHCP_MAX_MTU;
 
 import java.net.DatagramPacket;
 import java.net.InetAddress;
@@ -43,6 +44,13 @@ import org.slf4j.LoggerFactory;
  * For simple servers or test purpose, it as also a good idea to provide a
  * <code>main()</code> method so you can easily launch the server by running the
  * servlet.
+ * <p>
+ * When the server recycles packets (<code>serverPacketPool=on</code>), the
+ * request given to <code>service()</code> comes from the server
+ * <code>DHCPPacketPool</code> and is released once the response is
+ * serialized, as is the response when it was taken from the same pool (see
+ * <code>DHCPResponseFactory</code>). Neither packet may then be kept after
+ * <code>service()</code> returns: keep a <code>clone()</code> instead.
  *
  * @author Stephan Hadinger
  * @version 1.00
@@ -92,56 +100,48 @@ public class DHCPServlet
     if (requestDatagram == null)
       return null;
 
+    final DHCPPacketPool aPool = m_aServer == null ? null : m_aServer.getPacketPool ();
     try
     {
       // parse DHCP request
-      final DHCPPacket request = DHCPPacket.getPacket (requestDatagram);
+      final DHCPPacket request = aPool == null ? DHCPPacket.getPacketLazy (requestDatagram)
+                                               : aPool.getPacketLazy (requestDatagram);
       if (request == null)
       {
         // nothing much we can do
         return null;
       }
 
-      if (s_aLogger.isDebugEnabled ())
-        s_aLogger.debug (request.getAsString ());
-
-      // do the real work
-      // call service function
-      final DHCPPacket aResponse = service (request);
-      // done
-      if (s_aLogger.isDebugEnabled ())
-        s_aLogger.debug ("service() done");
-
-      if (aResponse == null)
-        return null;
-
-      // check address/port
-      final InetAddress aAddress = aResponse.getAddress ();
-      if (aAddress == null)
+      DHCPPacket aResponse = null;
+      try
       {
-        s_aLogger.warn ("Address needed in response");
-        return null;
-      }
-      final int nPort = aResponse.getPort ();
+        if (s_aLogger.isDebugEnabled ())
+          s_aLogger.debug (request.getAsString ());
 
-      // we have something to send back
-      final byte [] aResponseBuf = aResponse.serialize ();
+        // do the real work
+        // call service function
+        aResponse = service (request);
+        // done
+        if (s_aLogger.isDebugEnabled ())
+          s_aLogger.debug ("service() done");
 
-      if (s_aLogger.isDebugEnabled ())
+        return makeResponseDatagram (requestDatagram, request, aResponse);
+      }
+      finally
       {
-        s_aLogger.debug ("Buffer is " + aResponseBuf.length + " bytes long");
+        if (aPool != null)
+        {
+          // the response is serialized, both packets can be recycled
+          if (aResponse != request && aPool.owns (aResponse))
+            aPool.release (aResponse);
+          aPool.release (request);
+        }
       }
-
-      final DatagramPacket aResponseDatagram = new DatagramPacket (aResponseBuf, aResponseBuf.length, aAddress, nPort);
-      if (s_aLogger.isDebugEnabled ())
-        s_aLogger.debug ("Sending back to" + aAddress.getHostAddress () + '(' + nPort + ')');
-
-      postProcess (requestDatagram, aResponseDatagram);
-      return aResponseDatagram;
     }
     catch (final DHCPBadPacketException e)
     {
-      s_aLogger.info ("Invalid DHCP packet received", e);
+      if (!isRejected (e))
+        s_aLogger.info ("Invalid DHCP packet received", e);
     }
     catch (final Exception e)
     {
@@ -152,6 +152,79 @@ public class DHCPServlet
     return null;
   }
 
+  /**
+   * Handle a malformed datagram rejected by the parser: the rejection is
+   * counted by the server (see <code>DHCPCoreServer.getRejectedCount()</code>)
+   * and only logged at debug level, so that a flood of garbage does not flood
+   * the logs. The parser throws a shared exception for each reason, so
+   * rejecting costs a single walk of the datagram and no allocation.
+   *
+   * @param e
+   *        the exception thrown while parsing or processing the request
+   * @return <code>true</code> if the datagram was rejected by the parser,
+   *         <code>false</code> if <code>e</code> must be handled by the caller
+   */
+  final boolean isRejected (final DHCPBadPacketException e)
+  {
+    final DHCPRejectReason eReason = e.getReason ();
+    if (eReason == null)
+      return false;
+
+    if (m_aServer != null)
+      m_aServer.countRejected (eReason);
+    if (s_aLogger.isDebugEnabled ())
+      s_aLogger.debug ("Malformed DHCP packet dropped: " + e.getMessage ());
+    return true;
+  }
+
+  /**
+   * Serialize the response returned by <code>service()</code> and pass it to
+   * <code>postProcess()</code>.
+   * <p>
+   * The response is as large as the client accepts (option 57) within the MTU
+   * of the server, see <code>DHCPPacket.serializeResponse()</code>.
+   *
+   * @param requestDatagram
+   *        the datagram received from the client
+   * @param request
+   *        the request parsed from <code>requestDatagram</code>
+   * @param aResponse
+   *        the response, may be <code>null</code>
+   * @return the datagram to send back, or <code>null</code> if no answer
+   */
+  final DatagramPacket makeResponseDatagram (final DatagramPacket requestDatagram,
+                                             final DHCPPacket request,
+                                             final DHCPPacket aResponse)
+  {
+    if (aResponse == null)
+      return null;
+
+    // check address/port
+    final InetAddress aAddress = aResponse.getAddress ();
+    if (aAddress == null)
+    {
+      s_aLogger.warn ("Address needed in response");
+      return null;
+    }
+    final int nPort = aResponse.getPort ();
+
+    // we have something to send back
+    final int nMtu = m_aServer == null ? _DHCP_MAX_MTU : m_aServer.getMtu ();
+    final byte [] aResponseBuf = aResponse.serializeResponse (request, nMtu);
+
+    if (s_aLogger.isDebugEnabled ())
+    {
+      s_aLogger.debug ("Buffer is " + aResponseBuf.length + " bytes long");
+    }
+
+    final DatagramPacket aResponseDatagram = new DatagramPacket (aResponseBuf, aResponseBuf.length, aAddress, nPort);
+    if (s_aLogger.isDebugEnabled ())
+      s_aLogger.debug ("Sending back to" + aAddress.getHostAddress () + '(' + nPort + ')');
+
+    postProcess (requestDatagram, aResponseDatagram);
+    return aResponseDatagram;
+  }
+
   /**
    * General method for parsing a DHCP request.
    * <p>
@@ -0,0 +1,116 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import java.net.DatagramPacket;
+import java.net.SocketAddress;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Servlet dispatcher for the channel transport: the request is read from a
+ * pooled buffer which is recycled after the response is sent.
+ */
+class DHCPServletChannelDispatcher implements DHCPPriorityQueue.Prioritized
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (DHCPServletChannelDispatcher.class);
+
+  private final DHCPCoreServer.Listener m_aListener;
+  private final DHCPServlet m_aDispatchServlet;
+  private final DHCPBufferPool.Slot m_aSlot;
+  private final SocketAddress m_aSender;
+  private final boolean m_bHighPriority;
+
+  public DHCPServletChannelDispatcher (final DHCPCoreServer.Listener aListener,
+                                       final DHCPServlet aServlet,
+                                       final DHCPBufferPool.Slot aSlot,
+                                       final SocketAddress aSender,
+                                       final boolean bHighPriority)
+  {
+    m_aListener = aListener;
+    m_aDispatchServlet = aServlet;
+    m_aSlot = aSlot;
+    m_aSender = aSender;
+    m_bHighPriority = bHighPriority;
+  }
+
+  public boolean isHighPriority ()
+  {
+    return m_bHighPriority;
+  }
+
+  /**
+   * Drop the request without running the servlet, recycling its buffer.
+   */
+  void discard ()
+  {
+    m_aListener.getServer ().releaseBuffer (m_aSlot);
+  }
+
+  public void run ()
+  {
+    final DHCPRetransmissionCache.Key aKey;
+    try
+    {
+      aKey = m_aListener.getRequestKey (m_aSlot.getBuffer ());
+      if (m_aListener.handleRetransmission (aKey))
+      {
+        discard ();
+        return;
+      }
+    }
+    catch (final RuntimeException e)
+    {
+      discard ();
+      throw e;
+    }
+
+    try
+    {
+      if (m_aDispatchServlet instanceof DHCPAsyncServlet)
+      {
+        // the slot is recycled before the servlet completes, work on a copy
+        final DatagramPacket aPooled = m_aSlot.getDatagram (m_aSender);
+        final DatagramPacket aCopy = new DatagramPacket (Arrays.copyOfRange (aPooled.getData (),
+                                                                             aPooled.getOffset (),
+                                                                             aPooled.getOffset () + aPooled.getLength ()),
+                                                         aPooled.getLength (),
+                                                         m_aSender);
+        m_aListener.serviceAsync ((DHCPAsyncServlet) m_aDispatchServlet, aCopy, aKey);
+        return;
+      }
+      final DatagramPacket response = m_aDispatchServlet.serviceDatagram (m_aSlot.getDatagram (m_aSender));
+      m_aListener.completeRequest (aKey, response, true);
+      // invoke callback method
+      m_aListener.sendResponse (response, m_aSlot.getBuffer ());
+    }
+    catch (final Exception e)
+    {
+      m_aListener.completeRequest (aKey, null, false);
+      s_aLogger.info ("Exception in dispatcher", e);
+    }
+    finally
+    {
+      m_aListener.getServer ().releaseBuffer (m_aSlot);
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs each task on its own virtual thread, with an upper bound on the number
+ * of tasks in flight.
+ * <p>
+ * Virtual threads are only available since Java 21, while this library is
+ * compiled for Java 8: the executor is therefore obtained through reflection.
+ * <p>
+ * When the limit is reached, <code>execute()</code> does not wait: the task is
+ * passed to the <code>DHCPOverloadHandler</code>, which discards it or runs it
+ * in the calling thread according to its policy. There is no queue, so
+ * <code>drop-oldest</code> discards the incoming task.
+ * <p>
+ * A task that completes asynchronously, such as a request to a
+ * <code>DHCPAsyncServlet</code>, keeps its slot until it calls the
+ * <code>Runnable</code> returned by <code>deferRelease()</code>.
+ *
+ * @author Stephan Hadinger
+ * @version 1.00
+ */
+final class DHCPVirtualThreadExecutor implements Executor
+{
+  /**
+   * Gives the permit back once the wrapped task is done, or later if the task
+   * deferred it.
+   */
+  private static final class PermitReleasingTask implements Runnable
+  {
+    private final Runnable m_aTask;
+    private final Semaphore m_aPermits;
+    private final AtomicBoolean m_aReleased = new AtomicBoolean ();
+    private boolean m_bDeferred;
+
+    PermitReleasingTask (final Runnable aTask, final Semaphore aPermits)
+    {
+      m_aTask = aTask;
+      m_aPermits = aPermits;
+    }
+
+    void releasePermit ()
+    {
+      if (m_aReleased.compareAndSet (false, true))
+        m_aPermits.release ();
+    }
+
+    public void run ()
+    {
+      s_aCurrentTask.set (this);
+      try
+      {
+        m_aTask.run ();
+      }
+      finally
+      {
+        s_aCurrentTask.remove ();
+        if (!m_bDeferred)
+          releasePermit ();
+      }
+    }
+  }
+
+  /** the task running in the current thread, if run by an instance. */
+  private static final ThreadLocal <PermitReleasingTask> s_aCurrentTask = new ThreadLocal <> ();
+
+  private final ExecutorService m_aExecutor;
+  private final Semaphore m_aPermits;
+  private final int m_nMaxInFlight;
+  private final DHCPOverloadHandler m_aOverloadHandler;
+
+  /**
+   * @param aExecutor
+   *        runs the tasks
+   * @param nMaxInFlight
+   *        maximum number of tasks running at the same time, must be &gt; 0
+   * @param aOverloadHandler
+   *        called when the limit is reached
+   */
+  DHCPVirtualThreadExecutor (final ExecutorService aExecutor,
+                             final int nMaxInFlight,
+                             final DHCPOverloadHandler aOverloadHandler)
+  {
+    m_aExecutor = aExecutor;
+    m_aPermits = new Semaphore (nMaxInFlight);
+    m_nMaxInFlight = nMaxInFlight;
+    m_aOverloadHandler = aOverloadHandler;
+  }
+
+  /**
+   * Creates a new virtual thread executor.
+   *
+   * @param nMaxInFlight
+   *        maximum number of tasks running at the same time, must be &gt; 0
+   * @param aOverloadHandler
+   *        called when the limit is reached
+   * @return the new executor, never <code>null</code>
+   * @throws DHCPServerInitException
+   *         the JVM does not support virtual threads
+   */
+  static DHCPVirtualThreadExecutor create (final int nMaxInFlight,
+                                           final DHCPOverloadHandler aOverloadHandler) throws DHCPServerInitException
+  {
+    if (nMaxInFlight <= 0)
+      throw new DHCPServerInitException ("virtual thread limit must be > 0: " + nMaxInFlight);
+
+    final ExecutorService aExecutor;
+    try
+    {
+      aExecutor = (ExecutorService) Executors.class.getMethod ("newVirtualThreadPerTaskExecutor").invoke (null);
+    }
+    catch (final ReflectiveOperationException e)
+    {
+      throw new DHCPServerInitException ("Virtual thread dispatch requires Java 21 or later", e);
+    }
+    return new DHCPVirtualThreadExecutor (aExecutor, nMaxInFlight, aOverloadHandler);
+  }
+
+  public void execute (final Runnable aTask)
+  {
+    if (!m_aPermits.tryAcquire ())
+    {
+      m_aOverloadHandler.rejectedWithoutQueue (aTask);
+      return;
+    }
+    try
+    {
+      m_aExecutor.execute (new PermitReleasingTask (aTask, m_aPermits));
+    }
+    catch (final RejectedExecutionException e)
+    {
+      m_aPermits.release ();
+      throw e;
+    }
+  }
+
+  /**
+   * Keep the slot of the task running in the current thread after it returns,
+   * until the returned <code>Runnable</code> is run.
+   *
+   * @return gives the slot back, may be run more than once; <code>null</code>
+   *         if the current thread is not running a task of this class
+   */
+  static Runnable deferRelease ()
+  {
+    final PermitReleasingTask aTask = s_aCurrentTask.get ();
+    if (aTask == null)
+      return null;
+    aTask.m_bDeferred = true;
+    return new Runnable ()
+    {
+      public void run ()
+      {
+        aTask.releasePermit ();
+      }
+    };
+  }
+
+  /**
+   * @return the number of tasks currently running.
+   */
+  int getInFlight ()
+  {
+    return m_nMaxInFlight - m_aPermits.availablePermits ();
+  }
+
+  /**
+   * @return the maximum number of tasks running at the same time.
+   */
+  int getMaxInFlight ()
+  {
+    return m_nMaxInFlight;
+  }
+
+  /**
+   * Stop accepting new tasks. Tasks in flight complete normally.
+   */
+  void shutdown ()
+  {
+    m_aExecutor.shutdown ();
+  }
+}
@@ -0,0 +1,131 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.BOOTREPLY;
+import static org.dhcp4java.DHCPConstants.BOOTREQUEST;
+import static org.dhcp4java.DHCPConstants.DHCPDISCOVER;
+import static org.dhcp4java.DHCPConstants.DHCPOFFER;
+import static org.dhcp4java.DHCPConstants.DHCPREQUEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.junit.Test;
+
+public class DHCPAsyncServletTest
+{
+  private static DatagramPacket _datagram (final DHCPPacket pac)
+  {
+    final byte [] buf = pac.serialize ();
+    return new DatagramPacket (buf, buf.length);
+  }
+
+  private static DHCPPacket _request (final byte messageType)
+  {
+    final DHCPPacket pac = new DHCPPacket ();
+    pac.setOp (BOOTREQUEST);
+    pac.setDHCPMessageType (messageType);
+    return pac;
+  }
+
+  @Test
+  public void testServiceDatagramAsyncRejects ()
+  {
+    final DHCPAsyncServletTestServlet servlet = new DHCPAsyncServletTestServlet ();
+    assertNull (servlet.serviceDatagramAsync (null).toCompletableFuture ().join ());
+
+    DHCPPacket pac = new DHCPPacket ();
+    pac.setDhcp (false); // BOOTP
+    assertNull (servlet.serviceDatagramAsync (_datagram (pac)).toCompletableFuture ().join ());
+
+    pac = new DHCPPacket ();
+    pac.setOp (BOOTREPLY);
+    pac.setDHCPMessageType (DHCPDISCOVER);
+    assertNull (servlet.serviceDatagramAsync (_datagram (pac)).toCompletableFuture ().join ());
+
+    // garbage
+    final DatagramPacket udp = new DatagramPacket (new byte [10], 10);
+    assertNull (servlet.serviceDatagramAsync (udp).toCompletableFuture ().join ());
+  }
+
+  @Test
+  public void testServiceDatagramAsync () throws Exception
+  {
+    final DHCPAsyncServletTestServlet servlet = new DHCPAsyncServletTestServlet ();
+    final CompletionStage <DatagramPacket> aStage = servlet.serviceDatagramAsync (_datagram (_request (DHCPDISCOVER)));
+    assertFalse (aStage.toCompletableFuture ().isDone ());
+
+    servlet.pending.complete (servlet.makeOffer ());
+    final DatagramPacket aResponse = aStage.toCompletableFuture ().join ();
+    assertNotNull (aResponse);
+    assertEquals (DHCPOFFER, DHCPPacket.getPacket (aResponse).getDHCPMessageType ().byteValue ());
+  }
+
+  @Test
+  public void testSynchronousFallback () throws Exception
+  {
+    final DHCPAsyncServletTestServlet servlet = new DHCPAsyncServletTestServlet ();
+    // doRequestAsync() is not overridden and calls doRequest()
+    final DatagramPacket aResponse = servlet.serviceDatagram (_datagram (_request (DHCPREQUEST)));
+    assertNotNull (aResponse);
+    assertEquals (DHCPOFFER, DHCPPacket.getPacket (aResponse).getDHCPMessageType ().byteValue ());
+  }
+}
+
+class DHCPAsyncServletTestServlet extends DHCPAsyncServlet
+{
+  public final CompletableFuture <DHCPPacket> pending = new CompletableFuture <> ();
+
+  DHCPPacket makeOffer ()
+  {
+    final DHCPPacket response = new DHCPPacket ();
+    response.setOp (BOOTREPLY);
+    response.setDHCPMessageType (DHCPOFFER);
+    try
+    {
+      response.setAddress (InetAddress.getByName ("10.11.12.13"));
+    }
+    catch (final Exception e)
+    {
+      throw new IllegalStateException (e);
+    }
+    response.setPort (68);
+    return response;
+  }
+
+  @Override
+  protected CompletionStage <DHCPPacket> doDiscoverAsync (final DHCPPacket request)
+  {
+    return pending;
+  }
+
+  @Override
+  protected DHCPPacket doRequest (final DHCPPacket request)
+  {
+    return makeOffer ();
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DHCPLaneExecutorTest
+{
+  private DHCPLaneExecutor m_aLanes;
+
+  @After
+  public void tearDown ()
+  {
+    if (m_aLanes != null)
+      m_aLanes.shutdown ();
+  }
+
+  private static DHCPLaneExecutor _create (final int nLanes)
+  {
+    return new DHCPLaneExecutor (nLanes,
+                                 100,
+                                 false,
+                                 Executors.defaultThreadFactory (),
+                                 new ThreadPoolExecutor.AbortPolicy ());
+  }
+
+  @Test
+  public void testGetLane ()
+  {
+    m_aLanes = _create (4);
+    assertEquals (4, m_aLanes.getLaneCount ());
+    for (int nKey = -1000; nKey < 1000; nKey += 7)
+    {
+      final int nLane = m_aLanes.getLane (nKey);
+      assertTrue (nLane >= 0 && nLane < 4);
+      assertEquals (nLane, m_aLanes.getLane (nKey));
+    }
+    assertTrue (m_aLanes.getLane (Integer.MIN_VALUE) >= 0);
+  }
+
+  @Test
+  public void testSameKeySerial () throws Exception
+  {
+    m_aLanes = _create (4);
+    final List <Integer> aOrder = Collections.synchronizedList (new ArrayList <Integer> ());
+    final List <String> aThreads = Collections.synchronizedList (new ArrayList <String> ());
+    final CountDownLatch aDone = new CountDownLatch (50);
+    for (int i = 0; i < 50; i++)
+    {
+      final int nIndex = i;
+      m_aLanes.execute (42, new Runnable ()
+      {
+        public void run ()
+        {
+          aOrder.add (Integer.valueOf (nIndex));
+          aThreads.add (Thread.currentThread ().getName ());
+          aDone.countDown ();
+        }
+      });
+    }
+    assertTrue (aDone.await (5, TimeUnit.SECONDS));
+    for (int i = 0; i < 50; i++)
+    {
+      assertEquals (i, aOrder.get (i).intValue ());
+      assertEquals (aThreads.get (0), aThreads.get (i));
+    }
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testNoLane ()
+  {
+    _create (0);
+  }
+}
@@ -0,0 +1,221 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_LEASE_TIME;
+import static org.dhcp4java.DHCPConstants.DHO_END;
+import static org.dhcp4java.DHCPConstants.DHO_ROUTERS;
+import static org.dhcp4java.DHCPConstants.DHO_VENDOR_ENCAPSULATED_OPTIONS;
+import static org.dhcp4java.DHCPConstants.DHO_VIVSO;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DHCPOptionCodecRegistryTest
+{
+  private static final int ENTERPRISE = 4491;
+  private static final byte SITE_OPTION = (byte) 224;
+
+  /** site option: a 2 bytes port followed by a string. */
+  private static final DHCPOptionCodec <String> PORT_NAME = new DHCPOptionCodec <String> (1, 3, 255)
+  {
+    @Override
+    protected String decodeValue (final byte [] value)
+    {
+      final int port = (value[0] & 0xFF) << 8 | (value[1] & 0xFF);
+      return new String (value, 2, value.length - 2) + ':' + port;
+    }
+
+    @Override
+    protected byte [] encodeValue (final String value)
+    {
+      throw new UnsupportedOperationException ();
+    }
+  };
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testBadCodecSizes ()
+  {
+    new DHCPOptionCodec <byte []> (2, 4, 3)
+    {
+      @Override
+      protected byte [] decodeValue (final byte [] value)
+      {
+        return value;
+      }
+
+      @Override
+      protected byte [] encodeValue (final byte [] value)
+      {
+        return value;
+      }
+    };
+  }
+
+  @Test
+  public void testBuiltinCodecs () throws Exception
+  {
+    assertEquals (Integer.valueOf (-2), DHCPOptionCodec.INT.decode (DHCPOption.int2Bytes (-2)));
+    assertEquals (Short.valueOf ((short) 1500), DHCPOptionCodec.SHORT.decode (DHCPOption.short2Bytes ((short) 1500)));
+    assertEquals (Byte.valueOf ((byte) 7), DHCPOptionCodec.BYTE.decode (DHCPOption.byte2Bytes ((byte) 7)));
+    assertEquals ("foo", DHCPOptionCodec.STRING.decode (DHCPOptionCodec.STRING.encode ("foo")));
+    assertArrayEquals (new short [] { 1, -1 },
+                       DHCPOptionCodec.SHORTS.decode (DHCPOptionCodec.SHORTS.encode (new short [] { 1, -1 })));
+
+    final InetAddress [] addrs = { InetAddress.getByName ("10.0.0.1"), InetAddress.getByName ("10.0.0.2") };
+    assertArrayEquals (addrs, DHCPOptionCodec.INETS.decode (DHCPOptionCodec.INETS.encode (addrs)));
+    assertEquals (addrs[0], DHCPOptionCodec.INET.decode (addrs[0].getAddress ()));
+
+    try
+    {
+      DHCPOptionCodec.INT.decode (new byte [3]);
+      fail ();
+    }
+    catch (final DHCPBadPacketException e)
+    {
+      // expected
+    }
+    try
+    {
+      DHCPOptionCodec.INETS.decode (new byte [6]);
+      fail ();
+    }
+    catch (final DHCPBadPacketException e)
+    {
+      // expected
+    }
+    try
+    {
+      DHCPOptionCodec.STRING.encode ("");
+      fail ();
+    }
+    catch (final IllegalArgumentException e)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDefaultRegistry () throws Exception
+  {
+    final DHCPOptionCodecRegistry registry = new DHCPOptionCodecRegistry ();
+    assertSame (DHCPOptionCodec.INT, registry.getCodec (DHO_DHCP_LEASE_TIME));
+    assertSame (DHCPOptionCodec.INETS, registry.getCodec (DHO_ROUTERS));
+    assertNull (registry.getCodec (SITE_OPTION));
+    assertTrue (registry.getCodec (DHO_VIVSO) != null);
+
+    final DHCPPacket packet = new DHCPPacket ();
+    packet.setOptionAsInt (DHO_DHCP_LEASE_TIME, 3600);
+    assertEquals (Integer.valueOf (3600), registry.decode (packet, DHO_DHCP_LEASE_TIME));
+    assertNull (registry.decode (packet, DHO_ROUTERS));
+    assertNull (registry.decode (null));
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testRegisterEnd ()
+  {
+    new DHCPOptionCodecRegistry ().register (DHO_END, PORT_NAME);
+  }
+
+  @Test
+  public void testSiteOption ()
+  {
+    final DHCPOptionCodecRegistry registry = new DHCPOptionCodecRegistry ();
+    registry.register (SITE_OPTION, PORT_NAME);
+    assertSame (PORT_NAME, registry.getCodec (SITE_OPTION));
+
+    final DHCPPacket packet = new DHCPPacket ();
+    packet.setOptionRaw (SITE_OPTION, new byte [] { 0x1F, (byte) 0x90, 'a', 'b' });
+    final Object value = registry.decode (packet, SITE_OPTION);
+    assertEquals ("ab:8080", value);
+    // decoded once, kept with the option
+    assertSame (value, registry.decode (packet, SITE_OPTION));
+    assertSame (value, packet.getOptionAs (SITE_OPTION, PORT_NAME));
+
+    registry.register (SITE_OPTION, null);
+    assertNull (registry.decode (packet, SITE_OPTION));
+  }
+
+  @Test
+  public void testVendorOptions ()
+  {
+    final DHCPOptionCodecRegistry registry = new DHCPOptionCodecRegistry ();
+    registry.registerVendor (ENTERPRISE, (byte) 1, DHCPOptionCodec.STRING);
+    assertSame (DHCPOptionCodec.STRING, registry.getVendorCodec (ENTERPRISE, (byte) 1));
+    assertNull (registry.getVendorCodec (ENTERPRISE, (byte) 2));
+    assertNull (registry.getVendorCodec (9, (byte) 1));
+
+    final Map <Byte, Object> subOptions = new LinkedHashMap <> ();
+    subOptions.put (Byte.valueOf ((byte) 1), "modem");
+    subOptions.put (Byte.valueOf ((byte) 2), new byte [] { 5, 6 });
+    final Map <Integer, Map <Byte, Object>> vendors = new LinkedHashMap <> ();
+    vendors.put (Integer.valueOf (ENTERPRISE), subOptions);
+
+    @SuppressWarnings ("unchecked")
+    final DHCPOptionCodec <Map <Integer, Map <Byte, Object>>> codec = (DHCPOptionCodec <Map <Integer, Map <Byte, Object>>>) registry.getCodec (DHO_VIVSO);
+    final DHCPOption opt = DHCPOption.newOptionAs (DHO_VIVSO, vendors, codec);
+    assertArrayEquals (new byte [] { 0, 0, 0x11, (byte) 0x8B, 11, 1, 5, 'm', 'o', 'd', 'e', 'm', 2, 2, 5, 6 },
+                       opt.getValueFast ());
+
+    final Map <Integer, Map <Byte, Object>> decoded = opt.getValueAs (codec);
+    final Map <Byte, Object> decodedSub = decoded.get (Integer.valueOf (ENTERPRISE));
+    assertEquals ("modem", decodedSub.get (Byte.valueOf ((byte) 1)));
+    assertArrayEquals (new byte [] { 5, 6 }, (byte []) decodedSub.get (Byte.valueOf ((byte) 2)));
+
+    // sub-option cut short
+    try
+    {
+      new DHCPOption (DHO_VIVSO, new byte [] { 0, 0, 0x11, (byte) 0x8B, 3, 1, 5, 'm' }).getValueAs (codec);
+      fail ();
+    }
+    catch (final DHCPBadPacketException e)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testEncapsulatedOptions ()
+  {
+    final DHCPOptionCodecRegistry registry = new DHCPOptionCodecRegistry ();
+    final DHCPOptionCodec <Map <Byte, Object>> codec = registry.getSubOptionsCodec (ENTERPRISE);
+    registry.register (DHO_VENDOR_ENCAPSULATED_OPTIONS, codec);
+    // registered after the codec is created
+    registry.registerVendor (ENTERPRISE, (byte) 3, DHCPOptionCodec.SHORT);
+
+    final DHCPPacket packet = new DHCPPacket ();
+    packet.setOptionRaw (DHO_VENDOR_ENCAPSULATED_OPTIONS, new byte [] { 3, 2, 0x05, (byte) 0xDC, 4, 0 });
+    @SuppressWarnings ("unchecked")
+    final Map <Byte, Object> map = (Map <Byte, Object>) registry.decode (packet, DHO_VENDOR_ENCAPSULATED_OPTIONS);
+    assertEquals (2, map.size ());
+    assertEquals (Short.valueOf ((short) 1500), map.get (Byte.valueOf ((byte) 3)));
+    assertArrayEquals (new byte [0], (byte []) map.get (Byte.valueOf ((byte) 4)));
+    assertArrayEquals (packet.getOptionRaw (DHO_VENDOR_ENCAPSULATED_OPTIONS), codec.encode (map));
+  }
+}
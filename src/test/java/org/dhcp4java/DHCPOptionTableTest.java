@@ -0,0 +1,121 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_LEASE_TIME;
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_MESSAGE_TYPE;
+import static org.dhcp4java.DHCPConstants.DHO_HOST_NAME;
+import static org.dhcp4java.DHCPConstants.DHO_SUBNET_MASK;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DHCPOptionTableTest
+{
+  private static DHCPOption _opt (final byte code, final int val)
+  {
+    return new DHCPOption (code, new byte [] { (byte) val });
+  }
+
+  @Test
+  public void testOrder ()
+  {
+    final DHCPOptionTable table = new DHCPOptionTable ();
+    final DHCPOption type = _opt (DHO_DHCP_MESSAGE_TYPE, 1);
+    final DHCPOption mask = _opt (DHO_SUBNET_MASK, 2);
+    final DHCPOption vendor = _opt ((byte) 0xE0, 3);
+    table.put (type);
+    table.put (mask);
+    table.put (vendor);
+    assertEquals (3, table.size ());
+    assertTrue (table.get ((byte) 0xE0) == vendor);
+    assertTrue (table.contains (DHO_SUBNET_MASK));
+    assertFalse (table.contains (DHO_HOST_NAME));
+    assertNull (table.get (DHO_HOST_NAME));
+
+    // replace keeps position
+    final DHCPOption type2 = _opt (DHO_DHCP_MESSAGE_TYPE, 5);
+    table.put (type2);
+    assertArrayEquals (new DHCPOption [] { type2, mask, vendor }, table.toArray ());
+
+    table.remove (DHO_SUBNET_MASK);
+    table.remove (DHO_HOST_NAME);
+    final List <DHCPOption> values = new ArrayList <> (table.values ());
+    assertEquals (2, values.size ());
+    assertTrue (values.get (0) == type2);
+    assertTrue (values.get (1) == vendor);
+
+    table.clear ();
+    assertTrue (table.isEmpty ());
+    assertNull (table.get (DHO_DHCP_MESSAGE_TYPE));
+    assertEquals (0, table.values ().size ());
+  }
+
+  @Test
+  public void testGrow ()
+  {
+    final DHCPOptionTable table = new DHCPOptionTable ();
+    for (int i = 1; i < 255; i++)
+      table.put (_opt ((byte) i, i));
+    assertEquals (254, table.size ());
+    final DHCPOption [] opts = table.toArray ();
+    for (int i = 0; i < opts.length; i++)
+      assertEquals ((byte) (i + 1), opts[i].getCode ());
+  }
+
+  @Test
+  public void testEqualsAndCopy ()
+  {
+    final DHCPOptionTable table1 = new DHCPOptionTable ();
+    table1.put (_opt (DHO_DHCP_MESSAGE_TYPE, 1));
+    table1.put (_opt (DHO_DHCP_LEASE_TIME, 2));
+    final DHCPOptionTable table2 = new DHCPOptionTable ();
+    table2.put (_opt (DHO_DHCP_LEASE_TIME, 2));
+    table2.put (_opt (DHO_DHCP_MESSAGE_TYPE, 1));
+    assertEquals (table1, table2);
+    assertEquals (table1.hashCode (), table2.hashCode ());
+
+    final DHCPOptionTable copy = new DHCPOptionTable (table1);
+    copy.remove (DHO_DHCP_LEASE_TIME);
+    assertEquals (2, table1.size ());
+    assertFalse (table1.equals (copy));
+  }
+
+  @Test (expected = ConcurrentModificationException.class)
+  public void testFailFast ()
+  {
+    final DHCPOptionTable table = new DHCPOptionTable ();
+    table.put (_opt (DHO_DHCP_MESSAGE_TYPE, 1));
+    table.put (_opt (DHO_DHCP_LEASE_TIME, 2));
+    final Iterator <DHCPOption> it = table.values ().iterator ();
+    it.next ();
+    table.remove (DHO_DHCP_LEASE_TIME);
+    it.next ();
+  }
+}
@@ -584,6 +584,35 @@ public class DHCPOptionTest
     opt.getValueAsInetAddr ();
   }
 
+  @Test
+  public void testGetValueAsInetAddrAsInt () throws Exception
+  {
+    final DHCPOption opt = DHCPOption.newOptionAsInetAddress (DHO_SUBNET_MASK, InetAddress.getByName ("255.255.255.0"));
+    assertEquals (0xFFFFFF00, opt.getValueAsInetAddrAsInt ());
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testGetValueAsInetAddrAsIntBad ()
+  {
+    new DHCPOption (DHO_DHCP_LEASE_TIME, new byte [4]).getValueAsInetAddrAsInt ();
+  }
+
+  @Test (expected = DHCPBadPacketException.class)
+  public void testGetValueAsInetAddrAsIntBadSize ()
+  {
+    new DHCPOption (DHO_SUBNET_MASK, new byte [3]).getValueAsInetAddrAsInt ();
+  }
+
+  @Test
+  public void testGetValueAsLong ()
+  {
+    assertEquals (0xFFL, DHCPOption.newOptionAsByte (DHO_IP_FORWARDING, (byte) -1).getValueAsLong ());
+    assertEquals (0xFFFFL, DHCPOption.newOptionAsShort (DHO_INTERFACE_MTU, (short) -1).getValueAsLong ());
+    assertEquals (0xFFFFFFFFL, DHCPOption.newOptionAsInt (DHO_DHCP_LEASE_TIME, -1).getValueAsLong ());
+    assertEquals (-1L, new DHCPOption (DHO_DHCP_LEASE_TIME, new byte [3]).getValueAsLong ());
+    assertEquals (-1L, new DHCPOption (DHO_DHCP_LEASE_TIME, null).getValueAsLong ());
+  }
+
   // InetAddresses
   @Test
   public void testNewOptionAsInetAddressesGetValueAsInetAddresses () throws Exception
@@ -841,6 +870,35 @@ public class DHCPOptionTest
     assertNull (DHCPOption.getOptionFormat ((byte) 0));
   }
 
+  @Test
+  public void testGetFormat ()
+  {
+    assertEquals (DHCPOption.EOptionFormat.INET, DHCPOption.getFormat (DHCPConstants.DHO_SUBNET_MASK));
+    assertEquals (DHCPOption.EOptionFormat.BYTES, DHCPOption.getFormat (DHCPConstants.DHO_DHCP_PARAMETER_REQUEST_LIST));
+    assertNull (DHCPOption.getFormat (DHCPConstants.DHO_PAD));
+    assertNull (DHCPOption.getFormat (DHCPConstants.DHO_END));
+    assertNull (DHCPOption.getFormat ((byte) 200));
+
+    final DHCPOption.EOptionFormat inet = DHCPOption.EOptionFormat.INET;
+    assertTrue (inet.isFixedSize ());
+    assertEquals (4, inet.getElementSize ());
+
+    final DHCPOption.EOptionFormat shorts = DHCPOption.EOptionFormat.SHORTS;
+    assertFalse (shorts.isFixedSize ());
+    assertEquals (2, shorts.getElementSize ());
+    assertEquals (2, shorts.getMinLength ());
+    assertEquals (Integer.MAX_VALUE, shorts.getMaxLength ());
+
+    // table and type checks agree for every code
+    for (int i = 0; i < 256; i++)
+    {
+      final byte code = (byte) i;
+      assertEquals (DHCPOption.getFormat (code) == DHCPOption.EOptionFormat.INETS,
+                    DHCPOption.isOptionAsInetAddrs (code));
+      assertEquals (DHCPOption.getFormat (code) == null, DHCPOption.getOptionFormat (code) == null);
+    }
+  }
+
   @Test
   public void testString2Class ()
   {
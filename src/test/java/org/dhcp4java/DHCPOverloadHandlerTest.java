@@ -0,0 +1,189 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DHCPOverloadHandlerTest
+{
+  private final CountDownLatch m_aRelease = new CountDownLatch (1);
+  private ThreadPoolExecutor m_aPool;
+
+  @After
+  public void tearDown ()
+  {
+    m_aRelease.countDown ();
+    if (m_aPool != null)
+      m_aPool.shutdownNow ();
+  }
+
+  /**
+   * One thread, kept busy, and a queue of one already holding a task.
+   */
+  private DHCPOverloadHandler _fillPool (final String sPolicy, final Runnable aQueued) throws Exception
+  {
+    final DHCPOverloadHandler aHandler = new DHCPOverloadHandler (sPolicy);
+    m_aPool = new ThreadPoolExecutor (1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue <> (1), aHandler);
+    m_aPool.execute (new Runnable ()
+    {
+      public void run ()
+      {
+        try
+        {
+          m_aRelease.await ();
+        }
+        catch (final InterruptedException e)
+        {
+          // done
+        }
+      }
+    });
+    m_aPool.execute (aQueued);
+    return aHandler;
+  }
+
+  private static Runnable _noop ()
+  {
+    return new Runnable ()
+    {
+      public void run ()
+      {}
+    };
+  }
+
+  @Test
+  public void testDropNewest () throws Exception
+  {
+    final Runnable aQueued = _noop ();
+    final DHCPOverloadHandler aHandler = _fillPool (DHCPCoreServer.OVERLOAD_DROP_NEWEST, aQueued);
+
+    m_aPool.execute (_noop ());
+    m_aPool.execute (_noop ());
+    assertEquals (2, aHandler.getShedCount ());
+    assertEquals (0, aHandler.getCallerRunsCount ());
+    assertSame (aQueued, m_aPool.getQueue ().peek ());
+  }
+
+  @Test
+  public void testDropOldest () throws Exception
+  {
+    final DHCPOverloadHandler aHandler = _fillPool (DHCPCoreServer.OVERLOAD_DROP_OLDEST, _noop ());
+
+    final Runnable aNewest = _noop ();
+    m_aPool.execute (aNewest);
+    assertEquals (1, aHandler.getShedCount ());
+    assertSame (aNewest, m_aPool.getQueue ().peek ());
+  }
+
+  @Test
+  public void testCallerRuns () throws Exception
+  {
+    final DHCPOverloadHandler aHandler = _fillPool (DHCPCoreServer.OVERLOAD_CALLER_RUNS, _noop ());
+
+    final Thread [] aRunner = new Thread [1];
+    m_aPool.execute (new Runnable ()
+    {
+      public void run ()
+      {
+        aRunner[0] = Thread.currentThread ();
+      }
+    });
+    assertSame (Thread.currentThread (), aRunner[0]);
+    assertEquals (1, aHandler.getCallerRunsCount ());
+    assertEquals (0, aHandler.getShedCount ());
+  }
+
+  @Test
+  public void testShutdownNotCounted () throws Exception
+  {
+    final DHCPOverloadHandler aHandler = _fillPool (DHCPCoreServer.OVERLOAD_DROP_NEWEST, _noop ());
+    m_aPool.shutdown ();
+
+    m_aPool.execute (_noop ());
+    assertEquals (0, aHandler.getShedCount ());
+    assertTrue (m_aPool.isShutdown ());
+  }
+
+  @Test
+  public void testHighPriorityEvictsLow () throws Exception
+  {
+    final DHCPOverloadHandler aHandler = new DHCPOverloadHandler (DHCPCoreServer.OVERLOAD_DROP_NEWEST);
+    m_aPool = new ThreadPoolExecutor (1, 1, 0, TimeUnit.MILLISECONDS, new DHCPPriorityQueue (1), aHandler);
+    m_aPool.execute (new Runnable ()
+    {
+      public void run ()
+      {
+        try
+        {
+          m_aRelease.await ();
+        }
+        catch (final InterruptedException e)
+        {
+          // done
+        }
+      }
+    });
+    m_aPool.execute (new Urgent (false));
+
+    final Runnable aUrgent = new Urgent (true);
+    m_aPool.execute (aUrgent);
+    assertEquals (1, aHandler.getShedCount ());
+    assertSame (aUrgent, m_aPool.getQueue ().peek ());
+
+    // nothing left to evict
+    m_aPool.execute (new Urgent (true));
+    assertEquals (2, aHandler.getShedCount ());
+    assertSame (aUrgent, m_aPool.getQueue ().peek ());
+  }
+
+  private static final class Urgent implements DHCPPriorityQueue.Prioritized
+  {
+    private final boolean m_bHigh;
+
+    Urgent (final boolean bHigh)
+    {
+      m_bHigh = bHigh;
+    }
+
+    public boolean isHighPriority ()
+    {
+      return m_bHigh;
+    }
+
+    public void run ()
+    {}
+  }
+
+  @Test (expected = DHCPServerInitException.class)
+  public void testBadPolicy () throws Exception
+  {
+    new DHCPOverloadHandler ("drop-everything");
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.BOOTREPLY;
+import static org.dhcp4java.DHCPConstants.BOOTREQUEST;
+import static org.dhcp4java.DHCPConstants.DHCPDISCOVER;
+import static org.dhcp4java.DHCPConstants.DHCPINFORM;
+import static org.dhcp4java.DHCPConstants.DHCPREQUEST;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DHCPPacketFiltersTest
+{
+  private static ByteBuffer _datagram (final byte nOp, final byte nType, final String sChaddr, final String sGiaddr)
+                                                                                                                 throws Exception
+  {
+    final DHCPPacket aPacket = new DHCPPacket ();
+    aPacket.setOp (nOp);
+    aPacket.setChaddrHex (sChaddr);
+    if (sGiaddr != null)
+      aPacket.setGiaddr (sGiaddr);
+    if (nType != 0)
+      aPacket.setDHCPMessageType (nType);
+    return ByteBuffer.wrap (aPacket.serialize ());
+  }
+
+  @Test
+  public void testBootRequestOnly () throws Exception
+  {
+    final DHCPPacketFilter aFilter = DHCPPacketFilters.bootRequestOnly ();
+    assertTrue (aFilter.accept (_datagram (BOOTREQUEST, DHCPDISCOVER, "001122334455", null)));
+    assertFalse (aFilter.accept (_datagram (BOOTREPLY, DHCPDISCOVER, "001122334455", null)));
+    assertFalse (aFilter.accept (ByteBuffer.allocate (0)));
+  }
+
+  @Test
+  public void testDhcpOnly () throws Exception
+  {
+    final DHCPPacketFilter aFilter = DHCPPacketFilters.dhcpOnly ();
+    assertTrue (aFilter.accept (_datagram (BOOTREQUEST, DHCPDISCOVER, "001122334455", null)));
+    assertFalse (aFilter.accept (_datagram (BOOTREQUEST, (byte) 0, "001122334455", null)));
+    assertFalse (aFilter.accept (ByteBuffer.allocate (300)));
+  }
+
+  @Test
+  public void testMessageTypes () throws Exception
+  {
+    final DHCPPacketFilter aFilter = DHCPPacketFilters.messageTypes (DHCPDISCOVER, DHCPREQUEST);
+    assertTrue (aFilter.accept (_datagram (BOOTREQUEST, DHCPDISCOVER, "001122334455", null)));
+    assertTrue (aFilter.accept (_datagram (BOOTREQUEST, DHCPREQUEST, "001122334455", null)));
+    assertFalse (aFilter.accept (_datagram (BOOTREQUEST, DHCPINFORM, "001122334455", null)));
+    assertFalse (aFilter.accept (_datagram (BOOTREQUEST, (byte) 0, "001122334455", null)));
+  }
+
+  @Test
+  public void testAllowedRelays () throws Exception
+  {
+    final DHCPPacketFilter aFilter = DHCPPacketFilters.allowedRelays (Arrays.asList (InetAddress.getByName ("10.0.0.1"),
+                                                                                     InetAddress.getByName ("192.168.1.1"),
+                                                                                     InetAddress.getByName ("::1")));
+    assertTrue (aFilter.accept (_datagram (BOOTREQUEST, DHCPDISCOVER, "001122334455", null)));
+    assertTrue (aFilter.accept (_datagram (BOOTREQUEST, DHCPDISCOVER, "001122334455", "10.0.0.1")));
+    assertTrue (aFilter.accept (_datagram (BOOTREQUEST, DHCPDISCOVER, "001122334455", "192.168.1.1")));
+    assertFalse (aFilter.accept (_datagram (BOOTREQUEST, DHCPDISCOVER, "001122334455", "10.0.0.2")));
+  }
+
+  @Test
+  public void testBlockedHardwareAddresses () throws Exception
+  {
+    final DHCPPacketFilter aFilter = DHCPPacketFilters.blockedHardwareAddresses (Arrays.asList (new HardwareAddress ("001122334455"),
+                                                                                                new HardwareAddress ("AABBCCDDEEFF")));
+    assertFalse (aFilter.accept (_datagram (BOOTREQUEST, DHCPDISCOVER, "001122334455", null)));
+    assertFalse (aFilter.accept (_datagram (BOOTREQUEST, DHCPDISCOVER, "AABBCCDDEEFF", null)));
+    assertTrue (aFilter.accept (_datagram (BOOTREQUEST, DHCPDISCOVER, "001122334456", null)));
+    // same bytes, different length
+    assertTrue (aFilter.accept (_datagram (BOOTREQUEST, DHCPDISCOVER, "00112233", null)));
+  }
+}
@@ -0,0 +1,252 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.BOOTREQUEST;
+import static org.dhcp4java.DHCPConstants.DHCPDISCOVER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+public class DHCPPacketPoolTest
+{
+  @Test (expected = IllegalArgumentException.class)
+  public void testBadStripes ()
+  {
+    new DHCPPacketPool (0, 16, false);
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testBadCapacity ()
+  {
+    new DHCPPacketPool (4, 0, false);
+  }
+
+  @Test
+  public void testRecycle () throws Exception
+  {
+    final DHCPPacketPool pool = new DHCPPacketPool (1, 2, false);
+    assertFalse (pool.isDebug ());
+
+    final DHCPPacket pac = pool.acquire ();
+    assertTrue (pool.owns (pac));
+    assertEquals (new DHCPPacket (), pac);
+    pac.setXid (1234);
+    pac.setYiaddr ("10.0.0.1");
+    pac.setDHCPMessageType (DHCPDISCOVER);
+    pool.release (pac);
+    assertFalse (pool.owns (pac));
+
+    // same instance, back to a pristine state
+    final DHCPPacket pac2 = pool.acquire ();
+    assertSame (pac, pac2);
+    assertEquals (new DHCPPacket (), pac2);
+    assertEquals (1, pool.getCreatedCount ());
+
+    // stripe is empty, a new packet is created
+    assertNotSame (pac2, pool.acquire ());
+    assertEquals (2, pool.getCreatedCount ());
+  }
+
+  @Test
+  public void testStripeCapacity ()
+  {
+    final DHCPPacketPool pool = new DHCPPacketPool (1, 1, false);
+    final DHCPPacket pac1 = pool.acquire ();
+    final DHCPPacket pac2 = pool.acquire ();
+    pool.release (pac1);
+    // stripe is full, dropped
+    pool.release (pac2);
+    assertSame (pac1, pool.acquire ());
+    assertNotSame (pac2, pool.acquire ());
+    assertEquals (3, pool.getCreatedCount ());
+  }
+
+  @Test
+  public void testDoubleRelease ()
+  {
+    final DHCPPacketPool pool = new DHCPPacketPool (1, 4, false);
+    final DHCPPacket pac = pool.acquire ();
+    pool.release (pac);
+    try
+    {
+      pool.release (pac);
+      fail ();
+    }
+    catch (final IllegalStateException e)
+    {
+      // expected
+    }
+  }
+
+  @Test (expected = IllegalStateException.class)
+  public void testReleaseForeign ()
+  {
+    new DHCPPacketPool (1, 4, false).release (new DHCPPacket ());
+  }
+
+  @Test
+  public void testDebugUseAfterRelease ()
+  {
+    final DHCPPacketPool pool = new DHCPPacketPool (1, 4, true);
+    assertTrue (pool.isDebug ());
+    final DHCPPacket pac = pool.acquire ();
+    pac.setXid (1234);
+    pool.release (pac);
+
+    // never recycled
+    assertNotSame (pac, pool.acquire ());
+    assertEquals (2, pool.getCreatedCount ());
+
+    try
+    {
+      pac.getXid ();
+      fail ();
+    }
+    catch (final IllegalStateException e)
+    {
+      // expected
+    }
+    try
+    {
+      pac.setYiaddrRaw (new byte [4]);
+      fail ();
+    }
+    catch (final IllegalStateException e)
+    {
+      // expected
+    }
+    try
+    {
+      pac.serialize ();
+      fail ();
+    }
+    catch (final IllegalStateException e)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDebugHeaderAccessAfterRelease ()
+  {
+    final DHCPPacketPool pool = new DHCPPacketPool (1, 4, true);
+    final DHCPPacket pac = pool.acquire ();
+    final byte [] buf = new DHCPPacket ().serialize ();
+    pool.release (pac);
+
+    final Runnable [] accesses = { new Runnable ()
+    {
+      public void run ()
+      {
+        pac.setOp (BOOTREQUEST);
+      }
+    }, new Runnable ()
+    {
+      public void run ()
+      {
+        pac.getFlags ();
+      }
+    }, new Runnable ()
+    {
+      public void run ()
+      {
+        pac.setSecs ((short) 1);
+      }
+    }, new Runnable ()
+    {
+      public void run ()
+      {
+        pac.setFileRaw (new byte [4]);
+      }
+    }, new Runnable ()
+    {
+      public void run ()
+      {
+        pac.setSnameRaw (new byte [4]);
+      }
+    }, new Runnable ()
+    {
+      public void run ()
+      {
+        pac.isDhcp ();
+      }
+    }, new Runnable ()
+    {
+      public void run ()
+      {
+        pac.marshall (buf, 0, buf.length, null, 0, true);
+      }
+    } };
+    for (final Runnable access : accesses)
+    {
+      try
+      {
+        access.run ();
+        fail ();
+      }
+      catch (final IllegalStateException e)
+      {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testGetPacketLazy () throws Exception
+  {
+    final DHCPPacketPool pool = new DHCPPacketPool (1, 4, false);
+    final DHCPPacket req = new DHCPPacket ();
+    req.setOp (BOOTREQUEST);
+    req.setXid (1234);
+    req.setDHCPMessageType (DHCPDISCOVER);
+    final byte [] buf = req.serialize ();
+
+    final DHCPPacket pac = pool.getPacketLazy (new DatagramPacket (buf,
+                                                                   buf.length,
+                                                                   InetAddress.getByName ("10.0.0.1"),
+                                                                   68));
+    assertTrue (pool.owns (pac));
+    assertEquals (1234, pac.getXid ());
+    assertEquals (Byte.valueOf (DHCPDISCOVER), pac.getDHCPMessageType ());
+    pool.release (pac);
+
+    // a malformed datagram gives the packet back
+    try
+    {
+      pool.getPacketLazy (new DatagramPacket (new byte [10], 10));
+      fail ();
+    }
+    catch (final DHCPBadPacketException e)
+    {
+      // expected
+    }
+    assertSame (pac, pool.acquire ());
+    assertEquals (1, pool.getCreatedCount ());
+  }
+}
@@ -26,12 +26,16 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -210,12 +214,189 @@ public class DHCPPacketTest
     assertEquals (1500, buf.length);
   }
 
-  @Test (expected = DHCPBadPacketException.class)
+  @Test
   public void testSerializeOptionOver256 ()
   {
+    final byte [] value = new byte [300];
+    for (int i = 0; i < value.length; i++)
+      value[i] = (byte) i;
     final DHCPPacket pac = new DHCPPacket ();
-    pac.setOptionRaw (DHO_HOST_NAME, new byte [256]);
-    pac.serialize ();
+    pac.setOptionRaw (DHO_HOST_NAME, value);
+
+    // split in 255 + 45 bytes (rfc 3396)
+    final byte [] buf = pac.serialize ();
+    final int opts = _BOOTP_ABSOLUTE_MIN_LEN + 4;
+    assertEquals (DHO_HOST_NAME, buf[opts]);
+    assertEquals ((byte) 255, buf[opts + 1]);
+    assertEquals (DHO_HOST_NAME, buf[opts + 2 + 255]);
+    assertEquals (45, buf[opts + 2 + 255 + 1]);
+    assertEquals (DHO_END, buf[opts + 2 + 255 + 2 + 45]);
+    assertEquals (opts + 304 + 1, pac.getSerializedLength (0));
+
+    assertEquals (pac, DHCPPacket.getPacket (buf, 0, buf.length, true));
+    assertEquals (pac, DHCPPacket.getPacketLazy (buf, 0, buf.length, true));
+  }
+
+  @Test
+  public void testSerializeOptionMultipleOf255 ()
+  {
+    final DHCPPacket pac = new DHCPPacket ();
+    pac.setOptionRaw (DHO_HOST_NAME, new byte [510]);
+    final byte [] buf = pac.serialize (0, _DHCP_MAX_MTU);
+    assertEquals (_BOOTP_ABSOLUTE_MIN_LEN + 4 + 514 + 1, buf.length);
+    assertEquals (510, DHCPPacket.getPacket (buf, 0, buf.length, true).getOptionRaw (DHO_HOST_NAME).length);
+  }
+
+  @Test
+  public void testGetMaxResponseSize ()
+  {
+    final DHCPPacket req = new DHCPPacket ();
+    req.setDHCPMessageType (DHCPDISCOVER);
+    assertEquals (_DHCP_DEFAULT_MAX_LEN, req.getMaxResponseSize (1500));
+
+    req.setOptionAsShort (DHO_DHCP_MAX_MESSAGE_SIZE, (short) 1000);
+    assertEquals (1000, req.getMaxResponseSize (1500));
+    // bounded by the MTU, IP and UDP headers excluded
+    assertEquals (800 - 28, req.getMaxResponseSize (800));
+    assertEquals (_DHCP_DEFAULT_MAX_LEN, req.getMaxResponseSize (576));
+
+    req.setOptionAsShort (DHO_DHCP_MAX_MESSAGE_SIZE, (short) 0xFFFF);
+    assertEquals (1500 - 28, req.getMaxResponseSize (1500));
+    assertEquals (_DHCP_MAX_MTU, req.getMaxResponseSize (9000));
+    req.setOptionAsShort (DHO_DHCP_MAX_MESSAGE_SIZE, (short) 300);
+    assertEquals (_DHCP_DEFAULT_MAX_LEN, req.getMaxResponseSize (1500));
+    req.setOptionRaw (DHO_DHCP_MAX_MESSAGE_SIZE, new byte [] { 5 });
+    assertEquals (_DHCP_DEFAULT_MAX_LEN, req.getMaxResponseSize (1500));
+  }
+
+  @Test
+  public void testSerializeResponse ()
+  {
+    final DHCPPacket pac = new DHCPPacket ();
+    pac.setDHCPMessageType (DHCPOFFER);
+    pac.setOptionRaw (DHO_HOST_NAME, new byte [200]);
+    pac.setOptionRaw (DHO_DOMAIN_NAME, new byte [100]);
+    pac.setOptionRaw (DHO_ROOT_PATH, new byte [100]);
+    final int opts = _BOOTP_ABSOLUTE_MIN_LEN + 4;
+
+    // the client accepts a larger packet: no overload
+    final DHCPPacket req = new DHCPPacket ();
+    req.setOptionAsShort (DHO_DHCP_MAX_MESSAGE_SIZE, (short) 1500);
+    final byte [] buf = pac.serializeResponse (req, 1500);
+    assertEquals (opts + 3 + 202 + 102 + 102 + 1, buf.length);
+    assertEquals (DHO_DHCP_MESSAGE_TYPE, buf[opts]);
+
+    // default size: overloaded, as serialize()
+    assertArrayEquals (pac.serialize (), pac.serializeResponse (null, 1500));
+    assertArrayEquals (pac.serialize (), pac.serializeResponse (new DHCPPacket (), 1500));
+    // the MTU is too small for the whole packet
+    assertArrayEquals (pac.serialize (), pac.serializeResponse (req, 576 + 28));
+  }
+
+  @Test
+  public void testSerializeOverload ()
+  {
+    final DHCPPacket pac = new DHCPPacket ();
+    pac.setDHCPMessageType (DHCPOFFER);
+    pac.setOptionRaw (DHO_HOST_NAME, new byte [200]);
+    pac.setOptionRaw (DHO_DOMAIN_NAME, new byte [100]);
+    pac.setOptionRaw (DHO_ROOT_PATH, new byte [100]);
+    assertEquals (_BOOTP_ABSOLUTE_MIN_LEN + 4 + 3 + 202 + 102 + 102 + 1, pac.getSerializedLength (0, _DHCP_MAX_MTU));
+
+    // does not fit in 576 bytes: root path spills into file
+    final byte [] buf = pac.serialize ();
+    final int opts = _BOOTP_ABSOLUTE_MIN_LEN + 4;
+    assertEquals (opts + 3 + 3 + 202 + 102 + 1, buf.length);
+    assertEquals (buf.length, pac.getSerializedLength (0));
+    assertEquals (DHO_DHCP_OPTION_OVERLOAD, buf[opts]);
+    assertEquals (1, buf[opts + 2]);
+    assertEquals (DHO_ROOT_PATH, buf[108]);
+    assertEquals (100, buf[109]);
+    assertEquals (DHO_END, buf[108 + 102]);
+    assertEquals (0, buf[44]);
+
+    // parsed back without overload
+    final DHCPPacket eager = DHCPPacket.getPacket (buf, 0, buf.length, true);
+    final DHCPPacket lazy = DHCPPacket.getPacketLazy (buf, 0, buf.length, true);
+    assertEquals (pac, eager);
+    assertEquals (pac, lazy);
+    assertNull (eager.getOption (DHO_DHCP_OPTION_OVERLOAD));
+    assertEquals ("", eager.getFile ());
+
+    // file in use, root path too long for sname: not overloaded
+    pac.setFile ("boot.img");
+    assertEquals (pac.getSerializedLength (0, _DHCP_MAX_MTU), pac.serialize ().length);
+    // sname alone is enough for a smaller option
+    pac.setOptionRaw (DHO_ROOT_PATH, new byte [50]);
+    final byte [] buf2 = pac.serialize ();
+    assertEquals (2, buf2[opts + 2]);
+    assertEquals (DHO_ROOT_PATH, buf2[44]);
+    assertEquals (pac, DHCPPacket.getPacket (buf2, 0, buf2.length, true));
+  }
+
+  @Test
+  public void testSerializeOverloadSplitLongOption ()
+  {
+    final byte [] value = new byte [600];
+    for (int i = 0; i < value.length; i++)
+      value[i] = (byte) i;
+    final DHCPPacket pac = new DHCPPacket ();
+    pac.setDHCPMessageType (DHCPACK);
+    pac.setOptionRaw (DHO_CLASSLESS_ROUTE, value);
+
+    final byte [] buf = pac.serialize (0, 700);
+    assertEquals (700, buf.length);
+    assertEquals (3, buf[_BOOTP_ABSOLUTE_MIN_LEN + 4 + 2]);
+    final ByteBuffer bb = ByteBuffer.allocate (700);
+    assertEquals (700, pac.serializeTo (bb, 0, 700));
+    assertArrayEquals (buf, bb.array ());
+    assertEquals (pac, DHCPPacket.getPacket (buf, 0, buf.length, true));
+  }
+
+  @Test
+  public void testMarshallOverload ()
+  {
+    final byte [] buf = new byte [_BOOTP_ABSOLUTE_MIN_LEN + 4 + 12];
+    buf[_BOOTP_ABSOLUTE_MIN_LEN] = 0x63;
+    buf[_BOOTP_ABSOLUTE_MIN_LEN + 1] = (byte) 0x82;
+    buf[_BOOTP_ABSOLUTE_MIN_LEN + 2] = 0x53;
+    buf[_BOOTP_ABSOLUTE_MIN_LEN + 3] = 0x63;
+    final byte [] opts = { DHO_HOST_NAME, 1, 'a', DHO_DHCP_OPTION_OVERLOAD, 1, 3, DHO_DHCP_MESSAGE_TYPE, 1, DHCPREQUEST, DHO_END };
+    System.arraycopy (opts, 0, buf, _BOOTP_ABSOLUTE_MIN_LEN + 4, opts.length);
+    // sname, concatenated last
+    buf[44] = DHO_HOST_NAME;
+    buf[45] = 1;
+    buf[46] = 'c';
+    buf[47] = DHO_END;
+    // file
+    buf[108] = DHO_PAD;
+    buf[109] = DHO_HOST_NAME;
+    buf[110] = 1;
+    buf[111] = 'b';
+    buf[112] = DHO_DOMAIN_NAME;
+    buf[113] = 3;
+    buf[114] = 'd';
+    buf[115] = 'o';
+    buf[116] = 'm';
+    buf[117] = DHO_END;
+
+    for (final boolean lazy : new boolean [] { false, true })
+    {
+      final DHCPPacket pac = lazy ? DHCPPacket.getPacketLazy (buf, 0, buf.length, true)
+                                  : DHCPPacket.getPacket (buf, 0, buf.length, true);
+      assertEquals ("abc", pac.getOptionAsString (DHO_HOST_NAME));
+      assertEquals ("dom", pac.getOptionAsString (DHO_DOMAIN_NAME));
+      assertEquals (Byte.valueOf (DHCPREQUEST), pac.getDHCPMessageType ());
+      assertFalse (pac.containsOption (DHO_DHCP_OPTION_OVERLOAD));
+      assertEquals ("", pac.getSname ());
+      assertEquals ("", pac.getFile ());
+    }
+
+    // malformed overload value is ignored
+    buf[_BOOTP_ABSOLUTE_MIN_LEN + 4 + 5] = 7;
+    final DHCPPacket pac = DHCPPacket.getPacket (buf, 0, buf.length, true);
+    assertEquals ("a", pac.getOptionAsString (DHO_HOST_NAME));
+    assertTrue (pac.containsOption (DHO_DHCP_OPTION_OVERLOAD));
   }
 
   @Test (expected = DHCPBadPacketException.class)
@@ -387,6 +568,46 @@ public class DHCPPacketTest
     assertEquals (Integer.valueOf (167772414), s_aRefPacketFromScratch.getOptionAsNum (DHO_ROUTERS));
   }
 
+  @Test
+  public void testPrimitiveAccessors () throws Exception
+  {
+    final byte [] refBuf = HexUtils.hexToBytes (REF_PACKET);
+    final DHCPPacket lazy = DHCPPacket.getPacketLazy (refBuf, 0, refBuf.length, true);
+    for (final DHCPPacket pac : new DHCPPacket [] { s_aRefPacketFromScratch, lazy })
+    {
+      assertEquals (DHCPDISCOVER, pac.getDHCPMessageTypeAsInt ());
+      assertEquals (86400L, pac.getOptionAsLong (DHO_DHCP_LEASE_TIME));
+      assertEquals (-1L, pac.getOptionAsLong (DHO_USER_CLASS));
+      assertEquals (-1L, pac.getOptionAsLong (DHO_STATIC_ROUTES));
+      assertEquals (167772414L, pac.getOptionAsLong (DHO_ROUTERS));
+      assertEquals (86400, pac.getOptionAsInt (DHO_DHCP_LEASE_TIME, -1));
+      assertEquals (-1, pac.getOptionAsInt (DHO_DHCP_RENEWAL_TIME, -1));
+      assertEquals (Util.inetAddress2Int (InetAddress.getByName ("12.34.56.68")),
+                    pac.getOptionAsInetAddrAsInt (DHO_DHCP_SERVER_IDENTIFIER));
+      assertEquals (0, pac.getOptionAsInetAddrAsInt (DHO_DHCP_REQUESTED_ADDRESS));
+      assertEquals (0x0a000001, pac.getCiaddrAsInt ());
+      assertEquals (0x0a000002, pac.getYiaddrAsInt ());
+      assertEquals (0x0a000003, pac.getSiaddrAsInt ());
+      assertEquals (0x0a000004, pac.getGiaddrAsInt ());
+      assertEquals (0x0600001122334455L, pac.getChaddrAsLong ());
+    }
+    assertEquals (-1, new DHCPPacket ().getDHCPMessageTypeAsInt ());
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testGetOptionAsIntBad ()
+  {
+    s_aRefPacketFromScratch.getOptionAsInt (DHO_ROUTERS, 0);
+  }
+
+  @Test (expected = DHCPBadPacketException.class)
+  public void testGetDHCPMessageTypeAsIntBadSize ()
+  {
+    final DHCPPacket pac = new DHCPPacket ();
+    pac.setOptionRaw (DHO_DHCP_MESSAGE_TYPE, new byte [2]);
+    pac.getDHCPMessageTypeAsInt ();
+  }
+
   @SuppressWarnings ("unlikely-arg-type")
   @Test
   public void testEqualsTrivial ()
@@ -494,6 +715,302 @@ public class DHCPPacketTest
     DHCPPacket.getPacket (buf, 0, buf.length, false);
   }
 
+  @Test
+  public void testMarshallBootp ()
+  {
+    final byte [] buf = new byte [_BOOTP_ABSOLUTE_MIN_LEN + 10];
+    buf[0] = BOOTREQUEST;
+    buf[_BOOTP_ABSOLUTE_MIN_LEN] = 1;
+    final DHCPPacket pac = DHCPPacket.getPacket (buf, 0, buf.length, true);
+    assertFalse (pac.isDhcp ());
+    assertEquals (10, pac.getPadding ().length);
+    assertEquals (1, pac.getPadding ()[0]);
+  }
+
+  @Test (expected = DHCPBadPacketException.class)
+  public void testMarshallCutInMagicCookie ()
+  {
+    testPacket (_BOOTP_ABSOLUTE_MIN_LEN + 2, 0, _BOOTP_ABSOLUTE_MIN_LEN + 2);
+  }
+
+  @Test
+  public void testMarshallWithOffset ()
+  {
+    final byte [] ref = hexToBytes (REF_PACKET);
+    final byte [] buf = new byte [ref.length + 20];
+    System.arraycopy (ref, 0, buf, 10, ref.length);
+    assertEquals (DHCPPacket.getPacket (ref, 0, ref.length, true), DHCPPacket.getPacket (buf, 10, ref.length, true));
+    assertEquals (DHCPPacket.getPacket (ref, 0, ref.length, true),
+                  DHCPPacket.getPacketLazy (buf, 10, ref.length, true));
+  }
+
+  private static void _assertRejected (final DHCPRejectReason reason,
+                                       final byte [] buf,
+                                       final int offset,
+                                       final int length)
+  {
+    assertEquals (reason, DHCPPacket.validate (buf, offset, length, true));
+    try
+    {
+      DHCPPacket.getPacket (buf, offset, length, true);
+      Assert.fail ();
+    }
+    catch (final DHCPBadPacketException e)
+    {
+      // debug logging is off: shared exception
+      assertSame (reason.getException (), e);
+    }
+    try
+    {
+      DHCPPacket.getPacketLazy (buf, offset, length, true);
+      Assert.fail ();
+    }
+    catch (final DHCPBadPacketException e)
+    {
+      assertSame (reason.getException (), e);
+    }
+  }
+
+  @Test
+  public void testValidate ()
+  {
+    final byte [] ref = hexToBytes (REF_PACKET);
+    final byte [] buf = new byte [ref.length + 20];
+    System.arraycopy (ref, 0, buf, 10, ref.length);
+    assertNull (DHCPPacket.validate (buf, 10, ref.length, true));
+    // padding after END
+    assertNull (DHCPPacket.validate (buf, 10, ref.length + 5, true));
+
+    _assertRejected (DHCPRejectReason.TOO_SMALL, new byte [_BOOTP_ABSOLUTE_MIN_LEN - 1], 0, _BOOTP_ABSOLUTE_MIN_LEN - 1);
+    _assertRejected (DHCPRejectReason.TOO_BIG, new byte [_DHCP_MAX_MTU + 1], 0, _DHCP_MAX_MTU + 1);
+    _assertRejected (DHCPRejectReason.TRUNCATED_MAGIC_COOKIE,
+                     new byte [_BOOTP_ABSOLUTE_MIN_LEN + 2],
+                     0,
+                     _BOOTP_ABSOLUTE_MIN_LEN + 2);
+
+    // options cut before END
+    final DHCPPacket pac = new DHCPPacket ();
+    pac.setDHCPMessageType (DHCPDISCOVER);
+    pac.setOptionAsInt (DHO_DHCP_LEASE_TIME, 3600);
+    final byte [] cut = pac.serialize (0, _DHCP_DEFAULT_MAX_LEN);
+    _assertRejected (DHCPRejectReason.TRUNCATED_OPTIONS, cut, 0, cut.length - 1);
+    _assertRejected (DHCPRejectReason.TRUNCATED_OPTIONS, cut, 0, cut.length - 3);
+    assertNull (DHCPPacket.validate (cut, 0, cut.length - 1, false));
+    assertNull (DHCPPacket.validate (cut, 0, cut.length, true));
+
+    // BOOTP
+    final byte [] bootp = new byte [_BOOTP_ABSOLUTE_MIN_LEN + 10];
+    assertNull (DHCPPacket.validate (bootp, 0, bootp.length, true));
+  }
+
+  @Test
+  public void testRejectReasonException ()
+  {
+    for (final DHCPRejectReason reason : DHCPRejectReason.values ())
+    {
+      final DHCPBadPacketException e = reason.getException ();
+      assertSame (e, reason.getException ());
+      assertEquals (reason, e.getReason ());
+      assertEquals (reason.getMessage (), e.getMessage ());
+      assertEquals (0, e.getStackTrace ().length);
+      try
+      {
+        e.initCause (new Exception ());
+        Assert.fail ();
+      }
+      catch (final IllegalStateException ex)
+      {
+        // expected
+      }
+    }
+    assertNull (new DHCPBadPacketException ("foo").getReason ());
+  }
+
+  // serialize into caller supplied buffers
+  @Test
+  public void testSerializeTo ()
+  {
+    final byte [] ref = s_aRefPacketFromScratch.serialize ();
+    assertEquals (ref.length, s_aRefPacketFromScratch.getSerializedLength (0));
+
+    final ByteBuffer heap = ByteBuffer.allocate (1500);
+    heap.position (3);
+    assertEquals (ref.length, s_aRefPacketFromScratch.serializeTo (heap));
+    assertEquals (3 + ref.length, heap.position ());
+
+    final ByteBuffer direct = ByteBuffer.allocateDirect (1500);
+    assertEquals (ref.length, s_aRefPacketFromScratch.serializeTo (direct));
+    direct.flip ();
+    final byte [] out = new byte [direct.remaining ()];
+    direct.get (out);
+    assertArrayEquals (ref, out);
+
+    // padded up to the minimum size
+    final ByteBuffer dirty = ByteBuffer.allocate (1000);
+    Arrays.fill (dirty.array (), (byte) 0x55);
+    assertEquals (800, s_aRefPacketFromScratch.serializeTo (dirty, 800));
+    assertArrayEquals (s_aRefPacketFromScratch.serialize (800, 1500), Arrays.copyOf (dirty.array (), 800));
+  }
+
+  @Test
+  public void testSerializeToOverflow ()
+  {
+    final ByteBuffer small = ByteBuffer.allocate (300);
+    small.put ((byte) 1);
+    try
+    {
+      s_aRefPacketFromScratch.serializeTo (small);
+      Assert.fail ();
+    }
+    catch (final BufferOverflowException e)
+    {
+      // expected, nothing written
+      assertEquals (1, small.position ());
+    }
+  }
+
+  @Test
+  public void testSerializeInto ()
+  {
+    final byte [] ref = s_aRefPacketFromScratch.serialize ();
+    final byte [] buf = new byte [ref.length + 10];
+    assertEquals (ref.length, s_aRefPacketFromScratch.serializeInto (buf, 10));
+    assertArrayEquals (ref, Arrays.copyOfRange (buf, 10, buf.length));
+  }
+
+  @Test (expected = IndexOutOfBoundsException.class)
+  public void testSerializeIntoTooSmall ()
+  {
+    s_aRefPacketFromScratch.serializeInto (new byte [600], 100);
+  }
+
+  // lazy options
+  @Test
+  public void testMarshallLazy ()
+  {
+    final byte [] buf = hexToBytes (REF_PACKET);
+    final DHCPPacket eager = DHCPPacket.getPacket (buf, 0, buf.length, true);
+    final DHCPPacket lazy = DHCPPacket.getPacketLazy (buf, 0, buf.length, true);
+
+    assertEquals (eager.getDHCPMessageType (), lazy.getDHCPMessageType ());
+    assertEquals (eager.getOptionAsInteger (DHO_DHCP_LEASE_TIME), lazy.getOptionAsInteger (DHO_DHCP_LEASE_TIME));
+    assertTrue (lazy.containsOption (DHO_ROUTERS));
+    assertFalse (lazy.containsOption (DHO_HOST_NAME));
+    assertNull (lazy.getOption (DHO_HOST_NAME));
+    // same object until decoded
+    assertTrue (lazy.getOption (DHO_ROUTERS) == lazy.getOption (DHO_ROUTERS));
+    final DHCPOption routers = lazy.getOption (DHO_ROUTERS);
+
+    assertEquals (eager, lazy);
+    assertEquals (eager.hashCode (), lazy.hashCode ());
+    assertTrue (routers == lazy.getOption (DHO_ROUTERS));
+    assertArrayEquals (eager.getOptionsArray (), lazy.getOptionsArray ());
+    assertArrayEquals (buf, lazy.serialize ());
+  }
+
+  @Test
+  public void testMarshallLazyModify ()
+  {
+    final byte [] buf = hexToBytes (REF_PACKET);
+    final DHCPPacket eager = DHCPPacket.getPacket (buf, 0, buf.length, true);
+    final DHCPPacket lazy = DHCPPacket.getPacketLazy (buf, 0, buf.length, true);
+
+    eager.removeOption (DHO_ROUTERS);
+    eager.setOptionAsString (DHO_HOST_NAME, "foo");
+    lazy.removeOption (DHO_ROUTERS);
+    lazy.setOptionAsString (DHO_HOST_NAME, "foo");
+    assertEquals (eager, lazy);
+    assertArrayEquals (eager.serialize (), lazy.serialize ());
+
+    final DHCPPacket lazy2 = DHCPPacket.getPacketLazy (buf, 0, buf.length, true);
+    assertEquals (DHCPPacket.getPacket (buf, 0, buf.length, true), lazy2.clone ());
+    lazy2.removeAllOptions ();
+    assertNull (lazy2.getDHCPMessageType ());
+    assertEquals (0, lazy2.getOptionsArray ().length);
+  }
+
+  @Test
+  public void testMarshallLazyRepeatedOption ()
+  {
+    final byte [] buf = hexToBytes (REF_PACKET);
+    // replace END and the first padding bytes with a second message type
+    final int end = buf.length - 256 - 1;
+    assertEquals (DHO_END, buf[end]);
+    buf[end] = DHO_DHCP_MESSAGE_TYPE;
+    buf[end + 1] = 1;
+    buf[end + 2] = DHCPREQUEST;
+    buf[end + 3] = DHO_END;
+
+    final DHCPPacket eager = DHCPPacket.getPacket (buf, 0, buf.length, true);
+    final DHCPPacket lazy = DHCPPacket.getPacketLazy (buf, 0, buf.length, true);
+    // instances are concatenated (rfc 3396)
+    final byte first = DHCPPacket.getPacket (hexToBytes (REF_PACKET), 0, buf.length, true)
+                                 .getDHCPMessageType ()
+                                 .byteValue ();
+    assertArrayEquals (new byte [] { first, DHCPREQUEST }, lazy.getOptionRaw (DHO_DHCP_MESSAGE_TYPE));
+    try
+    {
+      lazy.getDHCPMessageTypeAsInt ();
+      fail ();
+    }
+    catch (final DHCPBadPacketException e)
+    {
+      // expected, 2 bytes
+    }
+    assertEquals (eager, lazy);
+    assertArrayEquals (eager.serialize (), lazy.serialize ());
+  }
+
+  @Test
+  public void testMarshallManyRepeatedOptions ()
+  {
+    // options of 3 bytes filling a full datagram, alternating host and domain name
+    final byte [] buf = new byte [_DHCP_MAX_MTU];
+    final int start = _BOOTP_ABSOLUTE_MIN_LEN;
+    buf[start] = 0x63;
+    buf[start + 1] = (byte) 0x82;
+    buf[start + 2] = 0x53;
+    buf[start + 3] = 0x63;
+    final int count = (buf.length - start - 4 - 1) / 3;
+    for (int i = 0; i < count; i++)
+    {
+      final int pos = start + 4 + i * 3;
+      buf[pos] = (i % 2) == 0 ? DHO_HOST_NAME : DHO_DOMAIN_NAME;
+      buf[pos + 1] = 1;
+      buf[pos + 2] = (byte) i;
+    }
+    buf[start + 4 + count * 3] = DHO_END;
+
+    final DHCPPacket eager = DHCPPacket.getPacket (buf, 0, buf.length, true);
+    final DHCPPacket lazy = DHCPPacket.getPacketLazy (buf, 0, buf.length, true);
+    final byte [] hostName = eager.getOptionRaw (DHO_HOST_NAME);
+    assertEquals ((count + 1) / 2, hostName.length);
+    for (int i = 0; i < hostName.length; i++)
+      assertEquals ((byte) (i * 2), hostName[i]);
+    assertEquals (count / 2, eager.getOptionRaw (DHO_DOMAIN_NAME).length);
+    assertArrayEquals (hostName, lazy.getOptionRaw (DHO_HOST_NAME));
+    assertEquals (-1, lazy.getOptionAsLong (DHO_DOMAIN_NAME));
+    assertEquals (eager, lazy);
+    assertEquals (2, eager.getOptionsArray ().length);
+  }
+
+  @Test (expected = DHCPBadPacketException.class)
+  public void testMarshallLazyInStrictMode ()
+  {
+    final byte [] buf = hexToBytes (REF_PACKET_WITHOUT_DHO_END);
+    DHCPPacket.getPacketLazy (buf, 0, buf.length, true);
+  }
+
+  @Test
+  public void testMarshallLazyInNonStrictMode ()
+  {
+    final byte [] buf = hexToBytes (REF_PACKET_WITHOUT_DHO_END);
+    final DHCPPacket eager = DHCPPacket.getPacket (buf, 0, buf.length, false);
+    final DHCPPacket lazy = DHCPPacket.getPacketLazy (buf, 0, buf.length, false);
+    assertTrue (lazy.isTruncated ());
+    assertEquals (eager, lazy);
+  }
+
   // padding
   @Test
   public void testSetPaddingWithZeroes ()
@@ -729,6 +1246,27 @@ public class DHCPPacketTest
     assertEquals (pac1.hashCode (), pac3.hashCode ());
   }
 
+  @Test
+  public void testReset () throws Exception
+  {
+    final DHCPPacket pac = s_aRefPacketFromHex.clone ();
+    pac.setPadding (new byte [12]);
+    pac.reset ();
+    assertEquals (new DHCPPacket (), pac);
+    assertFalse (pac.isTruncated ());
+
+    // lazily parsed packets are reset as well
+    final byte [] refBuf = HexUtils.hexToBytes (REF_PACKET);
+    final DHCPPacket lazy = DHCPPacket.getPacketLazy (refBuf, 0, refBuf.length, true);
+    lazy.reset ();
+    assertNull (lazy.getOption (DHO_DHCP_MESSAGE_TYPE));
+    assertEquals (new DHCPPacket (), lazy);
+
+    // and can be reused
+    lazy.setXid (0x11223344);
+    assertEquals (0x11223344, lazy.getXid ());
+  }
+
   private static final String REF_PACKET = "0101060011223344000080000a0000010a0000020a0000030a00000400112233" +
                                            "445566778899aabbccddeeff3132333435363738393031323334353637383930" +
                                            "3132333435363738393031323334353637383930313233343536373839303132" +
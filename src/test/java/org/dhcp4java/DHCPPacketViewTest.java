@@ -0,0 +1,229 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.BOOTREQUEST;
+import static org.dhcp4java.DHCPConstants.DHCPDISCOVER;
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_LEASE_TIME;
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_MAX_MESSAGE_SIZE;
+import static org.dhcp4java.DHCPConstants.DHO_DHCP_REQUESTED_ADDRESS;
+import static org.dhcp4java.DHCPConstants.DHO_HOST_NAME;
+import static org.dhcp4java.DHCPConstants.DHO_ROUTERS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class DHCPPacketViewTest
+{
+  private static DHCPPacket _request () throws Exception
+  {
+    final DHCPPacket aPacket = new DHCPPacket ();
+    aPacket.setOp (BOOTREQUEST);
+    aPacket.setHops ((byte) 2);
+    aPacket.setXid (0xCAFEBABE);
+    aPacket.setSecs ((short) 12);
+    aPacket.setFlags ((short) 0x8000);
+    aPacket.setCiaddr ("10.0.0.1");
+    aPacket.setYiaddr ("10.0.0.2");
+    aPacket.setSiaddr ("10.0.0.3");
+    aPacket.setGiaddr ("10.0.0.4");
+    aPacket.setChaddrHex ("001122334455");
+    aPacket.setSname ("server");
+    aPacket.setFile ("boot.img");
+    aPacket.setDHCPMessageType (DHCPDISCOVER);
+    aPacket.setOptionAsString (DHO_HOST_NAME, "host");
+    aPacket.setOptionAsInetAddress (DHO_DHCP_REQUESTED_ADDRESS, "10.0.0.10");
+    aPacket.setOptionAsShort (DHO_DHCP_MAX_MESSAGE_SIZE, (short) 1500);
+    aPacket.setOptionAsInt (DHO_DHCP_LEASE_TIME, 3600);
+    return aPacket;
+  }
+
+  @Test
+  public void testHeader () throws Exception
+  {
+    final DHCPPacket aPacket = _request ();
+    final DHCPPacketView aView = DHCPPacketView.wrap (ByteBuffer.wrap (aPacket.serialize ()));
+
+    assertEquals (aPacket.getOp (), aView.getOp ());
+    assertEquals (aPacket.getHtype (), aView.getHtype ());
+    assertEquals (aPacket.getHlen (), aView.getHlen ());
+    assertEquals (aPacket.getHops (), aView.getHops ());
+    assertEquals (aPacket.getXid (), aView.getXid ());
+    assertEquals (aPacket.getSecs (), aView.getSecs ());
+    assertEquals (aPacket.getFlags (), aView.getFlags ());
+    assertEquals (aPacket.getCiaddr (), aView.getCiaddr ());
+    assertEquals (aPacket.getYiaddr (), aView.getYiaddr ());
+    assertEquals (aPacket.getSiaddr (), aView.getSiaddr ());
+    assertEquals (aPacket.getGiaddr (), aView.getGiaddr ());
+    assertArrayEquals (aPacket.getChaddr (), aView.getChaddr ());
+    assertEquals (aPacket.getHardwareAddress (), aView.getHardwareAddress ());
+    assertEquals (aPacket.getChaddrAsHex (), aView.getChaddrAsHex ());
+    assertEquals (aPacket.getSname (), aView.getSname ());
+    assertEquals (aPacket.getFile (), aView.getFile ());
+    assertTrue (aView.isDhcp ());
+    assertFalse (aView.isTruncated ());
+  }
+
+  @Test
+  public void testOptions () throws Exception
+  {
+    final DHCPPacket aPacket = _request ();
+    final DHCPPacketView aView = DHCPPacketView.wrap (ByteBuffer.wrap (aPacket.serialize ()));
+
+    assertEquals (aPacket.getDHCPMessageType (), aView.getDHCPMessageType ());
+    assertEquals ("host", aView.getOptionAsString (DHO_HOST_NAME));
+    assertEquals (InetAddress.getByName ("10.0.0.10"), aView.getOptionAsInetAddr (DHO_DHCP_REQUESTED_ADDRESS));
+    assertEquals (Short.valueOf ((short) 1500), aView.getOptionAsShort (DHO_DHCP_MAX_MESSAGE_SIZE));
+    assertEquals (Integer.valueOf (3600), aView.getOptionAsInteger (DHO_DHCP_LEASE_TIME));
+    assertEquals (Integer.valueOf (3600), aView.getOptionAsNum (DHO_DHCP_LEASE_TIME));
+    assertEquals (aPacket.getOption (DHO_HOST_NAME), aView.getOption (DHO_HOST_NAME));
+    assertTrue (aView.containsOption (DHO_HOST_NAME));
+    assertFalse (aView.containsOption (DHO_ROUTERS));
+    assertNull (aView.getOptionRaw (DHO_ROUTERS));
+    assertNull (aView.getOptionAsInetAddrs (DHO_ROUTERS));
+  }
+
+  @Test
+  public void testRepeatedOptionConcatenated ()
+  {
+    final byte [] aData = new byte [DHCPRawPacket.OPTIONS_OFFSET + 12];
+    aData[DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN] = 0x63;
+    aData[DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN + 1] = (byte) 0x82;
+    aData[DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN + 2] = 0x53;
+    aData[DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN + 3] = 0x63;
+    final int i = DHCPRawPacket.OPTIONS_OFFSET;
+    aData[i] = 12;
+    aData[i + 1] = 2;
+    aData[i + 2] = 'a';
+    aData[i + 3] = 'b';
+    aData[i + 4] = 53;
+    aData[i + 5] = 1;
+    aData[i + 6] = 3;
+    aData[i + 7] = 12;
+    aData[i + 8] = 1;
+    aData[i + 9] = 'c';
+    aData[i + 10] = (byte) 0xFF;
+
+    final DHCPPacketView aView = DHCPPacketView.wrap (aData, 0, aData.length);
+    final DHCPPacket aPacket = DHCPPacket.getPacket (aData, 0, aData.length, true);
+    assertEquals (Byte.valueOf ((byte) 3), aView.getDHCPMessageType ());
+    assertArrayEquals (new byte [] { 'a', 'b', 'c' }, aView.getOptionRaw ((byte) 12));
+    assertArrayEquals (aPacket.getOptionRaw ((byte) 12), aView.getOptionRaw ((byte) 12));
+  }
+
+  @Test
+  public void testOverload ()
+  {
+    final byte [] aData = new byte [DHCPRawPacket.OPTIONS_OFFSET + 8];
+    aData[DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN] = 0x63;
+    aData[DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN + 1] = (byte) 0x82;
+    aData[DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN + 2] = 0x53;
+    aData[DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN + 3] = 0x63;
+    int i = DHCPRawPacket.OPTIONS_OFFSET;
+    aData[i] = 52;
+    aData[i + 1] = 1;
+    aData[i + 2] = 3;
+    aData[i + 3] = 12;
+    aData[i + 4] = 1;
+    aData[i + 5] = 'a';
+    aData[i + 6] = (byte) 0xFF;
+    i = DHCPRawPacket.FILE_OFFSET + DHCPRawPacket.FILE_SIZE - 4;
+    aData[i] = 12;
+    aData[i + 1] = 10;
+    aData[i + 2] = 'b';
+    aData[i + 3] = 'c';
+    i = DHCPRawPacket.SNAME_OFFSET;
+    aData[i] = 53;
+    aData[i + 1] = 1;
+    aData[i + 2] = 1;
+    aData[i + 3] = 12;
+    aData[i + 4] = 1;
+    aData[i + 5] = 'd';
+    aData[i + 6] = (byte) 0xFF;
+
+    final DHCPPacketView aView = DHCPPacketView.wrap (aData, 0, aData.length);
+    assertEquals (Byte.valueOf (DHCPDISCOVER), aView.getDHCPMessageType ());
+    // the file fragment is cut at the end of its field
+    assertArrayEquals (new byte [] { 'a', 'b', 'c', 'd' }, aView.getOptionRaw (DHO_HOST_NAME));
+    assertTrue (aView.containsOption ((byte) 52));
+  }
+
+  @Test
+  public void testTruncated ()
+  {
+    final byte [] aData = new byte [DHCPRawPacket.OPTIONS_OFFSET + 3];
+    aData[DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN] = 0x63;
+    aData[DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN + 1] = (byte) 0x82;
+    aData[DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN + 2] = 0x53;
+    aData[DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN + 3] = 0x63;
+    final int i = DHCPRawPacket.OPTIONS_OFFSET;
+    aData[i] = 12;
+    aData[i + 1] = 10;
+    aData[i + 2] = 'a';
+
+    final DHCPPacketView aView = DHCPPacketView.wrap (aData, 0, aData.length);
+    assertTrue (aView.isTruncated ());
+    assertEquals ("a", aView.getOptionAsString (DHO_HOST_NAME));
+  }
+
+  @Test
+  public void testWithOffset () throws Exception
+  {
+    final byte [] aData = _request ().serialize ();
+    final ByteBuffer aBuf = ByteBuffer.allocateDirect (aData.length + 7);
+    aBuf.position (7);
+    aBuf.put (aData);
+    aBuf.position (7);
+
+    final DHCPPacketView aView = DHCPPacketView.wrap (aBuf);
+    assertEquals (0xCAFEBABE, aView.getXid ());
+    assertEquals ("host", aView.getOptionAsString (DHO_HOST_NAME));
+    assertEquals (7, aBuf.position ());
+    assertEquals (DHCPPacket.getPacket (aData, 0, aData.length, true), aView.toPacket ());
+  }
+
+  @Test
+  public void testToPacket () throws Exception
+  {
+    final byte [] aData = _request ().serialize ();
+    final DatagramPacket aDatagram = new DatagramPacket (aData, aData.length, InetAddress.getByName ("10.0.0.1"), 68);
+    final DHCPPacketView aView = DHCPPacketView.wrap (aDatagram);
+    assertEquals (InetAddress.getByName ("10.0.0.1"), aView.getAddress ());
+    assertEquals (68, aView.getPort ());
+
+    final DHCPPacket aPacket = aView.toPacket ();
+    assertEquals (DHCPPacket.getPacket (aDatagram), aPacket);
+    assertEquals (68, aPacket.getPort ());
+  }
+
+  @Test (expected = DHCPBadPacketException.class)
+  public void testTooSmall ()
+  {
+    DHCPPacketView.wrap (new byte [DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN - 1], 0, DHCPConstants._BOOTP_ABSOLUTE_MIN_LEN - 1);
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.DHCPDECLINE;
+import static org.dhcp4java.DHCPConstants.DHCPDISCOVER;
+import static org.dhcp4java.DHCPConstants.DHCPINFORM;
+import static org.dhcp4java.DHCPConstants.DHCPRELEASE;
+import static org.dhcp4java.DHCPConstants.DHCPREQUEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DHCPPriorityQueueTest
+{
+  private static final class Task implements DHCPPriorityQueue.Prioritized
+  {
+    private final boolean m_bHigh;
+
+    Task (final boolean bHigh)
+    {
+      m_bHigh = bHigh;
+    }
+
+    public boolean isHighPriority ()
+    {
+      return m_bHigh;
+    }
+
+    public void run ()
+    {}
+  }
+
+  @Test
+  public void testIsHighPriority ()
+  {
+    assertTrue (DHCPPriorityQueue.isHighPriority (DHCPREQUEST));
+    assertTrue (DHCPPriorityQueue.isHighPriority (DHCPRELEASE));
+    assertTrue (DHCPPriorityQueue.isHighPriority (DHCPDECLINE));
+    assertFalse (DHCPPriorityQueue.isHighPriority (DHCPDISCOVER));
+    assertFalse (DHCPPriorityQueue.isHighPriority (DHCPINFORM));
+    assertFalse (DHCPPriorityQueue.isHighPriority ((byte) 0));
+  }
+
+  @Test
+  public void testOrder () throws Exception
+  {
+    final DHCPPriorityQueue aQueue = new DHCPPriorityQueue (10);
+    final Task aLow1 = new Task (false);
+    final Task aHigh1 = new Task (true);
+    final Task aLow2 = new Task (false);
+    final Task aHigh2 = new Task (true);
+    assertTrue (aQueue.offer (aLow1));
+    assertTrue (aQueue.offer (aHigh1));
+    assertTrue (aQueue.offer (aLow2));
+    assertTrue (aQueue.offer (aHigh2));
+    assertEquals (4, aQueue.size ());
+
+    assertSame (aHigh1, aQueue.peek ());
+    assertSame (aHigh1, aQueue.poll ());
+    assertSame (aHigh2, aQueue.take ());
+    assertSame (aLow1, aQueue.poll (0, TimeUnit.MILLISECONDS));
+    assertSame (aLow2, aQueue.poll ());
+    assertNull (aQueue.poll ());
+    assertNull (aQueue.poll (1, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testCapacity ()
+  {
+    final DHCPPriorityQueue aQueue = new DHCPPriorityQueue (2);
+    assertTrue (aQueue.offer (new Task (false)));
+    assertTrue (aQueue.offer (new Task (true)));
+    assertFalse (aQueue.offer (new Task (true)));
+    assertEquals (0, aQueue.remainingCapacity ());
+  }
+
+  @Test
+  public void testPollLowPriority ()
+  {
+    final DHCPPriorityQueue aQueue = new DHCPPriorityQueue (3);
+    final Task aHigh = new Task (true);
+    final Task aLow = new Task (false);
+    aQueue.offer (aHigh);
+    assertNull (aQueue.pollLowPriority ());
+    aQueue.offer (aLow);
+    assertSame (aLow, aQueue.pollLowPriority ());
+    assertEquals (1, aQueue.size ());
+  }
+
+  @Test
+  public void testRemoveAndDrain ()
+  {
+    final DHCPPriorityQueue aQueue = new DHCPPriorityQueue (4);
+    final Task aLow = new Task (false);
+    final Task aHigh = new Task (true);
+    final Runnable aPlain = new Runnable ()
+    {
+      public void run ()
+      {}
+    };
+    aQueue.offer (aLow);
+    aQueue.offer (aPlain);
+    aQueue.offer (aHigh);
+    assertTrue (aQueue.remove (aLow));
+    assertFalse (aQueue.remove (aLow));
+
+    final List <Runnable> aDrained = new ArrayList <> ();
+    assertEquals (2, aQueue.drainTo (aDrained));
+    assertSame (aHigh, aDrained.get (0));
+    assertSame (aPlain, aDrained.get (1));
+    assertTrue (aQueue.isEmpty ());
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.BOOTREPLY;
+import static org.dhcp4java.DHCPConstants.BOOTREQUEST;
+import static org.dhcp4java.DHCPConstants.DHCPREQUEST;
+import static org.dhcp4java.DHCPConstants.DHO_HOST_NAME;
+import static org.dhcp4java.DHCPConstants.HTYPE_ETHER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class DHCPRawPacketTest
+{
+  private static byte [] _request ()
+  {
+    final DHCPPacket aPacket = new DHCPPacket ();
+    aPacket.setOp (BOOTREQUEST);
+    aPacket.setOptionAsString (DHO_HOST_NAME, "host");
+    aPacket.setDHCPMessageType (DHCPREQUEST);
+    return aPacket.serialize ();
+  }
+
+  @Test
+  public void testGetMessageType ()
+  {
+    final byte [] aData = _request ();
+    assertEquals (DHCPREQUEST, DHCPRawPacket.getMessageType (aData, 0, aData.length));
+  }
+
+  @Test
+  public void testGetMessageTypeWithOffset ()
+  {
+    final byte [] aData = _request ();
+    final ByteBuffer aBuf = ByteBuffer.allocate (aData.length + 10);
+    aBuf.position (10);
+    aBuf.put (aData);
+    aBuf.position (10);
+    assertEquals (DHCPREQUEST, DHCPRawPacket.getMessageType (aBuf));
+    // buffer left untouched
+    assertEquals (10, aBuf.position ());
+  }
+
+  @Test
+  public void testGetMessageTypeMissing ()
+  {
+    final DHCPPacket aPacket = new DHCPPacket ();
+    aPacket.setOp (BOOTREQUEST);
+    final byte [] aData = aPacket.serialize ();
+    assertEquals (0, DHCPRawPacket.getMessageType (aData, 0, aData.length));
+  }
+
+  @Test
+  public void testGetMessageTypeMalformed ()
+  {
+    final byte [] aData = _request ();
+    // too short
+    assertEquals (0, DHCPRawPacket.getMessageType (aData, 0, 100));
+    // truncated inside the options
+    assertEquals (0, DHCPRawPacket.getMessageType (aData, 0, DHCPRawPacket.OPTIONS_OFFSET + 3));
+    // bad magic cookie
+    aData[DHCPRawPacket.OPTIONS_OFFSET - 1] = 0;
+    assertEquals (0, DHCPRawPacket.getMessageType (aData, 0, aData.length));
+  }
+
+  @Test
+  public void testGetHardwareAddressHash ()
+  {
+    final DHCPPacket aPacket = new DHCPPacket ();
+    aPacket.setOp (BOOTREQUEST);
+    aPacket.setChaddrHex ("001122334455");
+    final byte [] aData1 = aPacket.serialize ();
+    aPacket.setXid (1234);
+    final byte [] aData2 = aPacket.serialize ();
+    aPacket.setChaddrHex ("001122334456");
+    final byte [] aData3 = aPacket.serialize ();
+
+    final int nHash = DHCPRawPacket.getHardwareAddressHash (ByteBuffer.wrap (aData1));
+    assertEquals (nHash, DHCPRawPacket.getHardwareAddressHash (ByteBuffer.wrap (aData2)));
+    assertFalse (nHash == DHCPRawPacket.getHardwareAddressHash (ByteBuffer.wrap (aData3)));
+    assertEquals (0, DHCPRawPacket.getHardwareAddressHash (ByteBuffer.wrap (aData1, 0, 40)));
+  }
+
+  @Test
+  public void testHeaderFields () throws Exception
+  {
+    final DHCPPacket aPacket = new DHCPPacket ();
+    aPacket.setOp (BOOTREPLY);
+    aPacket.setHtype (HTYPE_ETHER);
+    aPacket.setXid (0x12345678);
+    aPacket.setGiaddr ("10.0.0.1");
+    aPacket.setChaddrHex ("001122334455");
+    final ByteBuffer aBuf = ByteBuffer.wrap (aPacket.serialize ());
+
+    assertTrue (DHCPRawPacket.isDhcp (aBuf));
+    assertEquals (BOOTREPLY, DHCPRawPacket.getOp (aBuf));
+    assertEquals (HTYPE_ETHER, DHCPRawPacket.getHardwareType (aBuf));
+    assertEquals (0x12345678, DHCPRawPacket.getXid (aBuf));
+    assertEquals (0x0A000001, DHCPRawPacket.getGiaddr (aBuf));
+    assertTrue (DHCPRawPacket.hardwareAddressEquals (aBuf, HexUtils.hexToBytes ("001122334455")));
+    assertFalse (DHCPRawPacket.hardwareAddressEquals (aBuf, HexUtils.hexToBytes ("001122334456")));
+    assertEquals (6, DHCPRawPacket.getHardwareAddress (aBuf).length);
+
+    final ByteBuffer aEmpty = ByteBuffer.allocate (0);
+    assertFalse (DHCPRawPacket.isDhcp (aEmpty));
+    assertEquals (0, DHCPRawPacket.getOp (aEmpty));
+    assertEquals (0, DHCPRawPacket.getGiaddr (aEmpty));
+    assertEquals (0, DHCPRawPacket.getHardwareAddress (aEmpty).length);
+  }
+}
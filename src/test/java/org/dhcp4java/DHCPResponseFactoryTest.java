@@ -20,6 +20,7 @@
 package org.dhcp4java;
 
 import static org.dhcp4java.DHCPConstants.BOOTREPLY;
+import static org.dhcp4java.DHCPConstants.BOOTREQUEST;
 import static org.dhcp4java.DHCPConstants.DHCPACK;
 import static org.dhcp4java.DHCPConstants.DHCPDISCOVER;
 import static org.dhcp4java.DHCPConstants.DHCPINFORM;
@@ -29,13 +30,30 @@ import static org.dhcp4java.DHCPConstants.DHCPREQUEST;
 import static org.dhcp4java.DHCPConstants.DHO_DHCP_LEASE_TIME;
 import static org.dhcp4java.DHCPConstants.INADDR_ANY;
 import static org.dhcp4java.DHCPConstants.INADDR_BROADCAST;
+import static org.dhcp4java.DHCPConstants.DHO_DOMAIN_NAME;
+import static org.dhcp4java.DHCPConstants.DHO_HOST_NAME;
+import static org.dhcp4java.DHCPConstants.DHO_ROUTERS;
 import static org.dhcp4java.DHCPResponseFactory.makeDHCPAck;
+import static org.dhcp4java.DHCPResponseFactory.makeDHCPAckTemplate;
+import static org.dhcp4java.DHCPResponseFactory.makeDHCPNak;
 import static org.dhcp4java.DHCPResponseFactory.makeDHCPOffer;
+import static org.dhcp4java.DHCPResponseFactory.makeDHCPOfferTemplate;
+import static org.dhcp4java.DHCPResponseFactory.writeDHCPAck;
+import static org.dhcp4java.DHCPResponseFactory.writeDHCPNak;
+import static org.dhcp4java.DHCPResponseFactory.writeDHCPOffer;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.dhcp4java.DHCPOption;
 import org.dhcp4java.DHCPPacket;
@@ -228,4 +246,254 @@ public class DHCPResponseFactoryTest
     assertEquals (expectedAddress, sockAdr.getAddress ());
     assertEquals (expectedPort, sockAdr.getPort ());
   }
+  // ==============================================================
+  // testing templates
+  // ==============================================================
+  private static DHCPOption [] _templateOptions () throws Exception
+  {
+    return new DHCPOption [] { DHCPOption.newOptionAsInetAddress (DHO_ROUTERS, InetAddress.getByName ("10.0.0.254")),
+                               DHCPOption.newOptionAsString (DHO_DOMAIN_NAME, "example.com") };
+  }
+
+  @Test
+  public void testMakeDHCPOfferTemplate () throws Exception
+  {
+    final DHCPPacket req = new DHCPPacket ();
+    req.setDHCPMessageType (DHCPDISCOVER);
+    req.setXid (0x21345678);
+    req.setFlags ((short) 0X8000);
+    req.setGiaddr ("11.12.156.1");
+    req.setChaddrHex ("001122334455");
+    final InetAddress offeredAddress = InetAddress.getByName ("10.254.0.1");
+    final InetAddress serverId = InetAddress.getByName ("10.0.0.1");
+
+    final DHCPPacket resp = makeDHCPOffer (req, offeredAddress, 86400, serverId, "hello", _templateOptions ());
+    final DHCPResponseTemplate template = makeDHCPOfferTemplate (86400, serverId, "hello", _templateOptions ());
+    final DatagramPacket datagram = template.makeResponse (req, offeredAddress);
+
+    assertArrayEquals (resp.serialize (), Arrays.copyOf (datagram.getData (), datagram.getLength ()));
+    assertEquals (resp.getAddrPort (), datagram.getSocketAddress ());
+
+    // reusing a dirty buffer
+    final ByteBuffer buf = ByteBuffer.allocateDirect (1500);
+    buf.put (datagram.getData ());
+    buf.clear ();
+    req.setGiaddr ("0.0.0.0");
+    req.setXid (0x1234);
+    assertEquals (template.getLength (), template.writeResponse (req, offeredAddress, buf));
+    buf.flip ();
+    final byte [] out = new byte [buf.remaining ()];
+    buf.get (out);
+    assertArrayEquals (makeDHCPOffer (req, offeredAddress, 86400, serverId, "hello", _templateOptions ()).serialize (),
+                       out);
+  }
+
+  @Test
+  public void testMakeDHCPAckTemplate () throws Exception
+  {
+    final DHCPPacket req = new DHCPPacket ();
+    req.setDHCPMessageType (DHCPREQUEST);
+    req.setXid (0x21345678);
+    req.setCiaddr ("10.254.0.1");
+    req.setChaddrHex ("001122334455");
+    final InetAddress offeredAddress = InetAddress.getByName ("10.254.0.1");
+
+    final DHCPPacket resp = makeDHCPAck (req, offeredAddress, 3600, null, null, _templateOptions ());
+    final DatagramPacket datagram = makeDHCPAckTemplate (3600, null, null, _templateOptions ()).makeResponse (req,
+                                                                                                            offeredAddress);
+    assertArrayEquals (resp.serialize (), Arrays.copyOf (datagram.getData (), datagram.getLength ()));
+    assertEquals (resp.getAddrPort (), datagram.getSocketAddress ());
+  }
+
+  @Test (expected = DHCPBadPacketException.class)
+  public void testMakeDHCPAckTemplateBadRequest () throws Exception
+  {
+    final DHCPPacket req = new DHCPPacket ();
+    req.setDHCPMessageType (DHCPDISCOVER);
+    makeDHCPAckTemplate (3600, null, null, null).makeResponse (req, InetAddress.getByName ("10.254.0.1"));
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testMakeDHCPOfferTemplateMirror () throws Exception
+  {
+    makeDHCPOfferTemplate (3600, null, null, new DHCPOption [] { new DHCPOption (DHO_ROUTERS, null, true) });
+  }
+
+  // ==============================================================
+  // testing allocation-free variants
+  // ==============================================================
+  private static byte [] _write (final ByteBuffer buf, final int len)
+  {
+    assertEquals (len, buf.position ());
+    final byte [] out = new byte [len];
+    buf.flip ();
+    buf.get (out);
+    return out;
+  }
+
+  private static void _assertAddress (final DHCPPacket req, final byte type)
+  {
+    final DHCPPacketView view = DHCPPacketView.wrap (ByteBuffer.wrap (req.serialize ()));
+    final InetSocketAddress expected = DHCPResponseFactory.getDefaultSocketAddress (req, type);
+    assertEquals (Util.inetAddress2Int (expected.getAddress ()), DHCPResponseFactory.getDefaultAddress (view, type));
+    assertEquals (expected.getPort (), DHCPResponseFactory.getDefaultPort (view));
+  }
+
+  @Test
+  public void testWriteDHCPOffer () throws Exception
+  {
+    final DHCPPacket req = new DHCPPacket ();
+    req.setOp (BOOTREQUEST);
+    req.setDHCPMessageType (DHCPDISCOVER);
+    req.setXid (0x21345678);
+    req.setFlags ((short) 0X8000);
+    req.setGiaddr ("11.12.156.1");
+    req.setChaddrHex ("001122334455");
+    req.setOptionAsString (DHO_HOST_NAME, "client");
+    final DHCPPacketView view = DHCPPacketView.wrap (ByteBuffer.wrap (req.serialize ()));
+    final InetAddress offeredAddress = InetAddress.getByName ("10.254.0.1");
+    final InetAddress serverId = InetAddress.getByName ("10.0.0.1");
+    final DHCPOption [] opts = { DHCPOption.newOptionAsInetAddress (DHO_ROUTERS, InetAddress.getByName ("10.0.0.254")),
+                                 new DHCPOption (DHO_HOST_NAME, null, true),
+                                 new DHCPOption (DHO_DOMAIN_NAME, null, true) };
+
+    final ByteBuffer buf = ByteBuffer.allocateDirect (1500);
+    final int len = writeDHCPOffer (view,
+                                    Util.inetAddress2Int (offeredAddress),
+                                    86400,
+                                    Util.inetAddress2Int (serverId),
+                                    Util.stringToBytes ("hello"),
+                                    opts,
+                                    buf);
+    assertArrayEquals (makeDHCPOffer (req, offeredAddress, 86400, serverId, "hello", opts).serialize (),
+                       _write (buf, len));
+    _assertAddress (req, DHCPOFFER);
+    req.setGiaddr ("0.0.0.0");
+    _assertAddress (req, DHCPOFFER);
+  }
+
+  @Test
+  public void testWriteDHCPOfferLongOptions () throws Exception
+  {
+    final DHCPPacket req = new DHCPPacket ();
+    req.setOp (BOOTREQUEST);
+    req.setDHCPMessageType (DHCPDISCOVER);
+    req.setChaddrHex ("001122334455");
+    // mirrored option, split in two instances by the client
+    req.setOptionRaw (DHO_DOMAIN_NAME, new byte [300]);
+    final DHCPPacketView view = DHCPPacketView.wrap (ByteBuffer.wrap (req.serialize ()));
+    final InetAddress offeredAddress = InetAddress.getByName ("10.254.0.1");
+    final DHCPOption [] opts = { new DHCPOption (DHO_ROUTERS, new byte [400]),
+                                 new DHCPOption (DHO_DOMAIN_NAME, null, true) };
+
+    final ByteBuffer buf = ByteBuffer.allocate (1500);
+    final int len = writeDHCPOffer (view, Util.inetAddress2Int (offeredAddress), 86400, 0, null, opts, buf);
+    assertArrayEquals (makeDHCPOffer (req, offeredAddress, 86400, null, null, opts).serialize (), _write (buf, len));
+  }
+
+  @Test
+  public void testWriteDHCPAck () throws Exception
+  {
+    final DHCPPacket req = new DHCPPacket ();
+    req.setOp (BOOTREQUEST);
+    req.setDHCPMessageType (DHCPREQUEST);
+    req.setXid (0x21345678);
+    req.setCiaddr ("10.254.0.1");
+    req.setChaddrHex ("001122334455");
+    final InetAddress offeredAddress = InetAddress.getByName ("10.254.0.1");
+
+    ByteBuffer buf = ByteBuffer.allocate (1500);
+    int len = writeDHCPAck (DHCPPacketView.wrap (ByteBuffer.wrap (req.serialize ())),
+                            Util.inetAddress2Int (offeredAddress),
+                            3600,
+                            0,
+                            null,
+                            null,
+                            buf);
+    assertArrayEquals (makeDHCPAck (req, offeredAddress, 3600, null, null, null).serialize (), _write (buf, len));
+    _assertAddress (req, DHCPACK);
+
+    req.setDHCPMessageType (DHCPINFORM);
+    buf = ByteBuffer.allocate (1500);
+    len = writeDHCPAck (DHCPPacketView.wrap (ByteBuffer.wrap (req.serialize ())),
+                        Util.inetAddress2Int (offeredAddress),
+                        3600,
+                        0,
+                        null,
+                        null,
+                        buf);
+    assertArrayEquals (makeDHCPAck (req, offeredAddress, 3600, null, null, null).serialize (), _write (buf, len));
+  }
+
+  @Test
+  public void testWriteDHCPNak () throws Exception
+  {
+    final DHCPPacket req = new DHCPPacket ();
+    req.setOp (BOOTREQUEST);
+    req.setDHCPMessageType (DHCPREQUEST);
+    req.setXid (0x21345678);
+    req.setCiaddr ("10.254.0.1");
+    req.setChaddrHex ("001122334455");
+    final InetAddress serverId = InetAddress.getByName ("10.0.0.1");
+
+    final ByteBuffer buf = ByteBuffer.allocate (1500);
+    final int len = writeDHCPNak (DHCPPacketView.wrap (ByteBuffer.wrap (req.serialize ())),
+                                  Util.inetAddress2Int (serverId),
+                                  Util.stringToBytes ("no"),
+                                  buf);
+    assertArrayEquals (makeDHCPNak (req, serverId, "no").serialize (), _write (buf, len));
+    _assertAddress (req, DHCPNAK);
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testWriteDHCPOfferReservedOption () throws Exception
+  {
+    final DHCPPacket req = new DHCPPacket ();
+    req.setDHCPMessageType (DHCPDISCOVER);
+    writeDHCPOffer (DHCPPacketView.wrap (ByteBuffer.wrap (req.serialize ())),
+                    1,
+                    3600,
+                    0,
+                    null,
+                    new DHCPOption [] { DHCPOption.newOptionAsInt (DHO_DHCP_LEASE_TIME, 10) },
+                    ByteBuffer.allocate (1500));
+  }
+
+  @Test
+  public void testWriteDHCPOfferOverflow () throws Exception
+  {
+    final DHCPPacket req = new DHCPPacket ();
+    req.setDHCPMessageType (DHCPDISCOVER);
+    final ByteBuffer buf = ByteBuffer.allocate (299);
+    try
+    {
+      writeDHCPOffer (DHCPPacketView.wrap (ByteBuffer.wrap (req.serialize ())), 1, 3600, 0, null, null, buf);
+      fail ();
+    }
+    catch (final BufferOverflowException e)
+    {
+      assertEquals (0, buf.position ());
+    }
+  }
+
+  @Test
+  public void testMakeDHCPOfferPooled () throws Exception
+  {
+    final DHCPPacket req = new DHCPPacket ();
+    req.setOp (BOOTREQUEST);
+    req.setDHCPMessageType (DHCPDISCOVER);
+    req.setXid (0x21345678);
+    req.setChaddrHex ("001122334455");
+    final InetAddress offeredAddress = InetAddress.getByName ("10.254.0.1");
+    final InetAddress serverId = InetAddress.getByName ("10.0.0.1");
+
+    final DHCPPacketPool pool = new DHCPPacketPool (1, 4, false);
+    final DHCPPacket resp = makeDHCPOffer (pool, req, offeredAddress, 3600, serverId, "hello", null);
+    assertTrue (pool.owns (resp));
+    assertEquals (makeDHCPOffer (req, offeredAddress, 3600, serverId, "hello", null), resp);
+    pool.release (resp);
+
+    req.setDHCPMessageType (DHCPREQUEST);
+    assertSame (resp, makeDHCPAck (pool, req, offeredAddress, 3600, serverId, null, null));
+  }
 }
@@ -0,0 +1,111 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.dhcp4java.DHCPConstants.BOOTREQUEST;
+import static org.dhcp4java.DHCPConstants.DHCPDISCOVER;
+import static org.dhcp4java.DHCPConstants.DHCPREQUEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class DHCPRetransmissionCacheTest
+{
+  private static DHCPRetransmissionCache.Key _key (final int nXid, final byte nType, final String sChaddr)
+  {
+    final DHCPPacket aPacket = new DHCPPacket ();
+    aPacket.setOp (BOOTREQUEST);
+    aPacket.setXid (nXid);
+    aPacket.setChaddrHex (sChaddr);
+    if (nType != 0)
+      aPacket.setDHCPMessageType (nType);
+    return DHCPRetransmissionCache.getKey (ByteBuffer.wrap (aPacket.serialize ()));
+  }
+
+  @Test
+  public void testKey ()
+  {
+    final DHCPRetransmissionCache.Key aKey = _key (1, DHCPDISCOVER, "001122334455");
+    assertNotNull (aKey);
+    assertEquals (aKey, _key (1, DHCPDISCOVER, "001122334455"));
+    assertEquals (aKey.hashCode (), _key (1, DHCPDISCOVER, "001122334455").hashCode ());
+    assertFalse (aKey.equals (_key (2, DHCPDISCOVER, "001122334455")));
+    assertFalse (aKey.equals (_key (1, DHCPREQUEST, "001122334455")));
+    assertFalse (aKey.equals (_key (1, DHCPDISCOVER, "001122334456")));
+    assertFalse (aKey.equals (null));
+    assertNull (_key (1, (byte) 0, "001122334455"));
+  }
+
+  @Test
+  public void testBeginComplete ()
+  {
+    final DHCPRetransmissionCache aCache = new DHCPRetransmissionCache (10, 60000);
+    final DHCPRetransmissionCache.Key aKey = _key (1, DHCPDISCOVER, "001122334455");
+
+    assertNull (aCache.begin (aKey));
+    // in flight
+    final DHCPRetransmissionCache.Entry aEntry = aCache.begin (aKey);
+    assertNotNull (aEntry);
+    assertNull (aEntry.getResponse ());
+
+    final DatagramPacket aResponse = new DatagramPacket (new byte [1], 1);
+    aCache.complete (aKey, aResponse);
+    assertSame (aResponse, aCache.begin (aKey).getResponse ());
+
+    aCache.abort (aKey);
+    assertNull (aCache.begin (aKey));
+  }
+
+  @Test
+  public void testExpiry () throws Exception
+  {
+    final DHCPRetransmissionCache aCache = new DHCPRetransmissionCache (10, 1);
+    final DHCPRetransmissionCache.Key aKey = _key (1, DHCPDISCOVER, "001122334455");
+    assertNull (aCache.begin (aKey));
+    Thread.sleep (5);
+    assertNull (aCache.begin (aKey));
+  }
+
+  @Test
+  public void testEviction ()
+  {
+    final DHCPRetransmissionCache aCache = new DHCPRetransmissionCache (2, 60000);
+    assertNull (aCache.begin (_key (1, DHCPDISCOVER, "001122334455")));
+    assertNull (aCache.begin (_key (2, DHCPDISCOVER, "001122334455")));
+    assertNull (aCache.begin (_key (3, DHCPDISCOVER, "001122334455")));
+    assertEquals (2, aCache.size ());
+    // the oldest one was evicted
+    assertNull (aCache.begin (_key (1, DHCPDISCOVER, "001122334455")));
+    assertNotNull (aCache.begin (_key (3, DHCPDISCOVER, "001122334455")));
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testBadSize ()
+  {
+    new DHCPRetransmissionCache (0, 1000);
+  }
+}
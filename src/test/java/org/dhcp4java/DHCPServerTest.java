@@ -20,22 +20,47 @@
 package org.dhcp4java;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
 
 import org.dhcp4java.DHCPCoreServer;
 import org.dhcp4java.DHCPServerInitException;
 import org.dhcp4java.DHCPServlet;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Test;
 
 public class DHCPServerTest
 {
   private static final String SERVER_ADDR = "127.0.0.1";
   private static final int SERVER_PORT = 6767;
+  // closing a socket with a pending receive is asynchronous, so tests running
+  // a receive loop use their own port
+  private static final int SERVER_PORT_CHANNEL = 6768;
+  private static final int SERVER_PORT_LISTENERS = 6769;
+  private static final int SERVER_PORT_CHANNEL_LISTENERS = 6770;
+  private static final int SERVER_PORT_VIRTUAL = 6771;
+  private static final int SERVER_PORT_PRIORITY = 6772;
+  private static final int SERVER_PORT_LANES = 6773;
+  private static final int SERVER_PORT_ASYNC = 6774;
+  private static final int SERVER_PORT_ASYNC_TIMEOUT = 6775;
+  private static final int SERVER_PORT_SEND_QUEUE = 6776;
+  private static final int SERVER_PORT_CHANNEL_SEND_QUEUE = 6777;
+  private static final int SERVER_PORT_DEDUP = 6778;
+  private static final int SERVER_PORT_FILTERS = 6779;
 
   private DHCPCoreServer m_aServer0;
 
@@ -100,6 +125,434 @@ public class DHCPServerTest
     server.stopServer ();
   }
 
+  @Test
+  public void testInitServerChannel () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT_CHANNEL);
+    localProperties.put (DHCPCoreServer.SERVER_THREADS, "1");
+    localProperties.put (DHCPCoreServer.SERVER_TRANSPORT, DHCPCoreServer.TRANSPORT_CHANNEL);
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestEchoServlet (), localProperties);
+    new Thread (m_aServer0).start ();
+
+    // round trip through the pooled buffers, more times than buffers available
+    _roundTrip (SERVER_PORT_CHANNEL, 40);
+  }
+
+  @Test
+  public void testInitServerListeners () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT_LISTENERS);
+    localProperties.put (DHCPCoreServer.SERVER_LISTENERS, "3");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestEchoServlet (), localProperties);
+    assertEquals (3, m_aServer0.getListenerCount ());
+    new Thread (m_aServer0).start ();
+    _roundTrip (SERVER_PORT_LISTENERS, 10);
+  }
+
+  @Test
+  public void testInitServerChannelListeners () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT_CHANNEL_LISTENERS);
+    localProperties.put (DHCPCoreServer.SERVER_TRANSPORT, DHCPCoreServer.TRANSPORT_CHANNEL);
+    localProperties.put (DHCPCoreServer.SERVER_LISTENERS, DHCPCoreServer.SERVER_LISTENERS_AUTO);
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestEchoServlet (), localProperties);
+    assertEquals (Runtime.getRuntime ().availableProcessors (), m_aServer0.getListenerCount ());
+    new Thread (m_aServer0).start ();
+    _roundTrip (SERVER_PORT_CHANNEL_LISTENERS, 10);
+  }
+
+  @Test (expected = DHCPServerInitException.class)
+  public void testInitServerNoListener () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT);
+    localProperties.put (DHCPCoreServer.SERVER_LISTENERS, "0");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestServlet (), localProperties);
+  }
+
+  @Test
+  public void testInitServerVirtualThreads () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT_VIRTUAL);
+    localProperties.put (DHCPCoreServer.SERVER_DISPATCH, DHCPCoreServer.DISPATCH_VIRTUAL);
+    localProperties.put (DHCPCoreServer.SERVER_VIRTUAL_THREADS_MAX, "4");
+
+    // virtual threads are available since Java 21
+    final String sVersion = System.getProperty ("java.specification.version");
+    Assume.assumeTrue (!sVersion.startsWith ("1.") && Integer.parseInt (sVersion) >= 21);
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestEchoServlet (), localProperties);
+    new Thread (m_aServer0).start ();
+
+    _roundTrip (SERVER_PORT_VIRTUAL, 10);
+  }
+
+  @Test (expected = DHCPServerInitException.class)
+  public void testInitServerBadDispatch () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT);
+    localProperties.put (DHCPCoreServer.SERVER_DISPATCH, "fork");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestServlet (), localProperties);
+  }
+
+  @Test
+  public void testInitServerPriorityScheduling () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT_PRIORITY);
+    localProperties.put (DHCPCoreServer.SERVER_TRANSPORT, DHCPCoreServer.TRANSPORT_CHANNEL);
+    localProperties.put (DHCPCoreServer.SERVER_SCHEDULING, DHCPCoreServer.SCHEDULING_PRIORITY);
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestEchoServlet (), localProperties);
+    new Thread (m_aServer0).start ();
+
+    _roundTrip (SERVER_PORT_PRIORITY, 10);
+  }
+
+  @Test
+  public void testInitServerLanes () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT_LANES);
+    localProperties.put (DHCPCoreServer.SERVER_DISPATCH, DHCPCoreServer.DISPATCH_LANES);
+    localProperties.put (DHCPCoreServer.SERVER_LANES, "3");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestEchoServlet (), localProperties);
+    new Thread (m_aServer0).start ();
+
+    _roundTrip (SERVER_PORT_LANES, 10);
+  }
+
+  @Test (expected = DHCPServerInitException.class)
+  public void testInitServerLanesCallerRuns () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT);
+    localProperties.put (DHCPCoreServer.SERVER_DISPATCH, DHCPCoreServer.DISPATCH_LANES);
+    localProperties.put (DHCPCoreServer.SERVER_OVERLOAD_POLICY, DHCPCoreServer.OVERLOAD_CALLER_RUNS);
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestServlet (), localProperties);
+  }
+
+  @Test
+  public void testInitServerAsync () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT_ASYNC);
+    localProperties.put (DHCPCoreServer.SERVER_TRANSPORT, DHCPCoreServer.TRANSPORT_CHANNEL);
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestAsyncServlet (), localProperties);
+    new Thread (m_aServer0).start ();
+
+    _roundTrip (SERVER_PORT_ASYNC, 10);
+    assertEquals (0, m_aServer0.getAsyncTimeoutCount ());
+  }
+
+  @Test
+  public void testInitServerAsyncTimeout () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT_ASYNC_TIMEOUT);
+    localProperties.put (DHCPCoreServer.SERVER_ASYNC_TIMEOUT, "50");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestAsyncServlet (), localProperties);
+    new Thread (m_aServer0).start ();
+
+    try (final DatagramSocket aClient = new DatagramSocket (0, InetAddress.getByName (SERVER_ADDR)))
+    {
+      final DHCPPacket aRequest = new DHCPPacket ();
+      aRequest.setOp (DHCPConstants.BOOTREQUEST);
+      aRequest.setDHCPMessageType (DHCPConstants.DHCPDISCOVER);
+      aRequest.setXid (DHCPServerTestAsyncServlet.XID_NEVER);
+      final byte [] aBuf = aRequest.serialize ();
+      aClient.send (new DatagramPacket (aBuf, aBuf.length, InetAddress.getByName (SERVER_ADDR), SERVER_PORT_ASYNC_TIMEOUT));
+    }
+
+    for (int i = 0; i < 100 && m_aServer0.getAsyncTimeoutCount () == 0; i++)
+      Thread.sleep (20);
+    assertEquals (1, m_aServer0.getAsyncTimeoutCount ());
+  }
+
+  @Test
+  public void testInitServerSendQueue () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT_SEND_QUEUE);
+    localProperties.put (DHCPCoreServer.SERVER_SEND_QUEUE_SIZE, "16");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestEchoServlet (), localProperties);
+    new Thread (m_aServer0).start ();
+
+    _roundTrip (SERVER_PORT_SEND_QUEUE, 10);
+    // counters are updated once the batch is over
+    for (int i = 0; i < 100 && m_aServer0.getSentCount () < 10; i++)
+      Thread.sleep (10);
+    assertEquals (10, m_aServer0.getSentCount ());
+    assertTrue (m_aServer0.getSendBatchCount () >= 1);
+    assertTrue (m_aServer0.getLargestSendBatch () >= 1);
+    assertEquals (0, m_aServer0.getSendDroppedCount ());
+  }
+
+  @Test
+  public void testInitServerChannelSendQueue () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT_CHANNEL_SEND_QUEUE);
+    localProperties.put (DHCPCoreServer.SERVER_TRANSPORT, DHCPCoreServer.TRANSPORT_CHANNEL);
+    localProperties.put (DHCPCoreServer.SERVER_SEND_QUEUE_SIZE, "16");
+    localProperties.put (DHCPCoreServer.SERVER_SEND_BATCH_SIZE, "4");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestEchoServlet (), localProperties);
+    new Thread (m_aServer0).start ();
+
+    _roundTrip (SERVER_PORT_CHANNEL_SEND_QUEUE, 10);
+    for (int i = 0; i < 100 && m_aServer0.getSentCount () < 10; i++)
+      Thread.sleep (10);
+    assertEquals (10, m_aServer0.getSentCount ());
+    assertEquals (0, m_aServer0.getSendQueueDepth ());
+  }
+
+  @Test
+  public void testInitServerDedupReplay () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT_DEDUP);
+    localProperties.put (DHCPCoreServer.SERVER_TRANSPORT, DHCPCoreServer.TRANSPORT_CHANNEL);
+    localProperties.put (DHCPCoreServer.SERVER_DEDUP, DHCPCoreServer.DEDUP_REPLAY);
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestEchoServlet (), localProperties);
+    new Thread (m_aServer0).start ();
+
+    try (final DatagramSocket aClient = new DatagramSocket (0, InetAddress.getByName (SERVER_ADDR)))
+    {
+      aClient.setSoTimeout (2000);
+      for (int i = 0; i < 10; i++)
+      {
+        // every request is sent twice, the second one is answered from the
+        // cache
+        final DHCPPacket aRequest = new DHCPPacket ();
+        aRequest.setOp (DHCPConstants.BOOTREQUEST);
+        aRequest.setDHCPMessageType (DHCPConstants.DHCPDISCOVER);
+        aRequest.setXid (i / 2);
+        final byte [] aBuf = aRequest.serialize ();
+        aClient.send (new DatagramPacket (aBuf, aBuf.length, InetAddress.getByName (SERVER_ADDR), SERVER_PORT_DEDUP));
+
+        final DatagramPacket aResponseDatagram = new DatagramPacket (new byte [1500], 1500);
+        aClient.receive (aResponseDatagram);
+        assertEquals (i / 2, DHCPPacket.getPacket (aResponseDatagram).getXid ());
+      }
+    }
+    assertEquals (5, m_aServer0.getRetransmissionCount ());
+    assertEquals (5, m_aServer0.getReplayCount ());
+  }
+
+  @Test
+  public void testInitServerFilters () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT_FILTERS);
+    localProperties.put (DHCPCoreServer.SERVER_FILTERS, DHCPCoreServer.FILTER_BOOTREQUEST + ", " + DHCPCoreServer.FILTER_DHCP);
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestEchoServlet (), localProperties);
+    new Thread (m_aServer0).start ();
+
+    try (final DatagramSocket aClient = new DatagramSocket (0, InetAddress.getByName (SERVER_ADDR)))
+    {
+      // junk, then a BOOTREPLY: both filtered
+      aClient.send (new DatagramPacket (new byte [10], 10, InetAddress.getByName (SERVER_ADDR), SERVER_PORT_FILTERS));
+      final DHCPPacket aReply = new DHCPPacket ();
+      aReply.setOp (DHCPConstants.BOOTREPLY);
+      aReply.setDHCPMessageType (DHCPConstants.DHCPOFFER);
+      final byte [] aBuf = aReply.serialize ();
+      aClient.send (new DatagramPacket (aBuf, aBuf.length, InetAddress.getByName (SERVER_ADDR), SERVER_PORT_FILTERS));
+    }
+    _roundTrip (SERVER_PORT_FILTERS, 3);
+    assertEquals (2, m_aServer0.getFilteredCount ());
+  }
+
+  @Test (expected = DHCPServerInitException.class)
+  public void testInitServerBadFilter () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT);
+    localProperties.put (DHCPCoreServer.SERVER_FILTERS, "everything");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestServlet (), localProperties);
+  }
+
+  @Test (expected = DHCPServerInitException.class)
+  public void testInitServerBadPacketPool () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT);
+    localProperties.put (DHCPCoreServer.SERVER_PACKET_POOL, "sometimes");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestServlet (), localProperties);
+  }
+
+  @Test
+  public void testInitServerPacketPool () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT);
+    localProperties.put (DHCPCoreServer.SERVER_PACKET_POOL, DHCPCoreServer.PACKET_POOL_DEBUG);
+
+    final DHCPServerTestPoolServlet aServlet = new DHCPServerTestPoolServlet ();
+    m_aServer0 = DHCPCoreServer.initServer (aServlet, localProperties);
+    final DHCPPacketPool aPool = m_aServer0.getPacketPool ();
+    assertNotNull (aPool);
+    assertTrue (aPool.isDebug ());
+
+    final DHCPPacket aRequest = new DHCPPacket ();
+    aRequest.setOp (DHCPConstants.BOOTREQUEST);
+    aRequest.setXid (1234);
+    aRequest.setDHCPMessageType (DHCPConstants.DHCPDISCOVER);
+    final byte [] aBuf = aRequest.serialize ();
+    final DatagramPacket aResponse = aServlet.serviceDatagram (new DatagramPacket (aBuf,
+                                                                                   aBuf.length,
+                                                                                   InetAddress.getByName (SERVER_ADDR),
+                                                                                   68));
+    assertNotNull (aResponse);
+    assertEquals (1234, DHCPPacket.getPacket (aResponse).getXid ());
+
+    // both packets went back to the pool
+    assertEquals (2, aPool.getCreatedCount ());
+    assertFalse (aPool.owns (aServlet.m_aLastRequest));
+    assertFalse (aPool.owns (aServlet.m_aLastResponse));
+    try
+    {
+      aServlet.m_aLastRequest.getXid ();
+      fail ();
+    }
+    catch (final IllegalStateException e)
+    {
+      // expected, used after release
+    }
+  }
+
+  @Test
+  public void testInitServerRejected () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT);
+
+    final DHCPServerTestPoolServlet aServlet = new DHCPServerTestPoolServlet ();
+    m_aServer0 = DHCPCoreServer.initServer (aServlet, localProperties);
+
+    assertNull (aServlet.serviceDatagram (new DatagramPacket (new byte [100], 100)));
+    assertNull (aServlet.serviceDatagram (new DatagramPacket (new byte [100], 100)));
+    assertNull (aServlet.serviceDatagram (new DatagramPacket (new byte [238], 238)));
+    // magic cookie, but no END option
+    final byte [] aBuf = new byte [300];
+    aBuf[236] = (byte) 0x63;
+    aBuf[237] = (byte) 0x82;
+    aBuf[238] = (byte) 0x53;
+    aBuf[239] = (byte) 0x63;
+    assertNull (aServlet.serviceDatagram (new DatagramPacket (aBuf, aBuf.length)));
+    assertEquals (2, m_aServer0.getRejectedCount (DHCPRejectReason.TOO_SMALL));
+    assertEquals (1, m_aServer0.getRejectedCount (DHCPRejectReason.TRUNCATED_MAGIC_COOKIE));
+    assertEquals (1, m_aServer0.getRejectedCount (DHCPRejectReason.TRUNCATED_OPTIONS));
+    assertEquals (0, m_aServer0.getRejectedCount (DHCPRejectReason.TOO_BIG));
+    // the servlet never saw them
+    assertNull (aServlet.m_aLastRequest);
+  }
+
+  @Test (expected = DHCPServerInitException.class)
+  public void testInitServerBadDedup () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT);
+    localProperties.put (DHCPCoreServer.SERVER_DEDUP, "maybe");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestServlet (), localProperties);
+  }
+
+  @Test (expected = DHCPServerInitException.class)
+  public void testInitServerBadScheduling () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT);
+    localProperties.put (DHCPCoreServer.SERVER_SCHEDULING, "lifo");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestServlet (), localProperties);
+  }
+
+  @Test (expected = DHCPServerInitException.class)
+  public void testInitServerBadOverloadPolicy () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT);
+    localProperties.put (DHCPCoreServer.SERVER_OVERLOAD_POLICY, "drop-everything");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestServlet (), localProperties);
+  }
+
+  private static void _roundTrip (final int nPort, final int nCount) throws Exception
+  {
+    try (final DatagramSocket aClient = new DatagramSocket (0, InetAddress.getByName (SERVER_ADDR)))
+    {
+      aClient.setSoTimeout (2000);
+      for (int i = 0; i < nCount; i++)
+      {
+        final DHCPPacket aRequest = new DHCPPacket ();
+        aRequest.setOp (DHCPConstants.BOOTREQUEST);
+        aRequest.setDHCPMessageType (DHCPConstants.DHCPDISCOVER);
+        aRequest.setXid (i);
+        final byte [] aBuf = aRequest.serialize ();
+        aClient.send (new DatagramPacket (aBuf, aBuf.length, InetAddress.getByName (SERVER_ADDR), nPort));
+
+        final DatagramPacket aResponseDatagram = new DatagramPacket (new byte [1500], 1500);
+        aClient.receive (aResponseDatagram);
+        final DHCPPacket aResponse = DHCPPacket.getPacket (aResponseDatagram);
+        assertEquals (i, aResponse.getXid ());
+        assertEquals (DHCPConstants.BOOTREPLY, aResponse.getOp ());
+      }
+    }
+  }
+
+  @Test (expected = DHCPServerInitException.class)
+  public void testInitServerBadTransport () throws Exception
+  {
+    final Properties localProperties = new Properties ();
+
+    localProperties.put (DHCPCoreServer.SERVER_ADDRESS, SERVER_ADDR + ':' + SERVER_PORT);
+    localProperties.put (DHCPCoreServer.SERVER_TRANSPORT, "carrier-pigeon");
+
+    m_aServer0 = DHCPCoreServer.initServer (new DHCPServerTestServlet (), localProperties);
+  }
+
   // parseSocketAddress
   @Test
   public void testParseSocketAddress () throws Exception
@@ -132,3 +585,67 @@ class DHCPServerTestServlet extends DHCPServlet
   //
 
 }
+
+class DHCPServerTestEchoServlet extends DHCPServlet
+{
+  @Override
+  protected DHCPPacket doDiscover (final DHCPPacket request)
+  {
+    final DHCPPacket response = new DHCPPacket ();
+    response.setOp (DHCPConstants.BOOTREPLY);
+    response.setXid (request.getXid ());
+    response.setDHCPMessageType (DHCPConstants.DHCPOFFER);
+    response.setAddress (request.getAddress ());
+    response.setPort (request.getPort ());
+    return response;
+  }
+}
+
+class DHCPServerTestPoolServlet extends DHCPServlet
+{
+  DHCPPacket m_aLastRequest;
+  DHCPPacket m_aLastResponse;
+
+  @Override
+  protected DHCPPacket doDiscover (final DHCPPacket request)
+  {
+    m_aLastRequest = request;
+    try
+    {
+      m_aLastResponse = DHCPResponseFactory.makeDHCPOffer (getServer ().getPacketPool (),
+                                                           request,
+                                                           InetAddress.getByName ("10.0.0.1"),
+                                                           3600,
+                                                           null,
+                                                           null,
+                                                           null);
+    }
+    catch (final UnknownHostException e)
+    {
+      throw new IllegalStateException (e);
+    }
+    return m_aLastResponse;
+  }
+}
+
+class DHCPServerTestAsyncServlet extends DHCPAsyncServlet
+{
+  /** requests with this xid never complete. */
+  static final int XID_NEVER = 999;
+
+  private final DHCPServerTestEchoServlet m_aEcho = new DHCPServerTestEchoServlet ();
+
+  @Override
+  protected CompletionStage <DHCPPacket> doDiscoverAsync (final DHCPPacket request)
+  {
+    if (request.getXid () == XID_NEVER)
+      return new CompletableFuture <> ();
+    return CompletableFuture.supplyAsync (new Supplier <DHCPPacket> ()
+    {
+      public DHCPPacket get ()
+      {
+        return m_aEcho.doDiscover (request);
+      }
+    });
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ *  This file is part of dhcp4java, a DHCP API for the Java language.
+ *  (c) 2006 Stephan Hadinger
+ *  (c) 2018 Philip Helger
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.dhcp4java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Runs on platform threads, virtual threads are not needed to check the limit.
+ */
+public class DHCPVirtualThreadExecutorTest
+{
+  private final CountDownLatch m_aRelease = new CountDownLatch (1);
+  private final ExecutorService m_aThreads = Executors.newCachedThreadPool ();
+
+  @After
+  public void tearDown ()
+  {
+    m_aRelease.countDown ();
+    m_aThreads.shutdownNow ();
+  }
+
+  private Runnable _blocking (final CountDownLatch aStarted)
+  {
+    return new Runnable ()
+    {
+      public void run ()
+      {
+        aStarted.countDown ();
+        try
+        {
+          m_aRelease.await ();
+        }
+        catch (final InterruptedException e)
+        {
+          // done
+        }
+      }
+    };
+  }
+
+  private static void _waitFor (final DHCPVirtualThreadExecutor aExecutor, final int nInFlight) throws Exception
+  {
+    for (int i = 0; i < 500 && aExecutor.getInFlight () != nInFlight; i++)
+      Thread.sleep (10);
+    assertEquals (nInFlight, aExecutor.getInFlight ());
+  }
+
+  @Test
+  public void testLimitSheds () throws Exception
+  {
+    final DHCPOverloadHandler aHandler = new DHCPOverloadHandler (DHCPCoreServer.OVERLOAD_DROP_NEWEST);
+    final DHCPVirtualThreadExecutor aExecutor = new DHCPVirtualThreadExecutor (m_aThreads, 2, aHandler);
+    final CountDownLatch aStarted = new CountDownLatch (2);
+    aExecutor.execute (_blocking (aStarted));
+    aExecutor.execute (_blocking (aStarted));
+    assertTrue (aStarted.await (5, TimeUnit.SECONDS));
+
+    // the caller is not blocked, the task is shed
+    final CountDownLatch aNever = new CountDownLatch (1);
+    aExecutor.execute (_blocking (aNever));
+    assertEquals (1, aHandler.getShedCount ());
+    assertEquals (2, aExecutor.getInFlight ());
+
+    m_aRelease.countDown ();
+    _waitFor (aExecutor, 0);
+    assertEquals (1, aNever.getCount ());
+  }
+
+  @Test
+  public void testLimitCallerRuns () throws Exception
+  {
+    final DHCPOverloadHandler aHandler = new DHCPOverloadHandler (DHCPCoreServer.OVERLOAD_CALLER_RUNS);
+    final DHCPVirtualThreadExecutor aExecutor = new DHCPVirtualThreadExecutor (m_aThreads, 1, aHandler);
+    final CountDownLatch aStarted = new CountDownLatch (1);
+    aExecutor.execute (_blocking (aStarted));
+    assertTrue (aStarted.await (5, TimeUnit.SECONDS));
+
+    final AtomicReference <Thread> aRunner = new AtomicReference <> ();
+    aExecutor.execute (new Runnable ()
+    {
+      public void run ()
+      {
+        aRunner.set (Thread.currentThread ());
+      }
+    });
+    assertEquals (Thread.currentThread (), aRunner.get ());
+    assertEquals (1, aHandler.getCallerRunsCount ());
+  }
+
+  @Test
+  public void testDeferRelease () throws Exception
+  {
+    assertNull (DHCPVirtualThreadExecutor.deferRelease ());
+
+    final DHCPOverloadHandler aHandler = new DHCPOverloadHandler (DHCPCoreServer.OVERLOAD_DROP_NEWEST);
+    final DHCPVirtualThreadExecutor aExecutor = new DHCPVirtualThreadExecutor (m_aThreads, 1, aHandler);
+    final AtomicReference <Runnable> aRelease = new AtomicReference <> ();
+    final CountDownLatch aDone = new CountDownLatch (1);
+    aExecutor.execute (new Runnable ()
+    {
+      public void run ()
+      {
+        // as an asynchronous servlet, completing later
+        aRelease.set (DHCPVirtualThreadExecutor.deferRelease ());
+        aDone.countDown ();
+      }
+    });
+    assertTrue (aDone.await (5, TimeUnit.SECONDS));
+    assertNotNull (aRelease.get ());
+    Thread.sleep (50);
+    // still in flight after run() returned
+    assertEquals (1, aExecutor.getInFlight ());
+    aExecutor.execute (_blocking (new CountDownLatch (1)));
+    assertEquals (1, aHandler.getShedCount ());
+
+    aRelease.get ().run ();
+    aRelease.get ().run ();
+    assertEquals (0, aExecutor.getInFlight ());
+  }
+}